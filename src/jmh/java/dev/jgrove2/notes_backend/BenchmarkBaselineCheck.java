@@ -0,0 +1,142 @@
+package dev.jgrove2.notes_backend;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Compares a JMH JSON result file with the runner's baseline and exits non-zero when a
+ * benchmark got slower by more than the tolerance (beyond its own error margin), when a
+ * baseline benchmark selected by the run produced no result (e.g. it failed in setup), or
+ * when there is no baseline. With --init, a missing baseline is created from the result
+ * instead, which is how a new runner starts; an existing one is still compared against.
+ *
+ * Usage: BenchmarkBaselineCheck [--init] result.json baseline.json [tolerance, default 0.25] [benchmark regex]
+ * The regex is the one passed to JMH, so a partial run only checks the benchmarks it ran.
+ * To accept new numbers, copy the result file over the baseline on that runner.
+ */
+public class BenchmarkBaselineCheck {
+
+	public static void main(String[] arguments) throws IOException {
+		// --init=true and --init=false let the pom pass the flag from a property
+		boolean init = false;
+		List<String> args = new ArrayList<>();
+		for (String argument : arguments) {
+			if (argument.equals("--init") || argument.equals("--init=true")) {
+				init = true;
+			} else if (!argument.equals("--init=false")) {
+				args.add(argument);
+			}
+		}
+		if (args.size() < 2) {
+			System.err.println("Usage: BenchmarkBaselineCheck [--init] <result.json> <baseline.json> [tolerance] [regex]");
+			System.exit(2);
+		}
+		Path resultFile = Path.of(args.get(0));
+		Path baselineFile = Path.of(args.get(1));
+		double tolerance = args.size() > 2 ? Double.parseDouble(args.get(2)) : 0.25;
+		Pattern selected = Pattern.compile(args.size() > 3 ? args.get(3) : ".*");
+
+		if (!Files.exists(baselineFile)) {
+			if (!init) {
+				System.err.println("No baseline at " + baselineFile + ". Run with -Djmh.init=true on this runner to"
+						+ " record one, or pass -Djmh.baseline=<file> to compare against another.");
+				System.exit(1);
+			}
+			if (baselineFile.toAbsolutePath().getParent() != null) {
+				Files.createDirectories(baselineFile.toAbsolutePath().getParent());
+			}
+			Files.copy(resultFile, baselineFile);
+			System.out.println("Recorded " + resultFile + " as the baseline at " + baselineFile);
+			return;
+		}
+
+		Map<String, JsonNode> results = readScores(resultFile);
+		Map<String, JsonNode> baseline = readScores(baselineFile);
+
+		int regressions = 0;
+		int missing = 0;
+		System.out.printf("%-90s %12s %12s %8s%n", "Benchmark", "Baseline", "Current", "Change");
+		for (Map.Entry<String, JsonNode> entry : baseline.entrySet()) {
+			JsonNode expected = entry.getValue();
+			JsonNode actual = results.get(entry.getKey());
+			if (actual == null) {
+				// Same matching as JMH's include pattern
+				if (selected.matcher(expected.get("benchmark").asText()).find()) {
+					missing++;
+					System.out.printf("%-90s %12.3f %12s %8s%n", entry.getKey(), score(expected), "-", "MISSING");
+				}
+				continue;
+			}
+
+			double change = (score(actual) - score(expected)) / score(expected);
+			boolean higherIsBetter = actual.get("mode").asText().equals("thrpt");
+			// Only count it when the slowdown is larger than the measurement error
+			double slowdown = higherIsBetter
+					? (score(expected) - (score(actual) + error(actual))) / score(expected)
+					: (score(actual) - error(actual) - score(expected)) / score(expected);
+			boolean regressed = slowdown > tolerance;
+			if (regressed) {
+				regressions++;
+			}
+			System.out.printf("%-90s %12.3f %12.3f %+7.1f%%%s%n", entry.getKey(), score(expected), score(actual),
+					change * 100, regressed ? "  REGRESSION" : "");
+		}
+		for (String key : results.keySet()) {
+			if (!baseline.containsKey(key)) {
+				System.out.printf("%-90s %12s %12.3f %8s%n", key, "-", score(results.get(key)), "new");
+			}
+		}
+
+		if (missing > 0) {
+			System.err.println(missing + " benchmark(s) in " + baselineFile + " have no result in " + resultFile);
+		}
+		if (regressions > 0) {
+			System.err.println(regressions + " benchmark(s) regressed by more than " + Math.round(tolerance * 100)
+					+ "% against " + baselineFile);
+		}
+		if (missing > 0 || regressions > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Keys each benchmark by name and parameters, e.g.
+	 * dev.jgrove2.notes_backend.Services.NoteServiceBenchmark.buildFileStructure{noteCount=100, shape=flat}
+	 */
+	private static Map<String, JsonNode> readScores(Path file) throws IOException {
+		Map<String, JsonNode> scores = new TreeMap<>();
+		for (JsonNode run : new ObjectMapper().readTree(file.toFile())) {
+			Map<String, String> params = new TreeMap<>();
+			JsonNode paramsNode = run.get("params");
+			if (paramsNode != null) {
+				Iterator<Map.Entry<String, JsonNode>> fields = paramsNode.fields();
+				while (fields.hasNext()) {
+					Map.Entry<String, JsonNode> field = fields.next();
+					params.put(field.getKey(), field.getValue().asText());
+				}
+			}
+			String key = run.get("benchmark").asText() + (params.isEmpty() ? "" : params.toString());
+			scores.put(key, run);
+		}
+		return scores;
+	}
+
+	private static double score(JsonNode run) {
+		return run.get("primaryMetric").get("score").asDouble();
+	}
+
+	private static double error(JsonNode run) {
+		double scoreError = run.get("primaryMetric").get("scoreError").asDouble();
+		return Double.isNaN(scoreError) ? 0 : scoreError;
+	}
+}
\ No newline at end of file
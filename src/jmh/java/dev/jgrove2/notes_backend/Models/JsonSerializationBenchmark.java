@@ -0,0 +1,87 @@
+package dev.jgrove2.notes_backend.Models;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON serialization of the response bodies, with an ObjectMapper configured
+ * the way Spring Boot configures the one used by the controllers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonSerializationBenchmark {
+
+	@Param({ "10", "100", "1000" })
+	private int size;
+
+	private ObjectMapper objectMapper;
+	private List<Note> notes;
+	private List<NoteSummary> noteSummaries;
+	private List<User> users;
+
+	@Setup
+	public void setUp() {
+		objectMapper = Jackson2ObjectMapperBuilder.json()
+				.featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+				.build();
+
+		LocalDateTime now = LocalDateTime.of(2025, 1, 1, 12, 0);
+		notes = new ArrayList<>(size);
+		noteSummaries = new ArrayList<>(size);
+		users = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			String fileName = "folder-" + (i % 10) + "/note-" + i + ".html";
+			Note note = new Note(fileName, 1L, (long) i * 100, "users/1/notes/" + i);
+			note.setId((long) i);
+			note.setCreatedAt(now);
+			note.setLastModifiedDate(now);
+			note.setUpdatedAt(now);
+			notes.add(note);
+			noteSummaries.add(new NoteSummary(fileName, (long) i * 100, now));
+
+			User user = new User("First" + i, "Last" + i, "kp_" + i);
+			user.setUserId((long) i);
+			user.setCreatedAt(now);
+			user.setUpdatedAt(now);
+			user.setMaxStorage(100L * 1024 * 1024);
+			users.add(user);
+		}
+	}
+
+	@Benchmark
+	public byte[] serializeNotes() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(notes);
+	}
+
+	@Benchmark
+	public byte[] serializeNoteSummaries() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(noteSummaries);
+	}
+
+	@Benchmark
+	public byte[] serializeUsers() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(users);
+	}
+}
\ No newline at end of file
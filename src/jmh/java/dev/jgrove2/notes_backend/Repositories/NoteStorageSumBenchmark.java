@@ -0,0 +1,98 @@
+package dev.jgrove2.notes_backend.Repositories;
+
+import org.flywaydb.core.Flyway;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The query behind NoteService.getTotalStorageSizeByUserId (NoteRepository.sumTotalSizeBytesByUserId),
+ * run over JDBC against a local Postgres so the index-only SUM is measured without JPA overhead.
+ * Needs NOTES_TEST_DATABASE_URL; migrations and seed data go to a throwaway schema.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NoteStorageSumBenchmark {
+
+	private static final String SCHEMA = "notes_benchmark";
+
+	// Same SQL Hibernate generates for the JPQL sum query
+	private static final String SUM_QUERY =
+			"SELECT coalesce(sum(n.total_size_bytes), 0) FROM notes n WHERE n.user_id = ?";
+
+	private static final long USER_ID = 1L;
+
+	@Param({ "100", "10000" })
+	private int notesPerUser;
+
+	private Flyway flyway;
+	private Connection connection;
+	private PreparedStatement sumStatement;
+
+	@Setup
+	public void setUp() throws SQLException {
+		String url = System.getenv("NOTES_TEST_DATABASE_URL");
+		if (url == null || url.isEmpty()) {
+			throw new IllegalStateException("NOTES_TEST_DATABASE_URL is not set");
+		}
+		flyway = Flyway.configure()
+				.dataSource(url, null, null)
+				.schemas(SCHEMA)
+				.cleanDisabled(false)
+				.load();
+		flyway.clean();
+		flyway.migrate();
+
+		connection = DriverManager.getConnection(url);
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("SET search_path TO " + SCHEMA);
+			// The measured user plus 200 neighbours of the same size
+			statement.execute("INSERT INTO notes (file_name, user_id, object_key, total_size_bytes, created_at, "
+					+ "last_modified_date, updated_at) "
+					+ "SELECT 'note-' || n || '.html', u, 'users/' || u || '/notes/' || n, n * 10, now(), now(), now() "
+					+ "FROM generate_series(1, 201) u, generate_series(1, " + notesPerUser + ") n");
+			statement.execute("VACUUM ANALYZE notes");
+		}
+		sumStatement = connection.prepareStatement(SUM_QUERY);
+	}
+
+	@TearDown
+	public void tearDown() throws SQLException {
+		if (connection != null) {
+			connection.close();
+		}
+		if (flyway != null) {
+			flyway.clean();
+		}
+	}
+
+	@Benchmark
+	public long sumTotalSizeBytesByUserId() throws SQLException {
+		sumStatement.setLong(1, USER_ID);
+		try (ResultSet resultSet = sumStatement.executeQuery()) {
+			resultSet.next();
+			return resultSet.getLong(1);
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,88 @@
+package dev.jgrove2.notes_backend.Services;
+
+import dev.jgrove2.notes_backend.Repositories.NoteRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NoteService.buildFileStructure over different tree shapes, with the repository
+ * stubbed so only the tree building is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NoteServiceBenchmark {
+
+	private static final Long USER_ID = 1L;
+
+	/** flat: all files at the root, wide: 2 levels of 20 folders, deep: 8 levels of 3 folders */
+	@Param({ "flat", "wide", "deep" })
+	private String shape;
+
+	@Param({ "100", "1000", "10000" })
+	private int noteCount;
+
+	private NoteService noteService;
+
+	@Setup
+	public void setUp() {
+		List<String> fileNames = fileNames(shape, noteCount);
+		NoteRepository noteRepository = (NoteRepository) Proxy.newProxyInstance(
+				NoteRepository.class.getClassLoader(),
+				new Class<?>[] { NoteRepository.class },
+				(proxy, method, args) -> {
+					if (method.getName().equals("findFileNamesByUserId")) {
+						return fileNames;
+					}
+					throw new UnsupportedOperationException(method.getName());
+				});
+
+		noteService = new NoteService();
+		ReflectionTestUtils.setField(noteService, "noteRepository", noteRepository);
+	}
+
+	@Benchmark
+	public Map<String, Object> buildFileStructure() {
+		return noteService.buildFileStructure(USER_ID);
+	}
+
+	static List<String> fileNames(String shape, int count) {
+		List<String> fileNames = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			fileNames.add(switch (shape) {
+				case "flat" -> "note-" + i + ".html";
+				case "wide" -> "folder-" + (i % 20) + "/sub-" + (i / 20 % 20) + "/note-" + i + ".html";
+				case "deep" -> deepPath(i) + "note-" + i + ".html";
+				default -> throw new IllegalArgumentException("Unknown shape: " + shape);
+			});
+		}
+		return fileNames;
+	}
+
+	private static String deepPath(int i) {
+		StringBuilder path = new StringBuilder();
+		for (int level = 0, n = i; level < 8; level++, n /= 3) {
+			path.append("level-").append(level).append('-').append(n % 3).append('/');
+		}
+		return path.toString();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,70 @@
+package dev.jgrove2.notes_backend.Utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FileNameIndex.find over generated names built from a small vocabulary, so every
+ * word is shared by many names and a query matches thousands of them at 50,000 notes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileNameIndexBenchmark {
+
+	private static final String[] WORDS = { "alpha", "project", "budget", "report", "draft", "ideas", "travel",
+			"notes", "summary", "plan", "review", "design", "meeting", "journal", "recipe" };
+
+	/** prefix: "meet", typo: "meetng", words: "summary plan" */
+	@Param({ "prefix", "typo", "words" })
+	private String query;
+
+	@Param({ "1000", "10000", "50000" })
+	private int noteCount;
+
+	private FileNameIndex index;
+	private String queryText;
+
+	@Setup
+	public void setUp() {
+		SplittableRandom random = new SplittableRandom(42);
+		List<String> fileNames = new ArrayList<>(noteCount);
+		for (int i = 0; i < noteCount; i++) {
+			fileNames.add(word(random) + "-" + i + "/" + word(random) + " " + word(random) + "-"
+					+ random.nextInt(1000) + ".html");
+		}
+		index = new FileNameIndex(fileNames);
+		queryText = switch (query) {
+			case "prefix" -> "meet";
+			case "typo" -> "meetng";
+			case "words" -> "summary plan";
+			default -> throw new IllegalArgumentException("Unknown query: " + query);
+		};
+	}
+
+	@Benchmark
+	public List<FileNameIndex.Match> find() {
+		return index.find(queryText, 20);
+	}
+
+	private static String word(SplittableRandom random) {
+		return WORDS[random.nextInt(WORDS.length)];
+	}
+}
\ No newline at end of file
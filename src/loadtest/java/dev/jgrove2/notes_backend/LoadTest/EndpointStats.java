@@ -0,0 +1,84 @@
+package dev.jgrove2.notes_backend.LoadTest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram and error count for one endpoint of the workload.
+ */
+public class EndpointStats {
+
+	// 1 microsecond to 1 minute at 3 significant digits
+	private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+	private final String name;
+
+	private final Histogram histogram = new ConcurrentHistogram(MAX_LATENCY_MICROS, 3);
+
+	private final LongAdder errors = new LongAdder();
+
+	public EndpointStats(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void record(long latencyNanos, boolean success) {
+		histogram.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), MAX_LATENCY_MICROS));
+		if (!success) {
+			errors.increment();
+		}
+	}
+
+	/** Drops everything recorded so far, used at the end of the warmup */
+	public void reset() {
+		histogram.reset();
+		errors.reset();
+	}
+
+	public long getCount() {
+		return histogram.getTotalCount();
+	}
+
+	public long getErrors() {
+		return errors.sum();
+	}
+
+	public double getThroughput(double seconds) {
+		return getCount() / seconds;
+	}
+
+	/** @return The latency at the given percentile in milliseconds */
+	public double getPercentileMillis(double percentile) {
+		return histogram.getValueAtPercentile(percentile) / 1000.0;
+	}
+
+	public double getMaxMillis() {
+		return histogram.getMaxValue() / 1000.0;
+	}
+
+	public String toTableRow(double seconds) {
+		return String.format(Locale.ROOT, "%-22s %9d %7d %10.1f %9.2f %9.2f %9.2f %9.2f", name, getCount(), getErrors(),
+				getThroughput(seconds), getPercentileMillis(50), getPercentileMillis(99), getPercentileMillis(99.9),
+				getMaxMillis());
+	}
+
+	public Map<String, Object> toReport(double seconds) {
+		return Map.of(
+				"endpoint", name,
+				"requests", getCount(),
+				"errors", getErrors(),
+				"throughputPerSecond", getThroughput(seconds),
+				"p50Millis", getPercentileMillis(50),
+				"p99Millis", getPercentileMillis(99),
+				"p999Millis", getPercentileMillis(99.9),
+				"maxMillis", getMaxMillis());
+	}
+}
\ No newline at end of file
@@ -0,0 +1,183 @@
+package dev.jgrove2.notes_backend.LoadTest;
+
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.core.sync.ResponseTransformer;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectResponse;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process stand-in for R2 covering the calls S3Service makes on the load-tested paths
+ * (put, get, head, delete, the batched DeleteObjects of the background deletion worker,
+ * and the ListObjectsV2 pages the storage reconciler walks). Objects live in memory, in
+ * key order; an optional fixed delay per call approximates the R2 round trip.
+ */
+public class InMemoryS3Client implements S3Client {
+
+	private record StoredObject(byte[] content, Instant lastModified) {
+	}
+
+	// Keyed by bucket/key; sorted so listings come back in key order, as on R2
+	private final ConcurrentSkipListMap<String, StoredObject> objects = new ConcurrentSkipListMap<>();
+
+	private final long latencyMillis;
+
+	public InMemoryS3Client(long latencyMillis) {
+		this.latencyMillis = latencyMillis;
+	}
+
+	@Override
+	public PutObjectResponse putObject(PutObjectRequest putObjectRequest, RequestBody requestBody) {
+		simulateLatency();
+		try (InputStream content = requestBody.contentStreamProvider().newStream()) {
+			objects.put(key(putObjectRequest.bucket(), putObjectRequest.key()),
+					new StoredObject(content.readAllBytes(), Instant.now()));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return PutObjectResponse.builder().eTag("\"loadtest\"").build();
+	}
+
+	@Override
+	public <ReturnT> ReturnT getObject(GetObjectRequest getObjectRequest,
+			ResponseTransformer<GetObjectResponse, ReturnT> responseTransformer) {
+		simulateLatency();
+		byte[] content = find(getObjectRequest.bucket(), getObjectRequest.key());
+		GetObjectResponse response = GetObjectResponse.builder()
+				.contentLength((long) content.length)
+				.contentType("text/html; charset=UTF-8")
+				.build();
+		try {
+			return responseTransformer.transform(response,
+					AbortableInputStream.create(new ByteArrayInputStream(content)));
+		} catch (Exception e) {
+			throw SdkClientException.create("Failed to transform response", e);
+		}
+	}
+
+	@Override
+	public ResponseBytes<GetObjectResponse> getObjectAsBytes(GetObjectRequest getObjectRequest) {
+		return getObject(getObjectRequest, ResponseTransformer.toBytes());
+	}
+
+	@Override
+	public HeadObjectResponse headObject(HeadObjectRequest headObjectRequest) {
+		simulateLatency();
+		byte[] content = find(headObjectRequest.bucket(), headObjectRequest.key());
+		return HeadObjectResponse.builder().contentLength((long) content.length).build();
+	}
+
+	@Override
+	public DeleteObjectResponse deleteObject(DeleteObjectRequest deleteObjectRequest) {
+		simulateLatency();
+		objects.remove(key(deleteObjectRequest.bucket(), deleteObjectRequest.key()));
+		return DeleteObjectResponse.builder().build();
+	}
+
+	@Override
+	public DeleteObjectsResponse deleteObjects(DeleteObjectsRequest deleteObjectsRequest) {
+		simulateLatency();
+		// Deleting a missing key succeeds, as on R2; quiet mode lists only errors, so none are reported
+		for (ObjectIdentifier object : deleteObjectsRequest.delete().objects()) {
+			objects.remove(key(deleteObjectsRequest.bucket(), object.key()));
+		}
+		return DeleteObjectsResponse.builder().build();
+	}
+
+	@Override
+	public ListObjectsV2Response listObjectsV2(ListObjectsV2Request listObjectsV2Request) {
+		simulateLatency();
+		String bucketPrefix = key(listObjectsV2Request.bucket(), "");
+		String startAfter = listObjectsV2Request.startAfter();
+		int maxKeys = listObjectsV2Request.maxKeys() == null ? 1000 : listObjectsV2Request.maxKeys();
+
+		Map<String, StoredObject> range = startAfter == null
+				? objects.tailMap(bucketPrefix, true)
+				: objects.tailMap(bucketPrefix + startAfter, false);
+		List<S3Object> contents = new ArrayList<>();
+		boolean truncated = false;
+		for (Map.Entry<String, StoredObject> entry : range.entrySet()) {
+			if (!entry.getKey().startsWith(bucketPrefix)) {
+				break;
+			}
+			if (contents.size() == maxKeys) {
+				truncated = true;
+				break;
+			}
+			contents.add(S3Object.builder()
+					.key(entry.getKey().substring(bucketPrefix.length()))
+					.size((long) entry.getValue().content().length)
+					.lastModified(entry.getValue().lastModified())
+					.build());
+		}
+		return ListObjectsV2Response.builder()
+				.contents(contents)
+				.keyCount(contents.size())
+				.maxKeys(maxKeys)
+				.isTruncated(truncated)
+				.build();
+	}
+
+	public int objectCount() {
+		return objects.size();
+	}
+
+	@Override
+	public String serviceName() {
+		return SERVICE_NAME;
+	}
+
+	@Override
+	public void close() {
+		objects.clear();
+	}
+
+	private byte[] find(String bucket, String objectKey) {
+		StoredObject object = objects.get(key(bucket, objectKey));
+		if (object == null) {
+			throw NoSuchKeyException.builder().message("The specified key does not exist: " + objectKey).build();
+		}
+		return object.content();
+	}
+
+	private void simulateLatency() {
+		if (latencyMillis > 0) {
+			try {
+				TimeUnit.MILLISECONDS.sleep(latencyMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static String key(String bucket, String objectKey) {
+		return bucket + "/" + objectKey;
+	}
+}
\ No newline at end of file
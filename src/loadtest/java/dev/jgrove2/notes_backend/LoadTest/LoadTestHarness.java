@@ -0,0 +1,354 @@
+package dev.jgrove2.notes_backend.LoadTest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import dev.jgrove2.notes_backend.NotesBackendApplication;
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the application against local stand-ins and replays an autosave-heavy workload:
+ * <ul>
+ * <li>Postgres: a local server from LOADTEST_DATABASE_URL (or NOTES_TEST_DATABASE_URL), using a
+ * throwaway schema that Flyway creates and cleans</li>
+ * <li>R2: {@link InMemoryS3Client} in place of the S3Client bean</li>
+ * <li>Kinde: {@link LocalJwtIssuer}, a file:// JWKS plus locally signed tokens</li>
+ * </ul>
+ * Reports throughput and p50/p99/p999 latency per endpoint. Settings are -Dloadtest.* system
+ * properties, see LOAD_TESTING.md.
+ */
+public class LoadTestHarness {
+
+	private static final String SCHEMA = "notes_loadtest";
+
+	private static final String BOUNDARY = "loadtest-boundary";
+
+	private final int users = Integer.getInteger("loadtest.users", 20);
+	private final int notesPerUser = Integer.getInteger("loadtest.notes-per-user", 50);
+	private final int concurrency = Integer.getInteger("loadtest.concurrency", 32);
+	private final int warmupSeconds = Integer.getInteger("loadtest.warmup-seconds", 10);
+	private final int durationSeconds = Integer.getInteger("loadtest.duration-seconds", 60);
+	private final long r2LatencyMillis = Long.getLong("loadtest.r2-latency-ms", 20);
+	private final Path reportFile = Path.of(System.getProperty("loadtest.report", "target/loadtest-report.json"));
+
+	private final List<Operation> workload = List.of(
+			new Operation(new EndpointStats("PUT /notes (autosave)"), 45),
+			new Operation(new EndpointStats("GET /notes/content"), 25),
+			new Operation(new EndpointStats("GET /notes"), 15),
+			new Operation(new EndpointStats("GET /notes/structure"), 10),
+			new Operation(new EndpointStats("GET /notes/info"), 5));
+
+	private final HttpClient httpClient = HttpClient.newBuilder()
+			.version(HttpClient.Version.HTTP_1_1)
+			.connectTimeout(Duration.ofSeconds(5))
+			.build();
+
+	private final List<byte[]> payloads = new ArrayList<>();
+
+	private List<String> tokens;
+
+	private String baseUrl;
+
+	private volatile boolean running;
+
+	public static void main(String[] args) throws Exception {
+		new LoadTestHarness().run();
+		System.exit(0);
+	}
+
+	private void run() throws Exception {
+		String databaseUrl = databaseUrl();
+		Flyway flyway = Flyway.configure()
+				.dataSource(databaseUrl, null, null)
+				.schemas(SCHEMA)
+				.cleanDisabled(false)
+				.load();
+		flyway.clean();
+
+		LocalJwtIssuer jwtIssuer = new LocalJwtIssuer();
+		InMemoryS3Client s3Client = new InMemoryS3Client(r2LatencyMillis);
+
+		ConfigurableApplicationContext context = startApplication(databaseUrl, jwtIssuer, s3Client);
+		try {
+			baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+			for (int size : new int[] { 2 * 1024, 8 * 1024, 32 * 1024 }) {
+				payloads.add(htmlPayload(size));
+			}
+
+			tokens = new ArrayList<>(users);
+			for (int i = 0; i < users; i++) {
+				tokens.add(jwtIssuer.issueToken("loadtest-user-" + i));
+			}
+			seed();
+			System.out.printf("Seeded %d users with %d notes each (%d objects in the fake R2)%n", users, notesPerUser,
+					s3Client.objectCount());
+
+			System.out.printf("Warming up for %ds with %d concurrent clients%n", warmupSeconds, concurrency);
+			drive(warmupSeconds);
+			workload.forEach(operation -> operation.stats().reset());
+
+			System.out.printf("Measuring for %ds%n", durationSeconds);
+			long start = System.nanoTime();
+			drive(durationSeconds);
+			double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+			report(elapsedSeconds);
+		} finally {
+			context.close();
+			if (!Boolean.getBoolean("loadtest.keep-schema")) {
+				flyway.clean();
+			}
+		}
+	}
+
+	private String databaseUrl() {
+		String url = System.getenv("LOADTEST_DATABASE_URL");
+		if (url == null || url.isEmpty()) {
+			url = System.getenv("NOTES_TEST_DATABASE_URL");
+		}
+		if (url == null || url.isEmpty()) {
+			throw new IllegalStateException("Set LOADTEST_DATABASE_URL to a local Postgres, e.g. "
+					+ "jdbc:postgresql://localhost:5432/notes_db?user=postgres&sslmode=disable");
+		}
+		return url;
+	}
+
+	private ConfigurableApplicationContext startApplication(String databaseUrl, LocalJwtIssuer jwtIssuer,
+			InMemoryS3Client s3Client) {
+		// Devtools would restart the application in a new class loader, losing the stand-ins
+		System.setProperty("spring.devtools.restart.enabled", "false");
+
+		String schemaUrl = databaseUrl + (databaseUrl.contains("?") ? "&" : "?") + "currentSchema=" + SCHEMA;
+		return new SpringApplicationBuilder(NotesBackendApplication.class)
+				.initializers(applicationContext -> applicationContext.addBeanFactoryPostProcessor(
+						replaceS3Client(s3Client)))
+				.run(
+						"--spring.profiles.active=prod",
+						"--server.port=0",
+						"--spring.datasource.url=" + schemaUrl,
+						"--spring.datasource.ssl-mode=disable",
+						"--spring.flyway.schemas=" + SCHEMA,
+						"--jwt.jwks-url=" + jwtIssuer.getJwksUrl(),
+						"--jwt.allowed-issuers=" + LocalJwtIssuer.ISSUER,
+						"--r2.bucket.name=loadtest",
+						// Seeding and the clients write far faster than the per-user write limits allow
+						"--notes.rate-limit.enabled=false",
+						"--logging.level.root=WARN",
+						"--logging.level.dev.jgrove2.notes_backend=WARN");
+	}
+
+	/**
+	 * Swaps the S3Client bean from S3Config for the in-memory client, after configuration
+	 * classes have been parsed and before any bean is created
+	 */
+	private static BeanFactoryPostProcessor replaceS3Client(InMemoryS3Client s3Client) {
+		return beanFactory -> {
+			((BeanDefinitionRegistry) beanFactory).removeBeanDefinition("s3Client");
+			beanFactory.registerSingleton("s3Client", s3Client);
+		};
+	}
+
+	/**
+	 * Creates the users and their notes through the API, so the fake R2 and the database agree
+	 */
+	private void seed() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(users, concurrency));
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < users; i++) {
+				int user = i;
+				futures.add(executor.submit(() -> {
+					String token = tokens.get(user);
+					expectSuccess(send(HttpRequest.newBuilder(URI.create(baseUrl + "/user/profile"))
+							.header("Authorization", "Bearer " + token)
+							.header("Content-Type", "application/json")
+							.POST(HttpRequest.BodyPublishers.ofString(
+									"{\"firstName\":\"Load\",\"lastName\":\"Test" + user + "\"}"))));
+					for (int note = 0; note < notesPerUser; note++) {
+						expectSuccess(send(multipart("POST", token, fileName(note), randomPayload())));
+					}
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Closed-loop clients: each one sends the next request as soon as the previous one completes
+	 */
+	private void drive(int seconds) throws InterruptedException {
+		int totalWeight = workload.stream().mapToInt(Operation::weight).sum();
+		running = true;
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+		for (int i = 0; i < concurrency; i++) {
+			executor.submit(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				while (running) {
+					Operation operation = pick(random.nextInt(totalWeight));
+					String token = tokens.get(random.nextInt(users));
+					String fileName = fileName(random.nextInt(notesPerUser));
+
+					long start = System.nanoTime();
+					boolean success;
+					try {
+						success = isSuccess(send(request(operation, token, fileName)));
+					} catch (IOException e) {
+						success = false;
+					}
+					operation.stats().record(System.nanoTime() - start, success);
+				}
+				return null;
+			});
+		}
+		TimeUnit.SECONDS.sleep(seconds);
+		running = false;
+		executor.shutdown();
+		executor.awaitTermination(1, TimeUnit.MINUTES);
+	}
+
+	private HttpRequest.Builder request(Operation operation, String token, String fileName) {
+		String encodedFileName = URLEncoder.encode(fileName, StandardCharsets.UTF_8);
+		return switch (operation.stats().getName()) {
+			case "PUT /notes (autosave)" -> multipart("PUT", token, fileName, randomPayload());
+			case "GET /notes/content" -> get("/notes/content?filename=" + encodedFileName, token);
+			case "GET /notes" -> get("/notes", token);
+			case "GET /notes/structure" -> get("/notes/structure", token);
+			case "GET /notes/info" -> get("/notes/info?filename=" + encodedFileName, token);
+			default -> throw new IllegalStateException(operation.stats().getName());
+		};
+	}
+
+	private Operation pick(int roll) {
+		for (Operation operation : workload) {
+			roll -= operation.weight();
+			if (roll < 0) {
+				return operation;
+			}
+		}
+		return workload.get(0);
+	}
+
+	private HttpRequest.Builder get(String path, String token) {
+		return HttpRequest.newBuilder(URI.create(baseUrl + path))
+				.header("Authorization", "Bearer " + token)
+				.GET();
+	}
+
+	private HttpRequest.Builder multipart(String method, String token, String fileName, byte[] content) {
+		ByteArrayOutputStream body = new ByteArrayOutputStream(content.length + 512);
+		body.writeBytes(("--" + BOUNDARY + "\r\n"
+				+ "Content-Disposition: form-data; name=\"filename\"\r\n\r\n"
+				+ fileName + "\r\n"
+				+ "--" + BOUNDARY + "\r\n"
+				+ "Content-Disposition: form-data; name=\"file\"; filename=\"note.html\"\r\n"
+				+ "Content-Type: text/html\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+		body.writeBytes(content);
+		body.writeBytes(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+
+		return HttpRequest.newBuilder(URI.create(baseUrl + "/notes"))
+				.header("Authorization", "Bearer " + token)
+				.header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+				.method(method, HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()));
+	}
+
+	private HttpResponse<byte[]> send(HttpRequest.Builder request) throws IOException {
+		try {
+			return httpClient.send(request.timeout(Duration.ofSeconds(30)).build(),
+					HttpResponse.BodyHandlers.ofByteArray());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted", e);
+		}
+	}
+
+	private static boolean isSuccess(HttpResponse<byte[]> response) {
+		return response.statusCode() >= 200 && response.statusCode() < 300;
+	}
+
+	private static void expectSuccess(HttpResponse<byte[]> response) {
+		if (!isSuccess(response)) {
+			throw new IllegalStateException("Seeding failed: " + response.request().method() + " "
+					+ response.request().uri() + " returned " + response.statusCode() + ": "
+					+ new String(response.body(), StandardCharsets.UTF_8));
+		}
+	}
+
+	private static String fileName(int note) {
+		return "folder-" + (note % 5) + "/sub-" + (note % 3) + "/note-" + note + ".html";
+	}
+
+	private byte[] randomPayload() {
+		return payloads.get(ThreadLocalRandom.current().nextInt(payloads.size()));
+	}
+
+	private static byte[] htmlPayload(int size) {
+		StringBuilder html = new StringBuilder("<html><body>");
+		while (html.length() < size - 14) {
+			html.append("<p>The quick brown fox jumps over the lazy dog.</p>");
+		}
+		return html.append("</body></html>").toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private void report(double elapsedSeconds) throws IOException {
+		System.out.println();
+		System.out.printf("%-22s %9s %7s %10s %9s %9s %9s %9s%n", "Endpoint", "Requests", "Errors", "Req/s",
+				"p50 ms", "p99 ms", "p99.9 ms", "max ms");
+		List<Map<String, Object>> endpoints = new ArrayList<>();
+		long totalRequests = 0;
+		for (Operation operation : workload) {
+			System.out.println(operation.stats().toTableRow(elapsedSeconds));
+			endpoints.add(operation.stats().toReport(elapsedSeconds));
+			totalRequests += operation.stats().getCount();
+		}
+		System.out.printf(Locale.ROOT, "%-22s %9d %7s %10.1f%n", "Total", totalRequests, "",
+				totalRequests / elapsedSeconds);
+
+		Map<String, Object> report = new LinkedHashMap<>();
+		report.put("users", users);
+		report.put("notesPerUser", notesPerUser);
+		report.put("concurrency", concurrency);
+		report.put("durationSeconds", elapsedSeconds);
+		report.put("r2LatencyMillis", r2LatencyMillis);
+		report.put("throughputPerSecond", totalRequests / elapsedSeconds);
+		report.put("endpoints", endpoints);
+
+		if (reportFile.getParent() != null) {
+			Files.createDirectories(reportFile.getParent());
+		}
+		new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(reportFile.toFile(), report);
+		System.out.println("Report written to " + reportFile);
+	}
+
+	private record Operation(EndpointStats stats, int weight) {
+	}
+}
\ No newline at end of file
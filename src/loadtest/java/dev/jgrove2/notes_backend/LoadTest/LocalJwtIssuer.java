@@ -0,0 +1,71 @@
+package dev.jgrove2.notes_backend.LoadTest;
+
+import io.jsonwebtoken.Jwts;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stand-in for Kinde: an RSA key pair whose public half is written to a JWKS file
+ * (served to JwtTokenUtil as a file:// URL) and whose private half signs tokens.
+ */
+public class LocalJwtIssuer {
+
+	public static final String ISSUER = "https://loadtest.local";
+
+	private static final String KEY_ID = "loadtest";
+
+	private final KeyPair keyPair;
+
+	private final Path jwksFile;
+
+	public LocalJwtIssuer() throws GeneralSecurityException, IOException {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(2048);
+		keyPair = generator.generateKeyPair();
+
+		RSAPublicKey publicKey = (RSAPublicKey) keyPair.getPublic();
+		jwksFile = Files.createTempFile("loadtest-jwks", ".json");
+		jwksFile.toFile().deleteOnExit();
+		Files.writeString(jwksFile, "{\"keys\":[{\"kty\":\"RSA\",\"kid\":\"" + KEY_ID + "\",\"n\":\""
+				+ base64Url(publicKey.getModulus()) + "\",\"e\":\""
+				+ base64Url(publicKey.getPublicExponent()) + "\"}]}");
+	}
+
+	public String getJwksUrl() {
+		return jwksFile.toUri().toString();
+	}
+
+	/**
+	 * @return A token for the given kinde_user_id, valid for a day
+	 */
+	public String issueToken(String kindeUserId) {
+		return Jwts.builder()
+				.header().keyId(KEY_ID).and()
+				.subject(kindeUserId)
+				.issuer(ISSUER)
+				.issuedAt(new Date())
+				.expiration(new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1)))
+				.signWith(keyPair.getPrivate())
+				.compact();
+	}
+
+	private static String base64Url(BigInteger value) {
+		byte[] bytes = value.toByteArray();
+		// Drop the sign byte BigInteger adds for values with the high bit set
+		if (bytes[0] == 0) {
+			bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+		}
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+	}
+}
\ No newline at end of file
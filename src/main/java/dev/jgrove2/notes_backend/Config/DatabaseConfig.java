@@ -2,22 +2,37 @@ package dev.jgrove2.notes_backend.Config;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import dev.jgrove2.notes_backend.Utils.ReadYourWritesTracker;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.flyway.FlywayDataSource;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
 
 import javax.sql.DataSource;
 
 @Configuration
 public class DatabaseConfig {
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @Value("${spring.datasource.url}")
     private String dataSourceUrl;
 
     @Value("${spring.datasource.driver-class-name}")
     private String dataSourceDriverClassName;
 
+    @Value("${spring.datasource.ssl-mode:require}")
+    private String sslMode;
+
     @Value("${spring.datasource.hikari.connection-timeout:30000}")
     private long connectionTimeout;
 
@@ -42,32 +57,95 @@ public class DatabaseConfig {
     @Value("${spring.datasource.hikari.validation-timeout:5000}")
     private long validationTimeout;
 
+    @Value("${spring.datasource.replica.url:}")
+    private String replicaUrl;
+
+    @Value("${spring.datasource.replica.hikari.connection-timeout:5000}")
+    private long replicaConnectionTimeout;
+
+    @Value("${spring.datasource.replica.hikari.maximum-pool-size:20}")
+    private int replicaMaximumPoolSize;
+
+    @Value("${spring.datasource.replica.hikari.minimum-idle:5}")
+    private int replicaMinimumIdle;
+
+    /**
+     * Primary (read-write) connection pool, also used for schema migrations
+     */
+    @Bean
+    @FlywayDataSource
+    public HikariDataSource primaryDataSource() {
+        HikariConfig config = createBaseConfig(dataSourceUrl);
+
+        // Connection pool settings
+        config.setConnectionTimeout(connectionTimeout);
+        config.setMaximumPoolSize(maximumPoolSize);
+        config.setMinimumIdle(minimumIdle);
+
+        // Pool name for monitoring
+        config.setPoolName("NotesBackendHikariCP");
+
+        config.addDataSourceProperty("readOnly", "false");
+
+        return new HikariDataSource(config);
+    }
+
+    /**
+     * Read replica connection pool, only created when a replica URL is configured
+     */
+    @Bean
+    @ConditionalOnExpression("!'${spring.datasource.replica.url:}'.isEmpty()")
+    public HikariDataSource replicaDataSource() {
+        HikariConfig config = createBaseConfig(replicaUrl);
+
+        // Connection pool settings
+        config.setConnectionTimeout(replicaConnectionTimeout);
+        config.setMaximumPoolSize(replicaMaximumPoolSize);
+        config.setMinimumIdle(replicaMinimumIdle);
+
+        // Pool name for monitoring
+        config.setPoolName("NotesBackendReplicaHikariCP");
+
+        config.setReadOnly(true);
+
+        return new HikariDataSource(config);
+    }
+
+    /**
+     * DataSource used by JPA. Read-only transactions go to the replica pool
+     * (or the primary when no replica is configured), everything else to the primary.
+     */
     @Bean
     @Primary
-    public DataSource dataSource() {
+    public DataSource dataSource(@Qualifier("primaryDataSource") HikariDataSource primaryDataSource,
+            @Qualifier("replicaDataSource") ObjectProvider<HikariDataSource> replicaDataSource,
+            ReadYourWritesTracker readYourWritesTracker) {
+        DataSource replica = replicaDataSource.getIfAvailable(() -> primaryDataSource);
+        ReplicaRoutingDataSource routingDataSource = new ReplicaRoutingDataSource(
+                primaryDataSource, replica, readYourWritesTracker);
+
+        // Defer the physical connection until the first statement, after the
+        // transaction's read-only flag is known
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    private HikariConfig createBaseConfig(String jdbcUrl) {
         HikariConfig config = new HikariConfig();
 
         // Basic connection properties
-        config.setJdbcUrl(dataSourceUrl);
+        config.setJdbcUrl(jdbcUrl);
         config.setDriverClassName(dataSourceDriverClassName);
 
         // Connection pool settings
-        config.setConnectionTimeout(connectionTimeout);
-        config.setMaximumPoolSize(maximumPoolSize);
-        config.setMinimumIdle(minimumIdle);
         config.setIdleTimeout(idleTimeout);
         config.setMaxLifetime(maxLifetime);
         config.setLeakDetectionThreshold(leakDetectionThreshold);
         config.setConnectionTestQuery(connectionTestQuery);
         config.setValidationTimeout(validationTimeout);
 
-        // Pool name for monitoring
-        config.setPoolName("NotesBackendHikariCP");
-
         // Connection properties for Neon PostgreSQL
-        config.addDataSourceProperty("sslmode", "require");
+        config.addDataSourceProperty("sslmode", sslMode);
         config.addDataSourceProperty("autoCommit", "false");
-        config.addDataSourceProperty("readOnly", "false");
 
         // Performance optimizations
         config.addDataSourceProperty("cachePrepStmts", "true");
@@ -75,6 +153,9 @@ public class DatabaseConfig {
         config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
         config.addDataSourceProperty("useServerPrepStmts", "true");
 
-        return new HikariDataSource(config);
+        // Pool gauges and timers (hikaricp.connections.*) tagged with the pool name
+        config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+
+        return config;
     }
 }
\ No newline at end of file
@@ -0,0 +1,51 @@
+package dev.jgrove2.notes_backend.Config;
+
+import dev.jgrove2.notes_backend.Utils.ReadYourWritesTracker;
+import dev.jgrove2.notes_backend.Utils.RequestUserContext;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Routes connections for read-only transactions to the replica pool and everything
+ * else to the primary pool. Must be wrapped in a LazyConnectionDataSourceProxy so the
+ * lookup happens after the transaction's read-only flag has been set.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    public static final String PRIMARY = "primary";
+    public static final String REPLICA = "replica";
+
+    private final ReadYourWritesTracker readYourWritesTracker;
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica,
+            ReadYourWritesTracker readYourWritesTracker) {
+        this.readYourWritesTracker = readYourWritesTracker;
+        setTargetDataSources(Map.of(PRIMARY, primary, REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        String kindeUserId = RequestUserContext.getKindeUserId();
+
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            // Read-your-writes: stay on the primary until the replica has caught up
+            return readYourWritesTracker.hasRecentWrite(kindeUserId) ? PRIMARY : REPLICA;
+        }
+
+        if (kindeUserId != null && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    readYourWritesTracker.recordWrite(kindeUserId);
+                }
+            });
+        }
+        return PRIMARY;
+    }
+}
\ No newline at end of file
@@ -1,16 +1,24 @@
 package dev.jgrove2.notes_backend.Config;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 
 import java.net.URI;
+import java.time.Duration;
 
 @Configuration
+@ConditionalOnExpression("'${notes.storage.backend:r2}' matches 'r2|tiered'")
 public class S3Config {
 
     @Value("${r2.access.key.id}")
@@ -28,6 +36,16 @@ public class S3Config {
     @Value("${r2.bucket.name}")
     private String bucketName;
 
+    @Value("${notes.storage.r2.connect-timeout-ms:2000}")
+    private long connectTimeoutMillis;
+
+    @Value("${notes.storage.r2.socket-timeout-ms:10000}")
+    private long socketTimeoutMillis;
+
+    /**
+     * S3 client for R2. The SDK's own retries are off: S3Service retries within a retry
+     * budget and behind a circuit breaker, and sets a time limit on each call.
+     */
     @Bean
     public S3Client s3Client() {
         AwsBasicCredentials awsCredentials = AwsBasicCredentials.create(accessKeyId, secretAccessKey);
@@ -37,6 +55,29 @@ public class S3Config {
                 .region(Region.US_EAST_1) // R2 doesn't use regions, but SDK requires it
                 .endpointOverride(URI.create(endpoint))
                 .forcePathStyle(true) // Required for R2
+                .httpClientBuilder(ApacheHttpClient.builder()
+                        .connectionTimeout(Duration.ofMillis(connectTimeoutMillis))
+                        .socketTimeout(Duration.ofMillis(socketTimeoutMillis))
+                        // Fail rather than queue when every connection is busy
+                        .connectionAcquisitionTimeout(Duration.ofMillis(connectTimeoutMillis)))
+                .overrideConfiguration(ClientOverrideConfiguration.builder()
+                        .retryPolicy(RetryPolicy.none())
+                        .build())
+                .build();
+    }
+
+    /**
+     * Signs URLs that let clients transfer note files with R2 directly
+     */
+    @Bean
+    public S3Presigner s3Presigner() {
+        AwsBasicCredentials awsCredentials = AwsBasicCredentials.create(accessKeyId, secretAccessKey);
+
+        return S3Presigner.builder()
+                .credentialsProvider(StaticCredentialsProvider.create(awsCredentials))
+                .region(Region.US_EAST_1)
+                .endpointOverride(URI.create(endpoint))
+                .serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(true).build())
                 .build();
     }
 
@@ -0,0 +1,47 @@
+package dev.jgrove2.notes_backend.Config;
+
+import dev.jgrove2.notes_backend.Utils.ServerTimingRecorder;
+import io.micrometer.common.KeyValue;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Feeds the duration of every notes.* observation (JWT verification, user lookup,
+ * quota check, R2 calls, database work) into the Server-Timing header of the request.
+ * notes.jwt.verify becomes "jwt-verify", notes.r2 with operation=get becomes "r2-get".
+ */
+@Component
+@ConditionalOnProperty(name = "notes.server-timing.enabled", havingValue = "true")
+public class ServerTimingObservationHandler implements ObservationHandler<Observation.Context> {
+
+    private static final String NAME_PREFIX = "notes.";
+
+    @Override
+    public boolean supportsContext(Observation.Context context) {
+        return context.getName() != null && context.getName().startsWith(NAME_PREFIX);
+    }
+
+    @Override
+    public void onStart(Observation.Context context) {
+        context.put(StartTime.class, new StartTime(System.nanoTime()));
+    }
+
+    @Override
+    public void onStop(Observation.Context context) {
+        StartTime startTime = context.get(StartTime.class);
+        if (startTime != null) {
+            ServerTimingRecorder.record(stageName(context), System.nanoTime() - startTime.nanos());
+        }
+    }
+
+    private String stageName(Observation.Context context) {
+        String stage = context.getName().substring(NAME_PREFIX.length()).replace('.', '-');
+        KeyValue operation = context.getLowCardinalityKeyValue("operation");
+        return operation == null ? stage : stage + "-" + operation.getValue();
+    }
+
+    private record StartTime(long nanos) {
+    }
+}
\ No newline at end of file
@@ -0,0 +1,51 @@
+package dev.jgrove2.notes_backend.Config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logback filter that samples Hibernate's slow query log.
+ * Hibernate only reports queries slower than hibernate.log_slow_query; of those,
+ * only every Nth event is passed on to the appenders.
+ */
+public class SlowQuerySamplingFilter extends TurboFilter {
+
+    private static final String SLOW_QUERY_LOGGER = "org.hibernate.SQL_SLOW";
+
+    private final AtomicLong counter = new AtomicLong();
+
+    private String loggerName = SLOW_QUERY_LOGGER;
+
+    private int sampleEvery = 10;
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params,
+            Throwable t) {
+        // isXxxEnabled() checks arrive without a format and must not consume a sample
+        if (sampleEvery <= 1 || format == null || !loggerName.equals(logger.getName())) {
+            return FilterReply.NEUTRAL;
+        }
+        return counter.getAndIncrement() % sampleEvery == 0 ? FilterReply.NEUTRAL : FilterReply.DENY;
+    }
+
+    public String getLoggerName() {
+        return loggerName;
+    }
+
+    public void setLoggerName(String loggerName) {
+        this.loggerName = loggerName;
+    }
+
+    public int getSampleEvery() {
+        return sampleEvery;
+    }
+
+    public void setSampleEvery(int sampleEvery) {
+        this.sampleEvery = sampleEvery;
+    }
+}
@@ -0,0 +1,89 @@
+package dev.jgrove2.notes_backend.Config;
+
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import io.opentelemetry.exporter.logging.otlp.OtlpJsonLoggingSpanExporter;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import io.prometheus.metrics.tracer.common.SpanContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.util.logging.FileHandler;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+@Configuration
+public class TracingConfig {
+
+    // Held strongly so java.util.logging does not drop the configured logger
+    private Logger exporterLogger;
+
+    @Value("${notes.tracing.export.file:traces.jsonl}")
+    private String exportFile;
+
+    /**
+     * Offline span export: one OTLP/JSON ExportTraceServiceRequest per line in
+     * notes.tracing.export.file. The file can be replayed into a collector
+     * (otlpjsonfile receiver) or read with jq; no collector is needed at runtime.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "notes.tracing.export", havingValue = "file")
+    public SpanExporter otlpFileSpanExporter() {
+        try {
+            FileHandler fileHandler = new FileHandler(exportFile, true);
+            fileHandler.setFormatter(new Formatter() {
+                @Override
+                public String format(LogRecord record) {
+                    return record.getMessage() + System.lineSeparator();
+                }
+            });
+
+            // The exporter writes to its own java.util.logging logger; keep it out of the console
+            exporterLogger = Logger.getLogger(OtlpJsonLoggingSpanExporter.class.getName());
+            exporterLogger.setUseParentHandlers(false);
+            exporterLogger.setLevel(Level.INFO);
+            exporterLogger.addHandler(fileHandler);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open trace export file " + exportFile + ": " + e.getMessage(), e);
+        }
+        return OtlpJsonLoggingSpanExporter.create();
+    }
+
+    /**
+     * Prometheus exemplar source bound to the Tracer up front. Boot's default looks the
+     * Tracer up lazily on the first timer recording; Hikari records its first pool
+     * timer from the connection-adder thread while the main thread holds the bean
+     * factory lock during Flyway migration, and the two threads deadlock on startup.
+     */
+    @Bean
+    public SpanContext prometheusExemplarSpanContext(Tracer tracer) {
+        return new SpanContext() {
+            @Override
+            public String getCurrentTraceId() {
+                Span span = tracer.currentSpan();
+                return (span != null) ? span.context().traceId() : null;
+            }
+
+            @Override
+            public String getCurrentSpanId() {
+                Span span = tracer.currentSpan();
+                return (span != null) ? span.context().spanId() : null;
+            }
+
+            @Override
+            public boolean isCurrentSpanSampled() {
+                Span span = tracer.currentSpan();
+                return span != null && Boolean.TRUE.equals(span.context().sampled());
+            }
+
+            @Override
+            public void markCurrentSpanAsExemplar() {
+            }
+        };
+    }
+}
\ No newline at end of file
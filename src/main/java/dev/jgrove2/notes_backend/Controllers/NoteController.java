@@ -1,27 +1,61 @@
 package dev.jgrove2.notes_backend.Controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import dev.jgrove2.notes_backend.Models.Note;
+import dev.jgrove2.notes_backend.Models.NoteChangePage;
+import dev.jgrove2.notes_backend.Models.NoteSearchResult;
+import dev.jgrove2.notes_backend.Models.NoteSummary;
+import dev.jgrove2.notes_backend.Models.NoteUpload;
+import dev.jgrove2.notes_backend.Models.NoteVersionSummary;
 import dev.jgrove2.notes_backend.Models.User;
+import dev.jgrove2.notes_backend.Services.BlobService;
+import dev.jgrove2.notes_backend.Services.NoteEventService;
+import dev.jgrove2.notes_backend.Services.NoteNameIndexService;
+import dev.jgrove2.notes_backend.Services.NoteSearchService;
 import dev.jgrove2.notes_backend.Services.NoteService;
-import dev.jgrove2.notes_backend.Services.S3Service;
+import dev.jgrove2.notes_backend.Services.NoteStorage;
+import dev.jgrove2.notes_backend.Services.NoteUploadService;
+import dev.jgrove2.notes_backend.Services.NoteVersionService;
+import dev.jgrove2.notes_backend.Services.ObjectStore;
+import dev.jgrove2.notes_backend.Services.PendingObjectService;
+import dev.jgrove2.notes_backend.Services.UploadedContentService;
 import dev.jgrove2.notes_backend.Services.UserService;
+import dev.jgrove2.notes_backend.Utils.EventStreamTicketUtil;
+import dev.jgrove2.notes_backend.Utils.FileNameIndex;
 import dev.jgrove2.notes_backend.Utils.TokenExtractionUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.time.Instant;
+import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
 
 @RestController
 @RequestMapping("/notes")
 public class NoteController {
 
+    private static final int MAX_SEARCH_RESULTS = 100;
+
+    private static final int MAX_CHANGES = 1000;
+
     @Autowired
     private NoteService noteService;
 
@@ -32,7 +66,54 @@ public class NoteController {
     private TokenExtractionUtil tokenExtractionUtil;
 
     @Autowired
-    private S3Service s3Service;
+    private NoteStorage noteStorage;
+
+    @Autowired
+    private BlobService blobService;
+
+    @Autowired
+    private NoteVersionService noteVersionService;
+
+    @Autowired
+    private NoteSearchService noteSearchService;
+
+    @Autowired
+    private NoteNameIndexService noteNameIndexService;
+
+    @Autowired
+    private NoteEventService noteEventService;
+
+    @Autowired
+    private NoteUploadService noteUploadService;
+
+    @Autowired
+    private PendingObjectService pendingObjectService;
+
+    @Autowired
+    private UploadedContentService uploadedContentService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private EventStreamTicketUtil eventStreamTicketUtil;
+
+    @Value("${notes.storage.presigned-url-expiry-seconds:300}")
+    private long presignedUrlExpirySeconds;
+
+    @Value("${notes.storage.direct-upload-confirm-seconds:600}")
+    private long directUploadConfirmSeconds;
+
+    @Value("${notes.search.inline-max-bytes:1048576}")
+    private long searchInlineMaxBytes;
+
+    // Direct transfers, null when the storage backend cannot presign URLs
+    private ObjectStore objectStore;
+
+    @PostConstruct
+    void init() {
+        objectStore = ObjectStore.of(noteStorage);
+    }
 
     /**
      * Create a new note with file upload
@@ -63,22 +144,41 @@ public class NoteController {
             Long fileSize = file.getSize();
 
             // Enforce storage quota before upload
-            Long maxStorage = user.getMaxStorage();
-            Long currentTotal = noteService.getTotalStorageSizeByUserId(userId);
-            long wouldBeTotal = (currentTotal == null ? 0L : currentTotal) + (fileSize == null ? 0L : fileSize);
-            if (maxStorage != null && wouldBeTotal > maxStorage) {
+            if (!noteService.hasStorageCapacity(user, 0L, fileSize == null ? 0L : fileSize)) {
                 return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
                         .body(Map.of("error", "Storage limit exceeded"));
             }
 
-            // Upload file to R2
-            String objectKey = s3Service.uploadFile(file.getInputStream(), filename, userId);
+            // Upload file to storage; content already stored as a blob is not uploaded again
+            String objectKey;
+            String contentHash = null;
+            if (blobService.isEnabled()) {
+                contentHash = blobService.hash(file);
+                objectKey = blobService.acquire(contentHash, fileSize, file);
+            } else {
+                objectKey = writeNewObject(userId, filename, file);
+            }
+
+            // Create note, with the content as its first version
+            Note note;
+            try {
+                note = noteService.createNote(filename, userId, fileSize, objectKey, contentHash, file);
+            } catch (RuntimeException e) {
+                if (contentHash != null) {
+                    blobService.release(contentHash);
+                } else {
+                    pendingObjectService.deleteObject(objectKey);
+                }
+                throw e;
+            }
 
-            // Create note
-            Note note = noteService.createNote(filename, userId, fileSize, objectKey);
+            noteNameIndexService.noteCreated(userId, filename);
+            indexContent(note, file, fileSize);
 
             return ResponseEntity.status(HttpStatus.CREATED).body(note);
 
+        } catch (BlobService.BlobBusyException e) {
+            return blobBusy(e);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(Map.of("error", "Failed to create note: " + e.getMessage()));
@@ -109,7 +209,7 @@ public class NoteController {
             Long userId = user.getUserId();
 
             // Get all notes for the user
-            List<Note> notes = noteService.getNotesByUserId(userId);
+            List<NoteSummary> notes = noteService.getNoteSummariesByUserId(userId);
 
             Map<String, Object> response = new HashMap<>();
             response.put("notes", notes);
@@ -124,6 +224,49 @@ public class NoteController {
         }
     }
 
+    /**
+     * Get the notes created, modified, renamed or deleted since a sync cursor
+     */
+    @GetMapping("/changes")
+    public ResponseEntity<?> getChanges(
+            @RequestHeader("Authorization") String authorizationHeader,
+            @RequestParam(value = "since", defaultValue = "0") long since,
+            @RequestParam(value = "limit", defaultValue = "500") int limit) {
+
+        try {
+            if (since < 0) {
+                return ResponseEntity.badRequest()
+                        .body(Map.of("error", "Cursor must not be negative"));
+            }
+
+            // Extract kinde_user_id from JWT token
+            String kindeUserId = tokenExtractionUtil.extractKindeUserIdFromHeader(authorizationHeader);
+            if (kindeUserId == null || kindeUserId.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                        .body(Map.of("error", "Invalid token: missing subject claim"));
+            }
+
+            // Get user from database
+            Optional<User> userOptional = userService.getUserByKindeUserId(kindeUserId);
+            if (!userOptional.isPresent()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "User profile not found"));
+            }
+
+            User user = userOptional.get();
+            Long userId = user.getUserId();
+
+            NoteChangePage page = noteService.getChangesSince(userId, since,
+                    Math.max(1, Math.min(limit, MAX_CHANGES)));
+
+            return ResponseEntity.ok(page);
+
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to get changes: " + e.getMessage()));
+        }
+    }
+
     /**
      * Update note with new file
      */
@@ -159,28 +302,23 @@ public class NoteController {
                         .body(Map.of("error", "Note not found: " + filename));
             }
 
-            String objectKey = existingNote.get().getObjectKey();
             long existingSize = existingNote.get().getTotalSizeBytes() == null ? 0L
                     : existingNote.get().getTotalSizeBytes();
 
             // Enforce storage quota before upload (account for replacement)
-            Long maxStorage = user.getMaxStorage();
-            Long currentTotal = noteService.getTotalStorageSizeByUserId(userId);
-            long wouldBeTotal = (currentTotal == null ? 0L : currentTotal) - existingSize
-                    + (newFileSize == null ? 0L : newFileSize);
-            if (maxStorage != null && wouldBeTotal > maxStorage) {
+            if (!noteService.hasStorageCapacity(user, existingSize, newFileSize == null ? 0L : newFileSize)) {
                 return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
                         .body(Map.of("error", "Storage limit exceeded"));
             }
 
-            // Update file in R2
-            s3Service.updateFile(file.getInputStream(), objectKey);
-
-            // Update note in database
-            Note updatedNote = noteService.updateNote(userId, filename, newFileSize);
+            // Store the new content and point the note at it, keeping it in the note's history
+            Note updatedNote = writeContent(userId, filename, existingNote.get(), file, newFileSize);
+            indexContent(updatedNote, file, newFileSize);
 
             return ResponseEntity.ok(updatedNote);
 
+        } catch (BlobService.BlobBusyException e) {
+            return blobBusy(e);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(Map.of("error", "Failed to update note: " + e.getMessage()));
@@ -214,7 +352,7 @@ public class NoteController {
             Long userId = user.getUserId();
 
             // Get note by filename
-            Optional<Note> noteOptional = noteService.getNoteByUserIdAndFileName(userId, filename);
+            Optional<NoteSummary> noteOptional = noteService.getNoteSummaryByUserIdAndFileName(userId, filename);
 
             if (noteOptional.isPresent()) {
                 return ResponseEntity.ok(noteOptional.get());
@@ -230,14 +368,69 @@ public class NoteController {
     }
 
     /**
-     * Get note content by filename (returns the actual HTML file from S3)
+     * Get note content by filename (returns the actual HTML file from storage)
      */
     @GetMapping("/content")
-    public ResponseEntity<?> getNoteContentByFilename(
+    public ResponseEntity<StreamingResponseBody> getNoteContentByFilename(
+            @RequestHeader("Authorization") String authorizationHeader,
+            @RequestParam("filename") String filename) {
+
+        try {
+            // Extract kinde_user_id from JWT token
+            String kindeUserId = tokenExtractionUtil.extractKindeUserIdFromHeader(authorizationHeader);
+            if (kindeUserId == null || kindeUserId.isEmpty()) {
+                return contentError(HttpStatus.UNAUTHORIZED, "Invalid token: missing subject claim");
+            }
+
+            // Get user from database
+            Optional<User> userOptional = userService.getUserByKindeUserId(kindeUserId);
+            if (!userOptional.isPresent()) {
+                return contentError(HttpStatus.NOT_FOUND, "User profile not found");
+            }
+
+            User user = userOptional.get();
+            Long userId = user.getUserId();
+
+            // Get note by filename to retrieve the object key
+            Optional<Note> noteOptional = noteService.getNoteByUserIdAndFileName(userId, filename);
+            if (!noteOptional.isPresent()) {
+                return contentError(HttpStatus.NOT_FOUND, "Note not found: " + filename);
+            }
+
+            Note note = noteOptional.get();
+            String objectKey = note.getObjectKey();
+
+            // Check if file exists in storage
+            if (!noteStorage.fileExists(objectKey)) {
+                return contentError(HttpStatus.NOT_FOUND, "Note file not found in storage: " + filename);
+            }
+
+            // Copy the file straight into the response instead of buffering it. Once the
+            // status is sent a storage failure can only abort the response, so it propagates.
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType("text/html; charset=UTF-8"))
+                    .header("Content-Disposition", "inline; filename=\"" + filename + "\"")
+                    .body(outputStream -> noteStorage.transferTo(objectKey, outputStream));
+
+        } catch (Exception e) {
+            return contentError(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to get note content: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get a presigned URL to download a note's file from storage directly
+     */
+    @GetMapping("/download-url")
+    public ResponseEntity<?> getDownloadUrl(
             @RequestHeader("Authorization") String authorizationHeader,
             @RequestParam("filename") String filename) {
 
         try {
+            if (objectStore == null) {
+                return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED)
+                        .body(Map.of("error", "Direct downloads are not supported by this storage backend"));
+            }
+
             // Extract kinde_user_id from JWT token
             String kindeUserId = tokenExtractionUtil.extractKindeUserIdFromHeader(authorizationHeader);
             if (kindeUserId == null || kindeUserId.isEmpty()) {
@@ -255,7 +448,6 @@ public class NoteController {
             User user = userOptional.get();
             Long userId = user.getUserId();
 
-            // Get note by filename to retrieve the object key
             Optional<Note> noteOptional = noteService.getNoteByUserIdAndFileName(userId, filename);
             if (!noteOptional.isPresent()) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND)
@@ -263,41 +455,114 @@ public class NoteController {
             }
 
             Note note = noteOptional.get();
-            String objectKey = note.getObjectKey();
+            ObjectStore.PresignedUrl downloadUrl = objectStore.presignDownload(note.getObjectKey());
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("fileName", filename);
+            response.put("totalSizeBytes", note.getTotalSizeBytes());
+            response.put("downloadUrl", downloadUrl.url());
+            response.put("expiresAt", downloadUrl.expiresAt());
+
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to get download URL: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Get a presigned URL to upload a note's new content to storage directly, to be
+     * confirmed with /notes/upload-confirm once the upload is done
+     */
+    @PostMapping("/upload-url")
+    public ResponseEntity<?> getUploadUrl(
+            @RequestHeader("Authorization") String authorizationHeader,
+            @RequestParam("filename") String filename,
+            @RequestParam("sizeBytes") long sizeBytes) {
+
+        try {
+            if (objectStore == null) {
+                return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED)
+                        .body(Map.of("error", "Direct uploads are not supported by this storage backend"));
+            }
+            if (sizeBytes < 0) {
+                return ResponseEntity.badRequest()
+                        .body(Map.of("error", "Size must not be negative"));
+            }
+
+            // Extract kinde_user_id from JWT token
+            String kindeUserId = tokenExtractionUtil.extractKindeUserIdFromHeader(authorizationHeader);
+            if (kindeUserId == null || kindeUserId.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                        .body(Map.of("error", "Invalid token: missing subject claim"));
+            }
 
-            // Check if file exists in S3
-            if (!s3Service.fileExists(objectKey)) {
+            // Get user from database
+            Optional<User> userOptional = userService.getUserByKindeUserId(kindeUserId);
+            if (!userOptional.isPresent()) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND)
-                        .body(Map.of("error", "Note file not found in storage: " + filename));
+                        .body(Map.of("error", "User profile not found"));
+            }
+
+            User user = userOptional.get();
+            Long userId = user.getUserId();
+
+            // Enforce storage quota with the declared size; the signature holds the client to
+            // it, and the size stays reserved until the upload is confirmed or expires
+            long existingSize = noteService.getNoteSummaryByUserIdAndFileName(userId, filename)
+                    .map(NoteSummary::totalSizeBytes)
+                    .orElse(0L);
+            if (!noteService.hasStorageCapacity(user, existingSize, sizeBytes)) {
+                return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                        .body(Map.of("error", "Storage limit exceeded"));
             }
 
-            // Get file content from S3
-            InputStream fileContent = s3Service.getFile(objectKey);
+            // Each upload gets its own object, so the current content stays intact until
+            // confirmed; the object is deleted if the upload is not confirmed in time
+            String uploadId = UUID.randomUUID().toString();
+            String objectKey = NoteStorage.generateUploadObjectKey(userId, filename, uploadId);
+            pendingObjectService.registerDirectUpload(objectKey, userId, sizeBytes,
+                    LocalDateTime.now().plusSeconds(presignedUrlExpirySeconds + directUploadConfirmSeconds));
+            ObjectStore.PresignedUrl uploadUrl = objectStore.presignUpload(objectKey, sizeBytes);
 
-            // Convert InputStream to byte array for response
-            byte[] content = fileContent.readAllBytes();
-            fileContent.close();
+            Map<String, Object> response = new HashMap<>();
+            response.put("fileName", filename);
+            response.put("uploadId", uploadId);
+            response.put("uploadUrl", uploadUrl.url());
+            response.put("method", "PUT");
+            response.put("headers", uploadUrl.headers());
+            response.put("expiresAt", uploadUrl.expiresAt());
 
-            return ResponseEntity.ok()
-                    .header("Content-Type", "text/html; charset=UTF-8")
-                    .header("Content-Disposition", "inline; filename=\"" + filename + "\"")
-                    .body(content);
+            return ResponseEntity.ok(response);
 
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(Map.of("error", "Failed to get note content: " + e.getMessage()));
+                    .body(Map.of("error", "Failed to get upload URL: " + e.getMessage()));
         }
     }
 
     /**
-     * Delete note by filename
+     * Make a direct upload the note's content, creating the note if it does not exist
      */
-    @DeleteMapping
-    public ResponseEntity<?> deleteNote(
+    @PostMapping("/upload-confirm")
+    public ResponseEntity<?> confirmUpload(
             @RequestHeader("Authorization") String authorizationHeader,
-            @RequestParam("filename") String filename) {
+            @RequestParam("filename") String filename,
+            @RequestParam("uploadId") String uploadId) {
 
         try {
+            if (objectStore == null) {
+                return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED)
+                        .body(Map.of("error", "Direct uploads are not supported by this storage backend"));
+            }
+            try {
+                UUID.fromString(uploadId);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest()
+                        .body(Map.of("error", "Invalid upload ID"));
+            }
+
             // Extract kinde_user_id from JWT token
             String kindeUserId = tokenExtractionUtil.extractKindeUserIdFromHeader(authorizationHeader);
             if (kindeUserId == null || kindeUserId.isEmpty()) {
@@ -314,38 +579,91 @@ public class NoteController {
 
             User user = userOptional.get();
             Long userId = user.getUserId();
+            String objectKey = NoteStorage.generateUploadObjectKey(userId, filename, uploadId);
 
-            // Get existing note to find the object key
-            Optional<Note> existingNote = noteService.getNoteByUserIdAndFileName(userId, filename);
-            if (!existingNote.isPresent()) {
+            Optional<Note> existingNoteOptional = noteService.getNoteByUserIdAndFileName(userId, filename);
+            if (existingNoteOptional.isPresent() && objectKey.equals(existingNoteOptional.get().getObjectKey())) {
+                // Already confirmed
+                return ResponseEntity.ok(existingNoteOptional.get());
+            }
+
+            // The size actually uploaded, not the one declared
+            if (!noteStorage.fileExists(objectKey)) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND)
-                        .body(Map.of("error", "Note not found: " + filename));
+                        .body(Map.of("error", "Upload not found: " + uploadId));
+            }
+            Long newFileSize = noteStorage.getFileSize(objectKey);
+
+            return adoptUploadedFile(user, filename, existingNoteOptional, objectKey, newFileSize, null);
+
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to confirm upload: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Start a resumable upload of a new note, or of new content for an existing one
+     */
+    @PostMapping("/uploads")
+    public ResponseEntity<?> startUpload(
+            @RequestHeader("Authorization") String authorizationHeader,
+            @RequestParam("filename") String filename,
+            @RequestParam("sizeBytes") long sizeBytes) {
+
+        try {
+            if (sizeBytes < 0) {
+                return ResponseEntity.badRequest()
+                        .body(Map.of("error", "Size must not be negative"));
+            }
+
+            // Extract kinde_user_id from JWT token
+            String kindeUserId = tokenExtractionUtil.extractKindeUserIdFromHeader(authorizationHeader);
+            if (kindeUserId == null || kindeUserId.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                        .body(Map.of("error", "Invalid token: missing subject claim"));
+            }
+
+            // Get user from database
+            Optional<User> userOptional = userService.getUserByKindeUserId(kindeUserId);
+            if (!userOptional.isPresent()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "User profile not found"));
             }
 
-            String objectKey = existingNote.get().getObjectKey();
+            User user = userOptional.get();
+            Long userId = user.getUserId();
 
-            // Delete file from R2
-            s3Service.deleteFile(objectKey);
+            // Enforce storage quota before any part is uploaded
+            long existingSize = noteService.getNoteSummaryByUserIdAndFileName(userId, filename)
+                    .map(NoteSummary::totalSizeBytes)
+                    .orElse(0L);
+            if (!noteService.hasStorageCapacity(user, existingSize, sizeBytes)) {
+                return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                        .body(Map.of("error", "Storage limit exceeded"));
+            }
 
-            // Delete note from database
-            noteService.deleteNote(userId, filename);
+            NoteUpload upload = noteUploadService.start(userId, filename, sizeBytes);
 
-            return ResponseEntity.ok(Map.of("message", "Note deleted successfully: " + filename));
+            return ResponseEntity.status(HttpStatus.CREATED).body(uploadInfo(upload, null));
 
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(Map.of("error", "Failed to delete note: " + e.getMessage()));
+                    .body(Map.of("error", "Failed to start upload: " + e.getMessage()));
         }
     }
 
     /**
-     * Rename a note's filename (object key remains unchanged)
+     * Get a resumable upload with the parts still missing, to resume it
      */
-    @PostMapping("/rename")
-    public ResponseEntity<?> renameNote(
+    @GetMapping("/uploads/{uploadId}")
+    public ResponseEntity<?> getUpload(
             @RequestHeader("Authorization") String authorizationHeader,
-            @RequestParam("oldFilename") String oldFilename,
-            @RequestParam("newFilename") String newFilename) {
+            @PathVariable("uploadId") String uploadId) {
+
         try {
             // Extract kinde_user_id from JWT token
             String kindeUserId = tokenExtractionUtil.extractKindeUserIdFromHeader(authorizationHeader);
@@ -364,23 +682,31 @@ public class NoteController {
             User user = userOptional.get();
             Long userId = user.getUserId();
 
-            // Rename the note (does not touch the object key)
-            Note updated = noteService.renameNote(userId, oldFilename, newFilename);
-            return ResponseEntity.ok(updated);
-        } catch (RuntimeException ex) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
-                    .body(Map.of("error", ex.getMessage()));
+            Optional<NoteUpload> uploadOptional = noteUploadService.getUpload(userId, uploadId);
+            if (!uploadOptional.isPresent()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "Upload not found: " + uploadId));
+            }
+            NoteUpload upload = uploadOptional.get();
+
+            return ResponseEntity.ok(uploadInfo(upload, noteUploadService.getMissingParts(upload)));
+
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(Map.of("error", "Failed to rename note: " + e.getMessage()));
+                    .body(Map.of("error", "Failed to get upload: " + e.getMessage()));
         }
     }
 
     /**
-     * Get total storage size for the current user
+     * Upload one part of a resumable upload; the request body is the raw part content
      */
-    @GetMapping("/storage/size")
-    public ResponseEntity<?> getUserStorageSize(@RequestHeader("Authorization") String authorizationHeader) {
+    @PutMapping("/uploads/{uploadId}/parts/{partNumber}")
+    public ResponseEntity<?> uploadPart(
+            @RequestHeader("Authorization") String authorizationHeader,
+            @PathVariable("uploadId") String uploadId,
+            @PathVariable("partNumber") int partNumber,
+            HttpServletRequest request) {
+
         try {
             // Extract kinde_user_id from JWT token
             String kindeUserId = tokenExtractionUtil.extractKindeUserIdFromHeader(authorizationHeader);
@@ -399,33 +725,36 @@ public class NoteController {
             User user = userOptional.get();
             Long userId = user.getUserId();
 
-            // Calculate total storage size
-            Long totalSizeBytes = noteService.getTotalStorageSizeByUserId(userId);
-            long noteCount = noteService.getNoteCountByUserId(userId);
-
-            // Convert to different units for better readability
-            Map<String, Object> sizeInfo = calculateSizeInfo(totalSizeBytes);
+            Optional<NoteUpload> uploadOptional = noteUploadService.getUpload(userId, uploadId);
+            if (!uploadOptional.isPresent()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "Upload not found: " + uploadId));
+            }
+            NoteUpload upload = uploadOptional.get();
 
-            Map<String, Object> response = new HashMap<>();
-            response.put("userId", userId);
-            response.put("totalSizeBytes", totalSizeBytes);
-            response.put("noteCount", noteCount);
-            response.put("sizeInfo", sizeInfo);
+            // Read straight from the request, one part in memory at most
+            long partSize = noteUploadService.uploadPart(upload, partNumber, request.getInputStream());
 
-            return ResponseEntity.ok(response);
+            return ResponseEntity.ok(Map.of("uploadId", uploadId, "partNumber", partNumber, "sizeBytes", partSize));
 
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(Map.of("error", "Failed to get storage size: " + e.getMessage()));
+                    .body(Map.of("error", "Failed to upload part: " + e.getMessage()));
         }
     }
 
     /**
-     * Get file structure for the current user
-     * Returns a hierarchical structure representing the user's file organization
+     * Finish a resumable upload once all parts are uploaded: the file becomes the note's
+     * content, creating the note if it does not exist
      */
-    @GetMapping("/structure")
-    public ResponseEntity<?> getFileStructure(@RequestHeader("Authorization") String authorizationHeader) {
+    @PostMapping("/uploads/{uploadId}/complete")
+    public ResponseEntity<?> completeUpload(
+            @RequestHeader("Authorization") String authorizationHeader,
+            @PathVariable("uploadId") String uploadId) {
+
         try {
             // Extract kinde_user_id from JWT token
             String kindeUserId = tokenExtractionUtil.extractKindeUserIdFromHeader(authorizationHeader);
@@ -444,21 +773,749 @@ public class NoteController {
             User user = userOptional.get();
             Long userId = user.getUserId();
 
-            // Build file structure
-            Map<String, Object> fileStructure = noteService.buildFileStructure(userId);
-            long noteCount = noteService.getNoteCountByUserId(userId);
-
-            Map<String, Object> response = new HashMap<>();
-            response.put("userId", userId);
-            response.put("noteCount", noteCount);
-            response.put("fileStructure", fileStructure);
+            Optional<NoteUpload> uploadOptional = noteUploadService.getUpload(userId, uploadId);
+            if (!uploadOptional.isPresent()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "Upload not found: " + uploadId));
+            }
+            NoteUpload upload = uploadOptional.get();
+
+            // A retry after the note could not be saved finds the parts joined already
+            if (upload.getCompletedAt() == null) {
+                List<Integer> missingParts = noteUploadService.getMissingParts(upload);
+                if (!missingParts.isEmpty()) {
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("error", "Upload has missing parts");
+                    response.put("missingParts", missingParts);
+                    return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+                }
+
+                noteUploadService.complete(upload);
+            }
 
-            return ResponseEntity.ok(response);
+            Optional<Note> existingNoteOptional = noteService.getNoteByUserIdAndFileName(userId,
+                    upload.getFileName());
+            return adoptUploadedFile(user, upload.getFileName(), existingNoteOptional, upload.getObjectKey(),
+                    upload.getSizeBytes(), upload);
 
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(Map.of("error", "Failed to get file structure: " + e.getMessage()));
+                    .body(Map.of("error", "Failed to complete upload: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Cancel a resumable upload
+     */
+    @DeleteMapping("/uploads/{uploadId}")
+    public ResponseEntity<?> abortUpload(
+            @RequestHeader("Authorization") String authorizationHeader,
+            @PathVariable("uploadId") String uploadId) {
+
+        try {
+            // Extract kinde_user_id from JWT token
+            String kindeUserId = tokenExtractionUtil.extractKindeUserIdFromHeader(authorizationHeader);
+            if (kindeUserId == null || kindeUserId.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                        .body(Map.of("error", "Invalid token: missing subject claim"));
+            }
+
+            // Get user from database
+            Optional<User> userOptional = userService.getUserByKindeUserId(kindeUserId);
+            if (!userOptional.isPresent()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "User profile not found"));
+            }
+
+            User user = userOptional.get();
+            Long userId = user.getUserId();
+
+            Optional<NoteUpload> uploadOptional = noteUploadService.getUpload(userId, uploadId);
+            if (!uploadOptional.isPresent()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "Upload not found: " + uploadId));
+            }
+            NoteUpload upload = uploadOptional.get();
+
+            noteUploadService.abort(upload);
+
+            return ResponseEntity.ok(Map.of("message", "Upload cancelled: " + uploadId));
+
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to cancel upload: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Delete note by filename
+     */
+    @DeleteMapping
+    public ResponseEntity<?> deleteNote(
+            @RequestHeader("Authorization") String authorizationHeader,
+            @RequestParam("filename") String filename) {
+
+        try {
+            // Extract kinde_user_id from JWT token
+            String kindeUserId = tokenExtractionUtil.extractKindeUserIdFromHeader(authorizationHeader);
+            if (kindeUserId == null || kindeUserId.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                        .body(Map.of("error", "Invalid token: missing subject claim"));
+            }
+
+            // Get user from database
+            Optional<User> userOptional = userService.getUserByKindeUserId(kindeUserId);
+            if (!userOptional.isPresent()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "User profile not found"));
+            }
+
+            User user = userOptional.get();
+            Long userId = user.getUserId();
+
+            // Get existing note to find the object key
+            Optional<Note> existingNote = noteService.getNoteByUserIdAndFileName(userId, filename);
+            if (!existingNote.isPresent()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "Note not found: " + filename));
+            }
+
+            Note note = existingNote.get();
+
+            // Delete note from database with its versions; its file is deleted in the background
+            noteService.deleteNote(userId, filename);
+            noteSearchService.deleteDocument(note.getId());
+            noteNameIndexService.noteDeleted(userId, filename);
+
+            return ResponseEntity.ok(Map.of("message", "Note deleted successfully: " + filename));
+
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to delete note: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Find the current user's notes by file name: prefix of the path or of its words, typos allowed
+     */
+    @GetMapping("/find")
+    public ResponseEntity<?> findNotes(
+            @RequestHeader("Authorization") String authorizationHeader,
+            @RequestParam("q") String query,
+            @RequestParam(value = "limit", defaultValue = "20") int limit) {
+
+        try {
+            // Extract kinde_user_id from JWT token
+            String kindeUserId = tokenExtractionUtil.extractKindeUserIdFromHeader(authorizationHeader);
+            if (kindeUserId == null || kindeUserId.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                        .body(Map.of("error", "Invalid token: missing subject claim"));
+            }
+
+            // Get user from database
+            Optional<User> userOptional = userService.getUserByKindeUserId(kindeUserId);
+            if (!userOptional.isPresent()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "User profile not found"));
+            }
+
+            User user = userOptional.get();
+            Long userId = user.getUserId();
+
+            // Match against the in-memory file name index
+            List<FileNameIndex.Match> matches = noteNameIndexService.find(userId, query,
+                    Math.max(1, Math.min(limit, MAX_SEARCH_RESULTS)));
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("query", query);
+            response.put("matches", matches);
+            response.put("count", matches.size());
+
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to find notes: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Issue a short-lived ticket for opening /notes/events without an Authorization
+     * header, as browsers' EventSource cannot send one
+     */
+    @PostMapping("/events/ticket")
+    public ResponseEntity<?> issueEventStreamTicket(
+            @RequestHeader("Authorization") String authorizationHeader) {
+
+        try {
+            // Extract kinde_user_id from JWT token
+            String kindeUserId = tokenExtractionUtil.extractKindeUserIdFromHeader(authorizationHeader);
+            if (kindeUserId == null || kindeUserId.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                        .body(Map.of("error", "Invalid token: missing subject claim"));
+            }
+
+            Instant now = Instant.now();
+            return ResponseEntity.ok(Map.of(
+                    "ticket", eventStreamTicketUtil.issue(kindeUserId, now),
+                    "expiresAt", now.plusSeconds(eventStreamTicketUtil.getTtlSeconds()).toString()));
+
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to issue ticket: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Stream changes to the user's notes as Server-Sent Events. Reconnecting clients
+     * send the last event ID they received (Last-Event-ID header, or lastEventId for
+     * clients that cannot set headers) to get the events they missed. Clients that
+     * cannot send an Authorization header pass a ticket from /notes/events/ticket.
+     */
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamEvents(
+            @RequestHeader(value = "Authorization", required = false) String authorizationHeader,
+            @RequestParam(value = "ticket", required = false) String ticket,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventIdHeader,
+            @RequestParam(value = "lastEventId", required = false) Long lastEventIdParam) {
+
+        try {
+            if (!noteEventService.isEnabled()) {
+                return eventStreamError(HttpStatus.NOT_FOUND, "Note events are disabled");
+            }
+
+            // Extract kinde_user_id from JWT token, or from the ticket without one
+            String kindeUserId = authorizationHeader != null
+                    ? tokenExtractionUtil.extractKindeUserIdFromHeader(authorizationHeader)
+                    : eventStreamTicketUtil.verify(ticket, Instant.now());
+            if (kindeUserId == null || kindeUserId.isEmpty()) {
+                return eventStreamError(HttpStatus.UNAUTHORIZED, "Invalid token: missing subject claim");
+            }
+
+            // Get user from database
+            Optional<User> userOptional = userService.getUserByKindeUserId(kindeUserId);
+            if (!userOptional.isPresent()) {
+                return eventStreamError(HttpStatus.NOT_FOUND, "User profile not found");
+            }
+
+            User user = userOptional.get();
+            Long userId = user.getUserId();
+
+            SseEmitter emitter = noteEventService.subscribe(userId,
+                    lastEventIdHeader != null ? lastEventIdHeader : lastEventIdParam);
+            if (emitter == null) {
+                return eventStreamError(HttpStatus.TOO_MANY_REQUESTS, "Too many open event streams");
+            }
+            return ResponseEntity.ok(emitter);
+
+        } catch (Exception e) {
+            return eventStreamError(HttpStatus.INTERNAL_SERVER_ERROR,
+                    "Failed to open event stream: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Search the contents of the current user's notes (ranked file names and snippets)
+     */
+    @GetMapping("/search")
+    public ResponseEntity<?> searchNotes(
+            @RequestHeader("Authorization") String authorizationHeader,
+            @RequestParam("q") String query,
+            @RequestParam(value = "limit", defaultValue = "20") int limit) {
+
+        try {
+            // Extract kinde_user_id from JWT token
+            String kindeUserId = tokenExtractionUtil.extractKindeUserIdFromHeader(authorizationHeader);
+            if (kindeUserId == null || kindeUserId.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                        .body(Map.of("error", "Invalid token: missing subject claim"));
+            }
+
+            // Get user from database
+            Optional<User> userOptional = userService.getUserByKindeUserId(kindeUserId);
+            if (!userOptional.isPresent()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "User profile not found"));
+            }
+
+            if (query.isBlank()) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                        .body(Map.of("error", "Search query must not be empty"));
+            }
+
+            User user = userOptional.get();
+            Long userId = user.getUserId();
+
+            // Search the index; note files are not read
+            List<NoteSearchResult> results = noteSearchService.search(userId, query,
+                    Math.max(1, Math.min(limit, MAX_SEARCH_RESULTS)));
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("query", query);
+            response.put("results", results);
+            response.put("count", results.size());
+
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to search notes: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * List the saved versions of a note (newest first)
+     */
+    @GetMapping("/versions")
+    public ResponseEntity<?> getNoteVersions(
+            @RequestHeader("Authorization") String authorizationHeader,
+            @RequestParam("filename") String filename) {
+
+        try {
+            // Extract kinde_user_id from JWT token
+            String kindeUserId = tokenExtractionUtil.extractKindeUserIdFromHeader(authorizationHeader);
+            if (kindeUserId == null || kindeUserId.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                        .body(Map.of("error", "Invalid token: missing subject claim"));
+            }
+
+            // Get user from database
+            Optional<User> userOptional = userService.getUserByKindeUserId(kindeUserId);
+            if (!userOptional.isPresent()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "User profile not found"));
+            }
+
+            User user = userOptional.get();
+            Long userId = user.getUserId();
+
+            // Get note by filename
+            Optional<Note> noteOptional = noteService.getNoteByUserIdAndFileName(userId, filename);
+            if (!noteOptional.isPresent()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "Note not found: " + filename));
+            }
+
+            List<NoteVersionSummary> versions = noteVersionService.getVersionSummaries(noteOptional.get().getId());
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("fileName", filename);
+            response.put("versions", versions);
+            response.put("count", versions.size());
+
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to get note versions: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Get the content of a saved version of a note
+     */
+    @GetMapping("/versions/content")
+    public ResponseEntity<?> getNoteVersionContent(
+            @RequestHeader("Authorization") String authorizationHeader,
+            @RequestParam("filename") String filename,
+            @RequestParam("version") Integer version) {
+
+        try {
+            // Extract kinde_user_id from JWT token
+            String kindeUserId = tokenExtractionUtil.extractKindeUserIdFromHeader(authorizationHeader);
+            if (kindeUserId == null || kindeUserId.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                        .body(Map.of("error", "Invalid token: missing subject claim"));
+            }
+
+            // Get user from database
+            Optional<User> userOptional = userService.getUserByKindeUserId(kindeUserId);
+            if (!userOptional.isPresent()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "User profile not found"));
+            }
+
+            User user = userOptional.get();
+            Long userId = user.getUserId();
+
+            // Get note by filename
+            Optional<Note> noteOptional = noteService.getNoteByUserIdAndFileName(userId, filename);
+            if (!noteOptional.isPresent()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "Note not found: " + filename));
+            }
+
+            Optional<byte[]> content = noteVersionService.getVersionContent(noteOptional.get().getId(), version);
+            if (!content.isPresent()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "Version " + version + " not found: " + filename));
+            }
+
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType("text/html; charset=UTF-8"))
+                    .header("Content-Disposition", "inline; filename=\"" + filename + "\"")
+                    .body(content.get());
+
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to get note version content: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Restore a saved version of a note as its current content (recorded as a new version)
+     */
+    @PostMapping("/versions/restore")
+    public ResponseEntity<?> restoreNoteVersion(
+            @RequestHeader("Authorization") String authorizationHeader,
+            @RequestParam("filename") String filename,
+            @RequestParam("version") Integer version) {
+
+        try {
+            // Extract kinde_user_id from JWT token
+            String kindeUserId = tokenExtractionUtil.extractKindeUserIdFromHeader(authorizationHeader);
+            if (kindeUserId == null || kindeUserId.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                        .body(Map.of("error", "Invalid token: missing subject claim"));
+            }
+
+            // Get user from database
+            Optional<User> userOptional = userService.getUserByKindeUserId(kindeUserId);
+            if (!userOptional.isPresent()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "User profile not found"));
+            }
+
+            User user = userOptional.get();
+            Long userId = user.getUserId();
+
+            // Get note by filename
+            Optional<Note> noteOptional = noteService.getNoteByUserIdAndFileName(userId, filename);
+            if (!noteOptional.isPresent()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "Note not found: " + filename));
+            }
+
+            Note existingNote = noteOptional.get();
+            Optional<byte[]> content = noteVersionService.getVersionContent(existingNote.getId(), version);
+            if (!content.isPresent()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "Version " + version + " not found: " + filename));
+            }
+
+            long existingSize = existingNote.getTotalSizeBytes() == null ? 0L : existingNote.getTotalSizeBytes();
+            long restoredSize = content.get().length;
+
+            // Enforce storage quota (account for replacement)
+            if (!noteService.hasStorageCapacity(user, existingSize, restoredSize)) {
+                return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                        .body(Map.of("error", "Storage limit exceeded"));
+            }
+
+            ByteArrayResource restoredContent = new ByteArrayResource(content.get());
+            Note restoredNote = writeContent(userId, filename, existingNote, restoredContent, restoredSize);
+            indexContent(restoredNote, restoredContent, restoredSize);
+
+            return ResponseEntity.ok(restoredNote);
+
+        } catch (BlobService.BlobBusyException e) {
+            return blobBusy(e);
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to restore note version: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Rename a note's filename (object key remains unchanged)
+     */
+    @PostMapping("/rename")
+    public ResponseEntity<?> renameNote(
+            @RequestHeader("Authorization") String authorizationHeader,
+            @RequestParam("oldFilename") String oldFilename,
+            @RequestParam("newFilename") String newFilename) {
+        try {
+            // Extract kinde_user_id from JWT token
+            String kindeUserId = tokenExtractionUtil.extractKindeUserIdFromHeader(authorizationHeader);
+            if (kindeUserId == null || kindeUserId.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                        .body(Map.of("error", "Invalid token: missing subject claim"));
+            }
+
+            // Get user from database
+            Optional<User> userOptional = userService.getUserByKindeUserId(kindeUserId);
+            if (!userOptional.isPresent()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "User profile not found"));
+            }
+
+            User user = userOptional.get();
+            Long userId = user.getUserId();
+
+            // Rename the note (does not touch the object key)
+            Note updated = noteService.renameNote(userId, oldFilename, newFilename);
+            noteNameIndexService.noteRenamed(userId, oldFilename, newFilename);
+            return ResponseEntity.ok(updated);
+        } catch (RuntimeException ex) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("error", ex.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to rename note: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Get total storage size for the current user
+     */
+    @GetMapping("/storage/size")
+    public ResponseEntity<?> getUserStorageSize(@RequestHeader("Authorization") String authorizationHeader) {
+        try {
+            // Extract kinde_user_id from JWT token
+            String kindeUserId = tokenExtractionUtil.extractKindeUserIdFromHeader(authorizationHeader);
+            if (kindeUserId == null || kindeUserId.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                        .body(Map.of("error", "Invalid token: missing subject claim"));
+            }
+
+            // Get user from database
+            Optional<User> userOptional = userService.getUserByKindeUserId(kindeUserId);
+            if (!userOptional.isPresent()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "User profile not found"));
+            }
+
+            User user = userOptional.get();
+            Long userId = user.getUserId();
+
+            // Calculate total storage size
+            Long totalSizeBytes = noteService.getTotalStorageSizeByUserId(userId);
+            long noteCount = noteService.getNoteCountByUserId(userId);
+
+            // Convert to different units for better readability
+            Map<String, Object> sizeInfo = calculateSizeInfo(totalSizeBytes);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("userId", userId);
+            response.put("totalSizeBytes", totalSizeBytes);
+            response.put("noteCount", noteCount);
+            response.put("sizeInfo", sizeInfo);
+
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to get storage size: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Get file structure for the current user
+     * Returns a hierarchical structure representing the user's file organization
+     */
+    @GetMapping("/structure")
+    public ResponseEntity<?> getFileStructure(@RequestHeader("Authorization") String authorizationHeader) {
+        try {
+            // Extract kinde_user_id from JWT token
+            String kindeUserId = tokenExtractionUtil.extractKindeUserIdFromHeader(authorizationHeader);
+            if (kindeUserId == null || kindeUserId.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                        .body(Map.of("error", "Invalid token: missing subject claim"));
+            }
+
+            // Get user from database
+            Optional<User> userOptional = userService.getUserByKindeUserId(kindeUserId);
+            if (!userOptional.isPresent()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "User profile not found"));
+            }
+
+            User user = userOptional.get();
+            Long userId = user.getUserId();
+
+            // Build file structure
+            Map<String, Object> fileStructure = noteService.buildFileStructure(userId);
+            long noteCount = noteService.getNoteCountByUserId(userId);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("userId", userId);
+            response.put("noteCount", noteCount);
+            response.put("fileStructure", fileStructure);
+
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to get file structure: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Replace a note's content, as a shared blob when content addressing is enabled
+     * or in the note's own object otherwise; the content is streamed into the note's
+     * history as the next version with the change
+     */
+    private Note writeContent(Long userId, String filename, Note existingNote, InputStreamSource content,
+            Long newFileSize) throws IOException {
+        String existingContentHash = existingNote.getContentHash();
+
+        if (blobService.isEnabled()) {
+            String contentHash = blobService.hash(content);
+            if (contentHash.equals(existingContentHash)) {
+                // Same content as before, nothing to store
+                return noteService.updateNote(userId, filename, newFileSize, content);
+            } else {
+                // Point the note at the new blob, releasing the old file
+                String newObjectKey = blobService.acquire(contentHash, newFileSize, content);
+                try {
+                    return noteService.updateNoteContent(userId, filename, newFileSize, newObjectKey, contentHash,
+                            content);
+                } catch (RuntimeException e) {
+                    blobService.release(contentHash);
+                    throw e;
+                }
+            }
+        } else {
+            // Write a new object and point the note at it, releasing the old file (from
+            // when content addressing was enabled, the shared blob)
+            String newObjectKey = writeNewObject(userId, filename, content);
+            try {
+                return noteService.updateNoteContent(userId, filename, newFileSize, newObjectKey, null,
+                        content);
+            } catch (RuntimeException e) {
+                pendingObjectService.deleteObject(newObjectKey);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Write content to a new per-note object, registered as pending until a note points
+     * at it, so the current content is never overwritten in place
+     */
+    private String writeNewObject(Long userId, String filename, InputStreamSource content) throws IOException {
+        String objectKey = NoteStorage.generateUploadObjectKey(userId, filename, UUID.randomUUID().toString());
+        pendingObjectService.register(objectKey);
+        try (InputStream inputStream = content.getInputStream()) {
+            noteStorage.updateFile(inputStream, objectKey);
+        }
+        return objectKey;
+    }
+
+    /**
+     * Make an uploaded object the content of a note, creating the note if it does not
+     * exist. The object is deleted if it does not fit in the user's quota. A resumable
+     * upload (null otherwise) is finished once its object is the note's or deleted; if
+     * the note cannot be saved, it stays so completing can be retried. The version and
+     * search text are recorded in the background (UploadedContentService).
+     */
+    private ResponseEntity<?> adoptUploadedFile(User user, String filename, Optional<Note> existingNoteOptional,
+            String objectKey, Long newFileSize, NoteUpload upload) {
+        Long userId = user.getUserId();
+        long existingSize = existingNoteOptional.map(Note::getTotalSizeBytes).orElse(0L);
+        // A direct upload's reservation is replaced by its actual size
+        if (!noteService.hasStorageCapacity(user, existingSize, newFileSize, objectKey)) {
+            pendingObjectService.deleteObject(objectKey);
+            if (upload != null) {
+                noteUploadService.finish(upload);
+            }
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                    .body(Map.of("error", "Storage limit exceeded"));
+        }
+
+        Note note;
+        HttpStatus status;
+        if (existingNoteOptional.isPresent()) {
+            // Point the note at the uploaded object, releasing the old file
+            note = noteService.updateNoteContent(userId, filename, newFileSize, objectKey, null, null);
+            status = HttpStatus.OK;
+        } else {
+            try {
+                note = noteService.createNote(filename, userId, newFileSize, objectKey, null, null);
+            } catch (RuntimeException e) {
+                // An upload keeps its object for a retry, or for the expiry sweep
+                if (upload == null) {
+                    pendingObjectService.deleteObject(objectKey);
+                }
+                throw e;
+            }
+            noteNameIndexService.noteCreated(userId, filename);
+            status = HttpStatus.CREATED;
+        }
+        if (upload != null) {
+            // The joined file now belongs to the note
+            noteUploadService.finish(upload);
+        }
+
+        // Until then the now stale search text is dropped
+        noteSearchService.deleteDocument(note.getId());
+        uploadedContentService.contentUploaded(note.getId(), objectKey);
+
+        return ResponseEntity.status(status).body(note);
+    }
+
+    /**
+     * Response body describing a resumable upload
+     */
+    private Map<String, Object> uploadInfo(NoteUpload upload, List<Integer> missingParts) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("uploadId", upload.getId());
+        response.put("fileName", upload.getFileName());
+        response.put("sizeBytes", upload.getSizeBytes());
+        response.put("partSizeBytes", upload.getPartSizeBytes());
+        response.put("partCount", upload.getPartCount());
+        if (missingParts != null) {
+            response.put("missingParts", missingParts);
+        }
+        return response;
+    }
+
+    /**
+     * Put a note's newly saved content in the search index. Content larger than
+     * notes.search.inline-max-bytes is indexed from storage in the background instead
+     * (UploadedContentService), so the request never holds a large file in memory.
+     */
+    private void indexContent(Note note, InputStreamSource content, long size) {
+        if (size > searchInlineMaxBytes && noteSearchService.isEnabled()) {
+            // Until then the now stale search text is dropped
+            noteSearchService.deleteDocument(note.getId());
+            uploadedContentService.contentSaved(note.getId(), note.getObjectKey());
+            return;
+        }
+        noteSearchService.index(note.getId(), content);
+    }
+
+    /**
+     * 503 for content whose blob is still being deleted, which a retry will store
+     */
+    private ResponseEntity<?> blobBusy(BlobService.BlobBusyException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(Map.of("error", e.getMessage()));
+    }
+
+    /**
+     * A JSON error body for /notes/content, which otherwise streams the file
+     */
+    private ResponseEntity<StreamingResponseBody> contentError(HttpStatus status, String message) {
+        return ResponseEntity.status(status)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(outputStream -> objectMapper.writeValue(outputStream, Map.of("error", message)));
+    }
+
+    /**
+     * An event stream carrying a single error event; EventSource clients do not
+     * reconnect after a non-200 status
+     */
+    private ResponseEntity<SseEmitter> eventStreamError(HttpStatus status, String message) {
+        SseEmitter emitter = new SseEmitter();
+        try {
+            emitter.send(SseEmitter.event().name("error").data(Map.of("error", message)));
+            emitter.complete();
+        } catch (IOException e) {
+            emitter.completeWithError(e);
         }
+        return ResponseEntity.status(status).body(emitter);
     }
 
     /**
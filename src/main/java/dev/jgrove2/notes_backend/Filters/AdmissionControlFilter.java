@@ -0,0 +1,84 @@
+package dev.jgrove2.notes_backend.Filters;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.jgrove2.notes_backend.Utils.AdaptiveConcurrencyLimiter;
+import dev.jgrove2.notes_backend.Utils.AdaptiveConcurrencyLimiter.Priority;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Sheds requests beyond the AdaptiveConcurrencyLimiter's limit with 503, before token
+ * verification or any database work. Long-lived event streams and health checks are
+ * not limited.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 20)
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+    @Autowired
+    private AdaptiveConcurrencyLimiter limiter;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI();
+        return !limiter.isEnabled()
+                || path.equals("/")
+                || path.equals("/health")
+                || path.startsWith("/actuator/")
+                || path.startsWith("/api/database/")
+                || path.equals("/notes/events");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+            HttpServletResponse response,
+            FilterChain filterChain) throws ServletException, IOException {
+
+        Priority priority = priority(request);
+        if (!limiter.tryAcquire(priority)) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader("Retry-After", "1");
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getWriter().write(objectMapper.writeValueAsString(
+                    Map.of("error", "Server is busy, please retry")));
+            return;
+        }
+
+        long startNanos = System.nanoTime();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            // Bulk transfers take as long as the client needs, whatever the load
+            limiter.release(priority == Priority.BULK ? -1 : System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Reads and autosaves come first; uploads of large files and restores of old
+     * versions can wait
+     */
+    private static Priority priority(HttpServletRequest request) {
+        String path = request.getRequestURI();
+        if (path.startsWith("/notes/uploads")
+                || path.equals("/notes/upload-url")
+                || path.equals("/notes/upload-confirm")
+                || path.equals("/notes/versions/restore")) {
+            return Priority.BULK;
+        }
+        return Priority.CRITICAL;
+    }
+}
\ No newline at end of file
@@ -2,22 +2,31 @@ package dev.jgrove2.notes_backend.Filters;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import dev.jgrove2.notes_backend.Utils.EventStreamTicketUtil;
 import dev.jgrove2.notes_backend.Utils.JwtTokenUtil;
+import dev.jgrove2.notes_backend.Utils.RequestUserContext;
+import dev.jgrove2.notes_backend.Utils.UserRateLimiter;
+import io.jsonwebtoken.Claims;
 import org.springframework.beans.factory.annotation.Autowired;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.time.Instant;
 import java.util.HashMap;
 import java.util.Map;
 
 @Component
+// Ahead of UploadLimitFilter, which needs the authenticated user
+@Order(Ordered.LOWEST_PRECEDENCE - 10)
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private static final String BEARER_PREFIX = "Bearer ";
@@ -26,6 +35,12 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     @Autowired
     private JwtTokenUtil jwtTokenUtil;
 
+    @Autowired
+    private UserRateLimiter userRateLimiter;
+
+    @Autowired
+    private EventStreamTicketUtil eventStreamTicketUtil;
+
     @Override
     protected void doFilterInternal(HttpServletRequest request,
             HttpServletResponse response,
@@ -40,21 +55,57 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
             String token = extractTokenFromRequest(request);
 
+            if (token == null && isEventStream(request) && request.getHeader(AUTHORIZATION_HEADER) == null) {
+                // EventSource cannot send the header, so the stream also accepts a ticket
+                String ticket = request.getParameter("ticket");
+                if (ticket == null) {
+                    sendUnauthorizedResponse(response, "No Bearer token or ticket provided");
+                    return;
+                }
+                String kindeUserId = eventStreamTicketUtil.verify(ticket, Instant.now());
+                if (kindeUserId == null) {
+                    sendUnauthorizedResponse(response, "Invalid or expired event stream ticket");
+                    return;
+                }
+                RequestUserContext.setKindeUserId(kindeUserId);
+                filterChain.doFilter(request, response);
+                return;
+            }
+
             if (token == null) {
                 sendUnauthorizedResponse(response, "No Bearer token provided");
                 return;
             }
 
-            if (!isTokenValid(token)) {
+            Claims claims = parseTokenClaims(token);
+            if (claims == null) {
                 sendUnauthorizedResponse(response, "Invalid or expired token");
                 return;
             }
 
             // Token is valid, continue with the request
-            filterChain.doFilter(request, response);
+            RequestUserContext.setKindeUserId(claims.getSubject());
+            if (!isWrite(request)) {
+                filterChain.doFilter(request, response);
+                return;
+            }
+
+            // Writes are rate limited per user
+            UserRateLimiter.Admission admission = userRateLimiter.admitWrite(claims.getSubject());
+            if (!admission.isAdmitted()) {
+                sendTooManyRequestsResponse(response, admission.retryAfterSeconds());
+                return;
+            }
+            try {
+                filterChain.doFilter(request, response);
+            } finally {
+                admission.release();
+            }
 
         } catch (Exception e) {
             sendUnauthorizedResponse(response, "Authentication failed: " + e.getMessage());
+        } finally {
+            RequestUserContext.clear();
         }
     }
 
@@ -63,7 +114,20 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         // Add paths that don't require authentication
         return path.equals("/") ||
                 path.equals("/health") ||
-                path.startsWith("/public/");
+                path.startsWith("/public/") ||
+                // Only the probe and the scrape endpoint, the other actuator endpoints stay authenticated
+                path.equals("/actuator/health") ||
+                path.startsWith("/actuator/health/") ||
+                path.equals("/actuator/prometheus");
+    }
+
+    private boolean isEventStream(HttpServletRequest request) {
+        return request.getMethod().equals("GET") && request.getRequestURI().equals("/notes/events");
+    }
+
+    private boolean isWrite(HttpServletRequest request) {
+        String method = request.getMethod();
+        return method.equals("POST") || method.equals("PUT") || method.equals("PATCH") || method.equals("DELETE");
     }
 
     private String extractTokenFromRequest(HttpServletRequest request) {
@@ -76,13 +140,12 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         return null;
     }
 
-    private boolean isTokenValid(String token) {
+    private Claims parseTokenClaims(String token) {
         try {
-            jwtTokenUtil.parseToken(token);
-            return true;
+            return jwtTokenUtil.parseToken(token);
         } catch (Exception e) {
             System.out.println(e.getMessage());
-            return false;
+            return null;
         }
     }
 
@@ -100,4 +163,21 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         response.getWriter().write(jsonResponse);
     }
+
+    private void sendTooManyRequestsResponse(HttpServletResponse response, long retryAfterSeconds)
+            throws IOException {
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader("Retry-After", Long.toString(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+
+        Map<String, Object> errorResponse = new HashMap<>();
+        errorResponse.put("error", "Too Many Requests");
+        errorResponse.put("message", "Too many writes, retry after " + retryAfterSeconds + " seconds");
+        errorResponse.put("status", HttpStatus.TOO_MANY_REQUESTS.value());
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        String jsonResponse = objectMapper.writeValueAsString(errorResponse);
+
+        response.getWriter().write(jsonResponse);
+    }
 }
\ No newline at end of file
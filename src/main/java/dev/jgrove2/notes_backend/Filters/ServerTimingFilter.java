@@ -0,0 +1,94 @@
+package dev.jgrove2.notes_backend.Filters;
+
+import dev.jgrove2.notes_backend.Utils.ServerTimingRecorder;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Adds a Server-Timing header with the per-stage durations collected by
+ * ServerTimingObservationHandler. Runs ahead of JwtAuthenticationFilter so that
+ * token verification is included.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+@ConditionalOnProperty(name = "notes.server-timing.enabled", havingValue = "true")
+public class ServerTimingFilter extends OncePerRequestFilter {
+
+    private static final String SERVER_TIMING_HEADER = "Server-Timing";
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+            HttpServletResponse response,
+            FilterChain filterChain) throws ServletException, IOException {
+
+        long startNanos = System.nanoTime();
+        ServerTimingRecorder.start();
+        ServerTimingResponse timingResponse = new ServerTimingResponse(response, startNanos);
+        try {
+            filterChain.doFilter(request, timingResponse);
+        } finally {
+            // Responses without a body never asked for an output stream
+            timingResponse.writeServerTimingHeader();
+            ServerTimingRecorder.clear();
+        }
+    }
+
+    /**
+     * Writes the header just before the body, while headers can still be set
+     */
+    private static class ServerTimingResponse extends HttpServletResponseWrapper {
+
+        private final long startNanos;
+
+        private boolean headerWritten;
+
+        ServerTimingResponse(HttpServletResponse response, long startNanos) {
+            super(response);
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            writeServerTimingHeader();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            writeServerTimingHeader();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            writeServerTimingHeader();
+            super.flushBuffer();
+        }
+
+        void writeServerTimingHeader() {
+            if (headerWritten || isCommitted()) {
+                return;
+            }
+            headerWritten = true;
+
+            ServerTimingRecorder.record("total", System.nanoTime() - startNanos);
+            String serverTiming = ServerTimingRecorder.toHeaderValue();
+            // Nothing recorded when the body is written from an async thread
+            if (serverTiming != null) {
+                setHeader(SERVER_TIMING_HEADER, serverTiming);
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,146 @@
+package dev.jgrove2.notes_backend.Filters;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.jgrove2.notes_backend.Models.NoteSummary;
+import dev.jgrove2.notes_backend.Models.User;
+import dev.jgrove2.notes_backend.Services.NoteService;
+import dev.jgrove2.notes_backend.Services.UserService;
+import dev.jgrove2.notes_backend.Utils.RequestUserContext;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.web.servlet.MultipartProperties;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Rejects multipart uploads from their Content-Length, before any of the body is read.
+ *
+ * Requests larger than spring.servlet.multipart.max-request-size get 413, and requests
+ * without a length get 411. Uploads to /notes larger than the in-memory threshold are
+ * also checked against the user's remaining storage; the controller checks the parsed
+ * file size exactly. 411 and 413 responses close the connection, so Tomcat does not
+ * read the rest of the body either. Runs after JwtAuthenticationFilter, which sets the
+ * user.
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE)
+public class UploadLimitFilter extends OncePerRequestFilter {
+
+    // Allowance for the multipart boundaries and part headers around the file
+    private static final long MULTIPART_OVERHEAD_BYTES = 16 * 1024;
+
+    @Autowired
+    private MultipartProperties multipartProperties;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private NoteService noteService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String contentType = request.getContentType();
+        return contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith("multipart/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+            HttpServletResponse response,
+            FilterChain filterChain) throws ServletException, IOException {
+
+        long contentLength = request.getContentLengthLong();
+        if (contentLength < 0) {
+            sendError(response, HttpStatus.LENGTH_REQUIRED, "Content-Length is required for file uploads");
+            return;
+        }
+        long maxRequestSize = multipartProperties.getMaxRequestSize().toBytes();
+        if (contentLength > maxRequestSize) {
+            sendError(response, HttpStatus.PAYLOAD_TOO_LARGE, "Upload exceeds the maximum request size of "
+                    + maxRequestSize + " bytes");
+            return;
+        }
+        if (contentLength > multipartProperties.getFileSizeThreshold().toBytes() && !fitsInStorage(request,
+                contentLength - MULTIPART_OVERHEAD_BYTES)) {
+            sendError(response, HttpStatus.PAYLOAD_TOO_LARGE, "Storage limit exceeded");
+            return;
+        }
+
+        filterChain.doFilter(request, response);
+    }
+
+    /**
+     * Whether a note upload of at least fileSize bytes can fit in the user's storage.
+     * Uploads that are not note creates or updates, or whose user is unknown, are left
+     * to the controller.
+     */
+    private boolean fitsInStorage(HttpServletRequest request, long fileSize) {
+        String method = request.getMethod();
+        if (!request.getRequestURI().equals("/notes") || !(method.equals("POST") || method.equals("PUT"))) {
+            return true;
+        }
+        String kindeUserId = RequestUserContext.getKindeUserId();
+        if (kindeUserId == null) {
+            return true;
+        }
+        Optional<User> userOptional = userService.getUserByKindeUserId(kindeUserId);
+        if (!userOptional.isPresent() || userOptional.get().getMaxStorage() == null) {
+            return true;
+        }
+        User user = userOptional.get();
+
+        // An update replaces the note's current content, so its size must be known
+        long existingSize = 0L;
+        if (method.equals("PUT")) {
+            String filename = queryParameter(request, "filename");
+            if (filename == null) {
+                return true;
+            }
+            existingSize = noteService.getNoteSummaryByUserIdAndFileName(user.getUserId(), filename)
+                    .map(NoteSummary::totalSizeBytes)
+                    .orElse(0L);
+        }
+        return noteService.hasStorageCapacity(user, existingSize, Math.max(0L, fileSize));
+    }
+
+    /**
+     * Read a parameter from the query string only: getParameter would parse the
+     * multipart body
+     */
+    private static String queryParameter(HttpServletRequest request, String name) {
+        String queryString = request.getQueryString();
+        if (queryString == null) {
+            return null;
+        }
+        for (String pair : queryString.split("&")) {
+            int equals = pair.indexOf('=');
+            String key = equals < 0 ? pair : pair.substring(0, equals);
+            if (URLDecoder.decode(key, StandardCharsets.UTF_8).equals(name)) {
+                return equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    private void sendError(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write(objectMapper.writeValueAsString(Map.of("error", message)));
+    }
+}
\ No newline at end of file
@@ -7,7 +7,9 @@ import org.hibernate.annotations.UpdateTimestamp;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "notes")
+@Table(name = "notes", uniqueConstraints = {
+        @UniqueConstraint(name = "ux_notes_user_id_file_name", columnNames = { "user_id", "file_name" })
+})
 public class Note {
 
     @Id
@@ -27,6 +29,14 @@ public class Note {
     @Column(name = "total_size_bytes", nullable = false)
     private Long totalSizeBytes;
 
+    // SHA-256 of the content when the file is a shared blob, null for a per-note object
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    // ID of the note event of the last change, the /notes/changes cursor
+    @Column(name = "change_seq", nullable = false)
+    private Long changeSeq;
+
     @CreationTimestamp
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
@@ -100,6 +110,22 @@ public class Note {
         this.totalSizeBytes = totalSizeBytes;
     }
 
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public Long getChangeSeq() {
+        return changeSeq;
+    }
+
+    public void setChangeSeq(Long changeSeq) {
+        this.changeSeq = changeSeq;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -133,6 +159,8 @@ public class Note {
                 ", userId=" + userId +
                 ", objectKey='" + objectKey + '\'' +
                 ", totalSizeBytes=" + totalSizeBytes +
+                ", contentHash='" + contentHash + '\'' +
+                ", changeSeq=" + changeSeq +
                 ", createdAt=" + createdAt +
                 ", lastModifiedDate=" + lastModifiedDate +
                 ", updatedAt=" + updatedAt +
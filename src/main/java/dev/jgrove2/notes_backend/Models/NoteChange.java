@@ -0,0 +1,12 @@
+package dev.jgrove2.notes_backend.Models;
+
+import java.time.LocalDateTime;
+
+/**
+ * A note created, modified, renamed or deleted after a sync cursor, as returned by
+ * /notes/changes. Deleted notes (and the old name of a renamed note) have deleted set,
+ * no size, and the deletion time as lastModifiedDate.
+ */
+public record NoteChange(String fileName, Long totalSizeBytes, LocalDateTime lastModifiedDate, Long changeSeq,
+        boolean deleted) {
+}
\ No newline at end of file
@@ -0,0 +1,10 @@
+package dev.jgrove2.notes_backend.Models;
+
+import java.util.List;
+
+/**
+ * One page of /notes/changes. The client stores cursor and passes it as since on its
+ * next sync; hasMore means it should do so right away.
+ */
+public record NoteChangePage(List<NoteChange> changes, Long cursor, boolean hasMore) {
+}
\ No newline at end of file
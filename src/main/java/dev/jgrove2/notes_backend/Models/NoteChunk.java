@@ -0,0 +1,65 @@
+package dev.jgrove2.notes_backend.Models;
+
+import jakarta.persistence.*;
+
+/**
+ * A piece of note content shared by every version that contains it
+ */
+@Entity
+@Table(name = "note_chunks")
+public class NoteChunk {
+
+    // SHA-256 of the uncompressed chunk
+    @Id
+    @Column(name = "hash", length = 64)
+    private String hash;
+
+    // Uncompressed size
+    @Column(name = "size_bytes", nullable = false)
+    private Integer sizeBytes;
+
+    // Deflate-compressed chunk
+    @Column(name = "data", nullable = false)
+    private byte[] data;
+
+    // Number of versions listing this chunk
+    @Column(name = "ref_count", nullable = false)
+    private Integer refCount;
+
+    // Default constructor
+    public NoteChunk() {
+    }
+
+    // Getters and Setters
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    public Integer getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public void setSizeBytes(Integer sizeBytes) {
+        this.sizeBytes = sizeBytes;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public void setData(byte[] data) {
+        this.data = data;
+    }
+
+    public Integer getRefCount() {
+        return refCount;
+    }
+
+    public void setRefCount(Integer refCount) {
+        this.refCount = refCount;
+    }
+}
\ No newline at end of file
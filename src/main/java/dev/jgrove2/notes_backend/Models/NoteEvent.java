@@ -0,0 +1,117 @@
+package dev.jgrove2.notes_backend.Models;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * A change to one of a user's notes, streamed to their devices by /notes/events.
+ * IDs increase in commit order for each user, so clients resume after the last ID seen.
+ */
+@Entity
+@Table(name = "note_events")
+public class NoteEvent {
+
+    public static final String TYPE_CREATED = "created";
+
+    public static final String TYPE_UPDATED = "updated";
+
+    public static final String TYPE_RENAMED = "renamed";
+
+    public static final String TYPE_DELETED = "deleted";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id")
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "type", nullable = false, length = 16)
+    private String type;
+
+    @Column(name = "file_name", nullable = false)
+    private String fileName;
+
+    // Renames only
+    @Column(name = "old_file_name")
+    private String oldFileName;
+
+    // Creates and updates only
+    @Column(name = "total_size_bytes")
+    private Long totalSizeBytes;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    // Default constructor
+    public NoteEvent() {
+    }
+
+    // Constructor with required fields
+    public NoteEvent(Long userId, String type, String fileName) {
+        this.userId = userId;
+        this.type = type;
+        this.fileName = fileName;
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getOldFileName() {
+        return oldFileName;
+    }
+
+    public void setOldFileName(String oldFileName) {
+        this.oldFileName = oldFileName;
+    }
+
+    public Long getTotalSizeBytes() {
+        return totalSizeBytes;
+    }
+
+    public void setTotalSizeBytes(Long totalSizeBytes) {
+        this.totalSizeBytes = totalSizeBytes;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,54 @@
+package dev.jgrove2.notes_backend.Models;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * The searchable text of a note. The search_vector column is generated by Postgres
+ * from the body and is not mapped.
+ */
+@Entity
+@Table(name = "note_search_documents")
+public class NoteSearchDocument {
+
+    @Id
+    @Column(name = "note_id")
+    private Long noteId;
+
+    // Note content with HTML tags stripped
+    @Column(name = "body", nullable = false, columnDefinition = "text")
+    private String body;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    // Default constructor
+    public NoteSearchDocument() {
+    }
+
+    // Getters and Setters
+    public Long getNoteId() {
+        return noteId;
+    }
+
+    public void setNoteId(Long noteId) {
+        this.noteId = noteId;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public void setBody(String body) {
+        this.body = body;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
\ No newline at end of file
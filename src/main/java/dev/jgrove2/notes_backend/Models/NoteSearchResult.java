@@ -0,0 +1,7 @@
+package dev.jgrove2.notes_backend.Models;
+
+/**
+ * A note matching a full-text search, with its rank and a snippet of the matching text.
+ */
+public record NoteSearchResult(String fileName, Double rank, String snippet) {
+}
\ No newline at end of file
@@ -0,0 +1,10 @@
+package dev.jgrove2.notes_backend.Models;
+
+import java.time.LocalDateTime;
+
+/**
+ * Read-only projection of a note used for listings and note info responses.
+ * Loaded directly from the query without creating managed Note entities.
+ */
+public record NoteSummary(String fileName, Long totalSizeBytes, LocalDateTime lastModifiedDate) {
+}
\ No newline at end of file
@@ -0,0 +1,175 @@
+package dev.jgrove2.notes_backend.Models;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * A resumable upload of a note file in progress. The file is split into part_count
+ * parts of part_size_bytes (the last one may be smaller), uploaded in any order.
+ */
+@Entity
+@Table(name = "note_uploads")
+public class NoteUpload {
+
+    @Id
+    @Column(name = "id", length = 36)
+    private String id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "file_name", nullable = false)
+    private String fileName;
+
+    @Column(name = "object_key", nullable = false, length = 500)
+    private String objectKey;
+
+    @Column(name = "size_bytes", nullable = false)
+    private Long sizeBytes;
+
+    @Column(name = "part_size_bytes", nullable = false)
+    private Long partSizeBytes;
+
+    @Column(name = "part_count", nullable = false)
+    private Integer partCount;
+
+    // Storage backend's multipart upload ID, null for backends without one
+    @Column(name = "multipart_upload_id", length = 1024)
+    private String multipartUploadId;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    // Set once the parts are joined into the object
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+
+    @Column(name = "expiry_attempts", nullable = false)
+    private int expiryAttempts;
+
+    // When the expiry sweep retries an upload it could not cancel, null before a failure
+    @Column(name = "next_expiry_at")
+    private LocalDateTime nextExpiryAt;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    // Default constructor
+    public NoteUpload() {
+    }
+
+    /**
+     * Size of a part: part_size_bytes, except for the last part
+     */
+    public long getPartSize(int partNumber) {
+        return partNumber < partCount ? partSizeBytes : sizeBytes - (long) (partCount - 1) * partSizeBytes;
+    }
+
+    // Getters and Setters
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getObjectKey() {
+        return objectKey;
+    }
+
+    public void setObjectKey(String objectKey) {
+        this.objectKey = objectKey;
+    }
+
+    public Long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public void setSizeBytes(Long sizeBytes) {
+        this.sizeBytes = sizeBytes;
+    }
+
+    public Long getPartSizeBytes() {
+        return partSizeBytes;
+    }
+
+    public void setPartSizeBytes(Long partSizeBytes) {
+        this.partSizeBytes = partSizeBytes;
+    }
+
+    public Integer getPartCount() {
+        return partCount;
+    }
+
+    public void setPartCount(Integer partCount) {
+        this.partCount = partCount;
+    }
+
+    public String getMultipartUploadId() {
+        return multipartUploadId;
+    }
+
+    public void setMultipartUploadId(String multipartUploadId) {
+        this.multipartUploadId = multipartUploadId;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getCompletedAt() {
+        return completedAt;
+    }
+
+    public void setCompletedAt(LocalDateTime completedAt) {
+        this.completedAt = completedAt;
+    }
+
+    public int getExpiryAttempts() {
+        return expiryAttempts;
+    }
+
+    public void setExpiryAttempts(int expiryAttempts) {
+        this.expiryAttempts = expiryAttempts;
+    }
+
+    public LocalDateTime getNextExpiryAt() {
+        return nextExpiryAt;
+    }
+
+    public void setNextExpiryAt(LocalDateTime nextExpiryAt) {
+        this.nextExpiryAt = nextExpiryAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+}
\ No newline at end of file
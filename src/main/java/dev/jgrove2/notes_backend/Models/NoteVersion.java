@@ -0,0 +1,126 @@
+package dev.jgrove2.notes_backend.Models;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A saved content of a note, stored as a list of NoteChunk hashes
+ */
+@Entity
+@Table(name = "note_versions", uniqueConstraints = {
+        @UniqueConstraint(name = "ux_note_versions_note_id_version", columnNames = { "note_id", "version" })
+})
+public class NoteVersion {
+
+    private static final int HASH_LENGTH = 64;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id")
+    private Long id;
+
+    @Column(name = "note_id", nullable = false)
+    private Long noteId;
+
+    // 1 for the content the note was created with, incremented on every save
+    @Column(name = "version", nullable = false)
+    private Integer version;
+
+    @Column(name = "size_bytes", nullable = false)
+    private Long sizeBytes;
+
+    @Column(name = "content_hash", nullable = false, length = 64)
+    private String contentHash;
+
+    @Column(name = "chunk_hashes", nullable = false, columnDefinition = "text")
+    private String chunkHashes;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    // Default constructor
+    public NoteVersion() {
+    }
+
+    // Constructor with required fields
+    public NoteVersion(Long noteId, Integer version, Long sizeBytes, String contentHash, List<String> chunkHashes) {
+        this.noteId = noteId;
+        this.version = version;
+        this.sizeBytes = sizeBytes;
+        this.contentHash = contentHash;
+        this.chunkHashes = String.join("", chunkHashes);
+    }
+
+    /**
+     * Chunk hashes in content order
+     */
+    public List<String> getChunkHashList() {
+        List<String> hashes = new ArrayList<>(chunkHashes.length() / HASH_LENGTH);
+        for (int i = 0; i < chunkHashes.length(); i += HASH_LENGTH) {
+            hashes.add(chunkHashes.substring(i, i + HASH_LENGTH));
+        }
+        return hashes;
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getNoteId() {
+        return noteId;
+    }
+
+    public void setNoteId(Long noteId) {
+        this.noteId = noteId;
+    }
+
+    public Integer getVersion() {
+        return version;
+    }
+
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
+
+    public Long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public void setSizeBytes(Long sizeBytes) {
+        this.sizeBytes = sizeBytes;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public String getChunkHashes() {
+        return chunkHashes;
+    }
+
+    public void setChunkHashes(String chunkHashes) {
+        this.chunkHashes = chunkHashes;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
\ No newline at end of file
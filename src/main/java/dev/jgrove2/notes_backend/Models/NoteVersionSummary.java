@@ -0,0 +1,9 @@
+package dev.jgrove2.notes_backend.Models;
+
+import java.time.LocalDateTime;
+
+/**
+ * Read-only projection of a note version used for version listings.
+ */
+public record NoteVersionSummary(Integer version, Long sizeBytes, LocalDateTime createdAt) {
+}
\ No newline at end of file
@@ -0,0 +1,78 @@
+package dev.jgrove2.notes_backend.Models;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * An object in note storage that no note may reference yet: written ahead of the note
+ * row that will reference it. Rows are written by PendingObjectService and outlive their
+ * write only after a failure, or when a direct upload is never confirmed.
+ */
+@Entity
+@Table(name = "pending_objects")
+public class PendingObject {
+
+    @Id
+    @Column(name = "object_key", length = 500)
+    private String objectKey;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    // Direct uploads only: the uploading user, the declared size held against their
+    // quota, and when the unconfirmed object may be deleted
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "reserved_bytes")
+    private Long reservedBytes;
+
+    @Column(name = "expires_at")
+    private LocalDateTime expiresAt;
+
+    // Default constructor
+    public PendingObject() {
+    }
+
+    // Getters and Setters
+    public String getObjectKey() {
+        return objectKey;
+    }
+
+    public void setObjectKey(String objectKey) {
+        this.objectKey = objectKey;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public Long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    public void setReservedBytes(Long reservedBytes) {
+        this.reservedBytes = reservedBytes;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
\ No newline at end of file
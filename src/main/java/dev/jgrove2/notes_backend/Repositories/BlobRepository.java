@@ -0,0 +1,63 @@
+package dev.jgrove2.notes_backend.Repositories;
+
+import dev.jgrove2.notes_backend.Models.Blob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface BlobRepository extends JpaRepository<Blob, String> {
+
+    /**
+     * Add a reference to a blob that is already stored
+     *
+     * @return The number of updated rows, 0 if no blob has this hash
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "update blobs set ref_count = ref_count + 1 where hash = :hash", nativeQuery = true)
+    int addExistingReference(@Param("hash") String hash);
+
+    /**
+     * Add a reference to a blob whose object was just uploaded, creating the row unless
+     * a concurrent writer of the same content created it first
+     *
+     * @return The number of inserted or updated rows
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "insert into blobs (hash, size_bytes, ref_count, created_at) values (:hash, :sizeBytes, 1, now()) "
+            + "on conflict (hash) do update set ref_count = blobs.ref_count + 1", nativeQuery = true)
+    int addReference(@Param("hash") String hash, @Param("sizeBytes") long sizeBytes);
+
+    /**
+     * Remove a reference to a blob, locking the row until the transaction ends
+     *
+     * @return The number of updated rows, 0 if the blob does not exist
+     */
+    @Modifying
+    @Query(value = "update blobs set ref_count = ref_count - 1 where hash = :hash", nativeQuery = true)
+    int removeReference(@Param("hash") String hash);
+
+    /**
+     * Delete a blob that is no longer referenced
+     *
+     * @return The number of deleted rows
+     */
+    @Modifying
+    @Query("delete from Blob b where b.hash = :hash and b.refCount <= 0")
+    int deleteUnreferenced(@Param("hash") String hash);
+
+    /**
+     * The given hashes that have a blob, read from the primary
+     */
+    @Transactional
+    @Query("select b.hash from Blob b where b.hash in :hashes")
+    List<String> findHashesIn(@Param("hashes") Collection<String> hashes);
+}
\ No newline at end of file
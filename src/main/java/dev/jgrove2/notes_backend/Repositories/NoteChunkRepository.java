@@ -0,0 +1,58 @@
+package dev.jgrove2.notes_backend.Repositories;
+
+import dev.jgrove2.notes_backend.Models.NoteChunk;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface NoteChunkRepository extends JpaRepository<NoteChunk, String> {
+
+    /**
+     * Lock the existing chunks among hashes until the transaction ends. Rows are locked
+     * in hash order, so saves and prunes sharing chunks cannot deadlock; an UPDATE ...
+     * WHERE hash IN (...) locks them in whatever order the plan visits them.
+     *
+     * @return The hashes that exist
+     */
+    @Query(value = "select hash from note_chunks where hash in (:hashes) order by hash for update",
+            nativeQuery = true)
+    List<String> lockExisting(@Param("hashes") Collection<String> hashes);
+
+    /**
+     * Add a reference to each chunk; lock them with lockExisting first
+     */
+    @Modifying
+    @Query(value = "update note_chunks set ref_count = ref_count + 1 where hash in (:hashes)", nativeQuery = true)
+    int addReferences(@Param("hashes") Collection<String> hashes);
+
+    /**
+     * Insert a new chunk with one reference, or add a reference if it was inserted concurrently
+     */
+    @Modifying
+    @Query(value = "insert into note_chunks (hash, size_bytes, data, ref_count) values (:hash, :sizeBytes, :data, 1) "
+            + "on conflict (hash) do update set ref_count = note_chunks.ref_count + 1", nativeQuery = true)
+    void insertOrAddReference(@Param("hash") String hash, @Param("sizeBytes") int sizeBytes,
+            @Param("data") byte[] data);
+
+    /**
+     * Remove a reference from each chunk; lock them with lockExisting first
+     */
+    @Modifying
+    @Query(value = "update note_chunks set ref_count = ref_count - 1 where hash in (:hashes)", nativeQuery = true)
+    int removeReferences(@Param("hashes") Collection<String> hashes);
+
+    /**
+     * Delete chunks no version refers to any more
+     *
+     * @return The number of deleted chunks
+     */
+    @Modifying
+    @Query("delete from NoteChunk c where c.hash in :hashes and c.refCount <= 0")
+    int deleteUnreferenced(@Param("hashes") Collection<String> hashes);
+}
\ No newline at end of file
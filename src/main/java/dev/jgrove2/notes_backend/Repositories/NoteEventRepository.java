@@ -0,0 +1,54 @@
+package dev.jgrove2.notes_backend.Repositories;
+
+import dev.jgrove2.notes_backend.Models.NoteEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface NoteEventRepository extends JpaRepository<NoteEvent, Long> {
+
+    /**
+     * Take the user's event lock until the transaction ends, so their events get IDs
+     * in commit order
+     */
+    @Query(value = "select 1 from pg_advisory_xact_lock(:userId)", nativeQuery = true)
+    Integer lockUserEvents(@Param("userId") Long userId);
+
+    /**
+     * Find a user's events after the given ID, oldest first. Read from the primary,
+     * as events are read right after the NOTIFY of their commit.
+     */
+    @Transactional
+    List<NoteEvent> findTop500ByUserIdAndIdGreaterThanOrderById(Long userId, Long id);
+
+    /**
+     * Latest event ID of a user, 0 if they have none
+     */
+    @Transactional
+    @Query("select coalesce(max(e.id), 0) from NoteEvent e where e.userId = :userId")
+    long findLatestIdByUserId(@Param("userId") Long userId);
+
+    /**
+     * Oldest retained event ID, null if there are none
+     */
+    @Transactional
+    @Query("select min(e.id) from NoteEvent e")
+    Long findOldestId();
+
+    /**
+     * Delete events created before the cutoff
+     *
+     * @return The number of deleted events
+     */
+    @Modifying
+    @Transactional
+    @Query("delete from NoteEvent e where e.createdAt < :cutoff")
+    int deleteByCreatedAtBefore(@Param("cutoff") LocalDateTime cutoff);
+}
\ No newline at end of file
@@ -1,9 +1,23 @@
 package dev.jgrove2.notes_backend.Repositories;
 
 import dev.jgrove2.notes_backend.Models.Note;
+import dev.jgrove2.notes_backend.Models.NoteChange;
+import dev.jgrove2.notes_backend.Models.NoteSummary;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -13,13 +27,27 @@ public interface NoteRepository extends JpaRepository<Note, Long> {
     /**
      * Find all notes by user ID
      */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_FLUSH_MODE, value = "MANUAL") })
     List<Note> findByUserId(Long userId);
 
+    /**
+     * Find note by ID, locking its row until the transaction ends
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<Note> findLockedById(Long id);
+
     /**
      * Find note by user ID and file name
      */
     Optional<Note> findByUserIdAndFileName(Long userId, String fileName);
 
+    /**
+     * Find notes by user ID whose file name is any of the given names
+     */
+    List<Note> findByUserIdAndFileNameIn(Long userId, Collection<String> fileNames);
+
     /**
      * Check if note exists by user ID and file name
      */
@@ -28,10 +56,107 @@ public interface NoteRepository extends JpaRepository<Note, Long> {
     /**
      * Find all notes by user ID ordered by creation date (newest first)
      */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_FLUSH_MODE, value = "MANUAL") })
     List<Note> findByUserIdOrderByCreatedAtDesc(Long userId);
 
+    /**
+     * Find note summaries by user ID ordered by creation date (newest first)
+     */
+    @Query("select new dev.jgrove2.notes_backend.Models.NoteSummary(n.fileName, n.totalSizeBytes, n.lastModifiedDate) "
+            + "from Note n where n.userId = :userId order by n.createdAt desc")
+    List<NoteSummary> findSummariesByUserId(@Param("userId") Long userId);
+
+    /**
+     * Find note summary by user ID and file name
+     */
+    @Query("select new dev.jgrove2.notes_backend.Models.NoteSummary(n.fileName, n.totalSizeBytes, n.lastModifiedDate) "
+            + "from Note n where n.userId = :userId and n.fileName = :fileName")
+    Optional<NoteSummary> findSummaryByUserIdAndFileName(@Param("userId") Long userId,
+            @Param("fileName") String fileName);
+
+    /**
+     * Find notes by user ID changed after the cursor, oldest change first.
+     * Served by ix_notes_user_id_change_seq.
+     */
+    @Query("select new dev.jgrove2.notes_backend.Models.NoteChange(n.fileName, n.totalSizeBytes, n.lastModifiedDate, "
+            + "n.changeSeq, false) from Note n where n.userId = :userId and n.changeSeq > :since order by n.changeSeq")
+    List<NoteChange> findChangesByUserId(@Param("userId") Long userId, @Param("since") Long since,
+            Pageable pageable);
+
+    /**
+     * Find all file names by user ID
+     */
+    @Query("select n.fileName from Note n where n.userId = :userId")
+    List<String> findFileNamesByUserId(@Param("userId") Long userId);
+
+    /**
+     * Find file names by user ID starting with the given LIKE pattern (e.g. "folder/%").
+     * Served by ux_notes_user_id_file_name (text_pattern_ops).
+     */
+    @Query("select n.fileName from Note n where n.userId = :userId and n.fileName like :pattern escape '\\'")
+    List<String> findFileNamesByUserIdAndFileNameLike(@Param("userId") Long userId,
+            @Param("pattern") String pattern);
+
+    /**
+     * Sum of note sizes by user ID, 0 when the user has no notes
+     */
+    @Query("select coalesce(sum(n.totalSizeBytes), 0) from Note n where n.userId = :userId")
+    long sumTotalSizeBytesByUserId(@Param("userId") Long userId);
+
     /**
      * Count notes by user ID
      */
     long countByUserId(Long userId);
+
+    /**
+     * ID, object key and content hash of a deleted note
+     */
+    interface NoteFile {
+        Long getId();
+
+        String getObjectKey();
+
+        String getContentHash();
+    }
+
+    /**
+     * Delete note by user ID and file name in a single statement
+     *
+     * @return The deleted note's file, empty if there was no such note
+     */
+    @Query(value = "delete from notes where user_id = :userId and file_name = :fileName "
+            + "returning id as id, object_key as objectKey, content_hash as contentHash", nativeQuery = true)
+    Optional<NoteFile> deleteByUserIdAndFileName(@Param("userId") Long userId, @Param("fileName") String fileName);
+
+    /**
+     * Whether a note references the object key, read from the primary
+     */
+    @Transactional
+    @Query(value = "select exists (select 1 from notes n where n.object_key collate \"C\" = :objectKey)",
+            nativeQuery = true)
+    boolean existsByObjectKey(@Param("objectKey") String objectKey);
+
+    /**
+     * The given object keys that notes reference, read from the primary
+     */
+    @Transactional
+    @Query(value = "select n.object_key from notes n where n.object_key collate \"C\" in (:objectKeys)",
+            nativeQuery = true)
+    List<String> findReferencedObjectKeys(@Param("objectKeys") Collection<String> objectKeys);
+
+    /**
+     * Notes with a per-note object whose key sorts after the given key, and at most the
+     * last key if bounded, in byte order like an S3 listing: a keyset scan of
+     * ix_notes_object_key. Notes modified after the cutoff are skipped, as their object
+     * may still be being written. Read from the primary.
+     */
+    @Transactional
+    @Query(value = "select * from notes n where n.object_key collate \"C\" > :after "
+            + "and (:bounded = false or n.object_key collate \"C\" <= :last) "
+            + "and n.content_hash is null and n.last_modified_date < :cutoff "
+            + "order by n.object_key collate \"C\" limit :limit", nativeQuery = true)
+    List<Note> findByObjectKeyRange(@Param("after") String after, @Param("last") String last,
+            @Param("bounded") boolean bounded, @Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
 }
\ No newline at end of file
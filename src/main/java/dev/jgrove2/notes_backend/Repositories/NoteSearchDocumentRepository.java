@@ -0,0 +1,91 @@
+package dev.jgrove2.notes_backend.Repositories;
+
+import dev.jgrove2.notes_backend.Models.NoteSearchDocument;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface NoteSearchDocumentRepository extends JpaRepository<NoteSearchDocument, Long> {
+
+    /**
+     * Insert or replace the searchable text of a note, clearing any backfill failure
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "with cleared as (delete from note_search_failures where note_id = :noteId) "
+            + "insert into note_search_documents (note_id, body, updated_at) values (:noteId, :body, now()) "
+            + "on conflict (note_id) do update set body = excluded.body, updated_at = excluded.updated_at",
+            nativeQuery = true)
+    void upsert(@Param("noteId") Long noteId, @Param("body") String body);
+
+    /**
+     * Insert the searchable text of a note unless it was indexed in the meantime, clearing
+     * any backfill failure
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "with cleared as (delete from note_search_failures where note_id = :noteId) "
+            + "insert into note_search_documents (note_id, body, updated_at) values (:noteId, :body, now()) "
+            + "on conflict (note_id) do nothing", nativeQuery = true)
+    void insertIfAbsent(@Param("noteId") Long noteId, @Param("body") String body);
+
+    /**
+     * Find a user's notes matching a web-style query (quoted phrases, OR, -word), best first,
+     * as rows of file name, rank and snippet (matches between chr(2) and chr(3)).
+     * Served by ix_note_search_documents_search_vector.
+     */
+    @Query(value = "select n.file_name, ts_rank_cd(d.search_vector, q.query) as rank, "
+            + "ts_headline('english', d.body, q.query, "
+            + "concat('MaxFragments=2, MinWords=5, MaxWords=20, StartSel=', chr(2), ', StopSel=', chr(3))) as snippet "
+            + "from note_search_documents d "
+            + "join notes n on n.id = d.note_id "
+            + "cross join websearch_to_tsquery('english', :query) q(query) "
+            + "where n.user_id = :userId and d.search_vector @@ q.query "
+            + "order by rank desc, n.file_name "
+            + "limit :limit", nativeQuery = true)
+    List<Object[]> search(@Param("userId") Long userId, @Param("query") String query, @Param("limit") int limit);
+
+    /**
+     * Find IDs of notes after the given ID that have no search document yet, for backfilling,
+     * skipping notes whose last failure is still backing off
+     */
+    @Query(value = "select n.id from notes n where n.id > :afterId and not exists "
+            + "(select 1 from note_search_documents d where d.note_id = n.id) and not exists "
+            + "(select 1 from note_search_failures f where f.note_id = n.id "
+            + "and f.next_attempt_at > cast(:now as timestamp)) order by n.id limit :limit",
+            nativeQuery = true)
+    List<Long> findUnindexedNoteIds(@Param("afterId") Long afterId, @Param("now") LocalDateTime now,
+            @Param("limit") int limit);
+
+    /**
+     * Record a failed attempt to backfill a note, retrying it after retryBaseMillis
+     * doubled per earlier attempt, up to retryMaxMillis
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "insert into note_search_failures (note_id, attempts, next_attempt_at, last_error) "
+            + "values (:noteId, 1, cast(:now as timestamp) + least(:retryMaxMillis, :retryBaseMillis) "
+            + "* interval '1 millisecond', :lastError) "
+            + "on conflict (note_id) do update set attempts = note_search_failures.attempts + 1, "
+            + "next_attempt_at = cast(:now as timestamp) + least(:retryMaxMillis, :retryBaseMillis "
+            + "* power(2, least(note_search_failures.attempts, 20))) * interval '1 millisecond', "
+            + "last_error = excluded.last_error", nativeQuery = true)
+    int recordFailure(@Param("noteId") Long noteId, @Param("lastError") String lastError,
+            @Param("now") LocalDateTime now, @Param("retryBaseMillis") long retryBaseMillis,
+            @Param("retryMaxMillis") long retryMaxMillis);
+
+    /**
+     * Forget a note's backfill failure, when the note is deleted
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "delete from note_search_failures where note_id = :noteId", nativeQuery = true)
+    int deleteFailure(@Param("noteId") Long noteId);
+}
\ No newline at end of file
@@ -0,0 +1,43 @@
+package dev.jgrove2.notes_backend.Repositories;
+
+import dev.jgrove2.notes_backend.Models.NoteChange;
+import dev.jgrove2.notes_backend.Models.NoteTombstone;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface NoteTombstoneRepository extends JpaRepository<NoteTombstone, Long> {
+
+    /**
+     * Record that a file name was deleted (or renamed away) by the given change
+     */
+    @Modifying
+    @Query(value = "insert into note_tombstones (user_id, file_name, change_seq, deleted_at) "
+            + "values (:userId, :fileName, :changeSeq, now()) on conflict (user_id, file_name) "
+            + "do update set change_seq = excluded.change_seq, deleted_at = excluded.deleted_at",
+            nativeQuery = true)
+    void upsert(@Param("userId") Long userId, @Param("fileName") String fileName,
+            @Param("changeSeq") Long changeSeq);
+
+    /**
+     * Remove the tombstone of a file name that is in use again
+     */
+    @Modifying
+    @Query("delete from NoteTombstone t where t.userId = :userId and t.fileName = :fileName")
+    int deleteByUserIdAndFileName(@Param("userId") Long userId, @Param("fileName") String fileName);
+
+    /**
+     * Find tombstones by user ID recorded after the cursor, oldest first.
+     * Served by ix_note_tombstones_user_id_change_seq.
+     */
+    @Query("select new dev.jgrove2.notes_backend.Models.NoteChange(t.fileName, null, t.deletedAt, t.changeSeq, true) "
+            + "from NoteTombstone t where t.userId = :userId and t.changeSeq > :since order by t.changeSeq")
+    List<NoteChange> findChangesByUserId(@Param("userId") Long userId, @Param("since") Long since,
+            Pageable pageable);
+}
\ No newline at end of file
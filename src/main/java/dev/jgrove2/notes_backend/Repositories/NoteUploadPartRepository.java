@@ -0,0 +1,41 @@
+package dev.jgrove2.notes_backend.Repositories;
+
+import dev.jgrove2.notes_backend.Models.NoteUploadPart;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface NoteUploadPartRepository extends JpaRepository<NoteUploadPart, Long> {
+
+    /**
+     * Record a stored part, replacing an earlier attempt at the same part
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "insert into note_upload_parts (upload_id, part_number, size_bytes, etag, created_at) "
+            + "values (:uploadId, :partNumber, :sizeBytes, :etag, now()) "
+            + "on conflict (upload_id, part_number) do update set size_bytes = excluded.size_bytes, "
+            + "etag = excluded.etag, created_at = excluded.created_at", nativeQuery = true)
+    void upsert(@Param("uploadId") String uploadId, @Param("partNumber") Integer partNumber,
+            @Param("sizeBytes") Long sizeBytes, @Param("etag") String etag);
+
+    /**
+     * Find the stored parts of an upload in part number order. Read from the primary.
+     */
+    @Transactional
+    List<NoteUploadPart> findByUploadIdOrderByPartNumber(String uploadId);
+
+    /**
+     * Delete the parts of an upload
+     */
+    @Modifying
+    @Transactional
+    @Query("delete from NoteUploadPart p where p.uploadId = :uploadId")
+    int deleteByUploadId(@Param("uploadId") String uploadId);
+}
\ No newline at end of file
@@ -0,0 +1,71 @@
+package dev.jgrove2.notes_backend.Repositories;
+
+import dev.jgrove2.notes_backend.Models.NoteUpload;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface NoteUploadRepository extends JpaRepository<NoteUpload, String> {
+
+    /**
+     * Find a user's upload. Read from the primary, as parts follow right after the
+     * upload is started.
+     */
+    @Transactional
+    Optional<NoteUpload> findByIdAndUserId(String id, Long userId);
+
+    /**
+     * Find uploads started before the cutoff that are due for expiry: never tried, or
+     * whose backoff after a failed attempt has passed
+     */
+    @Transactional
+    @Query("select u from NoteUpload u where u.createdAt < :cutoff "
+            + "and (u.nextExpiryAt is null or u.nextExpiryAt <= :now) order by u.createdAt")
+    List<NoteUpload> findExpired(@Param("cutoff") LocalDateTime cutoff, @Param("now") LocalDateTime now,
+            Pageable pageable);
+
+    /**
+     * Record that an upload's parts were joined into its object
+     */
+    @Transactional
+    @Modifying
+    @Query("update NoteUpload u set u.completedAt = :completedAt where u.id = :id")
+    int markCompleted(@Param("id") String id, @Param("completedAt") LocalDateTime completedAt);
+
+    /**
+     * Record a failed attempt to expire an upload, retrying it after retryBaseMillis
+     * doubled per earlier attempt, up to retryMaxMillis
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "update note_uploads set expiry_attempts = expiry_attempts + 1, "
+            + "next_expiry_at = cast(:now as timestamp) "
+            + "+ least(:retryMaxMillis, :retryBaseMillis * power(2, least(expiry_attempts, 20))) "
+            + "* interval '1 millisecond', last_error = :lastError where id = :id", nativeQuery = true)
+    int recordExpiryFailure(@Param("id") String id, @Param("lastError") String lastError,
+            @Param("now") LocalDateTime now, @Param("retryBaseMillis") long retryBaseMillis,
+            @Param("retryMaxMillis") long retryMaxMillis);
+
+    /**
+     * Whether an upload in progress writes to the object key, read from the primary
+     */
+    @Transactional
+    boolean existsByObjectKey(String objectKey);
+
+    /**
+     * The given object keys that uploads in progress write to, read from the primary
+     */
+    @Transactional
+    @Query("select u.objectKey from NoteUpload u where u.objectKey in :objectKeys")
+    List<String> findObjectKeysIn(@Param("objectKeys") Collection<String> objectKeys);
+}
\ No newline at end of file
@@ -0,0 +1,46 @@
+package dev.jgrove2.notes_backend.Repositories;
+
+import dev.jgrove2.notes_backend.Models.NoteVersion;
+import dev.jgrove2.notes_backend.Models.NoteVersionSummary;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface NoteVersionRepository extends JpaRepository<NoteVersion, Long> {
+
+    /**
+     * Find version summaries by note ID (newest first)
+     */
+    @Query("select new dev.jgrove2.notes_backend.Models.NoteVersionSummary(v.version, v.sizeBytes, v.createdAt) "
+            + "from NoteVersion v where v.noteId = :noteId order by v.version desc")
+    List<NoteVersionSummary> findSummariesByNoteId(@Param("noteId") Long noteId);
+
+    /**
+     * Find a version of a note
+     */
+    Optional<NoteVersion> findByNoteIdAndVersion(Long noteId, Integer version);
+
+    /**
+     * Find the latest version of a note
+     */
+    Optional<NoteVersion> findFirstByNoteIdOrderByVersionDesc(Long noteId);
+
+    /**
+     * Find all versions of a note (newest first), for retention
+     */
+    List<NoteVersion> findByNoteIdOrderByVersionDesc(Long noteId);
+
+    /**
+     * Find versions created before the cutoff that are not the latest version of their note
+     */
+    @Query("select v from NoteVersion v where v.createdAt < :cutoff and v.version < "
+            + "(select max(l.version) from NoteVersion l where l.noteId = v.noteId)")
+    List<NoteVersion> findExpired(@Param("cutoff") LocalDateTime cutoff, Pageable pageable);
+}
\ No newline at end of file
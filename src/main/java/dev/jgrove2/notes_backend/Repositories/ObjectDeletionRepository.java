@@ -0,0 +1,100 @@
+package dev.jgrove2.notes_backend.Repositories;
+
+import dev.jgrove2.notes_backend.Models.ObjectDeletion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ObjectDeletionRepository extends JpaRepository<ObjectDeletion, String> {
+
+    /**
+     * Queue an object key for deletion, due at once. A key already queued keeps its
+     * enqueued_at, so the backlog age counts from the first request, and its claim: the
+     * worker deleting it right now deletes the same object.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "insert into object_deletions (object_key, attempts, next_attempt_at, enqueued_at) "
+            + "values (:objectKey, 0, :now, :now) "
+            + "on conflict (object_key) do update set attempts = 0, next_attempt_at = excluded.next_attempt_at, "
+            + "last_error = null", nativeQuery = true)
+    void enqueue(@Param("objectKey") String objectKey, @Param("now") LocalDateTime now);
+
+    /**
+     * Lock up to limit due keys that no worker has claimed, oldest first, skipping rows
+     * another instance is claiming right now. Call in the claiming transaction; runs on
+     * the primary, as a lagging replica would hand out keys already deleted.
+     */
+    @Query(value = "select object_key from object_deletions where next_attempt_at <= :now "
+            + "and (claimed_until is null or claimed_until < :now) order by next_attempt_at limit :limit "
+            + "for update skip locked", nativeQuery = true)
+    List<String> lockDueObjectKeys(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    /**
+     * Claim locked keys until the end of the lease, in the claiming transaction
+     */
+    @Modifying
+    @Query("update ObjectDeletion d set d.claimedUntil = :claimedUntil where d.objectKey in :objectKeys")
+    int claim(@Param("objectKeys") Collection<String> objectKeys, @Param("claimedUntil") LocalDateTime claimedUntil);
+
+    /**
+     * Drop queued keys whose object is referenced again
+     */
+    @Modifying
+    @Query("delete from ObjectDeletion d where d.objectKey in :objectKeys")
+    int deleteByObjectKeyIn(@Param("objectKeys") Collection<String> objectKeys);
+
+    /**
+     * Whether a worker is deleting the key's object right now
+     */
+    @Query("select count(d) > 0 from ObjectDeletion d where d.objectKey = :objectKey and d.claimedUntil >= :now")
+    boolean isClaimed(@Param("objectKey") String objectKey, @Param("now") LocalDateTime now);
+
+    /**
+     * Enqueue time of the oldest queued key, empty when the queue is drained. Read from
+     * the primary.
+     */
+    @Transactional
+    @Query("select min(d.enqueuedAt) from ObjectDeletion d")
+    Optional<LocalDateTime> findOldestEnqueuedAt();
+
+    /**
+     * Remove keys whose objects were deleted, unless the claim expired and another
+     * worker claimed them since
+     *
+     * @param claimedUntil The end of the lease the keys were claimed with
+     * @return The number of deleted rows
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from ObjectDeletion d where d.objectKey in :objectKeys and d.claimedUntil = :claimedUntil")
+    int deleteDeleted(@Param("objectKeys") Collection<String> objectKeys,
+            @Param("claimedUntil") LocalDateTime claimedUntil);
+
+    /**
+     * Release the claim of keys whose objects could not be deleted, retrying each after
+     * retryBaseMillis doubled per earlier attempt, up to retryMaxMillis
+     *
+     * @param claimedUntil The end of the lease the keys were claimed with
+     * @return The number of updated rows
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "update object_deletions set attempts = attempts + 1, claimed_until = null, "
+            + "next_attempt_at = cast(:now as timestamp) "
+            + "+ least(:retryMaxMillis, :retryBaseMillis * power(2, least(attempts, 20))) * interval '1 millisecond', "
+            + "last_error = :lastError where object_key in (:objectKeys) and claimed_until = :claimedUntil",
+            nativeQuery = true)
+    int recordFailure(@Param("objectKeys") Collection<String> objectKeys, @Param("lastError") String lastError,
+            @Param("now") LocalDateTime now, @Param("claimedUntil") LocalDateTime claimedUntil,
+            @Param("retryBaseMillis") long retryBaseMillis, @Param("retryMaxMillis") long retryMaxMillis);
+}
\ No newline at end of file
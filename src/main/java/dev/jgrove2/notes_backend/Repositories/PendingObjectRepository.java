@@ -0,0 +1,93 @@
+package dev.jgrove2.notes_backend.Repositories;
+
+import dev.jgrove2.notes_backend.Models.PendingObject;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface PendingObjectRepository extends JpaRepository<PendingObject, String> {
+
+    /**
+     * Take the lock of an object key until the transaction ends, so an object is never
+     * written while the reconciler decides to delete it. Two-key advisory locks do not
+     * overlap the single-key user event locks.
+     */
+    @Query(value = "select 1 from pg_advisory_xact_lock(2, hashtext(:objectKey))", nativeQuery = true)
+    Integer lockObjectKey(@Param("objectKey") String objectKey);
+
+    /**
+     * Take the lock of an object key until the transaction ends, unless another
+     * transaction holds it
+     *
+     * @return true if the lock was taken
+     */
+    @Query(value = "select pg_try_advisory_xact_lock(2, hashtext(:objectKey))", nativeQuery = true)
+    boolean tryLockObjectKey(@Param("objectKey") String objectKey);
+
+    /**
+     * Record an object key as pending, restarting its grace period if it already is
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "insert into pending_objects (object_key, created_at) values (:objectKey, :createdAt) "
+            + "on conflict (object_key) do update set created_at = excluded.created_at", nativeQuery = true)
+    void upsert(@Param("objectKey") String objectKey, @Param("createdAt") LocalDateTime createdAt);
+
+    /**
+     * Record the object key of a direct upload as pending, reserving its declared size
+     * against the user's quota until it is confirmed or expires
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "insert into pending_objects (object_key, created_at, user_id, reserved_bytes, expires_at) "
+            + "values (:objectKey, :createdAt, :userId, :reservedBytes, :expiresAt)", nativeQuery = true)
+    void insertReservation(@Param("objectKey") String objectKey, @Param("createdAt") LocalDateTime createdAt,
+            @Param("userId") Long userId, @Param("reservedBytes") long reservedBytes,
+            @Param("expiresAt") LocalDateTime expiresAt);
+
+    /**
+     * Bytes a user's unconfirmed direct uploads hold against their quota, except the
+     * given object key's (the upload being confirmed; "" for none)
+     */
+    @Query("select coalesce(sum(p.reservedBytes), 0) from PendingObject p "
+            + "where p.userId = :userId and p.objectKey <> :exceptObjectKey")
+    long sumReservedBytesByUserId(@Param("userId") Long userId,
+            @Param("exceptObjectKey") String exceptObjectKey);
+
+    /**
+     * Remove an object key once a note references it or the object is deleted
+     *
+     * @return The number of deleted rows
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from PendingObject p where p.objectKey = :objectKey")
+    int deleteByObjectKey(@Param("objectKey") String objectKey);
+
+    /**
+     * Object keys pending since before the cutoff, oldest first, and direct uploads that
+     * expired before now. Read from the primary, as a lagging replica would report keys
+     * already cleared.
+     */
+    @Transactional
+    @Query("select p.objectKey from PendingObject p where (p.expiresAt is null and p.createdAt < :cutoff) "
+            + "or p.expiresAt < :now order by p.createdAt")
+    List<String> findExpiredObjectKeys(@Param("cutoff") LocalDateTime cutoff, @Param("now") LocalDateTime now,
+            Pageable pageable);
+
+    /**
+     * The given object keys that are pending, read from the primary
+     */
+    @Transactional
+    @Query("select p.objectKey from PendingObject p where p.objectKey in :objectKeys")
+    List<String> findObjectKeysIn(@Param("objectKeys") Collection<String> objectKeys);
+}
\ No newline at end of file
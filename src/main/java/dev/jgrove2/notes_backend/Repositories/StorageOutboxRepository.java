@@ -0,0 +1,86 @@
+package dev.jgrove2.notes_backend.Repositories;
+
+import dev.jgrove2.notes_backend.Models.StorageOutboxEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface StorageOutboxRepository extends JpaRepository<StorageOutboxEntry, Long> {
+
+    /**
+     * Queue an operation for an object key, replacing any operation still pending for it.
+     * The original enqueued_at is kept so replication lag counts from the first unreplicated change.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "insert into storage_outbox (object_key, operation, seq, attempts, next_attempt_at, enqueued_at) "
+            + "values (:objectKey, :operation, nextval('storage_outbox_seq'), 0, now(), now()) "
+            + "on conflict (object_key) do update set operation = excluded.operation, seq = excluded.seq, "
+            + "attempts = 0, next_attempt_at = excluded.next_attempt_at, last_error = null", nativeQuery = true)
+    void enqueue(@Param("objectKey") String objectKey, @Param("operation") String operation);
+
+    /**
+     * Up to 100 entries due for a replication attempt, oldest first. Read-write so it
+     * runs on the primary: a lagging replica would hand out entries already replicated.
+     */
+    @Transactional
+    List<StorageOutboxEntry> findTop100ByNextAttemptAtLessThanEqualOrderByNextAttemptAt(LocalDateTime now);
+
+    /**
+     * Object keys with a write not yet copied to R2, read from the primary
+     */
+    @Transactional
+    @Query("select e.objectKey from StorageOutboxEntry e where e.operation = 'PUT'")
+    List<String> findPendingPutObjectKeys();
+
+    /**
+     * Object keys with a delete not yet applied to R2, read from the primary
+     */
+    @Transactional
+    @Query("select e.objectKey from StorageOutboxEntry e where e.operation = 'DELETE'")
+    List<String> findPendingDeleteObjectKeys();
+
+    /**
+     * Find the pending entry for an object key, read from the primary
+     */
+    @Transactional
+    Optional<StorageOutboxEntry> findByObjectKey(String objectKey);
+
+    /**
+     * Enqueue time of the oldest pending entry, empty when replication is caught up.
+     * Read from the primary.
+     */
+    @Transactional
+    @Query("select min(e.enqueuedAt) from StorageOutboxEntry e")
+    Optional<LocalDateTime> findOldestEnqueuedAt();
+
+    /**
+     * Remove an entry after it was replicated, unless a newer operation replaced it meanwhile
+     *
+     * @return The number of deleted rows
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from StorageOutboxEntry e where e.id = :id and e.seq = :seq")
+    int deleteByIdAndSeq(@Param("id") Long id, @Param("seq") Long seq);
+
+    /**
+     * Record a failed attempt, unless a newer operation replaced the entry meanwhile
+     *
+     * @return The number of updated rows
+     */
+    @Transactional
+    @Modifying
+    @Query("update StorageOutboxEntry e set e.attempts = e.attempts + 1, e.nextAttemptAt = :nextAttemptAt, "
+            + "e.lastError = :lastError where e.id = :id and e.seq = :seq")
+    int recordFailure(@Param("id") Long id, @Param("seq") Long seq,
+            @Param("nextAttemptAt") LocalDateTime nextAttemptAt, @Param("lastError") String lastError);
+}
\ No newline at end of file
@@ -0,0 +1,198 @@
+package dev.jgrove2.notes_backend.Services;
+
+import dev.jgrove2.notes_backend.Repositories.BlobRepository;
+import dev.jgrove2.notes_backend.Repositories.PendingObjectRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Content-addressed note files, enabled with notes.storage.content-addressed.
+ *
+ * Each distinct content is stored once in NoteStorage under blobs/ab/abcd...ef (its
+ * SHA-256) and reference-counted in the blobs table; writing content that is already
+ * stored only increments the count. The object is queued for deletion when the last
+ * note referencing it is deleted or changes content. Writing content whose object is
+ * being deleted at that moment waits up to notes.blobs.acquire-wait-ms for the deletion,
+ * then fails with BlobBusyException for the client to retry.
+ */
+@Service
+public class BlobService {
+
+    private static final long REGISTER_RETRY_MILLIS = 100;
+
+    @Autowired
+    private BlobRepository blobRepository;
+
+    @Autowired
+    private PendingObjectRepository pendingObjectRepository;
+
+    @Autowired
+    private PendingObjectService pendingObjectService;
+
+    @Autowired
+    private NoteStorage noteStorage;
+
+    @Autowired
+    private ObjectDeletionService objectDeletionService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${notes.storage.content-addressed:false}")
+    private boolean enabled;
+
+    @Value("${notes.blobs.acquire-wait-ms:2000}")
+    private long acquireWaitMillis;
+
+    private Counter uploaded;
+
+    private Counter deduplicated;
+
+    /**
+     * The object of the content is still being deleted; the write can be retried shortly
+     */
+    public static class BlobBusyException extends RuntimeException {
+        public BlobBusyException(String hash) {
+            super("Content " + hash + " is being deleted, try again shortly");
+        }
+    }
+
+    @PostConstruct
+    void init() {
+        uploaded = Counter.builder("notes.blobs.writes").tag("result", "uploaded").register(meterRegistry);
+        deduplicated = Counter.builder("notes.blobs.writes").tag("result", "deduplicated").register(meterRegistry);
+    }
+
+    /**
+     * Whether new note content is stored as shared blobs
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * SHA-256 of the content, as lowercase hex
+     *
+     * @param content The content, read once
+     * @return The content hash
+     */
+    public String hash(InputStreamSource content) {
+        MessageDigest digest = sha256();
+        try (InputStream inputStream = content.getInputStream()) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to hash file: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Add a reference to the blob with the given hash, uploading the content only if no
+     * note references it yet. No transaction is held during the upload: the object key
+     * is registered as pending first (after any delete of the same object in flight), so
+     * the deletion worker and the reconciler leave the object alone, and the blob row is
+     * created once the object exists. Concurrent
+     * writers of the same new content may each upload it; the uploads are identical.
+     *
+     * @param hash      The content hash, from hash()
+     * @param sizeBytes The content size
+     * @param content   The content, read again only when it has to be uploaded
+     * @return The object key of the blob
+     * @throws BlobBusyException If the content's object is still being deleted after
+     *                           notes.blobs.acquire-wait-ms
+     */
+    public String acquire(String hash, long sizeBytes, InputStreamSource content) {
+        String objectKey = objectKeyFor(hash);
+        if (blobRepository.addExistingReference(hash) == 1) {
+            deduplicated.increment();
+            return objectKey;
+        }
+
+        // If the upload fails the registration stays, and the reconciler deletes whatever
+        // was written once its grace period is over
+        long deadline = System.nanoTime() + acquireWaitMillis * 1_000_000;
+        while (!pendingObjectService.registerBlob(objectKey)) {
+            // The object of this content was released and is being deleted right now. A
+            // delete usually takes one request, but a claim can last up to
+            // notes.deletions.lease-ms, too long to hold the request for.
+            long remainingMillis = (deadline - System.nanoTime()) / 1_000_000;
+            if (remainingMillis <= 0) {
+                throw new BlobBusyException(hash);
+            }
+            try {
+                Thread.sleep(Math.min(REGISTER_RETRY_MILLIS, remainingMillis));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for blob " + hash + " to be deleted", e);
+            }
+        }
+        try (InputStream inputStream = content.getInputStream()) {
+            noteStorage.updateFile(inputStream, objectKey);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to upload blob " + hash + ": " + e.getMessage(), e);
+        }
+        blobRepository.addReference(hash, sizeBytes);
+        // The blob row references the object from here on
+        pendingObjectRepository.deleteByObjectKey(objectKey);
+        uploaded.increment();
+        return objectKey;
+    }
+
+    /**
+     * Remove a reference to the blob with the given hash, queueing its object for
+     * deletion with the last one. The deletion worker claims the object under the object
+     * key's lock and skips it if a concurrent acquire of the same content registered it again.
+     *
+     * @param hash The content hash of the note that no longer uses the blob
+     */
+    @Transactional
+    public void release(String hash) {
+        if (blobRepository.removeReference(hash) == 0) {
+            return;
+        }
+        if (blobRepository.deleteUnreferenced(hash) == 1) {
+            objectDeletionService.enqueue(objectKeyFor(hash));
+        }
+    }
+
+    /**
+     * Object key of a blob: blobs/ab/abcd...ef
+     */
+    public static String objectKeyFor(String hash) {
+        return "blobs/" + hash.substring(0, 2) + "/" + hash;
+    }
+
+    /**
+     * Content hash of a blob's object key, null if the key is not a blob's
+     */
+    public static String hashOf(String objectKey) {
+        if (!objectKey.startsWith("blobs/") || objectKey.length() != "blobs/ab/".length() + 64) {
+            return null;
+        }
+        return objectKey.substring("blobs/ab/".length());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,231 @@
+package dev.jgrove2.notes_backend.Services;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.function.Supplier;
+
+/**
+ * Note storage on the local filesystem, for self-hosted deployments and offline testing.
+ *
+ * Files are stored under notes.storage.local.root at ab/cd/abcd...ef, the SHA-256 of the
+ * object key, so directories stay small and user-supplied file names never become paths.
+ * Writes go to a temporary file in the target directory and are renamed into place, so
+ * readers see either the old or the new content, never a partial file. With
+ * notes.storage.local.fsync the file and then its directory are flushed before a write
+ * returns, so a crash cannot lose the rename of a write that was reported as done.
+ */
+@Service
+// Also the disk tier of TieredNoteStorage
+@ConditionalOnExpression("'${notes.storage.backend:r2}' matches 'local|tiered'")
+public class LocalNoteStorage implements NoteStorage {
+
+    @Autowired
+    private ObservationRegistry observationRegistry;
+
+    @Value("${notes.storage.local.root:data/notes}")
+    private Path root;
+
+    @Value("${notes.storage.local.fsync:true}")
+    private boolean fsync;
+
+    /**
+     * Write a new file to local disk
+     */
+    @Override
+    public String uploadFile(InputStream fileInputStream, String fileName, Long userId) {
+        String objectKey = NoteStorage.generateObjectKey(userId, fileName);
+        observe("put", () -> write(fileInputStream, objectKey));
+        return objectKey;
+    }
+
+    /**
+     * Replace a file on local disk
+     */
+    @Override
+    public String updateFile(InputStream fileInputStream, String objectKey) {
+        observe("put", () -> write(fileInputStream, objectKey));
+        return objectKey;
+    }
+
+    /**
+     * Delete a file from local disk
+     */
+    @Override
+    public void deleteFile(String objectKey) {
+        observe("delete", () -> {
+            try {
+                return Files.deleteIfExists(pathFor(objectKey));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to delete file " + objectKey + ": " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Open a file on local disk for reading
+     */
+    @Override
+    public InputStream getFile(String objectKey) {
+        return observe("get", () -> {
+            try {
+                return Files.newInputStream(pathFor(objectKey));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read file " + objectKey + ": " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Copy a file to the output stream with FileChannel.transferTo, without
+     * reading it into a byte array first
+     */
+    @Override
+    public void transferTo(String objectKey, OutputStream outputStream) throws IOException {
+        Observation observation = Observation.createNotStarted("notes.disk", observationRegistry)
+                .lowCardinalityKeyValue("operation", "get")
+                .start();
+        try (FileChannel fileChannel = FileChannel.open(pathFor(objectKey), StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(outputStream);
+            long size = fileChannel.size();
+            long position = 0;
+            while (position < size) {
+                position += fileChannel.transferTo(position, size - position, target);
+            }
+        } catch (IOException e) {
+            observation.error(e);
+            throw e;
+        } finally {
+            observation.stop();
+        }
+    }
+
+    /**
+     * Check if a file exists on local disk
+     */
+    @Override
+    public boolean fileExists(String objectKey) {
+        return observe("head", () -> Files.isRegularFile(pathFor(objectKey)));
+    }
+
+    /**
+     * Get file size from local disk
+     */
+    @Override
+    public Long getFileSize(String objectKey) {
+        return observe("head", () -> {
+            try {
+                return Files.size(pathFor(objectKey));
+            } catch (NoSuchFileException e) {
+                throw new RuntimeException("File not found: " + objectKey, e);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to get file size for " + objectKey + ": " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Write to a temporary file next to the target, then rename it over the target
+     */
+    private Path write(InputStream fileInputStream, String objectKey) {
+        Path target = pathFor(objectKey);
+        Path temp = null;
+        try {
+            boolean newDirectories = !Files.isDirectory(target.getParent());
+            Files.createDirectories(target.getParent());
+            temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                fileInputStream.transferTo(Channels.newOutputStream(channel));
+                if (fsync) {
+                    channel.force(true);
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            if (fsync) {
+                // The rename is only durable once the directory entry is
+                forceDirectory(target.getParent());
+                if (newDirectories) {
+                    forceDirectory(target.getParent().getParent());
+                    forceDirectory(root);
+                }
+            }
+            return target;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write file " + objectKey + ": " + e.getMessage(), e);
+        } finally {
+            deleteQuietly(temp);
+        }
+    }
+
+    /**
+     * Directory holding the sharded files
+     */
+    Path getRoot() {
+        return root;
+    }
+
+    /**
+     * Sharded location of an object: root/ab/cd/abcd...ef (SHA-256 of the key)
+     */
+    Path pathFor(String objectKey) {
+        String hash = sha256Hex(objectKey);
+        return root.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+    }
+
+    private static String sha256Hex(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static void forceDirectory(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private static void deleteQuietly(Path temp) {
+        if (temp == null) {
+            return;
+        }
+        try {
+            // Already gone after a successful move
+            Files.deleteIfExists(temp);
+        } catch (IOException ignored) {
+            // A leftover temporary file is never read, only wastes space
+        }
+    }
+
+    /**
+     * Run a disk operation as a notes.disk observation tagged with the operation
+     */
+    private <T> T observe(String operation, Supplier<T> call) {
+        return Observation.createNotStarted("notes.disk", observationRegistry)
+                .lowCardinalityKeyValue("operation", operation)
+                .observe(call);
+    }
+}
\ No newline at end of file
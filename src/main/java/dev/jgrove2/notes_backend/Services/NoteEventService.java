@@ -0,0 +1,336 @@
+package dev.jgrove2.notes_backend.Services;
+
+import com.zaxxer.hikari.HikariDataSource;
+import dev.jgrove2.notes_backend.Models.NoteEvent;
+import dev.jgrove2.notes_backend.Repositories.NoteEventRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Streams note change events (NoteEvent) to each user's connected devices over
+ * Server-Sent Events.
+ *
+ * NoteService writes events in the same transaction as the change, and a trigger sends
+ * NOTIFY note_events with the user ID when it commits. Every instance keeps one
+ * connection LISTENing on the primary; on a notification it reads the user's new events
+ * and sends them to that user's subscribers on this instance. Subscribers resume from
+ * the last event ID they received; events are kept for notes.events.retention-days.
+ */
+@Service
+public class NoteEventService {
+
+    private static final Logger log = LoggerFactory.getLogger(NoteEventService.class);
+
+    private static final String CHANNEL = "note_events";
+
+    private static final long LISTEN_POLL_MILLIS = 10_000;
+
+    private static final long LISTEN_RETRY_MILLIS = 5_000;
+
+    @Autowired
+    private NoteEventRepository noteEventRepository;
+
+    @Autowired
+    @Qualifier("primaryDataSource")
+    private HikariDataSource primaryDataSource;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${notes.events.enabled:true}")
+    private boolean enabled;
+
+    @Value("${notes.events.listen-url:}")
+    private String listenUrl;
+
+    @Value("${notes.events.timeout-ms:1800000}")
+    private long timeoutMillis;
+
+    @Value("${notes.events.max-subscriptions-per-user:10}")
+    private int maxSubscriptionsPerUser;
+
+    @Value("${notes.events.retention-days:7}")
+    private int retentionDays;
+
+    private final Map<Long, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+
+    // Sends block on slow clients, so they run off the listener thread
+    private final ExecutorService deliveryExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private volatile boolean running;
+
+    private volatile Connection listenConnection;
+
+    /**
+     * One connected device: the events after lastEventId have not been sent to it yet.
+     * Sends hold sendLock, a ReentrantLock rather than a monitor, so a virtual thread
+     * waiting for a slow client unmounts from its carrier instead of pinning it.
+     */
+    private static final class Subscription {
+        private final Long userId;
+        private final SseEmitter emitter;
+        private final ReentrantLock sendLock = new ReentrantLock();
+        private long lastEventId;
+
+        private Subscription(Long userId, SseEmitter emitter, long lastEventId) {
+            this.userId = userId;
+            this.emitter = emitter;
+            this.lastEventId = lastEventId;
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        Gauge.builder("notes.events.subscribers", subscriptions,
+                map -> map.values().stream().mapToInt(Set::size).sum())
+                .description("Connected /notes/events streams on this instance")
+                .register(meterRegistry);
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        Thread listener = new Thread(this::listen, "note-events-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        closeListenConnection();
+        subscriptions.values().forEach(userSubscriptions -> userSubscriptions
+                .forEach(subscription -> subscription.emitter.complete()));
+        deliveryExecutor.shutdownNow();
+    }
+
+    /**
+     * Whether /notes/events is available
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Open a stream of a user's note events
+     *
+     * @param userId      The user ID
+     * @param lastEventId The last event the device received, or null to start from now
+     * @return The emitter, or null if the user already has the maximum number of streams
+     */
+    public SseEmitter subscribe(Long userId, Long lastEventId) {
+        Set<Subscription> userSubscriptions = subscriptions.computeIfAbsent(userId,
+                key -> new CopyOnWriteArraySet<>());
+        if (userSubscriptions.size() >= maxSubscriptionsPerUser) {
+            return null;
+        }
+
+        SseEmitter emitter = newEmitter();
+        long startAfter = lastEventId != null ? lastEventId : noteEventRepository.findLatestIdByUserId(userId);
+        Subscription subscription = new Subscription(userId, emitter, startAfter);
+        emitter.onCompletion(() -> unsubscribe(subscription));
+        emitter.onTimeout(() -> unsubscribe(subscription));
+        emitter.onError(error -> unsubscribe(subscription));
+
+        try {
+            // Events older than the retention period may be missing: the device must reload its notes
+            Long oldestId = noteEventRepository.findOldestId();
+            if (lastEventId != null && oldestId != null && lastEventId < oldestId - 1) {
+                emitter.send(SseEmitter.event().name("reset").data(Map.of("reason", "Events expired")));
+            }
+            emitter.send(SseEmitter.event().id(Long.toString(startAfter)).name("ready")
+                    .data(Map.of("lastEventId", startAfter)));
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+            return emitter;
+        }
+
+        // Register before catching up, so no event committed in between is missed
+        userSubscriptions.add(subscription);
+        deliveryExecutor.execute(() -> deliver(subscription));
+        return emitter;
+    }
+
+    /**
+     * Send a comment to every stream, so proxies keep idle connections open and closed
+     * connections are noticed
+     */
+    @Scheduled(fixedDelayString = "${notes.events.heartbeat-ms:25000}")
+    public void heartbeat() {
+        for (Set<Subscription> userSubscriptions : subscriptions.values()) {
+            for (Subscription subscription : userSubscriptions) {
+                deliveryExecutor.execute(() -> {
+                    subscription.sendLock.lock();
+                    try {
+                        subscription.emitter.send(SseEmitter.event().comment("heartbeat"));
+                    } catch (IOException | IllegalStateException e) {
+                        unsubscribe(subscription);
+                    } finally {
+                        subscription.sendLock.unlock();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Delete events older than notes.events.retention-days
+     */
+    @Scheduled(cron = "${notes.events.prune-cron:0 45 3 * * *}")
+    public void pruneExpired() {
+        int deleted = noteEventRepository.deleteByCreatedAtBefore(LocalDateTime.now().minusDays(retentionDays));
+        log.info("Pruned {} note events older than {} days", deleted, retentionDays);
+    }
+
+    /**
+     * Send a subscriber the events committed since the last one it received
+     */
+    private void deliver(Subscription subscription) {
+        subscription.sendLock.lock();
+        try {
+            List<NoteEvent> events;
+            do {
+                events = noteEventRepository.findTop500ByUserIdAndIdGreaterThanOrderById(subscription.userId,
+                        subscription.lastEventId);
+                for (NoteEvent event : events) {
+                    subscription.emitter.send(SseEmitter.event().id(event.getId().toString())
+                            .name(event.getType()).data(event, MediaType.APPLICATION_JSON));
+                    subscription.lastEventId = event.getId();
+                }
+            } while (events.size() == 500);
+        } catch (IOException | IllegalStateException e) {
+            // Client went away (or the emitter already completed)
+            unsubscribe(subscription);
+        } catch (RuntimeException e) {
+            log.warn("Failed to deliver note events to user {}: {}", subscription.userId, e.getMessage());
+        } finally {
+            subscription.sendLock.unlock();
+        }
+    }
+
+    private void unsubscribe(Subscription subscription) {
+        subscriptions.computeIfPresent(subscription.userId, (userId, userSubscriptions) -> {
+            userSubscriptions.remove(subscription);
+            return userSubscriptions.isEmpty() ? null : userSubscriptions;
+        });
+    }
+
+    /**
+     * Send a user's subscribers their new events; package-private for tests, which
+     * stand in for the listener
+     */
+    void deliverToUser(Long userId) {
+        Set<Subscription> userSubscriptions = subscriptions.get(userId);
+        if (userSubscriptions != null) {
+            for (Subscription subscription : userSubscriptions) {
+                deliveryExecutor.execute(() -> deliver(subscription));
+            }
+        }
+    }
+
+    /**
+     * A new stream's emitter; overridden in tests to capture what is sent
+     */
+    SseEmitter newEmitter() {
+        return new SseEmitter(timeoutMillis);
+    }
+
+    /**
+     * Listener thread: LISTEN on a dedicated connection, reconnecting (and catching up
+     * every subscriber) after a failure
+     */
+    private void listen() {
+        while (running) {
+            try (Connection connection = openListenConnection()) {
+                listenConnection = connection;
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                // Notifications sent while not listening were lost
+                subscriptions.keySet().forEach(this::deliverToUser);
+
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications((int) LISTEN_POLL_MILLIS);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        try {
+                            deliverToUser(Long.valueOf(notification.getParameter()));
+                        } catch (NumberFormatException e) {
+                            log.warn("Ignoring note event notification '{}'", notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Note event listener failed, reconnecting in {} ms: {}", LISTEN_RETRY_MILLIS,
+                        e.getMessage());
+                try {
+                    Thread.sleep(LISTEN_RETRY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            } finally {
+                listenConnection = null;
+            }
+        }
+    }
+
+    /**
+     * A connection outside the pool: it is held for as long as the application runs.
+     * Uses the primary URL and driver properties unless notes.events.listen-url is set
+     * (e.g. to bypass a transaction-mode connection pooler, which drops LISTEN).
+     */
+    private Connection openListenConnection() throws SQLException {
+        Properties properties = new Properties();
+        properties.putAll(primaryDataSource.getDataSourceProperties());
+        Connection connection = DriverManager.getConnection(
+                listenUrl.isEmpty() ? primaryDataSource.getJdbcUrl() : listenUrl, properties);
+        connection.setAutoCommit(true);
+        return connection;
+    }
+
+    private void closeListenConnection() {
+        Connection connection = listenConnection;
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                log.debug("Failed to close note event listener connection: {}", e.getMessage());
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,132 @@
+package dev.jgrove2.notes_backend.Services;
+
+import dev.jgrove2.notes_backend.Utils.FileNameIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-user FileNameIndex for /notes/find.
+ *
+ * A user's index is loaded from the database on their first lookup and then updated as
+ * notes are created, renamed and deleted through this instance. Indexes are reloaded
+ * after notes.find.refresh-ms to pick up changes made through other instances, and the
+ * least recently used ones are dropped beyond notes.find.max-users.
+ */
+@Service
+public class NoteNameIndexService {
+
+    @Autowired
+    private NoteService noteService;
+
+    @Value("${notes.find.max-users:1000}")
+    private int maxUsers;
+
+    @Value("${notes.find.refresh-ms:300000}")
+    private long refreshMillis;
+
+    // Access-ordered, so the eldest entry is the least recently used user
+    private final LinkedHashMap<Long, LoadedIndex> indexes = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, LoadedIndex> eldest) {
+            return size() > maxUsers;
+        }
+    };
+
+    // Bumped on every change, so a load that raced with a change is not kept for long
+    private final AtomicLong changeCount = new AtomicLong();
+
+    private record LoadedIndex(FileNameIndex index, long loadedAtNanos) {
+    }
+
+    /**
+     * Find a user's notes by file name, best match first
+     *
+     * @param userId The user ID
+     * @param query  File name prefix or words, typos allowed
+     * @param limit  Maximum number of matches
+     * @return The matches
+     */
+    public List<FileNameIndex.Match> find(Long userId, String query, int limit) {
+        FileNameIndex index = getIndex(userId);
+        synchronized (index) {
+            return index.find(query, limit);
+        }
+    }
+
+    /**
+     * Add a new note to its user's index
+     */
+    public void noteCreated(Long userId, String fileName) {
+        changeCount.incrementAndGet();
+        FileNameIndex index = getLoadedIndex(userId);
+        if (index != null) {
+            synchronized (index) {
+                index.add(fileName);
+            }
+        }
+    }
+
+    /**
+     * Update a renamed note in its user's index
+     */
+    public void noteRenamed(Long userId, String oldFileName, String newFileName) {
+        changeCount.incrementAndGet();
+        FileNameIndex index = getLoadedIndex(userId);
+        if (index != null) {
+            synchronized (index) {
+                index.remove(oldFileName);
+                index.add(newFileName);
+            }
+        }
+    }
+
+    /**
+     * Remove a deleted note from its user's index
+     */
+    public void noteDeleted(Long userId, String fileName) {
+        changeCount.incrementAndGet();
+        FileNameIndex index = getLoadedIndex(userId);
+        if (index != null) {
+            synchronized (index) {
+                index.remove(fileName);
+            }
+        }
+    }
+
+    private FileNameIndex getIndex(Long userId) {
+        FileNameIndex index = getLoadedIndex(userId);
+        if (index != null) {
+            return index;
+        }
+
+        long changesBeforeLoad = changeCount.get();
+        FileNameIndex loaded = new FileNameIndex(noteService.getFileNamesByUserId(userId));
+        // A change during the load may be missing from it: use it, but reload on the next lookup
+        long loadedAtNanos = changeCount.get() == changesBeforeLoad ? System.nanoTime()
+                : System.nanoTime() - refreshMillis * 1_000_000L;
+        synchronized (indexes) {
+            indexes.put(userId, new LoadedIndex(loaded, loadedAtNanos));
+        }
+        return loaded;
+    }
+
+    private FileNameIndex getLoadedIndex(Long userId) {
+        synchronized (indexes) {
+            LoadedIndex loaded = indexes.get(userId);
+            if (loaded == null) {
+                return null;
+            }
+            if (System.nanoTime() - loaded.loadedAtNanos() >= refreshMillis * 1_000_000L) {
+                indexes.remove(userId);
+                return null;
+            }
+            return loaded.index();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,184 @@
+package dev.jgrove2.notes_backend.Services;
+
+import dev.jgrove2.notes_backend.Models.Note;
+import dev.jgrove2.notes_backend.Models.NoteSearchResult;
+import dev.jgrove2.notes_backend.Repositories.NoteRepository;
+import dev.jgrove2.notes_backend.Repositories.NoteSearchDocumentRepository;
+import io.micrometer.observation.annotation.Observed;
+import org.jsoup.Jsoup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.util.HtmlUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Full-text search over note contents.
+ *
+ * The text of each note (HTML tags stripped) is stored in note_search_documents when
+ * the note is created or updated, and Postgres maintains a tsvector with a GIN index
+ * over it, so searches rank notes and build snippets without reading note files.
+ * Notes saved before indexing existed are indexed in the background from storage; a
+ * note that fails is recorded in note_search_failures and retried with backoff.
+ */
+@Service
+@Observed(name = "notes.db")
+public class NoteSearchService {
+
+    private static final Logger log = LoggerFactory.getLogger(NoteSearchService.class);
+
+    // Keeps the generated tsvector well under the Postgres 1 MB limit
+    private static final int MAX_BODY_CHARS = 500_000;
+
+    private static final int BACKFILL_BATCH_SIZE = 100;
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    @Autowired
+    private NoteSearchDocumentRepository noteSearchDocumentRepository;
+
+    @Autowired
+    private NoteRepository noteRepository;
+
+    @Autowired
+    private NoteStorage noteStorage;
+
+    @Value("${notes.search.enabled:true}")
+    private boolean enabled;
+
+    @Value("${notes.search.backfill-retry-base-ms:60000}")
+    private long backfillRetryBaseMillis;
+
+    @Value("${notes.search.backfill-retry-max-ms:86400000}")
+    private long backfillRetryMaxMillis;
+
+    // Highest note ID looked at by the current backfill pass
+    private long backfilledThroughId;
+
+    /**
+     * Whether note contents are indexed
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Index the content just saved for a note, replacing its previous text
+     *
+     * @param noteId  The note ID
+     * @param content The saved HTML content, read only when search is enabled
+     */
+    public void index(Long noteId, InputStreamSource content) {
+        if (!enabled) {
+            // Drop the now stale text; the backfill indexes the note once search is enabled again
+            noteSearchDocumentRepository.deleteById(noteId);
+            return;
+        }
+        String text;
+        try (InputStream inputStream = content.getInputStream()) {
+            text = extractText(inputStream.readAllBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read note content: " + e.getMessage(), e);
+        }
+        noteSearchDocumentRepository.upsert(noteId, text);
+    }
+
+    /**
+     * Search a user's notes
+     *
+     * @param userId The user ID
+     * @param query  Words to find; supports "quoted phrases", OR and -excluded words
+     * @param limit  Maximum number of results
+     * @return Matching notes, best first
+     */
+    @Transactional(readOnly = true)
+    public List<NoteSearchResult> search(Long userId, String query, int limit) {
+        return noteSearchDocumentRepository.search(userId, query, limit).stream()
+                .map(row -> new NoteSearchResult((String) row[0], ((Number) row[1]).doubleValue(),
+                        snippetHtml((String) row[2])))
+                .toList();
+    }
+
+    /**
+     * Remove a note from the index, with its backfill failure
+     */
+    @Transactional
+    public void deleteDocument(Long noteId) {
+        noteSearchDocumentRepository.deleteById(noteId);
+        noteSearchDocumentRepository.deleteFailure(noteId);
+    }
+
+    /**
+     * Index notes that have no search document yet, reading their content from storage.
+     * Notes that fail are skipped until their backoff (notes.search.backfill-retry-*-ms)
+     * has passed.
+     */
+    @Scheduled(fixedDelayString = "${notes.search.backfill-interval-ms:10000}")
+    public void backfill() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> noteIds = noteSearchDocumentRepository.findUnindexedNoteIds(backfilledThroughId, now,
+                BACKFILL_BATCH_SIZE);
+        if (noteIds.isEmpty()) {
+            // Start over so notes whose backoff has passed are retried on the next pass
+            backfilledThroughId = 0;
+            return;
+        }
+        for (Long noteId : noteIds) {
+            backfilledThroughId = noteId;
+            Optional<Note> note = noteRepository.findById(noteId);
+            if (note.isEmpty() || note.get().getObjectKey() == null) {
+                continue;
+            }
+            try (InputStream fileInputStream = noteStorage.getFile(note.get().getObjectKey())) {
+                // A save while the file was read has indexed newer content; keep that
+                noteSearchDocumentRepository.insertIfAbsent(noteId, extractText(fileInputStream.readAllBytes()));
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed to index note {}, retrying later: {}", noteId, e.getMessage());
+                recordFailure(noteId, e, now);
+            }
+        }
+    }
+
+    private void recordFailure(Long noteId, Exception failure, LocalDateTime now) {
+        String error = String.valueOf(failure.getMessage());
+        if (error.length() > MAX_ERROR_LENGTH) {
+            error = error.substring(0, MAX_ERROR_LENGTH);
+        }
+        try {
+            noteSearchDocumentRepository.recordFailure(noteId, error, now, backfillRetryBaseMillis,
+                    backfillRetryMaxMillis);
+        } catch (RuntimeException e) {
+            log.warn("Failed to record indexing failure of note {}: {}", noteId, e.getMessage());
+        }
+    }
+
+    /**
+     * Escape a snippet for HTML, then mark the matches with &lt;b&gt;
+     */
+    private static String snippetHtml(String snippet) {
+        return HtmlUtils.htmlEscape(snippet).replace("\u0002", "<b>").replace("\u0003", "</b>");
+    }
+
+    static String extractText(byte[] content) {
+        // Angle brackets left in the text (from &lt; and &gt;) would be parsed as tags by Postgres,
+        // which skips what follows them; NUL characters cannot be stored in a text column at all
+        String text = Jsoup.parse(new String(content, StandardCharsets.UTF_8)).text()
+                .replace('<', ' ').replace('>', ' ').replace('\u0000', ' ');
+        return text.length() > MAX_BODY_CHARS ? text.substring(0, MAX_BODY_CHARS) : text;
+    }
+}
\ No newline at end of file
@@ -1,44 +1,115 @@
 package dev.jgrove2.notes_backend.Services;
 
 import dev.jgrove2.notes_backend.Models.Note;
+import dev.jgrove2.notes_backend.Models.NoteChange;
+import dev.jgrove2.notes_backend.Models.NoteChangePage;
+import dev.jgrove2.notes_backend.Models.NoteEvent;
+import dev.jgrove2.notes_backend.Models.NoteSummary;
+import dev.jgrove2.notes_backend.Models.User;
+import dev.jgrove2.notes_backend.Repositories.NoteEventRepository;
 import dev.jgrove2.notes_backend.Repositories.NoteRepository;
+import dev.jgrove2.notes_backend.Repositories.NoteRepository.NoteFile;
+import dev.jgrove2.notes_backend.Repositories.NoteTombstoneRepository;
+import dev.jgrove2.notes_backend.Repositories.PendingObjectRepository;
+import io.micrometer.observation.annotation.Observed;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 
 @Service
+@Observed(name = "notes.db")
 public class NoteService {
 
     @Autowired
     private NoteRepository noteRepository;
 
+    @Autowired
+    private NoteEventRepository noteEventRepository;
+
+    @Autowired
+    private NoteTombstoneRepository noteTombstoneRepository;
+
+    @Autowired
+    private PendingObjectRepository pendingObjectRepository;
+
+    @Autowired
+    private BlobService blobService;
+
+    @Autowired
+    private ObjectDeletionService objectDeletionService;
+
+    @Autowired
+    private NoteVersionService noteVersionService;
+
+    @Autowired
+    private NoteSearchService noteSearchService;
+
     /**
-     * Create a new note
+     * Create a new note whose file is the shared blob with the given content hash (null
+     * for a per-note object). The object's pending registration, if any, is cleared and
+     * the content recorded as the first version in the same transaction.
+     *
+     * @param content The note's content, or null to record no version
      */
-    public Note createNote(String fileName, Long userId, Long totalSizeBytes, String objectKey) {
-        // Check if note already exists for this user and file name
-        if (noteRepository.existsByUserIdAndFileName(userId, fileName)) {
-            throw new RuntimeException("Note with file name '" + fileName + "' already exists for this user");
-        }
-
+    @Transactional
+    public Note createNote(String fileName, Long userId, Long totalSizeBytes, String objectKey, String contentHash,
+            InputStreamSource content) {
+        NoteEvent event = new NoteEvent(userId, NoteEvent.TYPE_CREATED, fileName);
+        event.setTotalSizeBytes(totalSizeBytes);
         Note note = new Note(fileName, userId, totalSizeBytes, objectKey);
-        return noteRepository.save(note);
+        note.setContentHash(contentHash);
+        note.setChangeSeq(recordEvent(event));
+        try {
+            // Uniqueness of (user_id, file_name) is enforced by ux_notes_user_id_file_name
+            note = noteRepository.saveAndFlush(note);
+        } catch (DataIntegrityViolationException e) {
+            throw new RuntimeException("Note with file name '" + fileName + "' already exists for this user", e);
+        }
+        noteTombstoneRepository.deleteByUserIdAndFileName(userId, fileName);
+        pendingObjectRepository.deleteByObjectKey(objectKey);
+        recordVersion(note, content);
+        return note;
     }
 
     /**
      * Get all notes for a user
      */
+    @Transactional(readOnly = true)
     public List<Note> getNotesByUserId(Long userId) {
         return noteRepository.findByUserIdOrderByCreatedAtDesc(userId);
     }
 
+    /**
+     * Get note summaries (file name, size, last modified) for a user
+     */
+    @Transactional(readOnly = true)
+    public List<NoteSummary> getNoteSummariesByUserId(Long userId) {
+        return noteRepository.findSummariesByUserId(userId);
+    }
+
+    /**
+     * Get note summary by user ID and file name
+     */
+    @Transactional(readOnly = true)
+    public Optional<NoteSummary> getNoteSummaryByUserIdAndFileName(Long userId, String fileName) {
+        return noteRepository.findSummaryByUserIdAndFileName(userId, fileName);
+    }
+
     /**
      * Get note by user ID and file name
      */
+    @Transactional(readOnly = true)
     public Optional<Note> getNoteByUserIdAndFileName(Long userId, String fileName) {
         return noteRepository.findByUserIdAndFileName(userId, fileName);
     }
@@ -46,6 +117,7 @@ public class NoteService {
     /**
      * Update note file size
      */
+    @Transactional
     public Note updateNoteSize(Long userId, String fileName, Long newTotalSizeBytes) {
         Optional<Note> noteOptional = noteRepository.findByUserIdAndFileName(userId, fileName);
 
@@ -53,55 +125,145 @@ public class NoteService {
             Note note = noteOptional.get();
             note.setTotalSizeBytes(newTotalSizeBytes);
             note.setLastModifiedDate(java.time.LocalDateTime.now());
-            return noteRepository.save(note);
+            NoteEvent event = new NoteEvent(userId, NoteEvent.TYPE_UPDATED, fileName);
+            event.setTotalSizeBytes(newTotalSizeBytes);
+            note.setChangeSeq(recordEvent(event));
+            // Managed entity, the UPDATE is flushed on commit
+            return note;
         } else {
             throw new RuntimeException("Note not found: " + fileName);
         }
     }
 
     /**
-     * Update note with new file
+     * Update note with new file, recording the content as its next version
+     *
+     * @param content The saved content, or null to record no version
      */
-    public Note updateNote(Long userId, String fileName, Long newTotalSizeBytes) {
-        return updateNoteSize(userId, fileName, newTotalSizeBytes);
+    @Transactional
+    public Note updateNote(Long userId, String fileName, Long newTotalSizeBytes, InputStreamSource content) {
+        Note note = updateNoteSize(userId, fileName, newTotalSizeBytes);
+        recordVersion(note, content);
+        return note;
+    }
+
+    /**
+     * Point a note at new file content (object key and content hash) and update its size.
+     * The new object's pending registration is cleared, the replaced file released, and
+     * the content recorded as the next version in the same transaction.
+     *
+     * @param content The saved content, or null to record no version
+     */
+    @Transactional
+    public Note updateNoteContent(Long userId, String fileName, Long newTotalSizeBytes, String objectKey,
+            String contentHash, InputStreamSource content) {
+        Note note = updateNoteSize(userId, fileName, newTotalSizeBytes);
+        if (!Objects.equals(note.getObjectKey(), objectKey)) {
+            releaseFile(note.getObjectKey(), note.getContentHash());
+        } else if (contentHash != null) {
+            // A concurrent save stored the same blob: drop the caller's extra reference
+            blobService.release(contentHash);
+        }
+        pendingObjectRepository.deleteByObjectKey(objectKey);
+        note.setObjectKey(objectKey);
+        note.setContentHash(contentHash);
+        recordVersion(note, content);
+        return note;
     }
 
     /**
      * Rename note filename for a given user. Object key remains unchanged.
+     * Loads the source and any note already using the target name in one query.
      */
+    @Transactional
     public Note renameNote(Long userId, String oldFileName, String newFileName) {
         if (oldFileName.equals(newFileName)) {
             throw new RuntimeException("New filename is the same as the current filename");
         }
-        Optional<Note> noteOptional = noteRepository.findByUserIdAndFileName(userId, oldFileName);
-        if (!noteOptional.isPresent()) {
-            throw new RuntimeException("Note not found: " + oldFileName);
+        List<Note> matches = noteRepository.findByUserIdAndFileNameIn(userId, List.of(oldFileName, newFileName));
+        Note note = null;
+        for (Note match : matches) {
+            if (newFileName.equals(match.getFileName())) {
+                throw new RuntimeException("Note with file name '" + newFileName + "' already exists for this user");
+            }
+            note = match;
         }
-        if (noteRepository.existsByUserIdAndFileName(userId, newFileName)) {
-            throw new RuntimeException("Note with file name '" + newFileName + "' already exists for this user");
+        if (note == null) {
+            throw new RuntimeException("Note not found: " + oldFileName);
         }
-        Note note = noteOptional.get();
         note.setFileName(newFileName);
         note.setLastModifiedDate(java.time.LocalDateTime.now());
-        return noteRepository.save(note);
+        NoteEvent event = new NoteEvent(userId, NoteEvent.TYPE_RENAMED, newFileName);
+        event.setOldFileName(oldFileName);
+        note.setChangeSeq(recordEvent(event));
+        noteTombstoneRepository.upsert(userId, oldFileName, note.getChangeSeq());
+        noteTombstoneRepository.deleteByUserIdAndFileName(userId, newFileName);
+        // Managed entity, the UPDATE is flushed on commit
+        return note;
     }
 
     /**
-     * Delete note
+     * Delete note. Its file and versions are released in the same transaction: a
+     * per-note object is queued for deletion, a shared blob only with its last note.
+     *
+     * @return The deleted note's ID, object key and content hash
      */
-    public void deleteNote(Long userId, String fileName) {
-        Optional<Note> noteOptional = noteRepository.findByUserIdAndFileName(userId, fileName);
+    @Transactional
+    public NoteFile deleteNote(Long userId, String fileName) {
+        NoteFile file = noteRepository.deleteByUserIdAndFileName(userId, fileName)
+                .orElseThrow(() -> new RuntimeException("Note not found: " + fileName));
+        releaseFile(file.getObjectKey(), file.getContentHash());
+        noteVersionService.deleteVersions(file.getId());
+        long changeSeq = recordEvent(new NoteEvent(userId, NoteEvent.TYPE_DELETED, fileName));
+        noteTombstoneRepository.upsert(userId, fileName, changeSeq);
+        return file;
+    }
 
-        if (noteOptional.isPresent()) {
-            noteRepository.delete(noteOptional.get());
-        } else {
-            throw new RuntimeException("Note not found: " + fileName);
+    /**
+     * Get the notes created, modified, renamed or deleted after a sync cursor, oldest
+     * change first. Cursors are committed in order per user, so a replica that lags
+     * behind returns an older but consistent set of changes.
+     *
+     * @param userId The user ID
+     * @param since  The cursor of the client's last sync, 0 for a full sync
+     * @param limit  Maximum number of changes
+     * @return The changes, with the cursor to sync from next
+     */
+    @Transactional(readOnly = true)
+    public NoteChangePage getChangesSince(Long userId, long since, int limit) {
+        PageRequest page = PageRequest.of(0, limit + 1);
+        List<NoteChange> changes = new ArrayList<>(noteRepository.findChangesByUserId(userId, since, page));
+        // A full sync only needs the notes that exist
+        if (since > 0) {
+            changes.addAll(noteTombstoneRepository.findChangesByUserId(userId, since, page));
+            changes.sort(Comparator.comparing(NoteChange::changeSeq));
+        }
+
+        boolean hasMore = changes.size() > limit;
+        if (hasMore) {
+            // A rename is a note and a tombstone with the same changeSeq: keep them together
+            int end = limit;
+            if (changes.get(end).changeSeq().equals(changes.get(end - 1).changeSeq())) {
+                end = end > 1 ? end - 1 : end + 1;
+            }
+            changes = changes.subList(0, end);
         }
+        long cursor = changes.isEmpty() ? since : changes.get(changes.size() - 1).changeSeq();
+        return new NoteChangePage(changes, cursor, hasMore);
+    }
+
+    /**
+     * Get all file names for a user
+     */
+    @Transactional(readOnly = true)
+    public List<String> getFileNamesByUserId(Long userId) {
+        return noteRepository.findFileNamesByUserId(userId);
     }
 
     /**
      * Get note count for user
      */
+    @Transactional(readOnly = true)
     public long getNoteCountByUserId(Long userId) {
         return noteRepository.countByUserId(userId);
     }
@@ -109,6 +271,7 @@ public class NoteService {
     /**
      * Check if note exists
      */
+    @Transactional(readOnly = true)
     public boolean noteExists(Long userId, String fileName) {
         return noteRepository.existsByUserIdAndFileName(userId, fileName);
     }
@@ -116,23 +279,54 @@ public class NoteService {
     /**
      * Get total storage size for a user
      */
+    @Transactional(readOnly = true)
     public Long getTotalStorageSizeByUserId(Long userId) {
-        List<Note> notes = noteRepository.findByUserId(userId);
-        return notes.stream()
-                .mapToLong(Note::getTotalSizeBytes)
-                .sum();
+        return noteRepository.sumTotalSizeBytesByUserId(userId);
+    }
+
+    /**
+     * Check the storage quota before writing a file, timed as notes.quota.check. The
+     * sizes reserved by unconfirmed direct uploads count as used.
+     *
+     * @param user              The user writing the file
+     * @param existingSizeBytes Size of the file being replaced (0 for a new file)
+     * @param newSizeBytes      Size of the new file
+     * @return true if the user stays within maxStorage after the write
+     */
+    @Transactional(readOnly = true)
+    @Observed(name = "notes.quota.check")
+    public boolean hasStorageCapacity(User user, long existingSizeBytes, long newSizeBytes) {
+        return hasStorageCapacity(user, existingSizeBytes, newSizeBytes, "");
+    }
+
+    /**
+     * Check the storage quota before confirming a direct upload, whose own reservation
+     * is replaced by its actual size
+     *
+     * @param objectKey The object key of the upload being confirmed
+     */
+    @Transactional(readOnly = true)
+    @Observed(name = "notes.quota.check")
+    public boolean hasStorageCapacity(User user, long existingSizeBytes, long newSizeBytes, String objectKey) {
+        Long maxStorage = user.getMaxStorage();
+        if (maxStorage == null) {
+            return true;
+        }
+        long currentTotal = noteRepository.sumTotalSizeBytesByUserId(user.getUserId())
+                + pendingObjectRepository.sumReservedBytesByUserId(user.getUserId(), objectKey);
+        return currentTotal - existingSizeBytes + newSizeBytes <= maxStorage;
     }
 
     /**
      * Build file structure for a user
      * Creates a hierarchical structure from filenames that contain full paths
      */
+    @Transactional(readOnly = true)
     public Map<String, Object> buildFileStructure(Long userId) {
-        List<Note> notes = noteRepository.findByUserIdOrderByCreatedAtDesc(userId);
+        List<String> fileNames = noteRepository.findFileNamesByUserId(userId);
         Map<String, Object> fileStructure = new HashMap<>();
 
-        for (Note note : notes) {
-            String fileName = note.getFileName();
+        for (String fileName : fileNames) {
             String[] pathParts = fileName.split("/");
 
             Map<String, Object> currentLevel = fileStructure;
@@ -157,4 +351,61 @@ public class NoteService {
 
         return fileStructure;
     }
+
+    /**
+     * Record a change for /notes/events in the current transaction. The user's event
+     * lock is held until commit, so a later event never commits before an earlier one.
+     *
+     * @return The event ID, the note's new changeSeq
+     */
+    private long recordEvent(NoteEvent event) {
+        noteEventRepository.lockUserEvents(event.getUserId());
+        return noteEventRepository.save(event).getId();
+    }
+
+    /**
+     * Drop a note's file in the current transaction: release its blob, or queue its
+     * per-note object for deletion
+     */
+    private void releaseFile(String objectKey, String contentHash) {
+        if (contentHash != null) {
+            blobService.release(contentHash);
+        } else if (objectKey != null) {
+            objectDeletionService.enqueue(objectKey);
+        }
+    }
+
+    /**
+     * Record content uploaded to storage directly as a note's next version and search
+     * text, unless the note was deleted or points at other content by now. The note's
+     * row stays locked until both are written, so a later save's text is never replaced.
+     *
+     * @param noteId    The note ID
+     * @param objectKey The object key the content was read from
+     * @param content   The content, read from storage once or more
+     * @param recordVersion Whether to record the version too, false when the save did
+     * @return Whether the note still points at the object
+     */
+    @Transactional
+    public boolean recordUploadedContent(Long noteId, String objectKey, InputStreamSource content,
+            boolean recordVersion) {
+        Optional<Note> note = noteRepository.findLockedById(noteId);
+        if (note.isEmpty() || !objectKey.equals(note.get().getObjectKey())) {
+            return false;
+        }
+        if (recordVersion) {
+            noteVersionService.recordVersion(noteId, content);
+        }
+        noteSearchService.index(noteId, content);
+        return true;
+    }
+
+    /**
+     * Record a note's saved content as its next version in the current transaction
+     */
+    private void recordVersion(Note note, InputStreamSource content) {
+        if (content != null) {
+            noteVersionService.recordVersion(note.getId(), content);
+        }
+    }
 }
\ No newline at end of file
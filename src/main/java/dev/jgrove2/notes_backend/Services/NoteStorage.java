@@ -0,0 +1,198 @@
+package dev.jgrove2.notes_backend.Services;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Where note files are kept. Selected with notes.storage.backend:
+ * r2 (S3Service, the default) or local (LocalNoteStorage). Listing and presigned URLs
+ * are only offered by backends that are also an ObjectStore.
+ */
+public interface NoteStorage {
+
+    /**
+     * Store a new file
+     *
+     * @param fileInputStream The file input stream
+     * @param fileName        The original file name
+     * @param userId          The user ID for organization
+     * @return The object key to store with the note
+     */
+    String uploadFile(InputStream fileInputStream, String fileName, Long userId);
+
+    /**
+     * Replace the content of an existing file
+     *
+     * @param fileInputStream The new file input stream
+     * @param objectKey       The existing object key
+     * @return The object key (same as input)
+     */
+    String updateFile(InputStream fileInputStream, String objectKey);
+
+    /**
+     * Delete a file
+     *
+     * @param objectKey The object key to delete
+     */
+    void deleteFile(String objectKey);
+
+    /**
+     * Delete files, as many per request as the backend allows; by default one at a time.
+     * Missing files count as deleted.
+     *
+     * @param objectKeys The object keys to delete
+     * @return The error of each object key that could not be deleted
+     */
+    default Map<String, String> deleteFiles(List<String> objectKeys) {
+        Map<String, String> errors = new HashMap<>();
+        for (String objectKey : objectKeys) {
+            try {
+                deleteFile(objectKey);
+            } catch (RuntimeException e) {
+                errors.put(objectKey, String.valueOf(e.getMessage()));
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Open a file for reading
+     *
+     * @param objectKey The object key to retrieve
+     * @return The file input stream, to be closed by the caller
+     */
+    InputStream getFile(String objectKey);
+
+    /**
+     * Copy a file to an output stream, e.g. the HTTP response
+     *
+     * @param objectKey    The object key to copy
+     * @param outputStream The stream to write to (not closed)
+     */
+    void transferTo(String objectKey, OutputStream outputStream) throws IOException;
+
+    /**
+     * Check if a file exists
+     *
+     * @param objectKey The object key to check
+     * @return true if file exists, false otherwise
+     */
+    boolean fileExists(String objectKey);
+
+    /**
+     * Get file size
+     *
+     * @param objectKey The object key
+     * @return The file size in bytes
+     */
+    Long getFileSize(String objectKey);
+
+    /**
+     * Start a multipart upload to an object key. By default parts are stored as
+     * separate files next to the target and joined on completion; backends with native
+     * multipart uploads (S3Service) override the multipart methods.
+     *
+     * @param objectKey The object key to write once complete
+     * @return The backend's upload ID, or null when it does not need one
+     */
+    default String startMultipartUpload(String objectKey) {
+        return null;
+    }
+
+    /**
+     * Store one part of a multipart upload; storing a part again replaces it
+     *
+     * @param objectKey         The object key of the upload
+     * @param multipartUploadId The ID returned by startMultipartUpload
+     * @param partNumber        The part number, from 1
+     * @param data              The part content
+     * @return The part's ETag, or null when the backend does not need one
+     */
+    default String uploadPart(String objectKey, String multipartUploadId, int partNumber, byte[] data) {
+        updateFile(new ByteArrayInputStream(data), partObjectKey(objectKey, partNumber));
+        return null;
+    }
+
+    /**
+     * Join the parts into the object
+     *
+     * @param objectKey         The object key of the upload
+     * @param multipartUploadId The ID returned by startMultipartUpload
+     * @param partETags         The ETag of each part, in part number order
+     */
+    default void completeMultipartUpload(String objectKey, String multipartUploadId, List<String> partETags) {
+        int partCount = partETags.size();
+        // Opens one part at a time, so memory use does not depend on the file size
+        Enumeration<InputStream> parts = new Enumeration<>() {
+            private int next = 1;
+
+            @Override
+            public boolean hasMoreElements() {
+                return next <= partCount;
+            }
+
+            @Override
+            public InputStream nextElement() {
+                return getFile(partObjectKey(objectKey, next++));
+            }
+        };
+        try (InputStream joined = new SequenceInputStream(parts)) {
+            updateFile(joined, objectKey);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to join upload parts of " + objectKey + ": " + e.getMessage(), e);
+        }
+        abortMultipartUpload(objectKey, multipartUploadId, partCount);
+    }
+
+    /**
+     * Drop the stored parts of a multipart upload
+     *
+     * @param objectKey         The object key of the upload
+     * @param multipartUploadId The ID returned by startMultipartUpload
+     * @param partCount         The number of parts the upload has
+     */
+    default void abortMultipartUpload(String objectKey, String multipartUploadId, int partCount) {
+        for (int partNumber = 1; partNumber <= partCount; partNumber++) {
+            deleteFile(partObjectKey(objectKey, partNumber));
+        }
+    }
+
+    /**
+     * Object key of a stored part, for backends without native multipart uploads
+     */
+    static String partObjectKey(String objectKey, int partNumber) {
+        return objectKey + ".part-" + partNumber;
+    }
+
+    /**
+     * Object key for new content of a note (a save, or a direct or resumable upload): the
+     * note's usual key with a unique ID appended, so the current content stays intact
+     * until the note points at the new object
+     *
+     * @param userId   The user ID
+     * @param fileName The note file name
+     * @param uploadId The upload ID, or any other unique ID
+     * @return The object key
+     */
+    static String generateUploadObjectKey(Long userId, String fileName, String uploadId) {
+        return generateObjectKey(userId, fileName) + "." + uploadId;
+    }
+
+    /**
+     * Object key for a new file, shared by all backends so notes can move between them
+     *
+     * @param userId   The user ID
+     * @param fileName The original file name
+     * @return The object key
+     */
+    static String generateObjectKey(Long userId, String fileName) {
+        return String.format("users/%d/notes/%s", userId, fileName);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,249 @@
+package dev.jgrove2.notes_backend.Services;
+
+import dev.jgrove2.notes_backend.Models.NoteUpload;
+import dev.jgrove2.notes_backend.Models.NoteUploadPart;
+import dev.jgrove2.notes_backend.Repositories.NoteUploadPartRepository;
+import dev.jgrove2.notes_backend.Repositories.NoteUploadRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Resumable uploads of note files in fixed-size parts.
+ *
+ * Parts are read from the request body one at a time (at most
+ * notes.uploads.part-size-bytes in memory) and handed to NoteStorage's multipart
+ * methods: S3 multipart uploads on R2, part files on disk otherwise. The upload and its
+ * stored parts are kept in the database, so a client can ask which parts are missing and
+ * resume after a dropped connection or a server restart. Storage calls are made outside
+ * transactions, so a slow part upload does not hold a database connection.
+ */
+@Service
+public class NoteUploadService {
+
+    private static final Logger log = LoggerFactory.getLogger(NoteUploadService.class);
+
+    private static final int EXPIRE_BATCH_SIZE = 100;
+
+    // S3 multipart uploads allow at most 10,000 parts
+    private static final int MAX_PARTS = 10_000;
+
+    // S3 (and R2) reject multipart uploads whose parts, except the last, are smaller
+    private static final long MIN_PART_SIZE_BYTES = 5L * 1024 * 1024;
+
+    @Autowired
+    private NoteUploadRepository noteUploadRepository;
+
+    @Autowired
+    private NoteUploadPartRepository noteUploadPartRepository;
+
+    @Autowired
+    private NoteStorage noteStorage;
+
+    @Autowired
+    private PendingObjectService pendingObjectService;
+
+    @Value("${notes.uploads.part-size-bytes:8388608}")
+    private long partSizeBytes;
+
+    @Value("${notes.uploads.expiry-hours:24}")
+    private int expiryHours;
+
+    @Value("${notes.uploads.expiry-retry-base-ms:60000}")
+    private long expiryRetryBaseMillis;
+
+    @Value("${notes.uploads.expiry-retry-max-ms:86400000}")
+    private long expiryRetryMaxMillis;
+
+    @PostConstruct
+    void checkPartSize() {
+        // Every part but the last is exactly partSizeBytes
+        if (partSizeBytes < MIN_PART_SIZE_BYTES) {
+            throw new IllegalStateException("notes.uploads.part-size-bytes must be at least " + MIN_PART_SIZE_BYTES
+                    + " bytes, the multipart upload minimum, but is " + partSizeBytes);
+        }
+    }
+
+    /**
+     * Start an upload; the caller checks the quota first
+     *
+     * @param userId    The user ID
+     * @param fileName  The note file name
+     * @param sizeBytes The size of the whole file
+     * @return The upload, with its part size and count
+     */
+    public NoteUpload start(Long userId, String fileName, long sizeBytes) {
+        long partCount = Math.max(1, (sizeBytes + partSizeBytes - 1) / partSizeBytes);
+        if (partCount > MAX_PARTS) {
+            throw new IllegalArgumentException("File too large for " + MAX_PARTS + " parts of " + partSizeBytes
+                    + " bytes");
+        }
+
+        String uploadId = UUID.randomUUID().toString();
+        String objectKey = NoteStorage.generateUploadObjectKey(userId, fileName, uploadId);
+
+        NoteUpload upload = new NoteUpload();
+        upload.setId(uploadId);
+        upload.setUserId(userId);
+        upload.setFileName(fileName);
+        upload.setObjectKey(objectKey);
+        upload.setSizeBytes(sizeBytes);
+        upload.setPartSizeBytes(partSizeBytes);
+        upload.setPartCount((int) partCount);
+        upload.setMultipartUploadId(noteStorage.startMultipartUpload(objectKey));
+        try {
+            return noteUploadRepository.save(upload);
+        } catch (RuntimeException e) {
+            noteStorage.abortMultipartUpload(objectKey, upload.getMultipartUploadId(), upload.getPartCount());
+            throw e;
+        }
+    }
+
+    /**
+     * Get a user's upload
+     */
+    public Optional<NoteUpload> getUpload(Long userId, String uploadId) {
+        return noteUploadRepository.findByIdAndUserId(uploadId, userId);
+    }
+
+    /**
+     * Get the parts of an upload stored so far, in part number order
+     */
+    public List<NoteUploadPart> getParts(NoteUpload upload) {
+        return noteUploadPartRepository.findByUploadIdOrderByPartNumber(upload.getId());
+    }
+
+    /**
+     * Get the part numbers of an upload not stored yet
+     */
+    public List<Integer> getMissingParts(NoteUpload upload) {
+        boolean[] stored = new boolean[upload.getPartCount() + 1];
+        for (NoteUploadPart part : getParts(upload)) {
+            stored[part.getPartNumber()] = true;
+        }
+        List<Integer> missing = new ArrayList<>();
+        for (int partNumber = 1; partNumber <= upload.getPartCount(); partNumber++) {
+            if (!stored[partNumber]) {
+                missing.add(partNumber);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Store a part read from the request body, which must hold exactly the part's size
+     *
+     * @param upload     The upload
+     * @param partNumber The part number, from 1
+     * @param body       The part content
+     * @return The size of the stored part
+     */
+    public long uploadPart(NoteUpload upload, int partNumber, InputStream body) throws IOException {
+        if (upload.getCompletedAt() != null) {
+            throw new IllegalArgumentException("Upload is already complete");
+        }
+        if (partNumber < 1 || partNumber > upload.getPartCount()) {
+            throw new IllegalArgumentException("Part number must be between 1 and " + upload.getPartCount());
+        }
+        int expectedSize = (int) upload.getPartSize(partNumber);
+        // One byte more than expected shows an oversized part without reading all of it
+        byte[] data = body.readNBytes(expectedSize + 1);
+        if (data.length != expectedSize) {
+            throw new IllegalArgumentException("Part " + partNumber + " must be exactly " + expectedSize + " bytes");
+        }
+
+        String etag = noteStorage.uploadPart(upload.getObjectKey(), upload.getMultipartUploadId(), partNumber, data);
+        noteUploadPartRepository.upsert(upload.getId(), partNumber, (long) data.length, etag);
+        return data.length;
+    }
+
+    /**
+     * Join all parts into the upload's object; the caller checks none are missing. The
+     * upload stays until finished, so saving the note can be retried.
+     */
+    public void complete(NoteUpload upload) {
+        List<String> partETags = getParts(upload).stream().map(NoteUploadPart::getEtag).toList();
+        noteStorage.completeMultipartUpload(upload.getObjectKey(), upload.getMultipartUploadId(), partETags);
+        LocalDateTime completedAt = LocalDateTime.now();
+        noteUploadRepository.markCompleted(upload.getId(), completedAt);
+        upload.setCompletedAt(completedAt);
+    }
+
+    /**
+     * Forget a finished upload; its object now belongs to the note, or was deleted
+     */
+    public void finish(NoteUpload upload) {
+        noteUploadPartRepository.deleteByUploadId(upload.getId());
+        noteUploadRepository.deleteById(upload.getId());
+    }
+
+    /**
+     * Cancel an upload, dropping its stored parts, or its joined object if it was
+     * completed but never became a note's content
+     */
+    public void abort(NoteUpload upload) {
+        if (upload.getCompletedAt() == null) {
+            noteStorage.abortMultipartUpload(upload.getObjectKey(), upload.getMultipartUploadId(),
+                    upload.getPartCount());
+            finish(upload);
+            return;
+        }
+        // Still registered if finish succeeds but queueing fails, so the reconciler
+        // deletes the object then
+        pendingObjectService.register(upload.getObjectKey());
+        finish(upload);
+        pendingObjectService.queueDeletionIfUnreferenced(upload.getObjectKey(), true);
+    }
+
+    /**
+     * Cancel uploads started more than notes.uploads.expiry-hours ago. An upload that
+     * cannot be cancelled is retried after a backoff, without holding up the others.
+     */
+    @Scheduled(fixedDelayString = "${notes.uploads.expiry-check-interval-ms:3600000}")
+    public void expireAbandoned() {
+        LocalDateTime cutoff = LocalDateTime.now().minusHours(expiryHours);
+        List<NoteUpload> expired;
+        int failed;
+        do {
+            LocalDateTime now = LocalDateTime.now();
+            expired = noteUploadRepository.findExpired(cutoff, now, PageRequest.of(0, EXPIRE_BATCH_SIZE));
+            failed = 0;
+            for (NoteUpload upload : expired) {
+                try {
+                    abort(upload);
+                } catch (RuntimeException e) {
+                    failed++;
+                    log.warn("Failed to expire upload {} (attempt {}), retrying later: {}", upload.getId(),
+                            upload.getExpiryAttempts() + 1, e.getMessage());
+                    recordExpiryFailure(upload, e, now);
+                }
+            }
+            // Failed uploads are backed off, so the next page holds new ones; stop if
+            // the failures could not be recorded either
+        } while (expired.size() == EXPIRE_BATCH_SIZE && failed < expired.size());
+    }
+
+    private void recordExpiryFailure(NoteUpload upload, RuntimeException e, LocalDateTime now) {
+        String error = String.valueOf(e.getMessage());
+        try {
+            noteUploadRepository.recordExpiryFailure(upload.getId(),
+                    error.length() > 1000 ? error.substring(0, 1000) : error, now, expiryRetryBaseMillis,
+                    expiryRetryMaxMillis);
+        } catch (RuntimeException recordError) {
+            log.warn("Failed to record expiry failure of upload {}: {}", upload.getId(), recordError.getMessage());
+        }
+    }
+}
\ No newline at end of file
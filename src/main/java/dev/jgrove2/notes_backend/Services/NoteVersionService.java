@@ -0,0 +1,374 @@
+package dev.jgrove2.notes_backend.Services;
+
+import dev.jgrove2.notes_backend.Models.NoteChunk;
+import dev.jgrove2.notes_backend.Models.NoteVersion;
+import dev.jgrove2.notes_backend.Models.NoteVersionSummary;
+import dev.jgrove2.notes_backend.Repositories.NoteChunkRepository;
+import dev.jgrove2.notes_backend.Repositories.NoteRepository;
+import dev.jgrove2.notes_backend.Repositories.NoteVersionRepository;
+import dev.jgrove2.notes_backend.Utils.ContentDefinedChunker;
+import io.micrometer.observation.annotation.Observed;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Note version history.
+ *
+ * Every saved content becomes a version made of content-defined chunks
+ * (ContentDefinedChunker). Chunks are stored once in note_chunks, compressed and
+ * reference-counted per version, so a small edit to a large note adds only the few
+ * chunks around the edit. Old versions are pruned by count (notes.versions.max-per-note)
+ * and age (notes.versions.max-age-days); the latest version is always kept.
+ */
+@Service
+@Observed(name = "notes.db")
+public class NoteVersionService {
+
+    private static final int PRUNE_BATCH_SIZE = 500;
+
+    // Uncompressed size of the new chunks collected per read of the content
+    private static final long INSERT_BATCH_BYTES = 8L * 1024 * 1024;
+
+    @Autowired
+    private NoteVersionRepository noteVersionRepository;
+
+    @Autowired
+    private NoteChunkRepository noteChunkRepository;
+
+    @Autowired
+    private NoteRepository noteRepository;
+
+    @Value("${notes.versions.enabled:true}")
+    private boolean enabled;
+
+    @Value("${notes.versions.max-per-note:50}")
+    private int maxPerNote;
+
+    @Value("${notes.versions.max-age-days:90}")
+    private int maxAgeDays;
+
+    /**
+     * Whether saves are recorded as versions
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Record the content just saved for a note as its next version, unless it is the
+     * same as the latest version. Runs in the transaction that saves the note, so a
+     * note never points at content missing from its history.
+     *
+     * The content is streamed, never held whole: it is read once to hash it and its
+     * chunks, and again for the chunks not stored yet (see insertChunks).
+     *
+     * @param noteId  The note ID
+     * @param content The saved content, opened once or more
+     * @return The latest version, empty when versioning is disabled
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Optional<NoteVersion> recordVersion(Long noteId, InputStreamSource content) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+
+        // Serializes version numbering for concurrent saves of the same note
+        noteRepository.findLockedById(noteId)
+                .orElseThrow(() -> new RuntimeException("Note not found: " + noteId));
+
+        List<String> chunkHashes = new ArrayList<>();
+        Map<String, Integer> chunkSizes = new HashMap<>();
+        MessageDigest contentDigest = sha256();
+        long size = readChunks(content, contentDigest, chunk -> {
+            String chunkHash = sha256Hex(chunk);
+            chunkHashes.add(chunkHash);
+            chunkSizes.putIfAbsent(chunkHash, chunk.length);
+        });
+        String contentHash = HexFormat.of().formatHex(contentDigest.digest());
+
+        Optional<NoteVersion> latest = noteVersionRepository.findFirstByNoteIdOrderByVersionDesc(noteId);
+        if (latest.isPresent() && latest.get().getContentHash().equals(contentHash)) {
+            return latest;
+        }
+
+        addReferences(content, chunkSizes);
+
+        int version = latest.map(v -> v.getVersion() + 1).orElse(1);
+        NoteVersion saved = noteVersionRepository.save(
+                new NoteVersion(noteId, version, size, contentHash, chunkHashes));
+
+        prune(noteId);
+        return Optional.of(saved);
+    }
+
+    /**
+     * Get version summaries for a note (newest first)
+     */
+    @Transactional(readOnly = true)
+    public List<NoteVersionSummary> getVersionSummaries(Long noteId) {
+        return noteVersionRepository.findSummariesByNoteId(noteId);
+    }
+
+    /**
+     * Rebuild the content of a version
+     *
+     * @param noteId  The note ID
+     * @param version The version number
+     * @return The content, empty if the version does not exist
+     */
+    @Transactional(readOnly = true)
+    public Optional<byte[]> getVersionContent(Long noteId, Integer version) {
+        return noteVersionRepository.findByNoteIdAndVersion(noteId, version).map(this::assemble);
+    }
+
+    /**
+     * Delete all versions of a note, with the chunks no other version uses, in the
+     * transaction that deletes the note
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void deleteVersions(Long noteId) {
+        deleteVersions(noteVersionRepository.findByNoteIdOrderByVersionDesc(noteId));
+    }
+
+    /**
+     * Delete versions older than notes.versions.max-age-days across all notes, keeping
+     * the latest version of each note
+     */
+    @Scheduled(cron = "${notes.versions.prune-cron:0 30 3 * * *}")
+    @Transactional
+    public void pruneExpired() {
+        if (maxAgeDays <= 0) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(maxAgeDays);
+        List<NoteVersion> expired;
+        do {
+            expired = noteVersionRepository.findExpired(cutoff, PageRequest.of(0, PRUNE_BATCH_SIZE));
+            deleteVersions(expired);
+        } while (expired.size() == PRUNE_BATCH_SIZE);
+    }
+
+    /**
+     * Apply the retention policy to one note
+     */
+    private void prune(Long noteId) {
+        List<NoteVersion> versions = noteVersionRepository.findByNoteIdOrderByVersionDesc(noteId);
+        LocalDateTime cutoff = maxAgeDays > 0 ? LocalDateTime.now().minusDays(maxAgeDays) : null;
+
+        List<NoteVersion> pruned = new ArrayList<>();
+        // The latest version (index 0) is always kept
+        for (int i = 1; i < versions.size(); i++) {
+            NoteVersion version = versions.get(i);
+            boolean overCount = maxPerNote > 0 && i >= maxPerNote;
+            boolean expired = cutoff != null && version.getCreatedAt().isBefore(cutoff);
+            if (overCount || expired) {
+                pruned.add(version);
+            }
+        }
+        deleteVersions(pruned);
+    }
+
+    private void deleteVersions(List<NoteVersion> versions) {
+        if (versions.isEmpty()) {
+            return;
+        }
+        List<Set<String>> distinctPerVersion = new ArrayList<>(versions.size());
+        Set<String> touched = new HashSet<>();
+        for (NoteVersion version : versions) {
+            // One reference per distinct chunk per version, as in addReferences
+            Set<String> distinct = new HashSet<>(version.getChunkHashList());
+            distinctPerVersion.add(distinct);
+            touched.addAll(distinct);
+        }
+        if (!touched.isEmpty()) {
+            // All at once and in order before any update, see lockExisting
+            noteChunkRepository.lockExisting(touched);
+        }
+        for (Set<String> distinct : distinctPerVersion) {
+            if (!distinct.isEmpty()) {
+                noteChunkRepository.removeReferences(distinct);
+            }
+        }
+        noteVersionRepository.deleteAllInBatch(versions);
+        if (!touched.isEmpty()) {
+            noteChunkRepository.deleteUnreferenced(touched);
+        }
+    }
+
+    /**
+     * Add one reference to each distinct chunk of content (hash to size), storing the
+     * ones not seen before
+     */
+    private void addReferences(InputStreamSource content, Map<String, Integer> chunkSizes) {
+        if (chunkSizes.isEmpty()) {
+            return;
+        }
+        // Existing chunks are locked in hash order and incremented in one statement; only
+        // new ones carry data, and are inserted in hash order too
+        Set<String> existing = new HashSet<>(noteChunkRepository.lockExisting(chunkSizes.keySet()));
+        if (!existing.isEmpty()) {
+            noteChunkRepository.addReferences(existing);
+        }
+        TreeMap<String, Integer> newChunks = new TreeMap<>(chunkSizes);
+        newChunks.keySet().removeAll(existing);
+        insertChunks(content, newChunks);
+    }
+
+    /**
+     * Store new chunks (hash to size) in hash order. Their data is collected from the
+     * content in runs of hashes of at most INSERT_BATCH_BYTES, reading the content again
+     * for each run, so memory stays bounded however much of a large note is new.
+     */
+    private void insertChunks(InputStreamSource content, NavigableMap<String, Integer> newChunks) {
+        while (!newChunks.isEmpty()) {
+            long batchBytes = 0;
+            String last = newChunks.firstKey();
+            for (Map.Entry<String, Integer> chunk : newChunks.entrySet()) {
+                if (batchBytes > 0 && batchBytes + chunk.getValue() > INSERT_BATCH_BYTES) {
+                    break;
+                }
+                batchBytes += chunk.getValue();
+                last = chunk.getKey();
+            }
+            NavigableMap<String, Integer> batch = newChunks.headMap(last, true);
+
+            Map<String, byte[]> compressed = new TreeMap<>();
+            readChunks(content, null, chunk -> {
+                String chunkHash = sha256Hex(chunk);
+                if (batch.containsKey(chunkHash) && !compressed.containsKey(chunkHash)) {
+                    compressed.put(chunkHash, deflate(chunk));
+                }
+            });
+            if (compressed.size() != batch.size()) {
+                throw new IllegalStateException("Content changed while its version was recorded");
+            }
+            for (Map.Entry<String, byte[]> chunk : compressed.entrySet()) {
+                noteChunkRepository.insertOrAddReference(chunk.getKey(), batch.get(chunk.getKey()),
+                        chunk.getValue());
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Pass each chunk of content to chunkConsumer, updating contentDigest (if not null)
+     * with the whole content
+     *
+     * @return The content size
+     */
+    private static long readChunks(InputStreamSource content, MessageDigest contentDigest,
+            Consumer<byte[]> chunkConsumer) {
+        long[] size = { 0 };
+        try (InputStream inputStream = content.getInputStream()) {
+            ContentDefinedChunker.split(inputStream, chunk -> {
+                if (contentDigest != null) {
+                    contentDigest.update(chunk);
+                }
+                size[0] += chunk.length;
+                chunkConsumer.accept(chunk);
+            });
+        } catch (IOException e) {
+            // Unchecked, so the note's transaction is rolled back
+            throw new UncheckedIOException("Failed to read note content: " + e.getMessage(), e);
+        }
+        return size[0];
+    }
+
+    private byte[] assemble(NoteVersion version) {
+        List<String> chunkHashes = version.getChunkHashList();
+        Collection<String> distinct = new HashSet<>(chunkHashes);
+        Map<String, NoteChunk> chunks = noteChunkRepository.findAllById(distinct).stream()
+                .collect(Collectors.toMap(NoteChunk::getHash, Function.identity()));
+
+        ByteArrayOutputStream content = new ByteArrayOutputStream(version.getSizeBytes().intValue());
+        for (String chunkHash : chunkHashes) {
+            NoteChunk chunk = chunks.get(chunkHash);
+            if (chunk == null) {
+                throw new IllegalStateException("Missing chunk " + chunkHash + " of note " + version.getNoteId()
+                        + " version " + version.getVersion());
+            }
+            content.writeBytes(inflate(chunk.getData(), chunk.getSizeBytes()));
+        }
+        return content.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 2 + 16);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                compressed.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return compressed.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data, int size) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            byte[] result = new byte[size];
+            int length = 0;
+            while (length < size && !inflater.finished()) {
+                int inflated = inflater.inflate(result, length, size - length);
+                if (inflated == 0 && inflater.needsInput()) {
+                    throw new IllegalStateException("Truncated note chunk");
+                }
+                length += inflated;
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt note chunk: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static String sha256Hex(byte[] data) {
+        return HexFormat.of().formatHex(sha256().digest(data));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,166 @@
+package dev.jgrove2.notes_backend.Services;
+
+import dev.jgrove2.notes_backend.Repositories.ObjectDeletionRepository;
+import dev.jgrove2.notes_backend.Services.PendingObjectService.ClaimedDeletions;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletes objects in note storage in the background, so that deleting a note or
+ * replacing its content only waits for the database.
+ *
+ * Object keys are queued in object_deletions in the transaction that drops the last
+ * reference to them. Every instance runs the worker: it claims due keys in batches of up
+ * to 1000 (see PendingObjectService.claimDeletions), skipping rows other instances are
+ * claiming and keys referenced again meanwhile, and then deletes the claimed objects with
+ * one DeleteObjects request on R2, outside any transaction. Failed keys are retried with
+ * exponential backoff, up to notes.deletions.retry-max-ms apart. A claim expires after
+ * notes.deletions.lease-ms, so keys claimed by an instance that stopped are picked up again.
+ */
+@Service
+public class ObjectDeletionService {
+
+    private static final Logger log = LoggerFactory.getLogger(ObjectDeletionService.class);
+
+    // The most keys DeleteObjects accepts per request
+    private static final int BATCH_SIZE = 1000;
+
+    @Autowired
+    private ObjectDeletionRepository objectDeletionRepository;
+
+    @Autowired
+    private PendingObjectService pendingObjectService;
+
+    @Autowired
+    private NoteStorage noteStorage;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${notes.deletions.retry-base-ms:1000}")
+    private long retryBaseMillis;
+
+    @Value("${notes.deletions.retry-max-ms:300000}")
+    private long retryMaxMillis;
+
+    @Value("${notes.deletions.lease-ms:60000}")
+    private long leaseMillis;
+
+    private Counter deleted;
+
+    private Counter failures;
+
+    private final AtomicLong claimedCount = new AtomicLong();
+
+    private volatile LocalDateTime oldestPending;
+
+    @PostConstruct
+    void init() {
+        deleted = Counter.builder("notes.deletions").tag("result", "success").register(meterRegistry);
+        failures = Counter.builder("notes.deletions").tag("result", "failure").register(meterRegistry);
+        Gauge.builder("notes.deletions.pending", claimedCount, AtomicLong::get)
+                .description("Objects this instance claimed for deletion in its last run")
+                .register(meterRegistry);
+        Gauge.builder("notes.deletions.lag", this, ObjectDeletionService::getLagSeconds)
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queue an object for deletion, in the caller's transaction
+     *
+     * @param objectKey The object key no note references any more
+     */
+    public void enqueue(String objectKey) {
+        objectDeletionRepository.enqueue(objectKey, LocalDateTime.now());
+    }
+
+    /**
+     * Delete the objects of due keys, a batch at a time until no full batch is left
+     */
+    @Scheduled(fixedDelayString = "${notes.deletions.interval-ms:1000}")
+    public void drain() {
+        long claimed = 0;
+        try {
+            ClaimedDeletions batch;
+            do {
+                LocalDateTime now = LocalDateTime.now();
+                // Stored as TIMESTAMP(6), and compared for equality when the batch is done
+                LocalDateTime claimedUntil = now.plus(Duration.ofMillis(leaseMillis)).truncatedTo(ChronoUnit.MICROS);
+                batch = pendingObjectService.claimDeletions(BATCH_SIZE, now, claimedUntil);
+                if (!batch.objectKeys().isEmpty()) {
+                    deleteBatch(batch.objectKeys(), claimedUntil);
+                    claimed += batch.objectKeys().size();
+                }
+            } while (batch.full() && !batch.objectKeys().isEmpty());
+        } catch (RuntimeException e) {
+            // The database is likely unavailable, try again next run
+            log.warn("Object deletion failed: {}", e.getMessage());
+        } finally {
+            claimedCount.set(claimed);
+            refreshLag();
+        }
+    }
+
+    /**
+     * Age in seconds of the oldest object still waiting to be deleted
+     */
+    public double getLagSeconds() {
+        LocalDateTime oldest = oldestPending;
+        return oldest == null ? 0.0 : Math.max(0, Duration.between(oldest, LocalDateTime.now()).toMillis() / 1000.0);
+    }
+
+    private void deleteBatch(List<String> objectKeys, LocalDateTime claimedUntil) {
+        Map<String, String> errors = noteStorage.deleteFiles(objectKeys);
+        List<String> done = new ArrayList<>(objectKeys.size());
+        for (String objectKey : objectKeys) {
+            if (!errors.containsKey(objectKey)) {
+                done.add(objectKey);
+            }
+        }
+        if (!done.isEmpty()) {
+            objectDeletionRepository.deleteDeleted(done, claimedUntil);
+            deleted.increment(done.size());
+        }
+        if (errors.isEmpty()) {
+            return;
+        }
+
+        // One update per distinct error: a failed request fails its whole batch alike
+        LocalDateTime now = LocalDateTime.now();
+        Map<String, List<String>> keysByError = new HashMap<>();
+        errors.forEach((objectKey, error) -> keysByError.computeIfAbsent(error, e -> new ArrayList<>()).add(objectKey));
+        keysByError.forEach((error, keys) -> objectDeletionRepository.recordFailure(keys,
+                error.length() > 1000 ? error.substring(0, 1000) : error, now, claimedUntil, retryBaseMillis,
+                retryMaxMillis));
+        failures.increment(errors.size());
+        log.warn("Failed to delete {} of {} objects, retrying later: {}", errors.size(), objectKeys.size(),
+                errors.values().iterator().next());
+    }
+
+    private void refreshLag() {
+        try {
+            // An index lookup, cheap enough to run every second on every instance
+            oldestPending = objectDeletionRepository.findOldestEnqueuedAt().orElse(null);
+        } catch (RuntimeException e) {
+            log.warn("Failed to read the object deletion queue: {}", e.getMessage());
+        }
+    }
+}
\ No newline at end of file
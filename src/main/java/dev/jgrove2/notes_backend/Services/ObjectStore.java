@@ -0,0 +1,79 @@
+package dev.jgrove2.notes_backend.Services;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What a NoteStorage backend that is a plain object store (S3Service) can do besides
+ * storing files: list them and hand out presigned URLs. The local backend stores files
+ * under a hash of their key, and the tiered one must see every write, so neither
+ * implements it. Services look for it once when they are wired (see of).
+ */
+public interface ObjectStore {
+
+    /**
+     * A URL the client uses to transfer a file with the backend directly
+     *
+     * @param url       The presigned URL
+     * @param expiresAt When the URL stops working
+     * @param headers   Headers the request must carry, as they are part of the signature
+     */
+    record PresignedUrl(String url, Instant expiresAt, Map<String, String> headers) {
+    }
+
+    /**
+     * A stored object, as listed
+     *
+     * @param objectKey    The object key
+     * @param sizeBytes    The object size
+     * @param lastModified When the object was last written
+     */
+    record StoredObject(String objectKey, long sizeBytes, Instant lastModified) {
+    }
+
+    /**
+     * A page of a listing
+     *
+     * @param objects   The objects, in key order
+     * @param truncated Whether more objects follow the last one
+     */
+    record ObjectPage(List<StoredObject> objects, boolean truncated) {
+    }
+
+    /**
+     * List objects in UTF-8 byte order of their keys, as S3's ListObjectsV2 does
+     *
+     * @param startAfter The key to list after, empty to start at the beginning
+     * @param maxKeys    The most objects to return
+     * @return The page of objects
+     */
+    ObjectPage listObjects(String startAfter, int maxKeys);
+
+    /**
+     * Presign an upload (PUT) of exactly contentLength bytes to an object key
+     *
+     * @param objectKey     The object key to write
+     * @param contentLength The size the client declared, enforced by the signature
+     * @return The presigned URL
+     */
+    PresignedUrl presignUpload(String objectKey, long contentLength);
+
+    /**
+     * Presign a download (GET) of an object key
+     *
+     * @param objectKey The object key to read
+     * @return The presigned URL
+     */
+    PresignedUrl presignDownload(String objectKey);
+
+    /**
+     * The object store behind the configured note storage
+     *
+     * @param noteStorage The NoteStorage bean
+     * @return The object store, or null when the backend is not one
+     */
+    static ObjectStore of(NoteStorage noteStorage) {
+        return noteStorage instanceof ObjectStore objectStore ? objectStore : null;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,215 @@
+package dev.jgrove2.notes_backend.Services;
+
+import dev.jgrove2.notes_backend.Repositories.BlobRepository;
+import dev.jgrove2.notes_backend.Repositories.NoteRepository;
+import dev.jgrove2.notes_backend.Repositories.NoteUploadRepository;
+import dev.jgrove2.notes_backend.Repositories.ObjectDeletionRepository;
+import dev.jgrove2.notes_backend.Repositories.PendingObjectRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Two-phase writes between note storage and the notes table, through pending_objects.
+ *
+ * New content is written to a new object key, registered (and committed) before the
+ * object is written; NoteService clears the registration in the transaction that points
+ * a note at the object. An object that loses its last reference is queued for deletion
+ * in the transaction that drops the reference (see ObjectDeletionService). So whatever
+ * fails in between, every object is referenced, pending or queued, and
+ * StorageReconciliationService queues the objects of registrations that outlive their
+ * grace period for deletion.
+ */
+@Service
+public class PendingObjectService {
+
+    @Autowired
+    private PendingObjectRepository pendingObjectRepository;
+
+    @Autowired
+    private NoteRepository noteRepository;
+
+    @Autowired
+    private BlobRepository blobRepository;
+
+    @Autowired
+    private NoteUploadRepository noteUploadRepository;
+
+    @Autowired
+    private ObjectDeletionRepository objectDeletionRepository;
+
+    @Autowired
+    private NoteStorage noteStorage;
+
+    /**
+     * Keys claimed from the deletion queue
+     *
+     * @param objectKeys The keys whose objects nothing references, to delete now
+     * @param full       Whether the queue had a full batch of due keys, so more may be due
+     */
+    public record ClaimedDeletions(List<String> objectKeys, boolean full) {
+    }
+
+    /**
+     * Register an object key before writing its object
+     *
+     * @param objectKey A new object key, from NoteStorage.generateUploadObjectKey
+     */
+    @Transactional
+    public void register(String objectKey) {
+        pendingObjectRepository.upsert(objectKey, LocalDateTime.now());
+    }
+
+    /**
+     * Register the object key of a direct upload before handing out its URL, reserving
+     * the declared size against the user's quota until the upload is confirmed. The
+     * object is deleted if it is not confirmed by expiresAt.
+     *
+     * @param objectKey     A new object key, from NoteStorage.generateUploadObjectKey
+     * @param userId        The uploading user
+     * @param reservedBytes The declared size
+     * @param expiresAt     When the upload URL expires, plus time to confirm
+     */
+    @Transactional
+    public void registerDirectUpload(String objectKey, Long userId, long reservedBytes, LocalDateTime expiresAt) {
+        pendingObjectRepository.insertReservation(objectKey, LocalDateTime.now(), userId, reservedBytes, expiresAt);
+    }
+
+    /**
+     * Delete a pending object no note references, then clear its registration. If the
+     * delete fails the registration stays, for the reconciler to retry.
+     *
+     * @param objectKey The object key
+     */
+    public void deleteObject(String objectKey) {
+        noteStorage.deleteFile(objectKey);
+        pendingObjectRepository.deleteByObjectKey(objectKey);
+    }
+
+    /**
+     * Register a blob's object key before uploading its content, unless a deletion worker
+     * is deleting the object right now: the delete could land after the upload.
+     *
+     * @param objectKey The blob's object key
+     * @return false if the object is being deleted; try again once the deletion is done
+     */
+    @Transactional
+    public boolean registerBlob(String objectKey) {
+        LocalDateTime now = LocalDateTime.now();
+        pendingObjectRepository.lockObjectKey(objectKey);
+        if (objectDeletionRepository.isClaimed(objectKey, now)) {
+            return false;
+        }
+        pendingObjectRepository.upsert(objectKey, now);
+        return true;
+    }
+
+    /**
+     * Queue an object for deletion unless a note, blob or upload in progress references
+     * it, holding the object key's lock so a blob cannot be registered meanwhile
+     *
+     * @param objectKey   The object key
+     * @param pendingOnly Only queue the object if its key is still registered
+     * @return true if the object was queued
+     */
+    @Transactional
+    public boolean queueDeletionIfUnreferenced(String objectKey, boolean pendingOnly) {
+        pendingObjectRepository.lockObjectKey(objectKey);
+        if (pendingOnly && !pendingObjectRepository.existsById(objectKey)) {
+            return false;
+        }
+        pendingObjectRepository.deleteByObjectKey(objectKey);
+        if (isReferenced(objectKey)) {
+            // Committed after all: the registration was stale
+            return false;
+        }
+        objectDeletionRepository.enqueue(objectKey, LocalDateTime.now());
+        return true;
+    }
+
+    /**
+     * Claim up to limit due keys from the deletion queue until claimedUntil, for one
+     * worker to delete their objects after this transaction commits. Rows another
+     * instance is claiming and keys whose lock is held (a blob being registered) are
+     * skipped until a later run; keys referenced again are dropped from the queue. Until
+     * the claim ends, registerBlob refuses the claimed keys.
+     *
+     * @param limit        The most keys to claim
+     * @param now          The current time
+     * @param claimedUntil The end of the lease
+     * @return The claimed keys
+     */
+    @Transactional
+    public ClaimedDeletions claimDeletions(int limit, LocalDateTime now, LocalDateTime claimedUntil) {
+        List<String> due = objectDeletionRepository.lockDueObjectKeys(now, limit);
+        List<String> locked = new ArrayList<>(due.size());
+        for (String objectKey : due) {
+            // Never waits, so it cannot deadlock with a transaction that holds a key lock
+            // and then queues a deletion
+            if (pendingObjectRepository.tryLockObjectKey(objectKey)) {
+                locked.add(objectKey);
+            }
+        }
+        if (locked.isEmpty()) {
+            return new ClaimedDeletions(List.of(), due.size() == limit);
+        }
+
+        Set<String> referenced = referencedObjectKeys(locked);
+        List<String> claimed = new ArrayList<>(locked.size());
+        List<String> inUse = new ArrayList<>();
+        for (String objectKey : locked) {
+            if (referenced.contains(objectKey)) {
+                inUse.add(objectKey);
+            } else {
+                claimed.add(objectKey);
+            }
+        }
+        if (!inUse.isEmpty()) {
+            objectDeletionRepository.deleteByObjectKeyIn(inUse);
+        }
+        if (!claimed.isEmpty()) {
+            objectDeletionRepository.claim(claimed, claimedUntil);
+        }
+        return new ClaimedDeletions(claimed, due.size() == limit);
+    }
+
+    /**
+     * Of the given object keys, those referenced by a note, a blob or an upload in
+     * progress, or still pending
+     */
+    public Set<String> referencedObjectKeys(List<String> objectKeys) {
+        Set<String> referenced = new HashSet<>(noteRepository.findReferencedObjectKeys(objectKeys));
+        referenced.addAll(noteUploadRepository.findObjectKeysIn(objectKeys));
+        referenced.addAll(pendingObjectRepository.findObjectKeysIn(objectKeys));
+        List<String> hashes = new ArrayList<>();
+        for (String objectKey : objectKeys) {
+            String hash = BlobService.hashOf(objectKey);
+            if (hash != null) {
+                hashes.add(hash);
+            }
+        }
+        if (!hashes.isEmpty()) {
+            for (String hash : blobRepository.findHashesIn(hashes)) {
+                referenced.add(BlobService.objectKeyFor(hash));
+            }
+        }
+        return referenced;
+    }
+
+    /**
+     * Whether a note, a blob or an upload in progress references the object key
+     */
+    private boolean isReferenced(String objectKey) {
+        String hash = BlobService.hashOf(objectKey);
+        if (hash != null) {
+            return blobRepository.existsById(hash);
+        }
+        return noteRepository.existsByObjectKey(objectKey) || noteUploadRepository.existsByObjectKey(objectKey);
+    }
+}
\ No newline at end of file
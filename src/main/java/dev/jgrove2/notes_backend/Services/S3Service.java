@@ -1,16 +1,62 @@
 package dev.jgrove2.notes_backend.Services;
 
+import dev.jgrove2.notes_backend.Utils.CircuitBreaker;
+import dev.jgrove2.notes_backend.Utils.RetryBudget;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.stereotype.Service;
+import software.amazon.awssdk.awscore.AwsRequestOverrideConfiguration;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.awscore.presigner.PresignedRequest;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.exception.SdkClientException;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.*;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
+/**
+ * Note storage in Cloudflare R2 through the S3 API.
+ *
+ * Every call has a time limit (notes.storage.r2.timeout-ms, or transfer-timeout-ms for
+ * uploads) and goes through a circuit breaker, which fails calls at once while most
+ * recent calls to R2 have failed. Idempotent calls that fail with a 5xx, a 429, a
+ * timeout or a connection error are retried, but only within a retry budget of
+ * retry-budget-ratio of all calls. A GET with no response after hedge-delay-ms is sent
+ * a second time, also within the budget, and the first response wins.
+ */
 @Service
-public class S3Service {
+// Also the remote tier of TieredNoteStorage
+@ConditionalOnExpression("'${notes.storage.backend:r2}' matches 'r2|tiered'")
+public class S3Service implements NoteStorage, ObjectStore {
 
     @Autowired
     private S3Client s3Client;
@@ -18,6 +64,94 @@ public class S3Service {
     @Autowired
     private String bucketName;
 
+    @Autowired
+    private S3Presigner s3Presigner;
+
+    @Autowired
+    private ObservationRegistry observationRegistry;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${notes.storage.presigned-url-expiry-seconds:300}")
+    private long presignedUrlExpirySeconds;
+
+    @Value("${notes.storage.r2.timeout-ms:5000}")
+    private long timeoutMillis;
+
+    @Value("${notes.storage.r2.transfer-timeout-ms:60000}")
+    private long transferTimeoutMillis;
+
+    @Value("${notes.storage.r2.hedge-delay-ms:300}")
+    private long hedgeDelayMillis;
+
+    @Value("${notes.storage.r2.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${notes.storage.r2.retry-budget-ratio:0.1}")
+    private double retryBudgetRatio;
+
+    @Value("${notes.storage.r2.circuit-failure-rate:0.5}")
+    private double circuitFailureRate;
+
+    @Value("${notes.storage.r2.circuit-open-ms:30000}")
+    private long circuitOpenMillis;
+
+    // Outcomes the breaker looks at, and how many it needs before it can open
+    private static final int CIRCUIT_WINDOW = 50;
+
+    private static final int CIRCUIT_MINIMUM_CALLS = 20;
+
+    private static final int CIRCUIT_HALF_OPEN_CALLS = 3;
+
+    private static final int RETRY_BUDGET_CAPACITY = 10;
+
+    private static final long RETRY_BACKOFF_MILLIS = 50;
+
+    // The most keys DeleteObjects accepts per request
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    private CircuitBreaker circuitBreaker;
+
+    private RetryBudget retryBudget;
+
+    private ExecutorService hedgeExecutor;
+
+    private Counter retries;
+
+    private Counter hedges;
+
+    private Counter rejections;
+
+    @PostConstruct
+    public void init() {
+        circuitBreaker = new CircuitBreaker(CIRCUIT_WINDOW, CIRCUIT_MINIMUM_CALLS, circuitFailureRate,
+                circuitOpenMillis, CIRCUIT_HALF_OPEN_CALLS);
+        retryBudget = new RetryBudget(retryBudgetRatio, RETRY_BUDGET_CAPACITY);
+        hedgeExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        Gauge.builder("notes.r2.circuit.state", circuitBreaker, breaker -> switch (breaker.getState()) {
+            case CLOSED -> 0;
+            case HALF_OPEN -> 1;
+            case OPEN -> 2;
+        })
+                .description("R2 circuit breaker: 0 closed, 1 half-open, 2 open")
+                .register(meterRegistry);
+        retries = Counter.builder("notes.r2.retries")
+                .description("R2 calls retried after a failure")
+                .register(meterRegistry);
+        hedges = Counter.builder("notes.r2.hedges")
+                .description("Second GETs sent after hedge-delay-ms without a response")
+                .register(meterRegistry);
+        rejections = Counter.builder("notes.r2.circuit.rejected")
+                .description("R2 calls failed at once by the open circuit breaker")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hedgeExecutor.shutdown();
+    }
+
     /**
      * Upload a file to R2/S3
      * 
@@ -26,20 +160,23 @@ public class S3Service {
      * @param userId          The user ID for organization
      * @return The object key (path) in the bucket
      */
+    @Override
     public String uploadFile(InputStream fileInputStream, String fileName, Long userId) {
         try {
             // Generate a unique object key
-            String objectKey = generateObjectKey(userId, fileName);
+            String objectKey = NoteStorage.generateObjectKey(userId, fileName);
 
             // Upload the file
             PutObjectRequest putObjectRequest = PutObjectRequest.builder()
                     .bucket(bucketName)
                     .key(objectKey)
                     .contentType("text/html; charset=UTF-8") // HTML files
+                    .overrideConfiguration(timeout(transferTimeoutMillis))
                     .build();
 
-            s3Client.putObject(putObjectRequest,
-                    RequestBody.fromInputStream(fileInputStream, fileInputStream.available()));
+            // The stream cannot be replayed, so the upload is not retried
+            RequestBody requestBody = RequestBody.fromInputStream(fileInputStream, fileInputStream.available());
+            call("put", false, () -> s3Client.putObject(putObjectRequest, requestBody));
 
             return objectKey;
         } catch (IOException e) {
@@ -54,6 +191,7 @@ public class S3Service {
      * @param objectKey       The existing object key
      * @return The object key (same as input)
      */
+    @Override
     public String updateFile(InputStream fileInputStream, String objectKey) {
         try {
             // Upload the new file content
@@ -61,10 +199,11 @@ public class S3Service {
                     .bucket(bucketName)
                     .key(objectKey)
                     .contentType("text/html; charset=UTF-8")
+                    .overrideConfiguration(timeout(transferTimeoutMillis))
                     .build();
 
-            s3Client.putObject(putObjectRequest,
-                    RequestBody.fromInputStream(fileInputStream, fileInputStream.available()));
+            RequestBody requestBody = RequestBody.fromInputStream(fileInputStream, fileInputStream.available());
+            call("put", false, () -> s3Client.putObject(putObjectRequest, requestBody));
 
             return objectKey;
         } catch (IOException e) {
@@ -77,52 +216,109 @@ public class S3Service {
      * 
      * @param objectKey The object key to delete
      */
+    @Override
     public void deleteFile(String objectKey) {
         try {
             DeleteObjectRequest deleteObjectRequest = DeleteObjectRequest.builder()
                     .bucket(bucketName)
                     .key(objectKey)
+                    .overrideConfiguration(timeout(timeoutMillis))
                     .build();
 
-            s3Client.deleteObject(deleteObjectRequest);
+            call("delete", true, () -> s3Client.deleteObject(deleteObjectRequest));
         } catch (Exception e) {
             throw new RuntimeException("Failed to delete file from R2: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Delete files from R2/S3 with DeleteObjects, up to 1000 keys per request
+     *
+     * @param objectKeys The object keys to delete
+     * @return The error of each object key that could not be deleted
+     */
+    @Override
+    public Map<String, String> deleteFiles(List<String> objectKeys) {
+        Map<String, String> errors = new HashMap<>();
+        for (int from = 0; from < objectKeys.size(); from += DELETE_BATCH_SIZE) {
+            List<String> batch = objectKeys.subList(from, Math.min(from + DELETE_BATCH_SIZE, objectKeys.size()));
+            List<ObjectIdentifier> objects = new ArrayList<>(batch.size());
+            for (String objectKey : batch) {
+                objects.add(ObjectIdentifier.builder().key(objectKey).build());
+            }
+            DeleteObjectsRequest deleteObjectsRequest = DeleteObjectsRequest.builder()
+                    .bucket(bucketName)
+                    // Quiet: the response lists only the keys that failed
+                    .delete(Delete.builder().objects(objects).quiet(true).build())
+                    .overrideConfiguration(timeout(timeoutMillis))
+                    .build();
+
+            try {
+                DeleteObjectsResponse response = call("delete", true,
+                        () -> s3Client.deleteObjects(deleteObjectsRequest));
+                for (S3Error error : response.errors()) {
+                    errors.put(error.key(), error.code() + ": " + error.message());
+                }
+            } catch (Exception e) {
+                String error = "Failed to delete files from R2: " + e.getMessage();
+                for (String objectKey : batch) {
+                    errors.put(objectKey, error);
+                }
+            }
+        }
+        return errors;
+    }
+
     /**
      * Get a file from R2/S3
      * 
      * @param objectKey The object key to retrieve
      * @return The file input stream
      */
+    @Override
     public InputStream getFile(String objectKey) {
         try {
             GetObjectRequest getObjectRequest = GetObjectRequest.builder()
                     .bucket(bucketName)
                     .key(objectKey)
+                    .overrideConfiguration(timeout(timeoutMillis))
                     .build();
 
-            return s3Client.getObject(getObjectRequest);
+            return call("get", true, () -> hedgedGet(getObjectRequest));
         } catch (Exception e) {
             throw new RuntimeException("Failed to get file from R2: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Stream a file from R2/S3 to an output stream
+     *
+     * @param objectKey    The object key to copy
+     * @param outputStream The stream to write to
+     */
+    @Override
+    public void transferTo(String objectKey, OutputStream outputStream) throws IOException {
+        try (InputStream fileContent = getFile(objectKey)) {
+            fileContent.transferTo(outputStream);
+        }
+    }
+
     /**
      * Check if a file exists in R2/S3
      * 
      * @param objectKey The object key to check
      * @return true if file exists, false otherwise
      */
+    @Override
     public boolean fileExists(String objectKey) {
         try {
             HeadObjectRequest headObjectRequest = HeadObjectRequest.builder()
                     .bucket(bucketName)
                     .key(objectKey)
+                    .overrideConfiguration(timeout(timeoutMillis))
                     .build();
 
-            s3Client.headObject(headObjectRequest);
+            call("head", true, () -> s3Client.headObject(headObjectRequest));
             return true;
         } catch (NoSuchKeyException e) {
             return false;
@@ -131,34 +327,303 @@ public class S3Service {
         }
     }
 
-    /**
-     * Generate a unique object key for the file
-     * 
-     * @param userId   The user ID
-     * @param fileName The original file name
-     * @return The generated object key
-     */
-    private String generateObjectKey(Long userId, String fileName) {
-        return String.format("users/%d/notes/%s", userId, fileName);
-    }
-
     /**
      * Get file size from R2/S3
      * 
      * @param objectKey The object key
      * @return The file size in bytes
      */
+    @Override
     public Long getFileSize(String objectKey) {
         try {
             HeadObjectRequest headObjectRequest = HeadObjectRequest.builder()
                     .bucket(bucketName)
                     .key(objectKey)
+                    .overrideConfiguration(timeout(timeoutMillis))
                     .build();
 
-            HeadObjectResponse response = s3Client.headObject(headObjectRequest);
+            HeadObjectResponse response = call("head", true, () -> s3Client.headObject(headObjectRequest));
             return response.contentLength();
         } catch (Exception e) {
             throw new RuntimeException("Failed to get file size from R2: " + e.getMessage(), e);
         }
     }
+
+    /**
+     * Start an S3 multipart upload; R2 keeps unfinished uploads for 7 days
+     *
+     * @param objectKey The object key to write once complete
+     * @return The S3 upload ID
+     */
+    @Override
+    public String startMultipartUpload(String objectKey) {
+        CreateMultipartUploadRequest createRequest = CreateMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(objectKey)
+                .contentType("text/html; charset=UTF-8")
+                .overrideConfiguration(timeout(timeoutMillis))
+                .build();
+
+        // A retry could leave an orphaned upload behind
+        return call("create-multipart", false, () -> s3Client.createMultipartUpload(createRequest)).uploadId();
+    }
+
+    /**
+     * Upload one part; all parts but the last must be at least 5 MiB
+     *
+     * @return The part's ETag
+     */
+    @Override
+    public String uploadPart(String objectKey, String multipartUploadId, int partNumber, byte[] data) {
+        UploadPartRequest uploadPartRequest = UploadPartRequest.builder()
+                .bucket(bucketName)
+                .key(objectKey)
+                .uploadId(multipartUploadId)
+                .partNumber(partNumber)
+                .contentLength((long) data.length)
+                .overrideConfiguration(timeout(transferTimeoutMillis))
+                .build();
+
+        return call("upload-part", true, () -> s3Client.uploadPart(uploadPartRequest, RequestBody.fromBytes(data)))
+                .eTag();
+    }
+
+    @Override
+    public void completeMultipartUpload(String objectKey, String multipartUploadId, List<String> partETags) {
+        List<CompletedPart> parts = new ArrayList<>(partETags.size());
+        for (int i = 0; i < partETags.size(); i++) {
+            parts.add(CompletedPart.builder().partNumber(i + 1).eTag(partETags.get(i)).build());
+        }
+        CompleteMultipartUploadRequest completeRequest = CompleteMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(objectKey)
+                .uploadId(multipartUploadId)
+                .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                .overrideConfiguration(timeout(transferTimeoutMillis))
+                .build();
+
+        // Once the first attempt has completed the upload, a retry would fail with NoSuchUpload
+        call("complete-multipart", false, () -> s3Client.completeMultipartUpload(completeRequest));
+    }
+
+    @Override
+    public void abortMultipartUpload(String objectKey, String multipartUploadId, int partCount) {
+        AbortMultipartUploadRequest abortRequest = AbortMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(objectKey)
+                .uploadId(multipartUploadId)
+                .overrideConfiguration(timeout(timeoutMillis))
+                .build();
+
+        try {
+            call("abort-multipart", true, () -> s3Client.abortMultipartUpload(abortRequest));
+        } catch (NoSuchUploadException e) {
+            // Already completed, aborted or expired
+        }
+    }
+
+    /**
+     * List one page of the bucket with ListObjectsV2
+     */
+    @Override
+    public ObjectPage listObjects(String startAfter, int maxKeys) {
+        ListObjectsV2Request listRequest = ListObjectsV2Request.builder()
+                .bucket(bucketName)
+                .startAfter(startAfter.isEmpty() ? null : startAfter)
+                .maxKeys(maxKeys)
+                .overrideConfiguration(timeout(timeoutMillis))
+                .build();
+
+        ListObjectsV2Response response = call("list", true, () -> s3Client.listObjectsV2(listRequest));
+        List<StoredObject> objects = new ArrayList<>(response.contents().size());
+        for (S3Object object : response.contents()) {
+            objects.add(new StoredObject(object.key(), object.size(), object.lastModified()));
+        }
+        return new ObjectPage(objects, Boolean.TRUE.equals(response.isTruncated()));
+    }
+
+    /**
+     * Presign a PUT of an HTML file; the signature covers the content type and length,
+     * so the client cannot upload more than it declared
+     *
+     * @param objectKey     The object key to write
+     * @param contentLength The declared size in bytes
+     * @return The presigned URL
+     */
+    @Override
+    public PresignedUrl presignUpload(String objectKey, long contentLength) {
+        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(objectKey)
+                .contentType("text/html; charset=UTF-8")
+                .contentLength(contentLength)
+                .build();
+
+        return presignedUrl(s3Presigner.presignPutObject(presign -> presign
+                .signatureDuration(Duration.ofSeconds(presignedUrlExpirySeconds))
+                .putObjectRequest(putObjectRequest)));
+    }
+
+    /**
+     * Presign a GET of a file, served as HTML
+     *
+     * @param objectKey The object key to read
+     * @return The presigned URL
+     */
+    @Override
+    public PresignedUrl presignDownload(String objectKey) {
+        GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(objectKey)
+                .responseContentType("text/html; charset=UTF-8")
+                .build();
+
+        return presignedUrl(s3Presigner.presignGetObject(presign -> presign
+                .signatureDuration(Duration.ofSeconds(presignedUrlExpirySeconds))
+                .getObjectRequest(getObjectRequest)));
+    }
+
+    private static PresignedUrl presignedUrl(PresignedRequest request) {
+        // Host is set by the client from the URL
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> header : request.signedHeaders().entrySet()) {
+            if (!header.getKey().equalsIgnoreCase("host")) {
+                headers.put(header.getKey(), String.join(",", header.getValue()));
+            }
+        }
+        return new PresignedUrl(request.url().toString(), request.expiration(), headers);
+    }
+
+    /**
+     * Run an R2 call through the circuit breaker, retrying it within the retry budget if
+     * it is idempotent
+     *
+     * @param operation  The operation name, for the observation
+     * @param idempotent Whether the call can safely be repeated
+     * @param call       The SDK call
+     * @return The SDK call result
+     */
+    private <T> T call(String operation, boolean idempotent, Supplier<T> call) {
+        retryBudget.deposit();
+        for (int attempt = 1;; attempt++) {
+            if (!circuitBreaker.tryAcquire()) {
+                rejections.increment();
+                throw new RuntimeException("R2 is unavailable: too many recent calls failed");
+            }
+            try {
+                T result = observe(operation, call);
+                circuitBreaker.onSuccess();
+                return result;
+            } catch (RuntimeException e) {
+                if (!isFailure(e)) {
+                    // R2 answered (e.g. 404), so it is up
+                    circuitBreaker.onSuccess();
+                    throw e;
+                }
+                circuitBreaker.onFailure();
+                if (!idempotent || attempt >= maxAttempts || !retryBudget.tryWithdraw()) {
+                    throw e;
+                }
+                retries.increment();
+                try {
+                    // Exponential backoff with full jitter
+                    Thread.sleep(ThreadLocalRandom.current().nextLong(RETRY_BACKOFF_MILLIS << attempt));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Failures that say R2 is unhealthy, rather than that the request was wrong
+     */
+    private static boolean isFailure(RuntimeException e) {
+        if (e instanceof AwsServiceException serviceException) {
+            int status = serviceException.statusCode();
+            return status >= 500 || status == 429;
+        }
+        // Timeouts and connection errors
+        return e instanceof SdkClientException;
+    }
+
+    /**
+     * GET an object, sending the request again if there is no response within
+     * hedge-delay-ms and the retry budget allows it; the first successful response is
+     * returned and the other is aborted
+     */
+    private ResponseInputStream<GetObjectResponse> hedgedGet(GetObjectRequest request) {
+        if (hedgeDelayMillis <= 0) {
+            return s3Client.getObject(request);
+        }
+
+        CompletableFuture<ResponseInputStream<GetObjectResponse>> first = CompletableFuture
+                .supplyAsync(() -> s3Client.getObject(request), hedgeExecutor);
+        try {
+            return first.get(hedgeDelayMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Slow response: hedge below
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            first.thenAccept(ResponseInputStream::abort);
+            throw new RuntimeException("Interrupted while waiting for R2", e);
+        }
+        if (!retryBudget.tryWithdraw()) {
+            return join(first);
+        }
+
+        hedges.increment();
+        CompletableFuture<ResponseInputStream<GetObjectResponse>> second = CompletableFuture
+                .supplyAsync(() -> s3Client.getObject(request), hedgeExecutor);
+        CompletableFuture<ResponseInputStream<GetObjectResponse>> winner = new CompletableFuture<>();
+        AtomicInteger failed = new AtomicInteger();
+        for (CompletableFuture<ResponseInputStream<GetObjectResponse>> attempt : List.of(first, second)) {
+            attempt.whenComplete((stream, error) -> {
+                if (error == null) {
+                    if (!winner.complete(stream)) {
+                        stream.abort();
+                    }
+                } else if (failed.incrementAndGet() == 2) {
+                    winner.completeExceptionally(error);
+                }
+            });
+        }
+        return join(winner);
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    private static RuntimeException unwrap(Throwable cause) {
+        return cause instanceof RuntimeException runtimeException
+                ? runtimeException
+                : new RuntimeException(cause);
+    }
+
+    private static AwsRequestOverrideConfiguration timeout(long millis) {
+        return AwsRequestOverrideConfiguration.builder()
+                .apiCallTimeout(Duration.ofMillis(millis))
+                .build();
+    }
+
+    /**
+     * Run an R2 call as a notes.r2 observation tagged with the operation
+     *
+     * @param operation The operation name (put, get, head, delete, or a multipart step)
+     * @param call      The SDK call
+     * @return The SDK call result
+     */
+    private <T> T observe(String operation, Supplier<T> call) {
+        return Observation.createNotStarted("notes.r2", observationRegistry)
+                .lowCardinalityKeyValue("operation", operation)
+                .observe(call);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,229 @@
+package dev.jgrove2.notes_backend.Services;
+
+import dev.jgrove2.notes_backend.Models.Note;
+import dev.jgrove2.notes_backend.Models.NoteVersionSummary;
+import dev.jgrove2.notes_backend.Repositories.NoteRepository;
+import dev.jgrove2.notes_backend.Repositories.PendingObjectRepository;
+import dev.jgrove2.notes_backend.Services.ObjectStore.ObjectPage;
+import dev.jgrove2.notes_backend.Services.ObjectStore.StoredObject;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Finds and repairs drift between note storage and the notes table, in bounded batches.
+ *
+ * Each run first queues the objects of pending_objects rows older than
+ * notes.reconciler.grace-minutes that nothing references for deletion: writes that
+ * failed half way (see PendingObjectService), and direct uploads not confirmed before
+ * they expired. On backends that can list their objects
+ * it then compares one ListObjectsV2 page with a keyset scan of the note object keys in
+ * the same key range: objects that nothing references are queued for deletion (see
+ * ObjectDeletionService), and notes whose object is missing get their latest version
+ * written back, or are logged if they have none. The next run continues after the page;
+ * once the listing reaches the end of the bucket, the next pass starts
+ * notes.reconciler.pass-interval-minutes after this one started. Objects and notes
+ * changed within the grace period are left alone, as their write may still be in progress.
+ */
+@Service
+public class StorageReconciliationService {
+
+    private static final Logger log = LoggerFactory.getLogger(StorageReconciliationService.class);
+
+    // The most keys ListObjectsV2 returns per page
+    private static final int BATCH_SIZE = 1000;
+
+    @Autowired
+    private NoteStorage noteStorage;
+
+    @Autowired
+    private PendingObjectService pendingObjectService;
+
+    @Autowired
+    private PendingObjectRepository pendingObjectRepository;
+
+    @Autowired
+    private NoteRepository noteRepository;
+
+    @Autowired
+    private NoteVersionService noteVersionService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${notes.reconciler.enabled:true}")
+    private boolean enabled;
+
+    @Value("${notes.reconciler.grace-minutes:60}")
+    private long graceMinutes;
+
+    @Value("${notes.reconciler.pass-interval-minutes:60}")
+    private long passIntervalMinutes;
+
+    // The storage's listing, null when it cannot list
+    private ObjectStore objectStore;
+
+    // Last key of the previous page, empty to list from the start
+    private String sweepAfter = "";
+
+    // When the current pass over the listing started, and when the next one may start
+    private Instant passStartedAt;
+
+    private Instant nextPassAt = Instant.MIN;
+
+    private Counter pendingDeleted;
+
+    private Counter orphansDeleted;
+
+    private Counter restored;
+
+    private Counter missing;
+
+    @PostConstruct
+    void init() {
+        objectStore = ObjectStore.of(noteStorage);
+        pendingDeleted = Counter.builder("notes.reconciler.repaired").tag("kind", "pending")
+                .description("Objects of failed writes queued for deletion by the reconciler")
+                .register(meterRegistry);
+        orphansDeleted = Counter.builder("notes.reconciler.repaired").tag("kind", "orphan")
+                .description("Unreferenced objects found in the listing and queued for deletion")
+                .register(meterRegistry);
+        restored = Counter.builder("notes.reconciler.repaired").tag("kind", "restored")
+                .description("Missing note objects written back from the latest version")
+                .register(meterRegistry);
+        missing = Counter.builder("notes.reconciler.missing")
+                .description("Notes whose object is missing and has no version to restore it from")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${notes.reconciler.interval-ms:60000}")
+    public void reconcile() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(graceMinutes);
+        try {
+            deleteExpiredPending(cutoff);
+            if (objectStore != null) {
+                sweep(cutoff);
+            }
+        } catch (RuntimeException e) {
+            // Storage is likely unavailable, try again next run
+            log.warn("Storage reconciliation failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Queue the objects of up to BATCH_SIZE registrations older than the cutoff, or of
+     * expired direct uploads, for deletion
+     */
+    private void deleteExpiredPending(LocalDateTime cutoff) {
+        List<String> objectKeys = pendingObjectRepository.findExpiredObjectKeys(cutoff, LocalDateTime.now(),
+                PageRequest.of(0, BATCH_SIZE));
+        for (String objectKey : objectKeys) {
+            if (pendingObjectService.queueDeletionIfUnreferenced(objectKey, true)) {
+                pendingDeleted.increment();
+            }
+        }
+    }
+
+    /**
+     * Compare the next page of the listing with the notes in its key range
+     */
+    private void sweep(LocalDateTime cutoff) {
+        String after = sweepAfter;
+        if (after.isEmpty()) {
+            Instant now = Instant.now();
+            if (now.isBefore(nextPassAt)) {
+                return;
+            }
+            passStartedAt = now;
+        }
+        ObjectPage page = objectStore.listObjects(after, BATCH_SIZE);
+        List<StoredObject> objects = page.objects();
+        String last = objects.isEmpty() ? after : objects.get(objects.size() - 1).objectKey();
+        if (page.truncated()) {
+            sweepAfter = last;
+        } else {
+            sweepAfter = "";
+            nextPassAt = passStartedAt.plus(Duration.ofMinutes(passIntervalMinutes));
+        }
+
+        Instant objectCutoff = cutoff.atZone(ZoneId.systemDefault()).toInstant();
+        Set<String> listed = new HashSet<>();
+        List<String> candidates = new ArrayList<>();
+        for (StoredObject object : objects) {
+            listed.add(object.objectKey());
+            if (isNoteObjectKey(object.objectKey()) && object.lastModified().isBefore(objectCutoff)) {
+                candidates.add(object.objectKey());
+            }
+        }
+
+        if (!candidates.isEmpty()) {
+            Set<String> referenced = pendingObjectService.referencedObjectKeys(candidates);
+            for (String objectKey : candidates) {
+                if (!referenced.contains(objectKey)
+                        && pendingObjectService.queueDeletionIfUnreferenced(objectKey, false)) {
+                    log.info("Queued unreferenced object {} for deletion", objectKey);
+                    orphansDeleted.increment();
+                }
+            }
+        }
+
+        // The notes whose object would have been listed in this page
+        List<Note> notes = noteRepository.findByObjectKeyRange(after, last, page.truncated(), cutoff, BATCH_SIZE);
+        for (Note note : notes) {
+            if (!listed.contains(note.getObjectKey())) {
+                restore(note);
+            }
+        }
+    }
+
+    /**
+     * Write a note's latest version back to its missing object
+     */
+    private void restore(Note note) {
+        String objectKey = note.getObjectKey();
+        // Listed a moment ago, so it is most likely gone; make sure before writing
+        if (noteStorage.fileExists(objectKey)) {
+            return;
+        }
+        Optional<byte[]> content = noteVersionService.getVersionSummaries(note.getId()).stream()
+                .findFirst()
+                .map(NoteVersionSummary::version)
+                .flatMap(version -> noteVersionService.getVersionContent(note.getId(), version));
+        if (content.isEmpty()) {
+            log.warn("Note {} has no object {} and no version to restore it from", note.getId(), objectKey);
+            missing.increment();
+            return;
+        }
+        noteStorage.updateFile(new ByteArrayInputStream(content.get()), objectKey);
+        log.info("Restored missing object {} of note {} from its latest version", objectKey, note.getId());
+        restored.increment();
+    }
+
+    /**
+     * Whether an object key is one this backend writes: per-note objects and blobs
+     */
+    private static boolean isNoteObjectKey(String objectKey) {
+        return objectKey.startsWith("users/") || objectKey.startsWith("blobs/");
+    }
+}
\ No newline at end of file
@@ -0,0 +1,462 @@
+package dev.jgrove2.notes_backend.Services;
+
+import dev.jgrove2.notes_backend.Models.StorageOutboxEntry;
+import dev.jgrove2.notes_backend.Repositories.StorageOutboxRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Local disk in front of R2, for single-node deployments.
+ *
+ * Writes land on disk (LocalNoteStorage) and are recorded in the storage_outbox table
+ * in the same request; a scheduled worker copies them to R2 with exponential backoff.
+ * Reads are served from disk and fall back to R2 on a miss, keeping a copy on disk.
+ * The disk tier is evicted least-recently-used once it holds more than
+ * notes.storage.tiered.max-bytes; files not yet in R2 are never evicted.
+ *
+ * Pending operations are coalesced per object key: several writes to one key before the
+ * worker runs cost one upload. Note saves write each new content to a new key
+ * (NoteStorage.generateUploadObjectKey), so autosaves of one note are not coalesced. The
+ * previous key's upload is only skipped when its delete reaches the outbox first.
+ */
+@Service
+@Primary
+@ConditionalOnProperty(name = "notes.storage.backend", havingValue = "tiered")
+public class TieredNoteStorage implements NoteStorage {
+
+    private static final Logger log = LoggerFactory.getLogger(TieredNoteStorage.class);
+
+    private static final int LOCK_STRIPES = 64;
+
+    @Autowired
+    private LocalNoteStorage disk;
+
+    @Autowired
+    private S3Service remote;
+
+    @Autowired
+    private StorageOutboxRepository outboxRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${notes.storage.tiered.max-bytes:1073741824}")
+    private long maxBytes;
+
+    @Value("${notes.storage.tiered.retry-base-ms:1000}")
+    private long retryBaseMillis;
+
+    @Value("${notes.storage.tiered.retry-max-ms:300000}")
+    private long retryMaxMillis;
+
+    // Access-ordered: iteration starts at the least recently used file
+    private final LinkedHashMap<Path, Long> cachedFiles = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long cachedBytes;
+
+    // Files with a write not yet in R2
+    private final Set<Path> pinnedFiles = ConcurrentHashMap.newKeySet();
+
+    // Files deleted on disk whose delete is not yet applied to R2; R2 must not be read for them
+    private final Set<Path> pendingDeletes = ConcurrentHashMap.newKeySet();
+
+    // Serialize writes, deletes and miss fills of the same key; a fill must not overwrite a newer write
+    private final Object[] keyLocks = new Object[LOCK_STRIPES];
+
+    private final AtomicLong pendingCount = new AtomicLong();
+
+    private volatile LocalDateTime oldestPending;
+
+    private Counter hits;
+
+    private Counter misses;
+
+    private Counter evictions;
+
+    private Counter replicated;
+
+    private Counter replicationFailures;
+
+    @PostConstruct
+    void init() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            keyLocks[i] = new Object();
+        }
+
+        hits = Counter.builder("notes.tier.reads").tag("result", "hit").register(meterRegistry);
+        misses = Counter.builder("notes.tier.reads").tag("result", "miss").register(meterRegistry);
+        evictions = Counter.builder("notes.tier.evictions").register(meterRegistry);
+        replicated = Counter.builder("notes.tier.replication").tag("result", "success").register(meterRegistry);
+        replicationFailures = Counter.builder("notes.tier.replication").tag("result", "failure")
+                .register(meterRegistry);
+        Gauge.builder("notes.tier.bytes", this, TieredNoteStorage::getCachedBytes)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("notes.tier.replication.pending", pendingCount, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("notes.tier.replication.lag", this, TieredNoteStorage::getReplicationLagSeconds)
+                .baseUnit("seconds")
+                .register(meterRegistry);
+
+        loadCachedFiles();
+        for (String objectKey : outboxRepository.findPendingPutObjectKeys()) {
+            pinnedFiles.add(disk.pathFor(objectKey));
+        }
+        for (String objectKey : outboxRepository.findPendingDeleteObjectKeys()) {
+            pendingDeletes.add(disk.pathFor(objectKey));
+        }
+        refreshReplicationState();
+        evict();
+    }
+
+    /**
+     * Write a new file to disk and queue it for R2
+     */
+    @Override
+    public String uploadFile(InputStream fileInputStream, String fileName, Long userId) {
+        return updateFile(fileInputStream, NoteStorage.generateObjectKey(userId, fileName));
+    }
+
+    /**
+     * Replace a file on disk and queue it for R2
+     */
+    @Override
+    public String updateFile(InputStream fileInputStream, String objectKey) {
+        Path path = disk.pathFor(objectKey);
+        synchronized (lockFor(path)) {
+            // Pinned before the write so eviction cannot drop it before the outbox row exists
+            pinnedFiles.add(path);
+            disk.updateFile(fileInputStream, objectKey);
+            outboxRepository.enqueue(objectKey, StorageOutboxEntry.OPERATION_PUT);
+            pendingDeletes.remove(path);
+        }
+        recordCached(path);
+        evict();
+        return objectKey;
+    }
+
+    /**
+     * Delete a file from disk and queue the delete for R2
+     */
+    @Override
+    public void deleteFile(String objectKey) {
+        Path path = disk.pathFor(objectKey);
+        synchronized (lockFor(path)) {
+            // Replaces a pending write, so the worker will not upload the file again
+            outboxRepository.enqueue(objectKey, StorageOutboxEntry.OPERATION_DELETE);
+            pendingDeletes.add(path);
+            pinnedFiles.remove(path);
+            disk.deleteFile(objectKey);
+        }
+        removeCached(path);
+    }
+
+    /**
+     * Open a file from disk, fetching it from R2 first on a miss
+     */
+    @Override
+    public InputStream getFile(String objectKey) {
+        fetchIfMissing(objectKey);
+        try {
+            return disk.getFile(objectKey);
+        } catch (UncheckedIOException e) {
+            if (pendingDeletes.contains(disk.pathFor(objectKey))) {
+                throw e;
+            }
+            // Evicted since the fetch
+            return remote.getFile(objectKey);
+        }
+    }
+
+    /**
+     * Copy a file from disk to the output stream, fetching it from R2 first on a miss
+     */
+    @Override
+    public void transferTo(String objectKey, OutputStream outputStream) throws IOException {
+        fetchIfMissing(objectKey);
+        try {
+            disk.transferTo(objectKey, outputStream);
+        } catch (NoSuchFileException e) {
+            if (pendingDeletes.contains(disk.pathFor(objectKey))) {
+                throw e;
+            }
+            // Evicted since the fetch, nothing has been written yet
+            remote.transferTo(objectKey, outputStream);
+        }
+    }
+
+    /**
+     * Check if a file exists on disk or in R2
+     */
+    @Override
+    public boolean fileExists(String objectKey) {
+        if (disk.fileExists(objectKey)) {
+            return true;
+        }
+        return !pendingDeletes.contains(disk.pathFor(objectKey)) && remote.fileExists(objectKey);
+    }
+
+    /**
+     * Get file size from disk, or from R2 if it is not on disk
+     */
+    @Override
+    public Long getFileSize(String objectKey) {
+        if (disk.fileExists(objectKey)) {
+            try {
+                return disk.getFileSize(objectKey);
+            } catch (RuntimeException e) {
+                // Evicted since the check
+            }
+        }
+        if (pendingDeletes.contains(disk.pathFor(objectKey))) {
+            throw new RuntimeException("File not found: " + objectKey);
+        }
+        return remote.getFileSize(objectKey);
+    }
+
+    /**
+     * Copy due outbox entries to R2. Failed entries are retried with exponential
+     * backoff, up to notes.storage.tiered.retry-max-ms apart, until they succeed.
+     */
+    @Scheduled(fixedDelayString = "${notes.storage.tiered.replication-interval-ms:1000}")
+    public void replicate() {
+        try {
+            List<StorageOutboxEntry> entries = outboxRepository
+                    .findTop100ByNextAttemptAtLessThanEqualOrderByNextAttemptAt(LocalDateTime.now());
+            for (StorageOutboxEntry entry : entries) {
+                replicate(entry);
+            }
+            // Replicated files can be evicted now
+            if (!entries.isEmpty()) {
+                evict();
+            }
+        } finally {
+            refreshReplicationState();
+        }
+    }
+
+    private void replicate(StorageOutboxEntry entry) {
+        String objectKey = entry.getObjectKey();
+        try {
+            if (StorageOutboxEntry.OPERATION_PUT.equals(entry.getOperation())) {
+                try (InputStream fileInputStream = disk.getFile(objectKey)) {
+                    remote.updateFile(fileInputStream, objectKey);
+                }
+            } else {
+                remote.deleteFile(objectKey);
+            }
+        } catch (IOException | RuntimeException e) {
+            replicationFailures.increment();
+            long backoffMillis = retryBaseMillis << Math.min(entry.getAttempts(), 20);
+            LocalDateTime nextAttemptAt = LocalDateTime.now()
+                    .plus(Duration.ofMillis(Math.min(backoffMillis, retryMaxMillis)));
+            String error = String.valueOf(e.getMessage());
+            outboxRepository.recordFailure(entry.getId(), entry.getSeq(), nextAttemptAt,
+                    error.length() > 1000 ? error.substring(0, 1000) : error);
+            log.warn("Replication of {} {} to R2 failed (attempt {}), retrying at {}: {}",
+                    entry.getOperation(), objectKey, entry.getAttempts() + 1, nextAttemptAt, error);
+            return;
+        }
+
+        replicated.increment();
+        Path path = disk.pathFor(objectKey);
+        synchronized (lockFor(path)) {
+            // Unpin only if no newer operation was queued while this one was running
+            if (outboxRepository.deleteByIdAndSeq(entry.getId(), entry.getSeq()) == 1) {
+                pinnedFiles.remove(path);
+                pendingDeletes.remove(path);
+            }
+        }
+    }
+
+    /**
+     * Bytes currently held on disk
+     */
+    public long getCachedBytes() {
+        synchronized (cachedFiles) {
+            return cachedBytes;
+        }
+    }
+
+    /**
+     * Age of the oldest write or delete not yet applied to R2, 0 when caught up
+     */
+    public double getReplicationLagSeconds() {
+        LocalDateTime oldest = oldestPending;
+        return oldest == null ? 0.0 : Math.max(0, Duration.between(oldest, LocalDateTime.now()).toMillis() / 1000.0);
+    }
+
+    /**
+     * Make sure a file is on disk, copying it from R2 on a miss
+     */
+    private void fetchIfMissing(String objectKey) {
+        Path path = disk.pathFor(objectKey);
+        if (Files.isRegularFile(path)) {
+            hits.increment();
+            touch(path);
+            return;
+        }
+
+        misses.increment();
+        synchronized (lockFor(path)) {
+            // Another request may have fetched or written it while this one waited. A file
+            // with a pending delete is still in R2, but copying it back would resurrect it.
+            if (Files.isRegularFile(path) || pendingDeletes.contains(path)) {
+                return;
+            }
+            try (InputStream fileInputStream = remote.getFile(objectKey)) {
+                disk.updateFile(fileInputStream, objectKey);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to fetch file " + objectKey + " from R2: " + e.getMessage(), e);
+            }
+        }
+        recordCached(path);
+        evict();
+    }
+
+    private void loadCachedFiles() {
+        Path root = disk.getRoot();
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        // Oldest first, so file modification times seed the LRU order after a restart
+        try (Stream<Path> files = Files.walk(root)) {
+            List<Path> paths = files
+                    .filter(Files::isRegularFile)
+                    .filter(path -> !path.getFileName().toString().endsWith(".tmp"))
+                    .sorted(Comparator.comparing(TieredNoteStorage::lastModified))
+                    .toList();
+            for (Path path : paths) {
+                recordCached(path);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to scan disk tier " + root + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void recordCached(Path path) {
+        long size;
+        try {
+            size = Files.size(path);
+        } catch (IOException e) {
+            // Evicted or deleted meanwhile
+            return;
+        }
+        synchronized (cachedFiles) {
+            Long previous = cachedFiles.put(path, size);
+            cachedBytes += size - (previous == null ? 0 : previous);
+        }
+    }
+
+    private void touch(Path path) {
+        synchronized (cachedFiles) {
+            cachedFiles.get(path);
+        }
+    }
+
+    private void removeCached(Path path) {
+        synchronized (cachedFiles) {
+            Long previous = cachedFiles.remove(path);
+            if (previous != null) {
+                cachedBytes -= previous;
+            }
+        }
+    }
+
+    /**
+     * Delete least recently used files until the tier fits in notes.storage.tiered.max-bytes.
+     *
+     * Each file is deleted under its key lock after checking again that it is not pinned:
+     * a write pins its file under that lock before writing, so a file picked here can gain
+     * a write that is not yet in R2 before it is deleted.
+     */
+    void evict() {
+        Set<Path> skipped = new HashSet<>();
+        while (true) {
+            Path path = null;
+            synchronized (cachedFiles) {
+                if (cachedBytes <= maxBytes) {
+                    return;
+                }
+                // Iterating does not count as an access, so the order is kept
+                for (Path candidate : cachedFiles.keySet()) {
+                    if (!pinnedFiles.contains(candidate) && !skipped.contains(candidate)) {
+                        path = candidate;
+                        break;
+                    }
+                }
+            }
+            if (path == null) {
+                return;
+            }
+
+            synchronized (lockFor(path)) {
+                if (pinnedFiles.contains(path)) {
+                    skipped.add(path);
+                    continue;
+                }
+                try {
+                    // Readers that already opened the file keep reading it
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    log.warn("Failed to evict {} from the disk tier: {}", path, e.getMessage());
+                    skipped.add(path);
+                    continue;
+                }
+                removeCached(path);
+            }
+            evictions.increment();
+        }
+    }
+
+    private void refreshReplicationState() {
+        try {
+            pendingCount.set(outboxRepository.count());
+            oldestPending = outboxRepository.findOldestEnqueuedAt().orElse(null);
+        } catch (RuntimeException e) {
+            log.warn("Failed to read the storage outbox: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Lock of a key's file; by path, since eviction only knows the path
+     */
+    private Object lockFor(Path path) {
+        return keyLocks[Math.floorMod(path.hashCode(), LOCK_STRIPES)];
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+}
\ No newline at end of file
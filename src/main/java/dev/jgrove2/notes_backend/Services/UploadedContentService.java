@@ -0,0 +1,96 @@
+package dev.jgrove2.notes_backend.Services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Versions and search text of content uploaded to storage without passing through the
+ * backend (direct and resumable uploads), and search text of large saves.
+ *
+ * The content is read back from storage in the background once the note points at it,
+ * so the confirming request neither waits for the read nor holds the file in memory;
+ * at most notes.uploads.processing-concurrency files are read at once. Queued work is
+ * lost on restart: the search backfill still indexes those notes, but the version of
+ * that upload is not recorded.
+ */
+@Service
+public class UploadedContentService {
+
+    private static final Logger log = LoggerFactory.getLogger(UploadedContentService.class);
+
+    @Autowired
+    private NoteService noteService;
+
+    @Autowired
+    private NoteStorage noteStorage;
+
+    @Autowired
+    private NoteVersionService noteVersionService;
+
+    @Autowired
+    private NoteSearchService noteSearchService;
+
+    @Value("${notes.uploads.processing-concurrency:2}")
+    private int concurrency;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    void start() {
+        executor = Executors.newFixedThreadPool(concurrency, Thread.ofVirtual().name("uploaded-content-", 0).factory());
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Record the version and search text of a note's uploaded content in the background,
+     * unless the note points at other content by then
+     *
+     * @param noteId    The note ID
+     * @param objectKey The object key the note was pointed at
+     */
+    public void contentUploaded(Long noteId, String objectKey) {
+        if (!noteVersionService.isEnabled() && !noteSearchService.isEnabled()) {
+            return;
+        }
+        executor.execute(() -> process(noteId, objectKey, true));
+    }
+
+    /**
+     * Index the search text of content saved through the backend in the background,
+     * unless the note points at other content by then. Its version is already recorded.
+     *
+     * @param noteId    The note ID
+     * @param objectKey The object key the note was pointed at
+     */
+    public void contentSaved(Long noteId, String objectKey) {
+        if (!noteSearchService.isEnabled()) {
+            return;
+        }
+        executor.execute(() -> process(noteId, objectKey, false));
+    }
+
+    void process(Long noteId, String objectKey, boolean recordVersion) {
+        try {
+            // Streamed from storage: the version is recorded without holding the whole file
+            InputStreamSource content = () -> noteStorage.getFile(objectKey);
+            if (!noteService.recordUploadedContent(noteId, objectKey, content, recordVersion)) {
+                log.debug("Note {} no longer points at {}, skipped", noteId, objectKey);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to record uploaded content of note {}: {}", noteId, e.getMessage());
+        }
+    }
+}
\ No newline at end of file
@@ -2,8 +2,10 @@ package dev.jgrove2.notes_backend.Services;
 
 import dev.jgrove2.notes_backend.Models.User;
 import dev.jgrove2.notes_backend.Repositories.UserRepository;
+import io.micrometer.observation.annotation.Observed;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 
@@ -16,6 +18,8 @@ public class UserService {
     /**
      * Get user by Kinde user ID
      */
+    @Transactional(readOnly = true)
+    @Observed(name = "notes.user.lookup")
     public Optional<User> getUserByKindeUserId(String kindeUserId) {
         return userRepository.findByKindeUserIdAndIsActiveTrue(kindeUserId);
     }
@@ -23,6 +27,7 @@ public class UserService {
     /**
      * Get user by ID
      */
+    @Transactional(readOnly = true)
     public Optional<User> getUserById(Long userId) {
         return userRepository.findById(userId);
     }
@@ -30,6 +35,7 @@ public class UserService {
     /**
      * Create a new user
      */
+    @Transactional
     public User createUser(String firstName, String lastName, String kindeUserId) {
         if (userRepository.existsByKindeUserId(kindeUserId)) {
             throw new RuntimeException("User with Kinde ID " + kindeUserId + " already exists");
@@ -42,6 +48,7 @@ public class UserService {
     /**
      * Update user (both names required)
      */
+    @Transactional
     public User updateUser(Long userId, String firstName, String lastName) {
         Optional<User> optionalUser = userRepository.findById(userId);
         if (optionalUser.isPresent()) {
@@ -58,6 +65,7 @@ public class UserService {
      * Partially update user fields (names, autoSave, autoSaveDuration).
      * Pass null for fields that should not change.
      */
+    @Transactional
     public User updateUserProfile(Long userId, String firstName, String lastName, Boolean autoSave,
             Integer autoSaveDuration) {
         Optional<User> optionalUser = userRepository.findById(userId);
@@ -84,6 +92,7 @@ public class UserService {
     /**
      * Check if user exists by Kinde user ID
      */
+    @Transactional(readOnly = true)
     public boolean userExistsByKindeUserId(String kindeUserId) {
         return userRepository.existsByKindeUserId(kindeUserId);
     }
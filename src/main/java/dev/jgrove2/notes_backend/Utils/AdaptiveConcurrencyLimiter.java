@@ -0,0 +1,216 @@
+package dev.jgrove2.notes_backend.Utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of requests in progress to what the backend can currently serve,
+ * so excess requests are rejected at once instead of queueing for a database connection.
+ *
+ * The limit adapts to measured latency as in Netflix's Gradient2 limiter: each window
+ * compares the window's average latency with a long-term average, shrinks the limit in
+ * proportion when latency rises, and otherwise grows it by about its square root.
+ * While any thread is waiting for a Hikari connection the limit cannot grow and is cut
+ * by at least a tenth. Bulk requests may only use notes.admission.bulk-fraction of the
+ * limit, so reads and autosaves are still admitted when bulk work is shed.
+ */
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+    /**
+     * Request classes: bulk requests are shed first
+     */
+    public enum Priority {
+        CRITICAL,
+        BULK
+    }
+
+    private static final long MIN_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final long MAX_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final int MIN_WINDOW_SAMPLES = 10;
+
+    // Long-term latency average over about this many windows
+    private static final int LONG_WINDOWS = 600;
+
+    // Latency may rise this much above the long-term average before the limit shrinks
+    private static final double TOLERANCE = 1.5;
+
+    private static final double SMOOTHING = 0.2;
+
+    @Autowired
+    private DatabaseConnectionUtil databaseConnectionUtil;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${notes.admission.enabled:true}")
+    private boolean enabled;
+
+    @Value("${notes.admission.initial-limit:40}")
+    private int initialLimit;
+
+    @Value("${notes.admission.min-limit:20}")
+    private int minLimit;
+
+    @Value("${notes.admission.max-limit:200}")
+    private int maxLimit;
+
+    @Value("${notes.admission.bulk-fraction:0.5}")
+    private double bulkFraction;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile double limit;
+
+    // Current window: latency samples and the most requests seen in progress
+    private final AtomicLong windowStartNanos = new AtomicLong(System.nanoTime());
+
+    private final AtomicLong windowLatencyNanos = new AtomicLong();
+
+    private final AtomicInteger windowSamples = new AtomicInteger();
+
+    private final AtomicInteger windowMaxInFlight = new AtomicInteger();
+
+    private final ReentrantLock updateLock = new ReentrantLock();
+
+    // Guarded by updateLock
+    private double longLatencyNanos;
+
+    private int longWindows;
+
+    private Counter shedCritical;
+
+    private Counter shedBulk;
+
+    @PostConstruct
+    public void init() {
+        limit = initialLimit;
+        Gauge.builder("notes.admission.limit", this, limiter -> limiter.limit)
+                .description("Requests admitted at once")
+                .register(meterRegistry);
+        Gauge.builder("notes.admission.in-flight", inFlight, AtomicInteger::get)
+                .description("Requests in progress")
+                .register(meterRegistry);
+        shedCritical = Counter.builder("notes.admission.shed").tag("priority", "critical")
+                .description("Requests rejected with 503")
+                .register(meterRegistry);
+        shedBulk = Counter.builder("notes.admission.shed").tag("priority", "bulk")
+                .description("Requests rejected with 503")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Whether requests are limited
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Admit a request if the limit for its priority allows it
+     *
+     * @param priority The request's class
+     * @return true if admitted, and release must be called when it ends
+     */
+    public boolean tryAcquire(Priority priority) {
+        // When nothing completes (e.g. the database stalls), only admissions close windows
+        maybeUpdateLimit();
+        int allowed = (int) (priority == Priority.BULK ? Math.max(1, limit * bulkFraction) : limit);
+        while (true) {
+            int current = inFlight.get();
+            if (current >= allowed) {
+                (priority == Priority.BULK ? shedBulk : shedCritical).increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                windowMaxInFlight.accumulateAndGet(current + 1, Math::max);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * End an admitted request
+     *
+     * @param latencyNanos The request's duration, or a negative value if it should not
+     *                     count towards the latency average (e.g. its time depends on the
+     *                     client's upload speed)
+     */
+    public void release(long latencyNanos) {
+        inFlight.decrementAndGet();
+        if (latencyNanos >= 0) {
+            windowLatencyNanos.addAndGet(latencyNanos);
+            windowSamples.incrementAndGet();
+        }
+
+        maybeUpdateLimit();
+    }
+
+    private void maybeUpdateLimit() {
+        long now = System.nanoTime();
+        long elapsed = now - windowStartNanos.get();
+        int samples = windowSamples.get();
+        if ((elapsed >= MIN_WINDOW_NANOS && samples >= MIN_WINDOW_SAMPLES || elapsed >= MAX_WINDOW_NANOS)
+                && updateLock.tryLock()) {
+            try {
+                updateLimit(now);
+            } finally {
+                updateLock.unlock();
+            }
+        }
+    }
+
+    private void updateLimit(long now) {
+        // Another thread may have closed the window already
+        if (now - windowStartNanos.get() < MIN_WINDOW_NANOS) {
+            return;
+        }
+        int samples = windowSamples.getAndSet(0);
+        long latencySum = windowLatencyNanos.getAndSet(0);
+        int maxInFlight = windowMaxInFlight.getAndSet(inFlight.get());
+        windowStartNanos.set(now);
+        boolean poolSaturated = databaseConnectionUtil.getThreadsAwaitingConnection() > 0;
+        double current = limit;
+        if (samples == 0) {
+            if (poolSaturated) {
+                limit = Math.max(minLimit, current * 0.9);
+            }
+            return;
+        }
+
+        double shortLatency = (double) latencySum / samples;
+        if (longWindows < LONG_WINDOWS) {
+            longWindows++;
+        }
+        longLatencyNanos += (shortLatency - longLatencyNanos) / longWindows;
+        // Recover quickly once a latency spike has passed
+        if (longLatencyNanos / shortLatency > 2) {
+            longLatencyNanos *= 0.95;
+        }
+
+        // Far below the limit, latency says nothing about how far it could grow
+        if (!poolSaturated && maxInFlight < current / 2) {
+            return;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longLatencyNanos / shortLatency));
+        double target = current * gradient + Math.sqrt(current);
+        double next = current * (1 - SMOOTHING) + target * SMOOTHING;
+        if (poolSaturated) {
+            next = Math.min(next, current * 0.9);
+        }
+        limit = Math.max(minLimit, Math.min(maxLimit, next));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,101 @@
+package dev.jgrove2.notes_backend.Utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+
+/**
+ * Splits content into chunks at positions chosen by the content itself (a gear rolling
+ * hash, as in FastCDC), so an edit only changes the chunks around it: inserting text
+ * shifts the following bytes but not the following chunk boundaries.
+ *
+ * Chunks are 512 bytes to 16 KiB, about 2 KiB on average.
+ */
+public final class ContentDefinedChunker {
+
+    private static final int MIN_SIZE = 512;
+
+    private static final int MAX_SIZE = 16 * 1024;
+
+    // 11 one bits: a boundary every 2 KiB on average past MIN_SIZE
+    private static final long BOUNDARY_MASK = 0x7FFL << 53;
+
+    // Fixed seed: boundaries, and therefore stored chunks, must not change between runs
+    private static final long[] GEAR = new SplittableRandom(0x6E6F7465L).longs(256).toArray();
+
+    private ContentDefinedChunker() {
+    }
+
+    /**
+     * Split content into chunks
+     *
+     * @param content The content
+     * @return The chunks in order; empty content gives no chunks
+     */
+    public static List<byte[]> split(byte[] content) {
+        List<byte[]> chunks = new ArrayList<>(content.length / 2048 + 1);
+        int start = 0;
+        while (start < content.length) {
+            int end = nextBoundary(content, start, content.length);
+            chunks.add(Arrays.copyOfRange(content, start, end));
+            start = end;
+        }
+        return chunks;
+    }
+
+    /**
+     * Split streamed content into the same chunks as split(byte[]), holding at most two
+     * maximum-size chunks of it in memory
+     *
+     * @param input The content; not closed
+     * @param chunkConsumer Called with each chunk in order
+     */
+    public static void split(InputStream input, Consumer<byte[]> chunkConsumer) throws IOException {
+        // A boundary is found within MAX_SIZE bytes of the chunk start, so that much is
+        // kept buffered ahead of it until the end of the input
+        byte[] buffer = new byte[2 * MAX_SIZE];
+        int start = 0;
+        int length = 0;
+        boolean ended = false;
+        while (true) {
+            if (!ended && length - start < MAX_SIZE) {
+                System.arraycopy(buffer, start, buffer, 0, length - start);
+                length -= start;
+                start = 0;
+                while (length < buffer.length) {
+                    int read = input.read(buffer, length, buffer.length - length);
+                    if (read < 0) {
+                        ended = true;
+                        break;
+                    }
+                    length += read;
+                }
+            }
+            if (start == length) {
+                return;
+            }
+            int end = nextBoundary(buffer, start, length);
+            chunkConsumer.accept(Arrays.copyOfRange(buffer, start, end));
+            start = end;
+        }
+    }
+
+    private static int nextBoundary(byte[] content, int start, int length) {
+        int limit = Math.min(length, start + MAX_SIZE);
+        if (limit - start <= MIN_SIZE) {
+            return limit;
+        }
+        long hash = 0;
+        for (int i = start + MIN_SIZE; i < limit; i++) {
+            hash = (hash << 1) + GEAR[content[i] & 0xFF];
+            if ((hash & BOUNDARY_MASK) == 0) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+}
\ No newline at end of file
@@ -1,6 +1,8 @@
 package dev.jgrove2.notes_backend.Utils;
 
+import com.zaxxer.hikari.HikariDataSource;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
 import javax.sql.DataSource;
@@ -16,6 +18,14 @@ public class DatabaseConnectionUtil {
     @Autowired
     private DataSource dataSource;
 
+    @Autowired
+    @Qualifier("primaryDataSource")
+    private HikariDataSource primaryDataSource;
+
+    @Autowired(required = false)
+    @Qualifier("replicaDataSource")
+    private HikariDataSource replicaDataSource;
+
     /**
      * Get a connection from the connection pool
      * 
@@ -25,7 +35,7 @@ public class DatabaseConnectionUtil {
     public Connection getConnection() throws SQLException {
         try {
             Connection connection = dataSource.getConnection();
-            logger.info("Successfully obtained connection from pool");
+            logger.fine("Successfully obtained connection from pool");
             return connection;
         } catch (SQLException e) {
             logger.severe("Failed to get connection from pool: " + e.getMessage());
@@ -54,8 +64,8 @@ public class DatabaseConnectionUtil {
      */
     public String getConnectionInfo() {
         try {
-            if (dataSource instanceof com.zaxxer.hikari.HikariDataSource) {
-                com.zaxxer.hikari.HikariDataSource hikariDS = (com.zaxxer.hikari.HikariDataSource) dataSource;
+            if (primaryDataSource != null) {
+                HikariDataSource hikariDS = primaryDataSource;
                 String jdbcUrl = hikariDS.getJdbcUrl();
 
                 // Extract host and database name from URL for logging
@@ -88,7 +98,7 @@ public class DatabaseConnectionUtil {
         if (connection != null) {
             try {
                 connection.close();
-                logger.info("Connection returned to pool");
+                logger.fine("Connection returned to pool");
             } catch (SQLException e) {
                 logger.warning("Error returning connection to pool: " + e.getMessage());
             }
@@ -102,17 +112,43 @@ public class DatabaseConnectionUtil {
      */
     public String getPoolInfo() {
         try {
-            if (dataSource instanceof com.zaxxer.hikari.HikariDataSource) {
-                com.zaxxer.hikari.HikariDataSource hikariDS = (com.zaxxer.hikari.HikariDataSource) dataSource;
-                return String.format("Pool: %s, Active: %d, Idle: %d, Total: %d",
-                        hikariDS.getPoolName(),
-                        hikariDS.getHikariPoolMXBean().getActiveConnections(),
-                        hikariDS.getHikariPoolMXBean().getIdleConnections(),
-                        hikariDS.getHikariPoolMXBean().getTotalConnections());
+            String poolInfo = formatPoolInfo(primaryDataSource);
+            if (replicaDataSource != null) {
+                poolInfo += "; " + formatPoolInfo(replicaDataSource);
             }
-            return "Connection pool info not available";
+            return poolInfo;
         } catch (Exception e) {
             return "Error getting pool info: " + e.getMessage();
         }
     }
+
+    /**
+     * Get the number of threads waiting for a connection, across the primary and
+     * replica pools
+     *
+     * @return Waiting threads, 0 if the pools are not started yet
+     */
+    public int getThreadsAwaitingConnection() {
+        int waiting = threadsAwaitingConnection(primaryDataSource);
+        if (replicaDataSource != null) {
+            waiting += threadsAwaitingConnection(replicaDataSource);
+        }
+        return waiting;
+    }
+
+    private int threadsAwaitingConnection(HikariDataSource hikariDS) {
+        return hikariDS.getHikariPoolMXBean() == null ? 0
+                : hikariDS.getHikariPoolMXBean().getThreadsAwaitingConnection();
+    }
+
+    private String formatPoolInfo(HikariDataSource hikariDS) {
+        if (hikariDS.getHikariPoolMXBean() == null) {
+            return "Connection pool info not available";
+        }
+        return String.format("Pool: %s, Active: %d, Idle: %d, Total: %d",
+                hikariDS.getPoolName(),
+                hikariDS.getHikariPoolMXBean().getActiveConnections(),
+                hikariDS.getHikariPoolMXBean().getIdleConnections(),
+                hikariDS.getHikariPoolMXBean().getTotalConnections());
+    }
 }
\ No newline at end of file
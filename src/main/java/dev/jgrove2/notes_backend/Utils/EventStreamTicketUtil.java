@@ -0,0 +1,123 @@
+package dev.jgrove2.notes_backend.Utils;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Short-lived tickets for opening /notes/events from browsers, whose EventSource cannot
+ * send an Authorization header. A client with a Bearer token asks for a ticket and
+ * passes it as the ticket query parameter; it is valid for
+ * notes.events.ticket-ttl-seconds, so one leaked through a URL log soon expires.
+ *
+ * A ticket is the user's kinde_user_id and expiry signed with HMAC-SHA256, so any
+ * instance sharing notes.events.ticket-secret can check it without a lookup. Without a
+ * configured secret each instance signs with a random one, and tickets only work on the
+ * instance that issued them.
+ */
+@Component
+public class EventStreamTicketUtil {
+
+    private static final Logger log = LoggerFactory.getLogger(EventStreamTicketUtil.class);
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    @Value("${notes.events.ticket-secret:}")
+    private String secret;
+
+    @Value("${notes.events.ticket-ttl-seconds:60}")
+    private long ttlSeconds;
+
+    private SecretKeySpec key;
+
+    @PostConstruct
+    public void init() {
+        byte[] keyBytes;
+        if (secret.isEmpty()) {
+            log.warn("notes.events.ticket-secret is not set, event stream tickets only work on this instance");
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes(keyBytes);
+        } else {
+            keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        key = new SecretKeySpec(keyBytes, ALGORITHM);
+    }
+
+    /**
+     * How long a ticket stays valid
+     */
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    /**
+     * Issue a ticket for a user
+     *
+     * @param kindeUserId The authenticated user's kinde_user_id
+     * @param now         The current time
+     * @return The ticket
+     */
+    public String issue(String kindeUserId, Instant now) {
+        String payload = ENCODER.encodeToString(kindeUserId.getBytes(StandardCharsets.UTF_8)) + "."
+                + now.plusSeconds(ttlSeconds).getEpochSecond();
+        return payload + "." + ENCODER.encodeToString(sign(payload));
+    }
+
+    /**
+     * Check a ticket
+     *
+     * @param ticket The ticket, may be null
+     * @param now    The current time
+     * @return The ticket's kinde_user_id, or null if it is malformed, forged or expired
+     */
+    public String verify(String ticket, Instant now) {
+        if (ticket == null) {
+            return null;
+        }
+        int signatureStart = ticket.lastIndexOf('.');
+        int expiryStart = ticket.lastIndexOf('.', signatureStart - 1);
+        if (expiryStart <= 0) {
+            return null;
+        }
+        String payload = ticket.substring(0, signatureStart);
+        try {
+            byte[] signature = DECODER.decode(ticket.substring(signatureStart + 1));
+            if (!MessageDigest.isEqual(signature, sign(payload))) {
+                return null;
+            }
+            long expiresAt = Long.parseLong(ticket.substring(expiryStart + 1, signatureStart));
+            if (now.getEpochSecond() > expiresAt) {
+                return null;
+            }
+            return new String(DECODER.decode(ticket.substring(0, expiryStart)), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            // Not Base64, or not a number
+            return null;
+        }
+    }
+
+    private byte[] sign(String payload) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,364 @@
+package dev.jgrove2.notes_backend.Utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * In-memory index of one user's note file names for prefix and typo-tolerant lookups.
+ *
+ * Names are split into words (runs of letters and digits). Each distinct word is stored
+ * once, indexed by its trigrams padded as in pg_trgm ("  w", " wo", "wor", ...), and
+ * lists the names containing it. A query word matches a name word that starts with it,
+ * allowing a few typos (1 edit from 4 characters, 2 from 8); a query matches a name when
+ * every query word does, so "work/meet" and "meetng" both find "work/meeting-notes.html".
+ * Trigram counts narrow the distinct words down before edit distances are computed, so a
+ * lookup costs about the number of matching names, not the number of names.
+ *
+ * Not thread-safe; callers synchronize.
+ */
+public class FileNameIndex {
+
+    /**
+     * A matching file name. Lower is better: a prefix of the whole name scores 0, a
+     * prefix of words scores 1, and each typo adds 2.
+     */
+    public record Match(String fileName, int score) {
+    }
+
+    private static final Comparator<Match> BEST_FIRST = Comparator.comparingInt(Match::score)
+            .thenComparingInt(match -> match.fileName().length())
+            .thenComparing(Match::fileName);
+
+    // File names by ID; null once removed
+    private final List<String> fileNames = new ArrayList<>();
+
+    private final Map<String, Integer> idsByFileName = new HashMap<>();
+
+    // Distinct lower-case words by word ID
+    private final List<String> words = new ArrayList<>();
+
+    private final Map<String, Integer> wordIds = new HashMap<>();
+
+    // Word ID -> IDs of the names containing it; may list removed names
+    private final List<Postings> namesByWord = new ArrayList<>();
+
+    // Trigram -> IDs of the words containing it
+    private final Map<Long, Postings> wordsByTrigram = new HashMap<>();
+
+    private int removedCount;
+
+    // Scratch space for find, all zeros between calls: shared trigrams by word ID, and
+    // 1 + typos by name ID
+    private int[] sharedByWord = new int[0];
+
+    private int[] typosByName = new int[0];
+
+    public FileNameIndex(Collection<String> fileNames) {
+        for (String fileName : fileNames) {
+            add(fileName);
+        }
+    }
+
+    /**
+     * Number of file names in the index
+     */
+    public int size() {
+        return idsByFileName.size();
+    }
+
+    /**
+     * Add a file name; does nothing if it is already indexed
+     */
+    public void add(String fileName) {
+        if (idsByFileName.containsKey(fileName)) {
+            return;
+        }
+        int id = fileNames.size();
+        fileNames.add(fileName);
+        idsByFileName.put(fileName, id);
+        for (String word : words(fileName)) {
+            Integer wordId = wordIds.get(word);
+            if (wordId == null) {
+                wordId = words.size();
+                words.add(word);
+                wordIds.put(word, wordId);
+                namesByWord.add(new Postings());
+                int newWordId = wordId;
+                forEachTrigram(word, true,
+                        trigram -> wordsByTrigram.computeIfAbsent(trigram, key -> new Postings()).add(newWordId));
+            }
+            namesByWord.get(wordId).add(id);
+        }
+    }
+
+    /**
+     * Remove a file name; does nothing if it is not indexed
+     */
+    public void remove(String fileName) {
+        Integer id = idsByFileName.remove(fileName);
+        if (id == null) {
+            return;
+        }
+        fileNames.set(id, null);
+        removedCount++;
+        // Postings still list removed names; rebuild once they are mostly garbage
+        if (removedCount > 64 && removedCount > idsByFileName.size()) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Find file names matching a query, best first
+     *
+     * @param query Words to look for, e.g. "meet" or "work/meetng"
+     * @param limit Maximum number of matches
+     * @return The matches
+     */
+    public List<Match> find(String query, int limit) {
+        Set<String> queryWords = words(query);
+        if (queryWords.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        // Names matching every query word so far, with their typos
+        Postings candidates = null;
+        int[] candidateTypos = null;
+        typosByName = grow(typosByName, fileNames.size());
+        for (String queryWord : queryWords) {
+            Postings matched = new Postings();
+            for (Map.Entry<Integer, Integer> word : matchingWords(queryWord).entrySet()) {
+                Postings names = namesByWord.get(word.getKey());
+                for (int i = 0; i < names.count; i++) {
+                    int id = names.ids[i];
+                    if (typosByName[id] == 0) {
+                        matched.ids = grow(matched.ids, matched.count + 1);
+                        matched.ids[matched.count++] = id;
+                        typosByName[id] = word.getValue() + 1;
+                    } else {
+                        typosByName[id] = Math.min(typosByName[id], word.getValue() + 1);
+                    }
+                }
+            }
+            if (candidates == null) {
+                candidates = matched;
+                candidateTypos = new int[matched.count];
+                for (int i = 0; i < matched.count; i++) {
+                    candidateTypos[i] = typosByName[matched.ids[i]] - 1;
+                }
+            } else {
+                int kept = 0;
+                for (int i = 0; i < candidates.count; i++) {
+                    int id = candidates.ids[i];
+                    if (typosByName[id] != 0) {
+                        candidates.ids[kept] = id;
+                        candidateTypos[kept++] = candidateTypos[i] + typosByName[id] - 1;
+                    }
+                }
+                candidates.count = kept;
+            }
+            for (int i = 0; i < matched.count; i++) {
+                typosByName[matched.ids[i]] = 0;
+            }
+        }
+
+        // Keep the best matches in a heap whose head is the worst one kept
+        PriorityQueue<Match> best = new PriorityQueue<>(limit + 1, BEST_FIRST.reversed());
+        for (int i = 0; i < candidates.count; i++) {
+            String fileName = fileNames.get(candidates.ids[i]);
+            if (fileName == null) {
+                continue;
+            }
+            int typos = candidateTypos[i];
+            int score = typos == 0 && fileName.regionMatches(true, 0, query, 0, query.length()) ? 0 : 1 + 2 * typos;
+            if (best.size() == limit) {
+                // Most candidates lose to the worst kept match on score or length alone
+                Match worst = best.peek();
+                if (score > worst.score() || score == worst.score() && fileName.length() > worst.fileName().length()) {
+                    continue;
+                }
+            }
+            best.add(new Match(fileName, score));
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        List<Match> matches = new ArrayList<>(best);
+        matches.sort(BEST_FIRST);
+        return matches;
+    }
+
+    /**
+     * Distinct words that the query word is a prefix of, within its allowed typos
+     *
+     * @return Typos by word ID
+     */
+    private Map<Integer, Integer> matchingWords(String queryWord) {
+        int maxTypos = maxTypos(queryWord);
+
+        // Count the query trigrams each word shares; words missing too many cannot match
+        sharedByWord = grow(sharedByWord, words.size());
+        Postings touched = new Postings();
+        int[] trigramCount = { 0 };
+        forEachTrigram(queryWord, false, trigram -> {
+            trigramCount[0]++;
+            Postings trigramWords = wordsByTrigram.get(trigram);
+            if (trigramWords != null) {
+                for (int i = 0; i < trigramWords.count; i++) {
+                    int wordId = trigramWords.ids[i];
+                    if (sharedByWord[wordId]++ == 0) {
+                        touched.ids = grow(touched.ids, touched.count + 1);
+                        touched.ids[touched.count++] = wordId;
+                    }
+                }
+            }
+        });
+        // Each typo changes up to 3 trigrams, but at least half must be shared
+        int threshold = Math.max(1, trigramCount[0] - Math.min(3 * maxTypos, trigramCount[0] / 2));
+
+        Map<Integer, Integer> matches = new HashMap<>();
+        for (int i = 0; i < touched.count; i++) {
+            int wordId = touched.ids[i];
+            int shared = sharedByWord[wordId];
+            sharedByWord[wordId] = 0;
+            if (shared < threshold) {
+                continue;
+            }
+            int distance = prefixDistance(queryWord, words.get(wordId), maxTypos);
+            if (distance <= maxTypos) {
+                matches.put(wordId, distance);
+            }
+        }
+        return matches;
+    }
+
+    private static int maxTypos(String word) {
+        return word.length() >= 8 ? 2 : word.length() >= 4 ? 1 : 0;
+    }
+
+    /**
+     * Edit distance (with transpositions) between the query word and the closest prefix
+     * of the name word, or more than max when it exceeds max
+     */
+    static int prefixDistance(String query, String word, int max) {
+        if (word.startsWith(query)) {
+            return 0;
+        }
+        int m = query.length();
+        int n = Math.min(word.length(), m + max);
+        if (max <= 0 || n < m - max) {
+            return max + 1;
+        }
+        int[] previous2 = new int[n + 1];
+        int[] previous = new int[n + 1];
+        int[] current = new int[n + 1];
+        for (int j = 0; j <= n; j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= m; i++) {
+            current[0] = i;
+            int rowMin = i;
+            for (int j = 1; j <= n; j++) {
+                int cost = query.charAt(i - 1) == word.charAt(j - 1) ? 0 : 1;
+                int distance = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && query.charAt(i - 1) == word.charAt(j - 2)
+                        && query.charAt(i - 2) == word.charAt(j - 1)) {
+                    distance = Math.min(distance, previous2[j - 2] + 1);
+                }
+                current[j] = distance;
+                rowMin = Math.min(rowMin, distance);
+            }
+            if (rowMin > max) {
+                return max + 1;
+            }
+            int[] recycled = previous2;
+            previous2 = previous;
+            previous = current;
+            current = recycled;
+        }
+        // Any prefix of the name word: the best cell in the last row
+        int best = Integer.MAX_VALUE;
+        for (int j = 0; j <= n; j++) {
+            best = Math.min(best, previous[j]);
+        }
+        return best;
+    }
+
+    private static int[] grow(int[] array, int minLength) {
+        return array.length >= minLength ? array : Arrays.copyOf(array, Math.max(minLength, array.length * 2));
+    }
+
+    private void rebuild() {
+        List<String> live = new ArrayList<>(idsByFileName.size());
+        for (String fileName : fileNames) {
+            if (fileName != null) {
+                live.add(fileName);
+            }
+        }
+        fileNames.clear();
+        idsByFileName.clear();
+        words.clear();
+        wordIds.clear();
+        namesByWord.clear();
+        wordsByTrigram.clear();
+        removedCount = 0;
+        for (String fileName : live) {
+            add(fileName);
+        }
+    }
+
+    private static Set<String> words(String text) {
+        Set<String> result = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                result.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Growable list of IDs, added in increasing order
+     */
+    private static final class Postings {
+        private int[] ids = new int[2];
+        private int count;
+
+        private void add(int id) {
+            // IDs only grow, so a repeat is always the last one
+            if (count > 0 && ids[count - 1] == id) {
+                return;
+            }
+            ids = grow(ids, count + 1);
+            ids[count++] = id;
+        }
+    }
+
+    private interface TrigramConsumer {
+        void accept(long trigram);
+    }
+
+    /**
+     * Trigrams of a word padded with two leading spaces and, for indexed words, one
+     * trailing space; query words are prefixes, so they get no trailing space
+     */
+    private static void forEachTrigram(String word, boolean indexed, TrigramConsumer consumer) {
+        String padded = "  " + word + (indexed ? " " : "");
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            consumer.accept((long) padded.charAt(i) << 32 | (long) padded.charAt(i + 1) << 16 | padded.charAt(i + 2));
+        }
+    }
+}
\ No newline at end of file
@@ -4,6 +4,8 @@ import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jws;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.JwtParser;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
@@ -29,13 +31,24 @@ public class JwtTokenUtil {
     @Autowired
     private AppConfig appConfig;
 
+    @Autowired
+    private ObservationRegistry observationRegistry;
+
     @jakarta.annotation.PostConstruct
     public void init() {
         // Don't preload keys during startup to avoid blocking application startup
         // Keys will be loaded on-demand when tokens are validated
     }
 
+    /**
+     * Verify the token signature and issuer, timed as notes.jwt.verify
+     */
     public Claims parseToken(String token) {
+        return Observation.createNotStarted("notes.jwt.verify", observationRegistry)
+                .observe(() -> verifyToken(token));
+    }
+
+    private Claims verifyToken(String token) {
         try {
             // Get allowed issuers from configuration
             String[] allowedIssuers = appConfig.getAllowedIssuers().split(",");
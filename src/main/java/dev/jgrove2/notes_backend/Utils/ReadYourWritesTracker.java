@@ -0,0 +1,67 @@
+package dev.jgrove2.notes_backend.Utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers which users committed a write recently so that their reads can be
+ * pinned to the primary until the replica has had time to catch up.
+ */
+@Component
+public class ReadYourWritesTracker {
+
+    private static final int PURGE_THRESHOLD = 10000;
+
+    private final Map<String, Long> lastWriteNanos = new ConcurrentHashMap<>();
+
+    @Value("${spring.datasource.replica.read-your-writes-window-ms:5000}")
+    private long windowMillis;
+
+    /**
+     * Record a committed write for the given user
+     *
+     * @param kindeUserId The user that wrote, ignored when null
+     */
+    public void recordWrite(String kindeUserId) {
+        if (kindeUserId == null) {
+            return;
+        }
+        lastWriteNanos.put(kindeUserId, System.nanoTime());
+        if (lastWriteNanos.size() > PURGE_THRESHOLD) {
+            purgeExpired();
+        }
+    }
+
+    /**
+     * Check if the given user wrote within the read-your-writes window
+     *
+     * @param kindeUserId The user to check
+     * @return true if reads for this user should go to the primary
+     */
+    public boolean hasRecentWrite(String kindeUserId) {
+        if (kindeUserId == null) {
+            return false;
+        }
+        Long writtenAt = lastWriteNanos.get(kindeUserId);
+        if (writtenAt == null) {
+            return false;
+        }
+        if (isExpired(writtenAt, System.nanoTime())) {
+            lastWriteNanos.remove(kindeUserId, writtenAt);
+            return false;
+        }
+        return true;
+    }
+
+    private void purgeExpired() {
+        long now = System.nanoTime();
+        lastWriteNanos.entrySet().removeIf(entry -> isExpired(entry.getValue(), now));
+    }
+
+    private boolean isExpired(long writtenAt, long now) {
+        return now - writtenAt > windowMillis * 1_000_000L;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,28 @@
+package dev.jgrove2.notes_backend.Utils;
+
+/**
+ * Holds the authenticated kinde_user_id for the current request thread.
+ * Set by JwtAuthenticationFilter once the token has been verified.
+ */
+public final class RequestUserContext {
+
+    private static final ThreadLocal<String> currentKindeUserId = new ThreadLocal<>();
+
+    private RequestUserContext() {
+    }
+
+    public static void setKindeUserId(String kindeUserId) {
+        currentKindeUserId.set(kindeUserId);
+    }
+
+    /**
+     * @return The kinde_user_id of the current request, or null outside an authenticated request
+     */
+    public static String getKindeUserId() {
+        return currentKindeUserId.get();
+    }
+
+    public static void clear() {
+        currentKindeUserId.remove();
+    }
+}
\ No newline at end of file
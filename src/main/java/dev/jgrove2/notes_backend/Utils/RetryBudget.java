@@ -0,0 +1,53 @@
+package dev.jgrove2.notes_backend.Utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits retries to a fraction of requests, so that retrying cannot multiply the load
+ * on a backend that is already failing.
+ *
+ * Every request deposits ratio tokens, up to capacity, and every retry (or other extra
+ * request, such as a hedge) withdraws one. The budget starts full, so a quiet instance
+ * can still retry its first few failures.
+ */
+public class RetryBudget {
+
+    private static final long SCALE = 1000;
+
+    private final long deposit;
+
+    private final long capacity;
+
+    // Tokens in thousandths
+    private final AtomicLong balance;
+
+    public RetryBudget(double ratio, int capacity) {
+        this.deposit = Math.round(ratio * SCALE);
+        this.capacity = capacity * SCALE;
+        this.balance = new AtomicLong(this.capacity);
+    }
+
+    /**
+     * Record a request
+     */
+    public void deposit() {
+        balance.accumulateAndGet(deposit, (current, amount) -> Math.min(capacity, current + amount));
+    }
+
+    /**
+     * Take a token for a retry
+     *
+     * @return true if the budget allows the retry
+     */
+    public boolean tryWithdraw() {
+        while (true) {
+            long current = balance.get();
+            if (current < SCALE) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - SCALE)) {
+                return true;
+            }
+        }
+    }
+}
\ No newline at end of file
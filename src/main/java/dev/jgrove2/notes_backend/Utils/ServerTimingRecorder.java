@@ -0,0 +1,57 @@
+package dev.jgrove2.notes_backend.Utils;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Collects per-stage durations for the current request thread.
+ * Started by ServerTimingFilter and rendered as the Server-Timing response header.
+ */
+public final class ServerTimingRecorder {
+
+    private static final ThreadLocal<Map<String, Long>> currentTimings = new ThreadLocal<>();
+
+    private ServerTimingRecorder() {
+    }
+
+    public static void start() {
+        currentTimings.set(new LinkedHashMap<>());
+    }
+
+    /**
+     * Add a duration to a stage. Repeated stages (e.g. two R2 calls) are summed.
+     * Does nothing outside a request started with {@link #start()}.
+     */
+    public static void record(String stage, long durationNanos) {
+        Map<String, Long> timings = currentTimings.get();
+        if (timings != null) {
+            timings.merge(stage, durationNanos, Long::sum);
+        }
+    }
+
+    /**
+     * @return The Server-Timing header value, e.g. "jwt-verify;dur=1.2, db;dur=3.4",
+     *         or null when nothing was recorded
+     */
+    public static String toHeaderValue() {
+        Map<String, Long> timings = currentTimings.get();
+        if (timings == null || timings.isEmpty()) {
+            return null;
+        }
+        StringBuilder header = new StringBuilder();
+        for (Map.Entry<String, Long> entry : timings.entrySet()) {
+            if (header.length() > 0) {
+                header.append(", ");
+            }
+            header.append(entry.getKey())
+                    .append(";dur=")
+                    .append(String.format(Locale.ROOT, "%.1f", entry.getValue() / 1_000_000.0));
+        }
+        return header.toString();
+    }
+
+    public static void clear() {
+        currentTimings.remove();
+    }
+}
\ No newline at end of file
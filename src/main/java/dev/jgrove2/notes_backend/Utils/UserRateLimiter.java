@@ -0,0 +1,141 @@
+package dev.jgrove2.notes_backend.Utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits each user's write requests: a token bucket of notes.rate-limit.burst writes
+ * refilled at notes.rate-limit.writes-per-second, and at most
+ * notes.rate-limit.max-concurrent-writes in progress at once.
+ *
+ * The bucket is kept as a single theoretical arrival time (GCRA) updated by
+ * compare-and-set, so admitting a write takes no lock. Users idle long enough for their
+ * bucket to refill are dropped once more than PURGE_THRESHOLD users are tracked.
+ */
+@Component
+public class UserRateLimiter {
+
+    private static final int PURGE_THRESHOLD = 10000;
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private static final Admission UNLIMITED = new Admission(0, null);
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${notes.rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${notes.rate-limit.writes-per-second:5}")
+    private double writesPerSecond;
+
+    @Value("${notes.rate-limit.burst:20}")
+    private int burst;
+
+    @Value("${notes.rate-limit.max-concurrent-writes:4}")
+    private int maxConcurrentWrites;
+
+    private final Map<String, UserLimit> limits = new ConcurrentHashMap<>();
+
+    private Counter throttledByRate;
+
+    private Counter throttledByConcurrency;
+
+    /**
+     * One user's limits: the bucket is empty until arrivalNanos, and full
+     * burstNanos before it
+     */
+    private static final class UserLimit {
+        private final AtomicLong arrivalNanos;
+        private final Semaphore writes;
+
+        private UserLimit(long nowNanos, int maxConcurrentWrites) {
+            this.arrivalNanos = new AtomicLong(nowNanos);
+            this.writes = new Semaphore(maxConcurrentWrites);
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        throttledByRate = Counter.builder("notes.rate-limit.throttled").tag("reason", "rate")
+                .description("Write requests rejected with 429")
+                .register(meterRegistry);
+        throttledByConcurrency = Counter.builder("notes.rate-limit.throttled").tag("reason", "concurrency")
+                .description("Write requests rejected with 429")
+                .register(meterRegistry);
+    }
+
+    /**
+     * The result of admitting a write: either admitted, and to be released when the
+     * write ends, or rejected with the number of seconds after which to retry
+     */
+    public record Admission(long retryAfterSeconds, Semaphore writes) {
+
+        public boolean isAdmitted() {
+            return retryAfterSeconds == 0;
+        }
+
+        public void release() {
+            if (writes != null) {
+                writes.release();
+            }
+        }
+    }
+
+    /**
+     * Admit a write for a user
+     *
+     * @param kindeUserId The user
+     * @return The admission; release it when an admitted write ends
+     */
+    public Admission admitWrite(String kindeUserId) {
+        if (!enabled) {
+            return UNLIMITED;
+        }
+        long now = System.nanoTime();
+        UserLimit limit = limits.computeIfAbsent(kindeUserId, key -> new UserLimit(now, maxConcurrentWrites));
+        if (limits.size() > PURGE_THRESHOLD) {
+            purgeIdle(now);
+        }
+
+        long intervalNanos = (long) (NANOS_PER_SECOND / writesPerSecond);
+        long burstNanos = intervalNanos * Math.max(0, burst - 1);
+        while (true) {
+            long arrival = limit.arrivalNanos.get();
+            long start = arrival - now > 0 ? arrival : now;
+            long waitNanos = start - now - burstNanos;
+            if (waitNanos > 0) {
+                throttledByRate.increment();
+                return new Admission(Math.max(1, (waitNanos + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND), null);
+            }
+            if (limit.arrivalNanos.compareAndSet(arrival, start + intervalNanos)) {
+                break;
+            }
+        }
+
+        if (!limit.writes.tryAcquire()) {
+            // Give the token back: the write was not made
+            limit.arrivalNanos.addAndGet(-intervalNanos);
+            throttledByConcurrency.increment();
+            return new Admission(1, null);
+        }
+        // Released on the semaphore acquired, even if the user's entry is purged meanwhile
+        return new Admission(0, limit.writes);
+    }
+
+    private void purgeIdle(long now) {
+        limits.entrySet().removeIf(entry -> entry.getValue().arrivalNanos.get() - now <= 0
+                && entry.getValue().writes.availablePermits() == maxConcurrentWrites);
+    }
+}
\ No newline at end of file
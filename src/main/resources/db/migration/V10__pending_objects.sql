@@ -0,0 +1,20 @@
+-- Two-phase writes between note storage and the notes table. An object key is recorded
+-- here (and committed) before the object is written, and the row is removed in the
+-- transaction that commits the note pointing at it; the key of a deleted or replaced
+-- per-note object is recorded in the transaction that drops the reference, and removed
+-- once the object is deleted. A row that outlives notes.reconciler.grace-minutes was
+-- left behind by a failure: StorageReconciliationService deletes its object unless a
+-- note references it.
+
+CREATE TABLE IF NOT EXISTS pending_objects (
+    object_key VARCHAR(500)  PRIMARY KEY,
+    created_at TIMESTAMP(6)  NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS ix_pending_objects_created_at
+    ON pending_objects (created_at);
+
+-- Reference checks and keyset scans of note object keys in the order S3 lists them
+-- (UTF-8 byte order, which the "C" collation matches)
+CREATE INDEX IF NOT EXISTS ix_notes_object_key
+    ON notes (object_key COLLATE "C");
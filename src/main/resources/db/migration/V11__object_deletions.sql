@@ -0,0 +1,17 @@
+-- Objects in note storage waiting to be deleted: the files of deleted notes, replaced
+-- per-note files and released blobs. Keys are queued in the transaction that drops the
+-- reference, so a delete only waits for the database, and ObjectDeletionService deletes
+-- the objects in batches. Keys dropped before this table existed stay in pending_objects
+-- until the reconciler deletes their objects.
+
+CREATE TABLE IF NOT EXISTS object_deletions (
+    object_key      VARCHAR(500)  PRIMARY KEY,
+    attempts        INTEGER       NOT NULL,
+    next_attempt_at TIMESTAMP(6)  NOT NULL,
+    enqueued_at     TIMESTAMP(6)  NOT NULL,
+    last_error      VARCHAR(1000)
+);
+
+-- Deletion worker polls for due rows
+CREATE INDEX IF NOT EXISTS ix_object_deletions_next_attempt_at
+    ON object_deletions (next_attempt_at);
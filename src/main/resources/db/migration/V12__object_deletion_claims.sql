@@ -0,0 +1,11 @@
+-- Deletion workers on every instance claim due keys (FOR UPDATE SKIP LOCKED) by setting
+-- claimed_until to the end of a lease, and delete the objects after the claim commits,
+-- outside any transaction. A blob write waits while its key is claimed, so a delete in
+-- flight cannot remove an object written again meanwhile. A claim left by a worker that
+-- stopped expires with the lease.
+
+ALTER TABLE object_deletions ADD COLUMN IF NOT EXISTS claimed_until TIMESTAMP(6);
+
+-- notes.deletions.lag reads the oldest enqueued_at every run
+CREATE INDEX IF NOT EXISTS ix_object_deletions_enqueued_at
+    ON object_deletions (enqueued_at);
@@ -0,0 +1,8 @@
+-- Resumable uploads: whether the parts were joined into the object already, so
+-- completing can be retried after the note could not be saved, and backoff for uploads
+-- the expiry sweep could not cancel.
+
+ALTER TABLE note_uploads ADD COLUMN IF NOT EXISTS completed_at TIMESTAMP(6);
+ALTER TABLE note_uploads ADD COLUMN IF NOT EXISTS expiry_attempts INTEGER NOT NULL DEFAULT 0;
+ALTER TABLE note_uploads ADD COLUMN IF NOT EXISTS next_expiry_at TIMESTAMP(6);
+ALTER TABLE note_uploads ADD COLUMN IF NOT EXISTS last_error VARCHAR(1000);
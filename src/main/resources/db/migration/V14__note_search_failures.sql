@@ -0,0 +1,9 @@
+-- Notes the search backfill could not index (e.g. their file could not be read), so
+-- they are retried with backoff instead of on every pass.
+
+CREATE TABLE IF NOT EXISTS note_search_failures (
+    note_id         BIGINT PRIMARY KEY,
+    attempts        INTEGER      NOT NULL,
+    next_attempt_at TIMESTAMP(6) NOT NULL,
+    last_error      VARCHAR(1000)
+);
@@ -0,0 +1,13 @@
+-- Direct uploads (/notes/upload-url) reserve their declared size against the user's
+-- quota while registered, as the object may be written without ever being confirmed,
+-- and expire once their URL has, instead of after the reconciler's grace period.
+
+ALTER TABLE pending_objects ADD COLUMN IF NOT EXISTS user_id BIGINT;
+ALTER TABLE pending_objects ADD COLUMN IF NOT EXISTS reserved_bytes BIGINT;
+ALTER TABLE pending_objects ADD COLUMN IF NOT EXISTS expires_at TIMESTAMP(6);
+
+CREATE INDEX IF NOT EXISTS ix_pending_objects_user_id
+    ON pending_objects (user_id) WHERE user_id IS NOT NULL;
+
+CREATE INDEX IF NOT EXISTS ix_pending_objects_expires_at
+    ON pending_objects (expires_at) WHERE expires_at IS NOT NULL;
@@ -0,0 +1,27 @@
+-- Initial schema, matching what Hibernate ddl-auto=update generated before migrations
+-- were introduced. Existing databases are baselined at version 1 and skip this script.
+
+CREATE TABLE IF NOT EXISTS users (
+    userid             BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    first_name         VARCHAR(100) NOT NULL,
+    last_name          VARCHAR(100) NOT NULL,
+    last_modified_date TIMESTAMP(6),
+    is_active          BOOLEAN      NOT NULL,
+    created_at         TIMESTAMP(6) NOT NULL,
+    updated_at         TIMESTAMP(6) NOT NULL,
+    kinde_user_id      VARCHAR(255) NOT NULL UNIQUE,
+    max_storage        BIGINT,
+    auto_save          BOOLEAN,
+    auto_save_duration INTEGER
+);
+
+CREATE TABLE IF NOT EXISTS notes (
+    id                 BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    file_name          VARCHAR(255) NOT NULL,
+    user_id            BIGINT       NOT NULL,
+    object_key         VARCHAR(500),
+    total_size_bytes   BIGINT       NOT NULL,
+    created_at         TIMESTAMP(6) NOT NULL,
+    last_modified_date TIMESTAMP(6) NOT NULL,
+    updated_at         TIMESTAMP(6) NOT NULL
+);
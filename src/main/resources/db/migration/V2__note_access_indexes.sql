@@ -0,0 +1,14 @@
+-- Indexes matching NoteRepository access patterns.
+-- The unique index fails to build if duplicate (user_id, file_name) rows already exist;
+-- find them first with:
+--   SELECT user_id, file_name, count(*) FROM notes GROUP BY 1, 2 HAVING count(*) > 1;
+
+-- One note per file name per user, enforced by the database instead of check-then-insert.
+-- text_pattern_ops lets the same index serve equality lookups and prefix searches
+-- (file_name LIKE 'folder/%') regardless of the database collation.
+CREATE UNIQUE INDEX IF NOT EXISTS ux_notes_user_id_file_name
+    ON notes (user_id, file_name text_pattern_ops);
+
+-- Listings ordered by creation date; total_size_bytes makes the quota SUM index-only
+CREATE INDEX IF NOT EXISTS ix_notes_user_id_created_at
+    ON notes (user_id, created_at DESC) INCLUDE (total_size_bytes);
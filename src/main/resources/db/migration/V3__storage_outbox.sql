@@ -0,0 +1,20 @@
+-- Pending R2 writes for the tiered storage backend (notes.storage.backend=tiered).
+-- One row per object key: a newer write or delete replaces the pending operation,
+-- and seq changes so a replication attempt of the old content does not clear it.
+
+CREATE SEQUENCE IF NOT EXISTS storage_outbox_seq;
+
+CREATE TABLE IF NOT EXISTS storage_outbox (
+    id              BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    object_key      VARCHAR(500) NOT NULL UNIQUE,
+    operation       VARCHAR(10)  NOT NULL,
+    seq             BIGINT       NOT NULL,
+    attempts        INTEGER      NOT NULL,
+    next_attempt_at TIMESTAMP(6) NOT NULL,
+    enqueued_at     TIMESTAMP(6) NOT NULL,
+    last_error      VARCHAR(1000)
+);
+
+-- Replication worker polls for due rows
+CREATE INDEX IF NOT EXISTS ix_storage_outbox_next_attempt_at
+    ON storage_outbox (next_attempt_at);
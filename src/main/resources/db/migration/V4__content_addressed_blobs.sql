@@ -0,0 +1,13 @@
+-- Content-addressed note files (notes.storage.content-addressed=true).
+-- A blob is stored once per distinct content under blobs/<ab>/<sha256>; notes point at
+-- it through content_hash and ref_count counts those notes. Notes written before the
+-- option was enabled keep content_hash NULL and their own per-note object.
+
+CREATE TABLE IF NOT EXISTS blobs (
+    hash       VARCHAR(64)  PRIMARY KEY,
+    size_bytes BIGINT       NOT NULL,
+    ref_count  INTEGER      NOT NULL,
+    created_at TIMESTAMP(6) NOT NULL
+);
+
+ALTER TABLE notes ADD COLUMN IF NOT EXISTS content_hash VARCHAR(64);
@@ -0,0 +1,30 @@
+-- Note version history (notes.versions.enabled).
+-- Every saved content is split into content-defined chunks; each distinct chunk is
+-- stored once, deflate-compressed, and reference-counted by the versions listing it,
+-- so history grows with the size of the edits rather than with full copies.
+
+CREATE TABLE IF NOT EXISTS note_chunks (
+    hash       VARCHAR(64) PRIMARY KEY,
+    size_bytes INTEGER     NOT NULL,
+    data       BYTEA       NOT NULL,
+    ref_count  INTEGER     NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS note_versions (
+    id           BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    note_id      BIGINT       NOT NULL,
+    version      INTEGER      NOT NULL,
+    size_bytes   BIGINT       NOT NULL,
+    content_hash VARCHAR(64)  NOT NULL,
+    -- Concatenated 64-character chunk hashes, in content order
+    chunk_hashes TEXT         NOT NULL,
+    created_at   TIMESTAMP(6) NOT NULL
+);
+
+-- Listing, latest version lookup and retention by count, per note
+CREATE UNIQUE INDEX IF NOT EXISTS ux_note_versions_note_id_version
+    ON note_versions (note_id, version DESC);
+
+-- Retention by age
+CREATE INDEX IF NOT EXISTS ix_note_versions_created_at
+    ON note_versions (created_at);
@@ -0,0 +1,13 @@
+-- Full-text search over note contents (/notes/search).
+-- The text of each note (HTML tags stripped) is kept next to a generated tsvector, so
+-- searches rank and build snippets without fetching note files from storage.
+
+CREATE TABLE IF NOT EXISTS note_search_documents (
+    note_id       BIGINT PRIMARY KEY,
+    body          TEXT         NOT NULL,
+    search_vector TSVECTOR GENERATED ALWAYS AS (to_tsvector('english', body)) STORED,
+    updated_at    TIMESTAMP(6) NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS ix_note_search_documents_search_vector
+    ON note_search_documents USING GIN (search_vector);
@@ -0,0 +1,34 @@
+-- Note change events for the /notes/events stream.
+-- Written by NoteService in the same transaction as the change; the trigger wakes up
+-- the listener of every instance (LISTEN note_events) when the transaction commits.
+
+CREATE TABLE IF NOT EXISTS note_events (
+    id               BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id          BIGINT       NOT NULL,
+    type             VARCHAR(16)  NOT NULL,
+    file_name        VARCHAR(255) NOT NULL,
+    old_file_name    VARCHAR(255),
+    total_size_bytes BIGINT,
+    created_at       TIMESTAMP(6) NOT NULL
+);
+
+-- Replay and catch-up per user, in event order
+CREATE INDEX IF NOT EXISTS ix_note_events_user_id_id
+    ON note_events (user_id, id);
+
+-- Retention
+CREATE INDEX IF NOT EXISTS ix_note_events_created_at
+    ON note_events (created_at);
+
+-- The payload is the user ID; listeners read the events themselves
+CREATE OR REPLACE FUNCTION notify_note_event() RETURNS trigger AS $$
+BEGIN
+    PERFORM pg_notify('note_events', NEW.user_id::text);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS note_events_notify ON note_events;
+CREATE TRIGGER note_events_notify
+    AFTER INSERT ON note_events
+    FOR EACH ROW EXECUTE FUNCTION notify_note_event();
@@ -0,0 +1,27 @@
+-- Delta sync (/notes/changes): every note carries the ID of the note event of its last
+-- change, and deleted or renamed-away file names are kept as tombstones. Event IDs are
+-- assigned in commit order per user (NoteService takes the user's event lock), so they
+-- work as a monotonic sync cursor.
+
+-- Existing notes are numbered from the same sequence as the events
+ALTER TABLE notes
+    ADD COLUMN IF NOT EXISTS change_seq BIGINT NOT NULL DEFAULT nextval('note_events_id_seq');
+
+-- Covers the delta query, so syncing reads only the index entries of the changed notes
+CREATE INDEX IF NOT EXISTS ix_notes_user_id_change_seq
+    ON notes (user_id, change_seq) INCLUDE (file_name, total_size_bytes, last_modified_date);
+
+CREATE TABLE IF NOT EXISTS note_tombstones (
+    id         BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id    BIGINT       NOT NULL,
+    file_name  VARCHAR(255) NOT NULL,
+    change_seq BIGINT       NOT NULL,
+    deleted_at TIMESTAMP(6) NOT NULL
+);
+
+-- One tombstone per file name; removed again when the name is reused
+CREATE UNIQUE INDEX IF NOT EXISTS ux_note_tombstones_user_id_file_name
+    ON note_tombstones (user_id, file_name);
+
+CREATE INDEX IF NOT EXISTS ix_note_tombstones_user_id_change_seq
+    ON note_tombstones (user_id, change_seq);
@@ -0,0 +1,32 @@
+-- Resumable uploads (/notes/uploads): an upload and the parts received so far, so a
+-- client can resume after a dropped connection or a server restart.
+
+CREATE TABLE IF NOT EXISTS note_uploads (
+    id                  VARCHAR(36)   PRIMARY KEY,
+    user_id             BIGINT        NOT NULL,
+    file_name           VARCHAR(255)  NOT NULL,
+    object_key          VARCHAR(500)  NOT NULL,
+    size_bytes          BIGINT        NOT NULL,
+    part_size_bytes     BIGINT        NOT NULL,
+    part_count          INTEGER       NOT NULL,
+    -- Storage backend's multipart upload ID (S3), null for backends without one
+    multipart_upload_id VARCHAR(1024),
+    created_at          TIMESTAMP(6)  NOT NULL
+);
+
+-- Expiry of abandoned uploads
+CREATE INDEX IF NOT EXISTS ix_note_uploads_created_at
+    ON note_uploads (created_at);
+
+CREATE TABLE IF NOT EXISTS note_upload_parts (
+    id          BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    upload_id   VARCHAR(36)  NOT NULL,
+    part_number INTEGER      NOT NULL,
+    size_bytes  BIGINT       NOT NULL,
+    etag        VARCHAR(255),
+    created_at  TIMESTAMP(6) NOT NULL
+);
+
+-- A part uploaded again replaces the earlier attempt
+CREATE UNIQUE INDEX IF NOT EXISTS ux_note_upload_parts_upload_id_part_number
+    ON note_upload_parts (upload_id, part_number);
@@ -0,0 +1,63 @@
+package dev.jgrove2.notes_backend.Config;
+
+import dev.jgrove2.notes_backend.Utils.ReadYourWritesTracker;
+import dev.jgrove2.notes_backend.Utils.RequestUserContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+class ReplicaRoutingDataSourceTests {
+
+	private ReadYourWritesTracker tracker;
+	private ReplicaRoutingDataSource routingDataSource;
+
+	@BeforeEach
+	void setUp() {
+		tracker = new ReadYourWritesTracker();
+		ReflectionTestUtils.setField(tracker, "windowMillis", 60000L);
+		routingDataSource = new ReplicaRoutingDataSource(mock(DataSource.class), mock(DataSource.class), tracker);
+		TransactionSynchronizationManager.initSynchronization();
+	}
+
+	@AfterEach
+	void tearDown() {
+		TransactionSynchronizationManager.clear();
+		RequestUserContext.clear();
+	}
+
+	@Test
+	void readOnlyTransactionsUseReplica() {
+		RequestUserContext.setKindeUserId("kp_reader");
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+		assertEquals(ReplicaRoutingDataSource.REPLICA, routingDataSource.determineCurrentLookupKey());
+	}
+
+	@Test
+	void readWriteTransactionsUsePrimary() {
+		RequestUserContext.setKindeUserId("kp_writer");
+
+		assertEquals(ReplicaRoutingDataSource.PRIMARY, routingDataSource.determineCurrentLookupKey());
+	}
+
+	@Test
+	void readsAfterCommittedWriteStayOnPrimary() {
+		RequestUserContext.setKindeUserId("kp_writer");
+		routingDataSource.determineCurrentLookupKey();
+		TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+		assertEquals(ReplicaRoutingDataSource.PRIMARY, routingDataSource.determineCurrentLookupKey());
+
+		RequestUserContext.setKindeUserId("kp_other");
+		assertEquals(ReplicaRoutingDataSource.REPLICA, routingDataSource.determineCurrentLookupKey());
+	}
+}
\ No newline at end of file
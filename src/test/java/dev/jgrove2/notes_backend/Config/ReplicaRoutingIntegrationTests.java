@@ -0,0 +1,90 @@
+package dev.jgrove2.notes_backend.Config;
+
+import dev.jgrove2.notes_backend.Utils.ReadYourWritesTracker;
+import dev.jgrove2.notes_backend.Utils.RequestUserContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * Checks that transactions reach the right database through the same wiring as
+ * DatabaseConfig. Runs against two local databases standing in for the primary and the
+ * replica; they only need to be distinguishable, not replicating, e.g.
+ * NOTES_TEST_DATABASE_URL=jdbc:postgresql://localhost:5432/notes_db?user=postgres&amp;sslmode=disable
+ * NOTES_TEST_REPLICA_DATABASE_URL=jdbc:postgresql://localhost:5433/notes_db?user=postgres&amp;sslmode=disable
+ */
+@EnabledIfEnvironmentVariable(named = "NOTES_TEST_DATABASE_URL", matches = ".+")
+@EnabledIfEnvironmentVariable(named = "NOTES_TEST_REPLICA_DATABASE_URL", matches = ".+")
+class ReplicaRoutingIntegrationTests {
+
+	// Identifies the database a connection ended up on
+	private static final String WHICH_DATABASE = "select inet_server_port() || '/' || current_database()";
+
+	private String primary;
+	private String replica;
+	private JdbcTemplate jdbcTemplate;
+	private TransactionTemplate readWrite;
+	private TransactionTemplate readOnly;
+
+	@BeforeEach
+	void setUp() {
+		DataSource primaryDataSource = new DriverManagerDataSource(System.getenv("NOTES_TEST_DATABASE_URL"));
+		DataSource replicaDataSource = new DriverManagerDataSource(System.getenv("NOTES_TEST_REPLICA_DATABASE_URL"));
+		primary = new JdbcTemplate(primaryDataSource).queryForObject(WHICH_DATABASE, String.class);
+		replica = new JdbcTemplate(replicaDataSource).queryForObject(WHICH_DATABASE, String.class);
+		assertNotEquals(primary, replica, "The primary and replica URLs must point at different databases");
+
+		ReadYourWritesTracker tracker = new ReadYourWritesTracker();
+		ReflectionTestUtils.setField(tracker, "windowMillis", 60000L);
+		DataSource dataSource = new LazyConnectionDataSourceProxy(
+				new ReplicaRoutingDataSource(primaryDataSource, replicaDataSource, tracker));
+		DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		readWrite = new TransactionTemplate(transactionManager);
+		readOnly = new TransactionTemplate(transactionManager);
+		readOnly.setReadOnly(true);
+	}
+
+	@AfterEach
+	void tearDown() {
+		RequestUserContext.clear();
+	}
+
+	@Test
+	void readOnlyTransactionsReachReplica() {
+		RequestUserContext.setKindeUserId("kp_reader");
+
+		assertEquals(replica, readOnly.execute(status -> jdbcTemplate.queryForObject(WHICH_DATABASE, String.class)));
+	}
+
+	@Test
+	void readWriteTransactionsReachPrimary() {
+		RequestUserContext.setKindeUserId("kp_writer");
+
+		assertEquals(primary, readWrite.execute(status -> jdbcTemplate.queryForObject(WHICH_DATABASE, String.class)));
+	}
+
+	@Test
+	void readsAfterCommittedWriteReachPrimary() {
+		RequestUserContext.setKindeUserId("kp_writer");
+		readWrite.execute(status -> jdbcTemplate.queryForObject(WHICH_DATABASE, String.class));
+
+		assertEquals(primary, readOnly.execute(status -> jdbcTemplate.queryForObject(WHICH_DATABASE, String.class)));
+
+		RequestUserContext.setKindeUserId("kp_other");
+		assertEquals(replica, readOnly.execute(status -> jdbcTemplate.queryForObject(WHICH_DATABASE, String.class)));
+	}
+}
\ No newline at end of file
@@ -0,0 +1,168 @@
+package dev.jgrove2.notes_backend.Controllers;
+
+import dev.jgrove2.notes_backend.Models.Note;
+import dev.jgrove2.notes_backend.Models.User;
+import dev.jgrove2.notes_backend.Services.NoteNameIndexService;
+import dev.jgrove2.notes_backend.Services.NoteSearchService;
+import dev.jgrove2.notes_backend.Services.NoteService;
+import dev.jgrove2.notes_backend.Services.NoteStorage;
+import dev.jgrove2.notes_backend.Services.ObjectStore;
+import dev.jgrove2.notes_backend.Services.PendingObjectService;
+import dev.jgrove2.notes_backend.Services.S3Service;
+import dev.jgrove2.notes_backend.Services.UploadedContentService;
+import dev.jgrove2.notes_backend.Services.UserService;
+import dev.jgrove2.notes_backend.Utils.TokenExtractionUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class NoteControllerDirectUploadTests {
+
+	private static final String AUTHORIZATION = "Bearer token";
+	private static final String FILE_NAME = "big.html";
+	private static final long USER_ID = 7L;
+
+	private NoteService noteService;
+	private S3Service objectStore;
+	private PendingObjectService pendingObjectService;
+	private NoteSearchService noteSearchService;
+	private UploadedContentService uploadedContentService;
+	private User user;
+	private NoteController noteController;
+
+	@BeforeEach
+	void setUp() {
+		noteService = mock(NoteService.class);
+		objectStore = mock(S3Service.class);
+		pendingObjectService = mock(PendingObjectService.class);
+		noteSearchService = mock(NoteSearchService.class);
+		uploadedContentService = mock(UploadedContentService.class);
+		TokenExtractionUtil tokenExtractionUtil = mock(TokenExtractionUtil.class);
+		UserService userService = mock(UserService.class);
+
+		user = new User();
+		user.setUserId(USER_ID);
+		user.setMaxStorage(1000L);
+		when(tokenExtractionUtil.extractKindeUserIdFromHeader(AUTHORIZATION)).thenReturn("kp_user");
+		when(userService.getUserByKindeUserId("kp_user")).thenReturn(Optional.of(user));
+		when(noteService.getNoteSummaryByUserIdAndFileName(USER_ID, FILE_NAME)).thenReturn(Optional.empty());
+		when(noteService.getNoteByUserIdAndFileName(USER_ID, FILE_NAME)).thenReturn(Optional.empty());
+
+		noteController = new NoteController();
+		ReflectionTestUtils.setField(noteController, "noteService", noteService);
+		ReflectionTestUtils.setField(noteController, "userService", userService);
+		ReflectionTestUtils.setField(noteController, "tokenExtractionUtil", tokenExtractionUtil);
+		ReflectionTestUtils.setField(noteController, "pendingObjectService", pendingObjectService);
+		ReflectionTestUtils.setField(noteController, "noteSearchService", noteSearchService);
+		ReflectionTestUtils.setField(noteController, "noteNameIndexService", mock(NoteNameIndexService.class));
+		ReflectionTestUtils.setField(noteController, "uploadedContentService", uploadedContentService);
+		ReflectionTestUtils.setField(noteController, "presignedUrlExpirySeconds", 300L);
+		ReflectionTestUtils.setField(noteController, "directUploadConfirmSeconds", 600L);
+		useStorage(objectStore);
+	}
+
+	@Test
+	void uploadUrlReservesDeclaredSizeBeforePresigning() {
+		when(noteService.hasStorageCapacity(user, 0L, 100L)).thenReturn(true);
+		when(objectStore.presignUpload(anyString(), eq(100L)))
+				.thenReturn(new ObjectStore.PresignedUrl("https://storage/upload", Instant.now(), Map.of()));
+
+		ResponseEntity<?> response = noteController.getUploadUrl(AUTHORIZATION, FILE_NAME, 100L);
+
+		assertEquals(HttpStatus.OK, response.getStatusCode());
+		Map<?, ?> body = (Map<?, ?>) response.getBody();
+		assertEquals("https://storage/upload", body.get("uploadUrl"));
+		String objectKey = NoteStorage.generateUploadObjectKey(USER_ID, FILE_NAME, (String) body.get("uploadId"));
+		// Reserved past the URL's expiry, so an upload in flight is not swept
+		InOrder order = inOrder(pendingObjectService, objectStore);
+		order.verify(pendingObjectService).registerDirectUpload(eq(objectKey), eq(USER_ID), eq(100L),
+				any(LocalDateTime.class));
+		order.verify(objectStore).presignUpload(objectKey, 100L);
+	}
+
+	@Test
+	void uploadUrlOverQuotaIsRejectedWithoutReserving() {
+		when(noteService.hasStorageCapacity(user, 0L, 5000L)).thenReturn(false);
+
+		ResponseEntity<?> response = noteController.getUploadUrl(AUTHORIZATION, FILE_NAME, 5000L);
+
+		assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, response.getStatusCode());
+		verify(pendingObjectService, never()).registerDirectUpload(anyString(), anyLong(), anyLong(),
+				any(LocalDateTime.class));
+		verify(objectStore, never()).presignUpload(anyString(), anyLong());
+	}
+
+	@Test
+	void confirmPointsNoteAtUploadAndProcessesContentInBackground() throws Exception {
+		String uploadId = UUID.randomUUID().toString();
+		String objectKey = NoteStorage.generateUploadObjectKey(USER_ID, FILE_NAME, uploadId);
+		when(objectStore.fileExists(objectKey)).thenReturn(true);
+		when(objectStore.getFileSize(objectKey)).thenReturn(120L);
+		when(noteService.hasStorageCapacity(user, 0L, 120L, objectKey)).thenReturn(true);
+		Note note = new Note();
+		note.setId(42L);
+		note.setObjectKey(objectKey);
+		when(noteService.createNote(FILE_NAME, USER_ID, 120L, objectKey, null, null)).thenReturn(note);
+
+		ResponseEntity<?> response = noteController.confirmUpload(AUTHORIZATION, FILE_NAME, uploadId);
+
+		assertEquals(HttpStatus.CREATED, response.getStatusCode());
+		verify(noteSearchService).deleteDocument(42L);
+		verify(uploadedContentService).contentUploaded(42L, objectKey);
+		// The content is not read while the request waits
+		verify(objectStore, never()).getFile(anyString());
+	}
+
+	@Test
+	void confirmOverQuotaDeletesUpload() throws Exception {
+		String uploadId = UUID.randomUUID().toString();
+		String objectKey = NoteStorage.generateUploadObjectKey(USER_ID, FILE_NAME, uploadId);
+		when(objectStore.fileExists(objectKey)).thenReturn(true);
+		// More than was declared for the URL
+		when(objectStore.getFileSize(objectKey)).thenReturn(5000L);
+		when(noteService.hasStorageCapacity(user, 0L, 5000L, objectKey)).thenReturn(false);
+
+		ResponseEntity<?> response = noteController.confirmUpload(AUTHORIZATION, FILE_NAME, uploadId);
+
+		assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, response.getStatusCode());
+		verify(pendingObjectService).deleteObject(objectKey);
+		verify(noteService, never()).createNote(anyString(), anyLong(), anyLong(), anyString(), any(), any());
+		verify(uploadedContentService, never()).contentUploaded(anyLong(), anyString());
+	}
+
+	@Test
+	void storageWithoutObjectStoreDoesNotOfferDirectUploads() {
+		useStorage(mock(NoteStorage.class));
+
+		assertEquals(HttpStatus.NOT_IMPLEMENTED,
+				noteController.getUploadUrl(AUTHORIZATION, FILE_NAME, 100L).getStatusCode());
+		assertEquals(HttpStatus.NOT_IMPLEMENTED,
+				noteController.confirmUpload(AUTHORIZATION, FILE_NAME, UUID.randomUUID().toString()).getStatusCode());
+	}
+
+	private void useStorage(NoteStorage noteStorage) {
+		ReflectionTestUtils.setField(noteController, "noteStorage", noteStorage);
+		ReflectionTestUtils.setField(noteController, "objectStore", null);
+		noteController.init();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,137 @@
+package dev.jgrove2.notes_backend.Controllers;
+
+import dev.jgrove2.notes_backend.Models.Note;
+import dev.jgrove2.notes_backend.Models.User;
+import dev.jgrove2.notes_backend.Services.BlobService;
+import dev.jgrove2.notes_backend.Services.NoteNameIndexService;
+import dev.jgrove2.notes_backend.Services.NoteSearchService;
+import dev.jgrove2.notes_backend.Services.NoteService;
+import dev.jgrove2.notes_backend.Services.NoteStorage;
+import dev.jgrove2.notes_backend.Services.PendingObjectService;
+import dev.jgrove2.notes_backend.Services.UploadedContentService;
+import dev.jgrove2.notes_backend.Services.UserService;
+import dev.jgrove2.notes_backend.Utils.TokenExtractionUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.InputStream;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class NoteControllerSaveTests {
+
+	private static final String AUTHORIZATION = "Bearer token";
+	private static final String FILE_NAME = "a.html";
+	private static final long USER_ID = 7L;
+
+	private NoteService noteService;
+	private NoteSearchService noteSearchService;
+	private UploadedContentService uploadedContentService;
+	private User user;
+	private NoteController noteController;
+
+	@BeforeEach
+	void setUp() {
+		noteService = mock(NoteService.class);
+		noteSearchService = mock(NoteSearchService.class);
+		uploadedContentService = mock(UploadedContentService.class);
+		TokenExtractionUtil tokenExtractionUtil = mock(TokenExtractionUtil.class);
+		UserService userService = mock(UserService.class);
+		NoteStorage noteStorage = mock(NoteStorage.class);
+		when(noteStorage.updateFile(any(InputStream.class), anyString()))
+				.thenAnswer(invocation -> invocation.getArgument(1));
+		when(noteSearchService.isEnabled()).thenReturn(true);
+
+		user = new User();
+		user.setUserId(USER_ID);
+		user.setMaxStorage(1000L);
+		when(tokenExtractionUtil.extractKindeUserIdFromHeader(AUTHORIZATION)).thenReturn("kp_user");
+		when(userService.getUserByKindeUserId("kp_user")).thenReturn(Optional.of(user));
+		when(noteService.hasStorageCapacity(eq(user), anyLong(), anyLong())).thenReturn(true);
+
+		noteController = new NoteController();
+		ReflectionTestUtils.setField(noteController, "noteService", noteService);
+		ReflectionTestUtils.setField(noteController, "userService", userService);
+		ReflectionTestUtils.setField(noteController, "tokenExtractionUtil", tokenExtractionUtil);
+		ReflectionTestUtils.setField(noteController, "noteStorage", noteStorage);
+		ReflectionTestUtils.setField(noteController, "blobService", mock(BlobService.class));
+		ReflectionTestUtils.setField(noteController, "pendingObjectService", mock(PendingObjectService.class));
+		ReflectionTestUtils.setField(noteController, "noteSearchService", noteSearchService);
+		ReflectionTestUtils.setField(noteController, "noteNameIndexService", mock(NoteNameIndexService.class));
+		ReflectionTestUtils.setField(noteController, "uploadedContentService", uploadedContentService);
+		ReflectionTestUtils.setField(noteController, "searchInlineMaxBytes", 10L);
+	}
+
+	@Test
+	void smallSaveIsIndexedByRequest() {
+		MockMultipartFile file = file("<p>hi</p>");
+		Note note = savedNote(file);
+
+		assertEquals(HttpStatus.CREATED, noteController.createNote(AUTHORIZATION, file, FILE_NAME).getStatusCode());
+
+		verify(noteSearchService).index(42L, file);
+		verify(uploadedContentService, never()).contentSaved(anyLong(), anyString());
+		verify(noteService).createNote(FILE_NAME, USER_ID, file.getSize(), note.getObjectKey(), null, file);
+	}
+
+	@Test
+	void largeSaveIsIndexedInBackground() {
+		MockMultipartFile file = file("<p>more than ten bytes</p>");
+		Note note = savedNote(file);
+
+		assertEquals(HttpStatus.CREATED, noteController.createNote(AUTHORIZATION, file, FILE_NAME).getStatusCode());
+
+		// The version is still recorded with the save, streamed from the upload
+		verify(noteService).createNote(FILE_NAME, USER_ID, file.getSize(), note.getObjectKey(), null, file);
+		verify(noteSearchService, never()).index(anyLong(), any());
+		verify(noteSearchService).deleteDocument(42L);
+		verify(uploadedContentService).contentSaved(42L, note.getObjectKey());
+	}
+
+	@Test
+	void largeUpdateIsIndexedInBackground() {
+		Note existing = new Note();
+		existing.setId(42L);
+		existing.setObjectKey("users/7/notes/a.html.upload-old");
+		existing.setTotalSizeBytes(5L);
+		when(noteService.getNoteByUserIdAndFileName(USER_ID, FILE_NAME)).thenReturn(Optional.of(existing));
+		MockMultipartFile file = file("<p>more than ten bytes</p>");
+		Note updated = new Note();
+		updated.setId(42L);
+		updated.setObjectKey("users/7/notes/a.html.upload-new");
+		when(noteService.updateNoteContent(eq(USER_ID), eq(FILE_NAME), eq(file.getSize()), anyString(), eq(null),
+				eq(file))).thenReturn(updated);
+
+		assertEquals(HttpStatus.OK, noteController.updateNote(AUTHORIZATION, file, FILE_NAME).getStatusCode());
+
+		verify(noteSearchService, never()).index(anyLong(), any());
+		verify(uploadedContentService).contentSaved(42L, "users/7/notes/a.html.upload-new");
+	}
+
+	private Note savedNote(MockMultipartFile file) {
+		Note note = new Note();
+		note.setId(42L);
+		when(noteService.createNote(eq(FILE_NAME), eq(USER_ID), eq(file.getSize()), anyString(), eq(null), eq(file)))
+				.thenAnswer(invocation -> {
+					note.setObjectKey(invocation.getArgument(3));
+					return note;
+				});
+		return note;
+	}
+
+	private static MockMultipartFile file(String content) {
+		return new MockMultipartFile("file", FILE_NAME, "text/html", content.getBytes());
+	}
+}
\ No newline at end of file
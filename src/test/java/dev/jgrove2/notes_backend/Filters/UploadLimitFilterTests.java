@@ -0,0 +1,185 @@
+package dev.jgrove2.notes_backend.Filters;
+
+import dev.jgrove2.notes_backend.Models.NoteSummary;
+import dev.jgrove2.notes_backend.Models.User;
+import dev.jgrove2.notes_backend.Services.NoteService;
+import dev.jgrove2.notes_backend.Services.UserService;
+import dev.jgrove2.notes_backend.Utils.RequestUserContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.web.servlet.MultipartProperties;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UploadLimitFilterTests {
+
+	private static final long MAX_FILE_SIZE = 1000L;
+	private static final long MAX_REQUEST_SIZE = 2000L;
+	private static final long THRESHOLD = 100L;
+	private static final long OVERHEAD = 16 * 1024;
+
+	private UserService userService;
+	private NoteService noteService;
+	private User user;
+	private UploadLimitFilter filter;
+
+	@BeforeEach
+	void setUp() {
+		MultipartProperties multipartProperties = new MultipartProperties();
+		multipartProperties.setMaxFileSize(DataSize.ofBytes(MAX_FILE_SIZE));
+		multipartProperties.setMaxRequestSize(DataSize.ofBytes(MAX_REQUEST_SIZE));
+		multipartProperties.setFileSizeThreshold(DataSize.ofBytes(THRESHOLD));
+		userService = mock(UserService.class);
+		noteService = mock(NoteService.class);
+
+		user = new User();
+		user.setUserId(7L);
+		user.setMaxStorage(5000L);
+		when(userService.getUserByKindeUserId("kp_user")).thenReturn(Optional.of(user));
+		RequestUserContext.setKindeUserId("kp_user");
+
+		filter = new UploadLimitFilter();
+		ReflectionTestUtils.setField(filter, "multipartProperties", multipartProperties);
+		ReflectionTestUtils.setField(filter, "userService", userService);
+		ReflectionTestUtils.setField(filter, "noteService", noteService);
+	}
+
+	@AfterEach
+	void tearDown() {
+		RequestUserContext.clear();
+	}
+
+	@Test
+	void uploadWithoutContentLengthIsRejected() throws Exception {
+		MockHttpServletRequest request = upload("POST", null);
+
+		MockFilterChain chain = new MockFilterChain();
+		MockHttpServletResponse response = filter(request, chain);
+
+		assertEquals(411, response.getStatus());
+		assertNull(chain.getRequest());
+	}
+
+	@Test
+	void uploadOverMaxRequestSizeReportsThatLimit() throws Exception {
+		MockFilterChain chain = new MockFilterChain();
+		MockHttpServletResponse response = filter(upload("POST", MAX_REQUEST_SIZE + 1), chain);
+
+		assertEquals(413, response.getStatus());
+		assertEquals("{\"error\":\"Upload exceeds the maximum request size of " + MAX_REQUEST_SIZE + " bytes\"}",
+				response.getContentAsString());
+		assertNull(chain.getRequest());
+		verify(noteService, never()).hasStorageCapacity(any(User.class), anyLong(), anyLong());
+	}
+
+	@Test
+	void uploadBetweenFileAndRequestLimitsPasses() throws Exception {
+		// Left to the multipart parser, which checks the file part against max-file-size
+		when(noteService.hasStorageCapacity(any(User.class), anyLong(), anyLong())).thenReturn(true);
+		MockFilterChain chain = new MockFilterChain();
+
+		MockHttpServletResponse response = filter(upload("POST", MAX_REQUEST_SIZE), chain);
+
+		assertEquals(200, response.getStatus());
+		assertNotNull(chain.getRequest());
+	}
+
+	@Test
+	void createThatCannotFitInStorageIsRejected() throws Exception {
+		when(noteService.hasStorageCapacity(user, 0L, 0L)).thenReturn(false);
+		MockFilterChain chain = new MockFilterChain();
+
+		MockHttpServletResponse response = filter(upload("POST", 500L), chain);
+
+		assertEquals(413, response.getStatus());
+		assertTrue(response.getContentAsString().contains("Storage limit exceeded"));
+		assertNull(chain.getRequest());
+	}
+
+	@Test
+	void updateIsCheckedAgainstSpaceFreedByExistingContent() throws Exception {
+		// Large enough limits that the multipart allowance leaves part of the length as file
+		MultipartProperties multipartProperties = new MultipartProperties();
+		multipartProperties.setMaxRequestSize(DataSize.ofBytes(OVERHEAD + 4000L));
+		multipartProperties.setFileSizeThreshold(DataSize.ofBytes(THRESHOLD));
+		ReflectionTestUtils.setField(filter, "multipartProperties", multipartProperties);
+		when(noteService.getNoteSummaryByUserIdAndFileName(7L, "a b.html"))
+				.thenReturn(Optional.of(new NoteSummary("a b.html", 1500L, LocalDateTime.now())));
+		when(noteService.hasStorageCapacity(user, 1500L, 3000L)).thenReturn(true);
+
+		MockHttpServletRequest request = upload("PUT", OVERHEAD + 3000L);
+		request.setQueryString("other=1&filename=a+b.html");
+		MockFilterChain chain = new MockFilterChain();
+		MockHttpServletResponse response = filter(request, chain);
+
+		assertEquals(200, response.getStatus());
+		assertNotNull(chain.getRequest());
+		verify(noteService).hasStorageCapacity(user, 1500L, 3000L);
+	}
+
+	@Test
+	void smallUploadsAndOtherRequestsSkipQuotaCheck() throws Exception {
+		MockFilterChain small = new MockFilterChain();
+		assertEquals(200, filter(upload("POST", THRESHOLD), small).getStatus());
+		assertNotNull(small.getRequest());
+
+		MockHttpServletRequest otherPath = upload("POST", 500L);
+		otherPath.setRequestURI("/notes/uploads/abc/parts/1");
+		MockFilterChain other = new MockFilterChain();
+		assertEquals(200, filter(otherPath, other).getStatus());
+		assertNotNull(other.getRequest());
+
+		RequestUserContext.clear();
+		MockFilterChain anonymous = new MockFilterChain();
+		assertEquals(200, filter(upload("POST", 500L), anonymous).getStatus());
+		assertNotNull(anonymous.getRequest());
+
+		verify(noteService, never()).hasStorageCapacity(any(User.class), anyLong(), anyLong());
+	}
+
+	@Test
+	void requestsThatAreNotMultipartAreNotChecked() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("PUT", "/notes/rename");
+		request.setContentType("application/json");
+		MockFilterChain chain = new MockFilterChain();
+
+		assertEquals(200, filter(request, chain).getStatus());
+		assertNotNull(chain.getRequest());
+	}
+
+	private MockHttpServletResponse filter(MockHttpServletRequest request, MockFilterChain chain) throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(request, response, chain);
+		return response;
+	}
+
+	/**
+	 * A multipart request to /notes whose Content-Length is contentLength, or without one when null
+	 */
+	private static MockHttpServletRequest upload(String method, Long contentLength) {
+		MockHttpServletRequest request = new MockHttpServletRequest(method, "/notes");
+		request.setContentType("multipart/form-data; boundary=xyz");
+		if (contentLength != null) {
+			request.setContent(new byte[Math.toIntExact(contentLength)]);
+		}
+		return request;
+	}
+}
\ No newline at end of file
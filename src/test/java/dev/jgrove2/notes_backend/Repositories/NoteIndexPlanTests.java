@@ -0,0 +1,109 @@
+package dev.jgrove2.notes_backend.Repositories;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the Flyway indexes serve the NoteRepository queries.
+ * Runs against a local Postgres, e.g.
+ * NOTES_TEST_DATABASE_URL=jdbc:postgresql://localhost:5432/notes_db?user=postgres&amp;sslmode=disable
+ * Migrations are applied to a throwaway schema, the public schema is not touched.
+ */
+@EnabledIfEnvironmentVariable(named = "NOTES_TEST_DATABASE_URL", matches = ".+")
+class NoteIndexPlanTests {
+
+	private static final String SCHEMA = "notes_plan_test";
+
+	private static Flyway flyway;
+	private static Connection connection;
+
+	@BeforeAll
+	static void migrateAndSeed() throws SQLException {
+		String url = System.getenv("NOTES_TEST_DATABASE_URL");
+		flyway = Flyway.configure()
+				.dataSource(url, null, null)
+				.schemas(SCHEMA)
+				.cleanDisabled(false)
+				.load();
+		flyway.clean();
+		flyway.migrate();
+
+		connection = DriverManager.getConnection(url);
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("SET search_path TO " + SCHEMA);
+			// 500 users with 100 notes each, spread over 10 folders
+			statement.execute("INSERT INTO notes (file_name, user_id, object_key, total_size_bytes, created_at, "
+					+ "last_modified_date, updated_at) "
+					+ "SELECT 'folder-' || (n % 10) || '/note-' || n || '.html', u, 'users/' || u || '/notes/' || n, "
+					+ "n * 10, now() - n * interval '1 minute', now(), now() "
+					+ "FROM generate_series(1, 500) u, generate_series(1, 100) n");
+			statement.execute("VACUUM ANALYZE notes");
+		}
+	}
+
+	@AfterAll
+	static void dropSchema() throws SQLException {
+		if (connection != null) {
+			connection.close();
+		}
+		if (flyway != null) {
+			flyway.clean();
+		}
+	}
+
+	@Test
+	void lookupByFileNameUsesUniqueIndex() throws SQLException {
+		String plan = explain("SELECT * FROM notes WHERE user_id = 42 AND file_name = 'folder-3/note-13.html'");
+		assertTrue(plan.contains("ux_notes_user_id_file_name"), plan);
+	}
+
+	@Test
+	void listingOrderedByCreationDateUsesCreatedAtIndex() throws SQLException {
+		String plan = explain("SELECT file_name, total_size_bytes, last_modified_date FROM notes "
+				+ "WHERE user_id = 42 ORDER BY created_at DESC");
+		assertTrue(plan.contains("ix_notes_user_id_created_at"), plan);
+	}
+
+	@Test
+	void storageSumIsIndexOnly() throws SQLException {
+		String plan = explain("SELECT coalesce(sum(total_size_bytes), 0) FROM notes WHERE user_id = 42");
+		assertTrue(plan.contains("Index Only Scan"), plan);
+	}
+
+	@Test
+	void fileNamePrefixSearchUsesIndex() throws SQLException {
+		String plan = explain("SELECT file_name FROM notes WHERE user_id = 42 AND file_name LIKE 'folder-3/%'");
+		assertTrue(plan.contains("ux_notes_user_id_file_name"), plan);
+		assertFalse(plan.contains("Seq Scan"), plan);
+	}
+
+	@Test
+	void changesSinceCursorAreIndexOnly() throws SQLException {
+		String plan = explain("SELECT file_name, total_size_bytes, last_modified_date, change_seq FROM notes "
+				+ "WHERE user_id = 42 AND change_seq > 4000 ORDER BY change_seq LIMIT 501");
+		assertTrue(plan.contains("Index Only Scan using ix_notes_user_id_change_seq"), plan);
+	}
+
+	private String explain(String sql) throws SQLException {
+		StringBuilder plan = new StringBuilder();
+		try (Statement statement = connection.createStatement();
+				ResultSet resultSet = statement.executeQuery("EXPLAIN " + sql)) {
+			while (resultSet.next()) {
+				plan.append(resultSet.getString(1)).append('\n');
+			}
+		}
+		return plan.toString();
+	}
+}
\ No newline at end of file
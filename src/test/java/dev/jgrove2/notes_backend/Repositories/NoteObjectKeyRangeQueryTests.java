@@ -0,0 +1,162 @@
+package dev.jgrove2.notes_backend.Repositories;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.data.jpa.repository.Query;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the keyset scan the storage reconciler pairs with each listing page
+ * (NoteRepository.findByObjectKeyRange) against a local Postgres, e.g.
+ * NOTES_TEST_DATABASE_URL=jdbc:postgresql://localhost:5432/notes_db?user=postgres&amp;sslmode=disable
+ * Migrations are applied to a throwaway schema, the public schema is not touched.
+ */
+@EnabledIfEnvironmentVariable(named = "NOTES_TEST_DATABASE_URL", matches = ".+")
+class NoteObjectKeyRangeQueryTests {
+
+	private static final String SCHEMA = "notes_key_range_test";
+
+	private static final Pattern PARAMETER = Pattern.compile(":([a-zA-Z]+)");
+
+	private static final LocalDateTime NOW = LocalDateTime.of(2026, 1, 1, 12, 0);
+
+	private static final LocalDateTime CUTOFF = NOW.minusHours(1);
+
+	private static Flyway flyway;
+	private static Connection connection;
+
+	@BeforeAll
+	static void migrateAndSeed() throws SQLException {
+		String url = System.getenv("NOTES_TEST_DATABASE_URL");
+		flyway = Flyway.configure()
+				.dataSource(url, null, null)
+				.schemas(SCHEMA)
+				.cleanDisabled(false)
+				.load();
+		flyway.clean();
+		flyway.migrate();
+
+		connection = DriverManager.getConnection(url);
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("SET search_path TO " + SCHEMA);
+			// Upper case sorts before lower case in byte order, as in an S3 listing
+			statement.execute("INSERT INTO notes (id, file_name, user_id, object_key, content_hash, total_size_bytes, "
+					+ "created_at, last_modified_date, updated_at) VALUES "
+					+ "(1, 'a.html', 1, 'users/1/notes/a.html', null, 10, now(), '2026-01-01 10:00', now()), "
+					+ "(2, 'B.html', 1, 'users/1/notes/B.html', null, 10, now(), '2026-01-01 10:00', now()), "
+					+ "(3, 'c.html', 1, 'users/1/notes/c.html', null, 10, now(), '2026-01-01 10:00', now()), "
+					+ "(4, 'd.html', 1, 'users/1/notes/d.html', null, 10, now(), '2026-01-01 11:30', now()), "
+					+ "(5, 'e.html', 1, 'blobs/ab/abc', 'abc', 10, now(), '2026-01-01 10:00', now()), "
+					+ "(6, 'f.html', 2, 'users/2/notes/f.html', null, 10, now(), '2026-01-01 10:00', now())");
+			statement.execute("ANALYZE notes");
+		}
+	}
+
+	@AfterAll
+	static void dropSchema() throws SQLException {
+		if (connection != null) {
+			connection.close();
+		}
+		if (flyway != null) {
+			flyway.clean();
+		}
+	}
+
+	@Test
+	void rangeFollowsListingByteOrder() throws Exception {
+		assertEquals(List.of(2L, 1L), ids("", "users/1/notes/a.html", true, 100));
+		assertEquals(List.of(3L), ids("users/1/notes/a.html", "users/1/notes/c.html", true, 100));
+	}
+
+	@Test
+	void lastPageReachesEndOfKeys() throws Exception {
+		assertEquals(List.of(3L, 6L), ids("users/1/notes/a.html", "users/1/notes/c.html", false, 100));
+		assertEquals(List.of(2L), ids("", "", false, 1));
+	}
+
+	@Test
+	void blobsAndRecentlyModifiedNotesAreLeftOut() throws Exception {
+		// Blobs are checked by reference count, notes saved in the grace period may still be written
+		assertEquals(List.of(2L, 1L, 3L, 6L), ids("", "", false, 100));
+	}
+
+	@Test
+	void scanUsesObjectKeyIndex() throws Exception {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("SET enable_seqscan = off");
+		}
+		try (PreparedStatement statement = prepare("EXPLAIN " + sql(), Map.of("after", "users/1/notes/a.html",
+				"last", "users/1/notes/c.html", "bounded", true, "cutoff", CUTOFF, "limit", 100));
+				ResultSet resultSet = statement.executeQuery()) {
+			StringBuilder plan = new StringBuilder();
+			while (resultSet.next()) {
+				plan.append(resultSet.getString(1)).append('\n');
+			}
+			assertTrue(plan.toString().contains("ix_notes_object_key"), plan.toString());
+		} finally {
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("RESET enable_seqscan");
+			}
+		}
+	}
+
+	private static List<Long> ids(String after, String last, boolean bounded, int limit) throws Exception {
+		List<Long> ids = new ArrayList<>();
+		try (PreparedStatement statement = prepare(sql(), Map.of("after", after, "last", last, "bounded", bounded,
+				"cutoff", CUTOFF, "limit", limit));
+				ResultSet resultSet = statement.executeQuery()) {
+			while (resultSet.next()) {
+				ids.add(resultSet.getLong("id"));
+			}
+		}
+		return ids;
+	}
+
+	private static String sql() {
+		return Arrays.stream(NoteRepository.class.getMethods())
+				.filter(candidate -> candidate.getName().equals("findByObjectKeyRange"))
+				.findFirst().orElseThrow()
+				.getAnnotation(Query.class).value();
+	}
+
+	/**
+	 * Prepare a native query, binding its named parameters
+	 */
+	private static PreparedStatement prepare(String sql, Map<String, Object> parameters) throws SQLException {
+		List<String> names = new ArrayList<>();
+		Matcher matcher = PARAMETER.matcher(sql);
+		StringBuilder positional = new StringBuilder();
+		while (matcher.find()) {
+			names.add(matcher.group(1));
+			matcher.appendReplacement(positional, "?");
+		}
+		matcher.appendTail(positional);
+
+		PreparedStatement statement = connection.prepareStatement(positional.toString());
+		for (int i = 0; i < names.size(); i++) {
+			Object value = parameters.get(names.get(i));
+			statement.setObject(i + 1, value instanceof LocalDateTime time ? Timestamp.valueOf(time) : value);
+		}
+		return statement;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,199 @@
+package dev.jgrove2.notes_backend.Repositories;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.data.jpa.repository.Query;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the NoteSearchDocumentRepository queries against a local Postgres, e.g.
+ * NOTES_TEST_DATABASE_URL=jdbc:postgresql://localhost:5432/notes_db?user=postgres&amp;sslmode=disable
+ * Migrations are applied to a throwaway schema, the public schema is not touched.
+ */
+@EnabledIfEnvironmentVariable(named = "NOTES_TEST_DATABASE_URL", matches = ".+")
+class NoteSearchQueryTests {
+
+	private static final String SCHEMA = "notes_search_test";
+
+	private static final Pattern PARAMETER = Pattern.compile(":([a-zA-Z]+)");
+
+	private static final LocalDateTime NOW = LocalDateTime.of(2026, 1, 1, 12, 0);
+
+	private static Flyway flyway;
+	private static Connection connection;
+
+	@BeforeAll
+	static void migrate() throws SQLException {
+		String url = System.getenv("NOTES_TEST_DATABASE_URL");
+		flyway = Flyway.configure()
+				.dataSource(url, null, null)
+				.schemas(SCHEMA)
+				.cleanDisabled(false)
+				.load();
+		flyway.clean();
+		flyway.migrate();
+
+		connection = DriverManager.getConnection(url);
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("SET search_path TO " + SCHEMA);
+		}
+	}
+
+	@AfterAll
+	static void dropSchema() throws SQLException {
+		if (connection != null) {
+			connection.close();
+		}
+		if (flyway != null) {
+			flyway.clean();
+		}
+	}
+
+	@BeforeEach
+	void seed() throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("TRUNCATE notes, note_search_documents, note_search_failures");
+			statement.execute("INSERT INTO notes (id, file_name, user_id, object_key, total_size_bytes, created_at, "
+					+ "last_modified_date, updated_at) "
+					+ "SELECT n, 'note-' || n || '.html', 1, 'users/1/notes/' || n, 10, now(), now(), now() "
+					+ "FROM generate_series(1, 5) n");
+		}
+	}
+
+	@Test
+	void searchRanksDenserMatchesFirstAndMarksSnippets() throws Exception {
+		execute("upsert", Map.of("noteId", 1L, "body", "Gardening tips. Water the tomatoes in the morning."));
+		execute("upsert", Map.of("noteId", 2L, "body", "Tomatoes: growing tomatoes, pruning tomato plants, "
+				+ "and storing tomatoes."));
+		execute("upsert", Map.of("noteId", 3L, "body", "Meeting notes about the budget."));
+
+		List<Object[]> rows = query("search", Map.of("userId", 1L, "query", "tomato", "limit", 10));
+
+		assertEquals(List.of("note-2.html", "note-1.html"), rows.stream().map(row -> (String) row[0]).toList());
+		assertTrue(((Number) rows.get(0)[1]).doubleValue() > ((Number) rows.get(1)[1]).doubleValue());
+		assertTrue(((String) rows.get(1)[2]).contains("\u0002tomatoes\u0003"), (String) rows.get(1)[2]);
+
+		assertEquals(List.of("note-1.html"), query("search", Map.of("userId", 1L, "query", "tomatoes -pruning",
+				"limit", 10)).stream().map(row -> (String) row[0]).toList());
+		assertEquals(List.of(), query("search", Map.of("userId", 2L, "query", "tomato", "limit", 10)));
+	}
+
+	@Test
+	void failedNotesAreSkippedUntilTheirBackoffPasses() throws Exception {
+		execute("upsert", Map.of("noteId", 1L, "body", "indexed"));
+		Map<String, Object> failure = Map.of("noteId", 3L, "lastError", "Not found", "now", NOW,
+				"retryBaseMillis", 60000L, "retryMaxMillis", 86400000L);
+		execute("recordFailure", failure);
+
+		assertEquals(List.of(2L, 4L, 5L), unindexed(0L, NOW));
+		assertEquals(List.of(4L, 5L), unindexed(2L, NOW));
+		assertEquals(List.of(2L, 3L, 4L, 5L), unindexed(0L, NOW.plusMinutes(1)));
+
+		// The next failure backs off twice as long
+		execute("recordFailure", Map.of("noteId", 3L, "lastError", "Still not found", "now", NOW.plusMinutes(1),
+				"retryBaseMillis", 60000L, "retryMaxMillis", 86400000L));
+		assertEquals(List.of(2L, 4L, 5L), unindexed(0L, NOW.plusMinutes(2)));
+		assertEquals(List.of(2L, 3L, 4L, 5L), unindexed(0L, NOW.plusMinutes(3)));
+		Object[] recorded = rows("SELECT attempts, last_error FROM note_search_failures WHERE note_id = 3").get(0);
+		assertEquals(2, recorded[0]);
+		assertEquals("Still not found", recorded[1]);
+
+		// Indexing the note clears its failure
+		execute("insertIfAbsent", Map.of("noteId", 3L, "body", "indexed at last"));
+		assertEquals(List.of(), rows("SELECT note_id FROM note_search_failures"));
+		assertEquals(List.of(2L, 4L, 5L), unindexed(0L, NOW));
+	}
+
+	@Test
+	void insertIfAbsentKeepsNewerText() throws Exception {
+		execute("upsert", Map.of("noteId", 1L, "body", "saved while backfilling"));
+		execute("insertIfAbsent", Map.of("noteId", 1L, "body", "read from storage"));
+
+		assertEquals("saved while backfilling", rows("SELECT body FROM note_search_documents WHERE note_id = 1")
+				.get(0)[0]);
+	}
+
+	private List<Long> unindexed(Long afterId, LocalDateTime now) throws Exception {
+		return query("findUnindexedNoteIds", Map.of("afterId", afterId, "now", now, "limit", 100)).stream()
+				.map(row -> ((Number) row[0]).longValue()).toList();
+	}
+
+	private static void execute(String method, Map<String, Object> parameters) throws Exception {
+		try (PreparedStatement statement = prepare(method, parameters)) {
+			statement.executeUpdate();
+		}
+	}
+
+	private static List<Object[]> query(String method, Map<String, Object> parameters) throws Exception {
+		try (PreparedStatement statement = prepare(method, parameters);
+				ResultSet resultSet = statement.executeQuery()) {
+			return read(resultSet);
+		}
+	}
+
+	private static List<Object[]> rows(String sql) throws SQLException {
+		try (Statement statement = connection.createStatement();
+				ResultSet resultSet = statement.executeQuery(sql)) {
+			return read(resultSet);
+		}
+	}
+
+	/**
+	 * Prepare the native query of a repository method, binding its named parameters
+	 */
+	private static PreparedStatement prepare(String method, Map<String, Object> parameters) throws SQLException {
+		String sql = Arrays.stream(NoteSearchDocumentRepository.class.getMethods())
+				.filter(candidate -> candidate.getName().equals(method))
+				.findFirst().orElseThrow()
+				.getAnnotation(Query.class).value();
+		List<String> names = new ArrayList<>();
+		Matcher matcher = PARAMETER.matcher(sql);
+		StringBuilder positional = new StringBuilder();
+		while (matcher.find()) {
+			names.add(matcher.group(1));
+			matcher.appendReplacement(positional, "?");
+		}
+		matcher.appendTail(positional);
+
+		PreparedStatement statement = connection.prepareStatement(positional.toString());
+		for (int i = 0; i < names.size(); i++) {
+			Object value = parameters.get(names.get(i));
+			statement.setObject(i + 1, value instanceof LocalDateTime time ? Timestamp.valueOf(time) : value);
+		}
+		return statement;
+	}
+
+	private static List<Object[]> read(ResultSet resultSet) throws SQLException {
+		List<Object[]> rows = new ArrayList<>();
+		int columns = resultSet.getMetaData().getColumnCount();
+		while (resultSet.next()) {
+			Object[] row = new Object[columns];
+			for (int i = 0; i < columns; i++) {
+				row[i] = resultSet.getObject(i + 1);
+			}
+			rows.add(row);
+		}
+		return rows;
+	}
+}
\ No newline at end of file
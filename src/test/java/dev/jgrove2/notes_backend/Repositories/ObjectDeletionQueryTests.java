@@ -0,0 +1,313 @@
+package dev.jgrove2.notes_backend.Repositories;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.data.jpa.repository.Query;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the deletion queue queries of ObjectDeletionRepository and the object key locks
+ * of PendingObjectRepository against a local Postgres, with a second connection standing
+ * in for another instance, e.g.
+ * NOTES_TEST_DATABASE_URL=jdbc:postgresql://localhost:5432/notes_db?user=postgres&amp;sslmode=disable
+ * Migrations are applied to a throwaway schema, the public schema is not touched.
+ */
+@EnabledIfEnvironmentVariable(named = "NOTES_TEST_DATABASE_URL", matches = ".+")
+class ObjectDeletionQueryTests {
+
+	private static final String SCHEMA = "notes_deletion_test";
+
+	private static final Pattern PARAMETER = Pattern.compile(":([a-zA-Z]+)");
+
+	private static final LocalDateTime NOW = LocalDateTime.of(2026, 1, 1, 12, 0);
+
+	private static Flyway flyway;
+	private static Connection connection;
+
+	@BeforeAll
+	static void migrate() throws SQLException {
+		flyway = Flyway.configure()
+				.dataSource(System.getenv("NOTES_TEST_DATABASE_URL"), null, null)
+				.schemas(SCHEMA)
+				.cleanDisabled(false)
+				.load();
+		flyway.clean();
+		flyway.migrate();
+
+		connection = connect();
+	}
+
+	@AfterAll
+	static void dropSchema() throws SQLException {
+		if (connection != null) {
+			connection.close();
+		}
+		if (flyway != null) {
+			flyway.clean();
+		}
+	}
+
+	@BeforeEach
+	void seed() throws Exception {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("TRUNCATE object_deletions");
+		}
+		enqueue("users/1/notes/a", NOW.minusMinutes(3));
+		enqueue("users/1/notes/b", NOW.minusMinutes(2));
+		enqueue("users/1/notes/c", NOW.minusMinutes(1));
+	}
+
+	@Test
+	void dueKeysLockedByAnotherInstanceAreSkipped() throws Exception {
+		try (Connection other = connect()) {
+			other.setAutoCommit(false);
+			assertEquals(List.of("users/1/notes/a"), strings(query(other, ObjectDeletionRepository.class,
+					"lockDueObjectKeys", Map.of("now", NOW, "limit", 1))));
+
+			// Oldest first, without waiting for the other claim
+			assertEquals(List.of("users/1/notes/b", "users/1/notes/c"), dueObjectKeys(NOW));
+
+			other.rollback();
+		}
+		assertEquals(List.of("users/1/notes/a", "users/1/notes/b", "users/1/notes/c"), dueObjectKeys(NOW));
+		assertEquals(List.of("users/1/notes/a"), dueObjectKeys(NOW.minusMinutes(2).minusSeconds(30)));
+	}
+
+	@Test
+	void objectKeyLockIsOnlyTried() throws Exception {
+		try (Connection other = connect()) {
+			other.setAutoCommit(false);
+			query(other, PendingObjectRepository.class, "lockObjectKey", Map.of("objectKey", "blobs/ab/abc"));
+
+			assertFalse(tryLock("blobs/ab/abc"));
+			assertTrue(tryLock("blobs/cd/cde"));
+
+			other.commit();
+		}
+		assertTrue(tryLock("blobs/ab/abc"));
+	}
+
+	@Test
+	void claimedKeysAreHiddenUntilTheLeaseExpires() throws Exception {
+		LocalDateTime claimedUntil = NOW.plusMinutes(1);
+		claim("users/1/notes/a", claimedUntil);
+
+		assertEquals(List.of("users/1/notes/b", "users/1/notes/c"), dueObjectKeys(NOW));
+		assertTrue(isClaimed("users/1/notes/a", NOW));
+		assertFalse(isClaimed("users/1/notes/b", NOW));
+
+		// A worker that stopped leaves its claim to expire
+		assertEquals(List.of("users/1/notes/a", "users/1/notes/b", "users/1/notes/c"),
+				dueObjectKeys(claimedUntil.plusSeconds(1)));
+		assertFalse(isClaimed("users/1/notes/a", claimedUntil.plusSeconds(1)));
+	}
+
+	@Test
+	void failedDeletionsBackOffExponentiallyUpToTheMaximum() throws Exception {
+		LocalDateTime claimedUntil = NOW.plusMinutes(1);
+		claim("users/1/notes/a", claimedUntil);
+		claim("users/1/notes/b", claimedUntil);
+
+		assertEquals(2, recordFailure(List.of("users/1/notes/a", "users/1/notes/b"), NOW, claimedUntil));
+		assertEquals(List.of("users/1/notes/c"), dueObjectKeys(NOW));
+		assertEquals(List.of("users/1/notes/c", "users/1/notes/a", "users/1/notes/b"),
+				dueObjectKeys(NOW.plusSeconds(1)));
+
+		// Each later failure waits twice as long, never more than the maximum
+		LocalDateTime retry = NOW.plusSeconds(1);
+		for (long expectedMillis : new long[] { 2000, 4000, 5000 }) {
+			claim("users/1/notes/a", claimedUntil);
+			recordFailure(List.of("users/1/notes/a"), retry, claimedUntil);
+			Object[] row = rows("SELECT next_attempt_at FROM object_deletions WHERE object_key = 'users/1/notes/a'")
+					.get(0);
+			assertEquals(retry.plusNanos(expectedMillis * 1_000_000), ((Timestamp) row[0]).toLocalDateTime());
+			retry = ((Timestamp) row[0]).toLocalDateTime();
+		}
+		Object[] failed = rows("SELECT attempts, last_error, claimed_until FROM object_deletions "
+				+ "WHERE object_key = 'users/1/notes/a'").get(0);
+		assertEquals(4, failed[0]);
+		assertEquals("AccessDenied", failed[1]);
+		assertEquals(null, failed[2]);
+	}
+
+	@Test
+	void outcomeOfAnExpiredClaimIsIgnored() throws Exception {
+		LocalDateTime expired = NOW.plusMinutes(1);
+		claim("users/1/notes/a", expired);
+		// Another worker claimed the key again after the first one's lease ran out
+		claim("users/1/notes/a", NOW.plusMinutes(3));
+
+		assertEquals(0, recordFailure(List.of("users/1/notes/a"), NOW.plusMinutes(2), expired));
+
+		Object[] row = rows("SELECT attempts, claimed_until FROM object_deletions "
+				+ "WHERE object_key = 'users/1/notes/a'").get(0);
+		assertEquals(0, row[0]);
+		assertEquals(NOW.plusMinutes(3), ((Timestamp) row[1]).toLocalDateTime());
+	}
+
+	@Test
+	void enqueueAgainKeepsBacklogAgeAndClaim() throws Exception {
+		LocalDateTime claimedUntil = NOW.plusMinutes(1);
+		claim("users/1/notes/a", claimedUntil);
+		recordFailure(List.of("users/1/notes/a"), NOW, claimedUntil);
+		claim("users/1/notes/a", claimedUntil);
+
+		enqueue("users/1/notes/a", NOW);
+
+		Object[] row = rows("SELECT attempts, next_attempt_at, enqueued_at, last_error, claimed_until "
+				+ "FROM object_deletions WHERE object_key = 'users/1/notes/a'").get(0);
+		assertEquals(0, row[0]);
+		assertEquals(NOW, ((Timestamp) row[1]).toLocalDateTime());
+		assertEquals(NOW.minusMinutes(3), ((Timestamp) row[2]).toLocalDateTime());
+		assertEquals(null, row[3]);
+		assertEquals(claimedUntil, ((Timestamp) row[4]).toLocalDateTime());
+	}
+
+	private List<String> dueObjectKeys(LocalDateTime now) throws Exception {
+		return strings(query(connection, ObjectDeletionRepository.class, "lockDueObjectKeys",
+				Map.of("now", now, "limit", 10)));
+	}
+
+	private boolean tryLock(String objectKey) throws Exception {
+		return (Boolean) query(connection, PendingObjectRepository.class, "tryLockObjectKey",
+				Map.of("objectKey", objectKey)).get(0)[0];
+	}
+
+	/**
+	 * As ObjectDeletionRepository.isClaimed, a JPQL query
+	 */
+	private boolean isClaimed(String objectKey, LocalDateTime now) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(
+				"SELECT count(*) > 0 FROM object_deletions WHERE object_key = ? AND claimed_until >= ?")) {
+			statement.setString(1, objectKey);
+			statement.setTimestamp(2, Timestamp.valueOf(now));
+			return (Boolean) read(statement.executeQuery()).get(0)[0];
+		}
+	}
+
+	private static void enqueue(String objectKey, LocalDateTime now) throws Exception {
+		update(ObjectDeletionRepository.class, "enqueue", Map.of("objectKey", objectKey, "now", now));
+	}
+
+	/**
+	 * As ObjectDeletionRepository.claim, a JPQL update
+	 */
+	private static void claim(String objectKey, LocalDateTime claimedUntil) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(
+				"UPDATE object_deletions SET claimed_until = ? WHERE object_key = ?")) {
+			statement.setTimestamp(1, Timestamp.valueOf(claimedUntil));
+			statement.setString(2, objectKey);
+			statement.executeUpdate();
+		}
+	}
+
+	private static int recordFailure(List<String> objectKeys, LocalDateTime now, LocalDateTime claimedUntil)
+			throws Exception {
+		return update(ObjectDeletionRepository.class, "recordFailure", Map.of("objectKeys", objectKeys,
+				"lastError", "AccessDenied", "now", now, "claimedUntil", claimedUntil, "retryBaseMillis", 1000L,
+				"retryMaxMillis", 5000L));
+	}
+
+	private static int update(Class<?> repository, String method, Map<String, Object> parameters) throws Exception {
+		try (PreparedStatement statement = prepare(connection, repository, method, parameters)) {
+			return statement.executeUpdate();
+		}
+	}
+
+	private static List<Object[]> query(Connection connection, Class<?> repository, String method,
+			Map<String, Object> parameters) throws Exception {
+		try (PreparedStatement statement = prepare(connection, repository, method, parameters);
+				ResultSet resultSet = statement.executeQuery()) {
+			return read(resultSet);
+		}
+	}
+
+	private static List<Object[]> rows(String sql) throws SQLException {
+		try (Statement statement = connection.createStatement();
+				ResultSet resultSet = statement.executeQuery(sql)) {
+			return read(resultSet);
+		}
+	}
+
+	private static List<String> strings(List<Object[]> rows) {
+		return rows.stream().map(row -> (String) row[0]).toList();
+	}
+
+	private static Connection connect() throws SQLException {
+		Connection connection = DriverManager.getConnection(System.getenv("NOTES_TEST_DATABASE_URL"));
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("SET search_path TO " + SCHEMA);
+		}
+		return connection;
+	}
+
+	/**
+	 * Prepare the native query of a repository method, binding its named parameters;
+	 * a collection is bound as one placeholder per element
+	 */
+	private static PreparedStatement prepare(Connection connection, Class<?> repository, String method,
+			Map<String, Object> parameters) throws SQLException {
+		String sql = Arrays.stream(repository.getMethods())
+				.filter(candidate -> candidate.getName().equals(method))
+				.findFirst().orElseThrow()
+				.getAnnotation(Query.class).value();
+		List<Object> values = new ArrayList<>();
+		Matcher matcher = PARAMETER.matcher(sql);
+		StringBuilder positional = new StringBuilder();
+		while (matcher.find()) {
+			Object value = parameters.get(matcher.group(1));
+			if (value instanceof Collection<?> collection) {
+				values.addAll(collection);
+				matcher.appendReplacement(positional, String.join(", ", Collections.nCopies(collection.size(), "?")));
+			} else {
+				values.add(value);
+				matcher.appendReplacement(positional, "?");
+			}
+		}
+		matcher.appendTail(positional);
+
+		PreparedStatement statement = connection.prepareStatement(positional.toString());
+		for (int i = 0; i < values.size(); i++) {
+			Object value = values.get(i);
+			statement.setObject(i + 1, value instanceof LocalDateTime time ? Timestamp.valueOf(time) : value);
+		}
+		return statement;
+	}
+
+	private static List<Object[]> read(ResultSet resultSet) throws SQLException {
+		List<Object[]> rows = new ArrayList<>();
+		int columns = resultSet.getMetaData().getColumnCount();
+		while (resultSet.next()) {
+			Object[] row = new Object[columns];
+			for (int i = 0; i < columns; i++) {
+				row[i] = resultSet.getObject(i + 1);
+			}
+			rows.add(row);
+		}
+		return rows;
+	}
+}
\ No newline at end of file
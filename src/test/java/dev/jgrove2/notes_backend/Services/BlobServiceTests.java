@@ -0,0 +1,218 @@
+package dev.jgrove2.notes_backend.Services;
+
+import dev.jgrove2.notes_backend.Repositories.BlobRepository;
+import dev.jgrove2.notes_backend.Repositories.PendingObjectRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BlobServiceTests {
+
+	private static final byte[] CONTENT = "<p>template</p>".getBytes(StandardCharsets.UTF_8);
+
+	// Stand-ins for the blobs, pending_objects and object_deletions tables and for storage
+	private final Map<String, Integer> refCounts = new ConcurrentHashMap<>();
+	private final Set<String> pending = ConcurrentHashMap.newKeySet();
+	private final Set<String> queued = ConcurrentHashMap.newKeySet();
+	private final Set<String> claimed = ConcurrentHashMap.newKeySet();
+	private final Map<String, byte[]> storedObjects = new ConcurrentHashMap<>();
+
+	private BlobRepository blobRepository;
+	private PendingObjectRepository pendingObjectRepository;
+	private PendingObjectService pendingObjectService;
+	private NoteStorage noteStorage;
+	private ObjectDeletionService objectDeletionService;
+	private SimpleMeterRegistry meterRegistry;
+	private BlobService blobService;
+	private String hash;
+	private String objectKey;
+
+	@BeforeEach
+	void setUp() {
+		blobRepository = mock(BlobRepository.class);
+		when(blobRepository.addExistingReference(anyString())).thenAnswer(invocation ->
+				refCounts.computeIfPresent(invocation.getArgument(0), (hash, count) -> count + 1) == null ? 0 : 1);
+		when(blobRepository.addReference(anyString(), anyLong())).thenAnswer(invocation -> {
+			refCounts.merge(invocation.getArgument(0), 1, Integer::sum);
+			return 1;
+		});
+		when(blobRepository.removeReference(anyString())).thenAnswer(invocation ->
+				refCounts.computeIfPresent(invocation.getArgument(0), (hash, count) -> count - 1) == null ? 0 : 1);
+		when(blobRepository.deleteUnreferenced(anyString())).thenAnswer(invocation ->
+				refCounts.remove(invocation.getArgument(0), 0) ? 1 : 0);
+
+		pendingObjectRepository = mock(PendingObjectRepository.class);
+		when(pendingObjectRepository.deleteByObjectKey(anyString()))
+				.thenAnswer(invocation -> pending.remove(invocation.<String>getArgument(0)) ? 1 : 0);
+		pendingObjectService = mock(PendingObjectService.class);
+		when(pendingObjectService.registerBlob(anyString())).thenAnswer(invocation -> {
+			String objectKey = invocation.getArgument(0);
+			if (claimed.contains(objectKey)) {
+				return false;
+			}
+			pending.add(objectKey);
+			return true;
+		});
+		objectDeletionService = mock(ObjectDeletionService.class);
+		doAnswer(invocation -> queued.add(invocation.getArgument(0))).when(objectDeletionService)
+				.enqueue(anyString());
+		noteStorage = mock(NoteStorage.class);
+		when(noteStorage.updateFile(any(InputStream.class), anyString())).thenAnswer(invocation -> {
+			storedObjects.put(invocation.getArgument(1), invocation.<InputStream>getArgument(0).readAllBytes());
+			return invocation.getArgument(1);
+		});
+		meterRegistry = new SimpleMeterRegistry();
+
+		blobService = new BlobService();
+		ReflectionTestUtils.setField(blobService, "blobRepository", blobRepository);
+		ReflectionTestUtils.setField(blobService, "pendingObjectRepository", pendingObjectRepository);
+		ReflectionTestUtils.setField(blobService, "pendingObjectService", pendingObjectService);
+		ReflectionTestUtils.setField(blobService, "noteStorage", noteStorage);
+		ReflectionTestUtils.setField(blobService, "objectDeletionService", objectDeletionService);
+		ReflectionTestUtils.setField(blobService, "meterRegistry", meterRegistry);
+		ReflectionTestUtils.setField(blobService, "enabled", true);
+		ReflectionTestUtils.setField(blobService, "acquireWaitMillis", 2000L);
+		blobService.init();
+
+		hash = blobService.hash(new ByteArrayResource(CONTENT));
+		objectKey = BlobService.objectKeyFor(hash);
+	}
+
+	@Test
+	void hashIsSha256Hex() {
+		assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+				blobService.hash(new ByteArrayResource("abc".getBytes(StandardCharsets.UTF_8))));
+		assertEquals(hash, BlobService.hashOf(objectKey));
+	}
+
+	@Test
+	void firstUploadRegistersObjectBeforeWritingIt() {
+		assertEquals(objectKey, blobService.acquire(hash, CONTENT.length, new ByteArrayResource(CONTENT)));
+
+		assertArrayEquals(CONTENT, storedObjects.get(objectKey));
+		assertEquals(1, refCounts.get(hash));
+		// Only pending until the blob row references it
+		assertTrue(pending.isEmpty());
+		InOrder order = inOrder(pendingObjectService, noteStorage, blobRepository, pendingObjectRepository);
+		order.verify(pendingObjectService).registerBlob(objectKey);
+		order.verify(noteStorage).updateFile(any(InputStream.class), anyString());
+		order.verify(blobRepository).addReference(hash, CONTENT.length);
+		order.verify(pendingObjectRepository).deleteByObjectKey(objectKey);
+		assertEquals(1.0, meterRegistry.get("notes.blobs.writes").tag("result", "uploaded").counter().count());
+	}
+
+	@Test
+	void storedContentIsOnlyCounted() {
+		blobService.acquire(hash, CONTENT.length, new ByteArrayResource(CONTENT));
+		CountingSource again = new CountingSource();
+
+		assertEquals(objectKey, blobService.acquire(hash, CONTENT.length, again));
+
+		assertEquals(2, refCounts.get(hash));
+		assertEquals(0, again.opened.get());
+		verify(noteStorage, times(1)).updateFile(any(InputStream.class), anyString());
+		assertEquals(1.0, meterRegistry.get("notes.blobs.writes").tag("result", "deduplicated").counter().count());
+	}
+
+	@Test
+	void objectIsQueuedForDeletionWithLastReference() {
+		blobService.acquire(hash, CONTENT.length, new ByteArrayResource(CONTENT));
+		blobService.acquire(hash, CONTENT.length, new ByteArrayResource(CONTENT));
+
+		blobService.release(hash);
+		assertEquals(1, refCounts.get(hash));
+		assertTrue(queued.isEmpty());
+
+		blobService.release(hash);
+		assertFalse(refCounts.containsKey(hash));
+		assertEquals(Set.of(objectKey), queued);
+
+		// A release without a blob, e.g. retried after the row is gone, queues nothing more
+		blobService.release(hash);
+		verify(objectDeletionService, times(1)).enqueue(objectKey);
+	}
+
+	@Test
+	void reacquireWaitsForDeletionInProgress() throws Exception {
+		blobService.acquire(hash, CONTENT.length, new ByteArrayResource(CONTENT));
+		blobService.release(hash);
+		// A deletion worker claimed the queued object and is deleting it
+		claimed.add(objectKey);
+		Thread worker = Thread.ofVirtual().start(() -> {
+			try {
+				Thread.sleep(300);
+			} catch (InterruptedException e) {
+				return;
+			}
+			storedObjects.remove(objectKey);
+			queued.remove(objectKey);
+			claimed.remove(objectKey);
+		});
+
+		assertEquals(objectKey, blobService.acquire(hash, CONTENT.length, new ByteArrayResource(CONTENT)));
+		worker.join();
+
+		// Uploaded again after the delete, not before it
+		assertArrayEquals(CONTENT, storedObjects.get(objectKey));
+		assertEquals(1, refCounts.get(hash));
+		verify(pendingObjectService, atLeast(3)).registerBlob(objectKey);
+	}
+
+	@Test
+	void reacquireFailsWhenDeletionOutlastsWait() {
+		ReflectionTestUtils.setField(blobService, "acquireWaitMillis", 250L);
+		blobService.acquire(hash, CONTENT.length, new ByteArrayResource(CONTENT));
+		blobService.release(hash);
+		claimed.add(objectKey);
+
+		long start = System.nanoTime();
+		assertThrows(BlobService.BlobBusyException.class,
+				() -> blobService.acquire(hash, CONTENT.length, new ByteArrayResource(CONTENT)));
+
+		assertTrue(System.nanoTime() - start < 2_000_000_000L);
+		assertFalse(refCounts.containsKey(hash));
+		verify(noteStorage, times(1)).updateFile(any(InputStream.class), anyString());
+		verify(blobRepository, times(1)).addReference(anyString(), anyLong());
+	}
+
+	/**
+	 * Content that counts how often it is opened
+	 */
+	private static final class CountingSource implements InputStreamSource {
+		private final AtomicInteger opened = new AtomicInteger();
+
+		@Override
+		public InputStream getInputStream() {
+			opened.incrementAndGet();
+			return new ByteArrayInputStream(CONTENT);
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,143 @@
+package dev.jgrove2.notes_backend.Services;
+
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalNoteStorageTests {
+
+	@TempDir
+	private Path root;
+
+	private LocalNoteStorage storage;
+
+	@BeforeEach
+	void setUp() {
+		storage = new LocalNoteStorage();
+		ReflectionTestUtils.setField(storage, "observationRegistry", ObservationRegistry.NOOP);
+		ReflectionTestUtils.setField(storage, "root", root);
+		ReflectionTestUtils.setField(storage, "fsync", true);
+	}
+
+	@Test
+	void filesAreShardedByHashOfObjectKey() throws Exception {
+		String objectKey = storage.uploadFile(stream("<p>a</p>"), "../folder/a.html", 7L);
+
+		assertEquals("users/7/notes/../folder/a.html", objectKey);
+		String hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+				.digest(objectKey.getBytes(StandardCharsets.UTF_8)));
+		Path expected = root.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+		assertEquals(expected, storage.pathFor(objectKey));
+		assertEquals("<p>a</p>", Files.readString(expected));
+		assertEquals(List.of(expected), filesUnderRoot());
+	}
+
+	@Test
+	void updateReplacesContentWithoutLeavingTemporaryFiles() throws Exception {
+		String objectKey = storage.uploadFile(stream("<p>old content</p>"), "a.html", 7L);
+
+		assertEquals(objectKey, storage.updateFile(stream("<p>new</p>"), objectKey));
+
+		assertEquals("<p>new</p>", read(objectKey));
+		assertEquals(10L, storage.getFileSize(objectKey));
+		assertEquals(1, filesUnderRoot().size());
+	}
+
+	@Test
+	void deleteRemovesFileAndIgnoresMissingOnes() {
+		String objectKey = storage.uploadFile(stream("<p>a</p>"), "a.html", 7L);
+
+		storage.deleteFile(objectKey);
+		storage.deleteFile(objectKey);
+
+		assertFalse(storage.fileExists(objectKey));
+		assertThrows(RuntimeException.class, () -> storage.getFileSize(objectKey));
+		assertThrows(RuntimeException.class, () -> storage.getFile(objectKey));
+	}
+
+	@Test
+	void transferToCopiesWholeFile() throws Exception {
+		byte[] content = new byte[3 * 1024 * 1024 + 17];
+		new Random(1).nextBytes(content);
+		String objectKey = storage.uploadFile(new ByteArrayInputStream(content), "big.bin", 7L);
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		storage.transferTo(objectKey, output);
+
+		assertArrayEquals(content, output.toByteArray());
+	}
+
+	@Test
+	void multipartPartsAreJoinedInOrderAndRemoved() throws Exception {
+		String objectKey = "users/7/notes/big.html.upload-1";
+		assertNull(storage.startMultipartUpload(objectKey));
+
+		// Out of order, and part 2 stored twice
+		assertNull(storage.uploadPart(objectKey, null, 3, bytes("three")));
+		storage.uploadPart(objectKey, null, 2, bytes("stale"));
+		storage.uploadPart(objectKey, null, 1, bytes("one-"));
+		storage.uploadPart(objectKey, null, 2, bytes("two-"));
+		storage.completeMultipartUpload(objectKey, null, List.of("", "", ""));
+
+		assertEquals("one-two-three", read(objectKey));
+		for (int partNumber = 1; partNumber <= 3; partNumber++) {
+			assertFalse(storage.fileExists(NoteStorage.partObjectKey(objectKey, partNumber)));
+		}
+		assertEquals(1, filesUnderRoot().size());
+	}
+
+	@Test
+	void abortedMultipartUploadLeavesNothing() {
+		String objectKey = "users/7/notes/big.html.upload-2";
+		storage.uploadPart(objectKey, null, 1, bytes("one"));
+		storage.uploadPart(objectKey, null, 2, bytes("two"));
+
+		storage.abortMultipartUpload(objectKey, null, 2);
+
+		assertTrue(filesUnderRoot().isEmpty());
+		assertFalse(storage.fileExists(objectKey));
+	}
+
+	private String read(String objectKey) throws Exception {
+		try (InputStream inputStream = storage.getFile(objectKey)) {
+			return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	private List<Path> filesUnderRoot() {
+		try (Stream<Path> paths = Files.walk(root)) {
+			return paths.filter(Files::isRegularFile).toList();
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static InputStream stream(String content) {
+		return new ByteArrayInputStream(bytes(content));
+	}
+
+	private static byte[] bytes(String content) {
+		return content.getBytes(StandardCharsets.UTF_8);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,167 @@
+package dev.jgrove2.notes_backend.Services;
+
+import dev.jgrove2.notes_backend.Models.NoteEvent;
+import dev.jgrove2.notes_backend.Repositories.NoteEventRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class NoteEventServiceTests {
+
+	/**
+	 * Records the events sent to it as text, in the SSE wire format
+	 */
+	private static final class RecordingEmitter extends SseEmitter {
+		private final BlockingQueue<String> sent = new LinkedBlockingQueue<>();
+		private volatile boolean broken;
+
+		@Override
+		public void send(SseEventBuilder builder) throws IOException {
+			if (broken) {
+				throw new IOException("Broken pipe");
+			}
+			StringBuilder text = new StringBuilder();
+			for (DataWithMediaType data : builder.build()) {
+				text.append(data.getData());
+			}
+			sent.add(text.toString());
+		}
+
+		String next() throws InterruptedException {
+			return sent.poll(5, TimeUnit.SECONDS);
+		}
+	}
+
+	private NoteEventRepository noteEventRepository;
+	private SimpleMeterRegistry meterRegistry;
+	private List<RecordingEmitter> emitters;
+	private NoteEventService noteEventService;
+
+	@BeforeEach
+	void setUp() {
+		noteEventRepository = mock(NoteEventRepository.class);
+		when(noteEventRepository.findTop500ByUserIdAndIdGreaterThanOrderById(anyLong(), anyLong()))
+				.thenReturn(List.of());
+		meterRegistry = new SimpleMeterRegistry();
+		emitters = Collections.synchronizedList(new ArrayList<>());
+
+		noteEventService = new NoteEventService() {
+			@Override
+			SseEmitter newEmitter() {
+				RecordingEmitter emitter = new RecordingEmitter();
+				emitters.add(emitter);
+				return emitter;
+			}
+		};
+		ReflectionTestUtils.setField(noteEventService, "noteEventRepository", noteEventRepository);
+		ReflectionTestUtils.setField(noteEventService, "meterRegistry", meterRegistry);
+		ReflectionTestUtils.setField(noteEventService, "maxSubscriptionsPerUser", 2);
+		// Disabled only keeps the listener thread from starting; the tests stand in for it
+		ReflectionTestUtils.setField(noteEventService, "enabled", false);
+		noteEventService.start();
+	}
+
+	@AfterEach
+	void tearDown() {
+		noteEventService.stop();
+	}
+
+	@Test
+	void eventsFanOutToEveryStreamOfTheUser() throws Exception {
+		when(noteEventRepository.findLatestIdByUserId(1L)).thenReturn(10L);
+		when(noteEventRepository.findLatestIdByUserId(2L)).thenReturn(10L);
+		RecordingEmitter phone = (RecordingEmitter) noteEventService.subscribe(1L, null);
+		RecordingEmitter laptop = (RecordingEmitter) noteEventService.subscribe(1L, null);
+		RecordingEmitter otherUser = (RecordingEmitter) noteEventService.subscribe(2L, null);
+		for (RecordingEmitter emitter : List.of(phone, laptop, otherUser)) {
+			assertTrue(emitter.next().contains("event:ready"));
+		}
+
+		when(noteEventRepository.findTop500ByUserIdAndIdGreaterThanOrderById(eq(1L), eq(10L)))
+				.thenReturn(List.of(event(11L, 1L, "created", "a.html")));
+		noteEventService.deliverToUser(1L);
+
+		assertTrue(phone.next().contains("id:11"));
+		assertTrue(laptop.next().contains("id:11"));
+		assertNull(otherUser.sent.poll(200, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	void reconnectReplaysMissedEvents() throws Exception {
+		when(noteEventRepository.findOldestId()).thenReturn(1L);
+		when(noteEventRepository.findTop500ByUserIdAndIdGreaterThanOrderById(eq(1L), eq(5L)))
+				.thenReturn(List.of(event(6L, 1L, "created", "a.html"), event(7L, 1L, "updated", "a.html")));
+
+		RecordingEmitter emitter = (RecordingEmitter) noteEventService.subscribe(1L, 5L);
+
+		String ready = emitter.next();
+		assertTrue(ready.contains("id:5") && ready.contains("event:ready"), ready);
+		String created = emitter.next();
+		assertTrue(created.contains("id:6") && created.contains("event:created"), created);
+		String updated = emitter.next();
+		assertTrue(updated.contains("id:7") && updated.contains("event:updated"), updated);
+	}
+
+	@Test
+	void reconnectAfterRetentionSendsReset() throws Exception {
+		when(noteEventRepository.findOldestId()).thenReturn(100L);
+
+		RecordingEmitter emitter = (RecordingEmitter) noteEventService.subscribe(1L, 5L);
+
+		assertTrue(emitter.next().contains("event:reset"));
+		assertTrue(emitter.next().contains("event:ready"));
+	}
+
+	@Test
+	void streamsPerUserAreCapped() {
+		noteEventService.subscribe(1L, null);
+		noteEventService.subscribe(1L, null);
+
+		assertNull(noteEventService.subscribe(1L, null));
+	}
+
+	@Test
+	void heartbeatReachesEveryStreamAndDropsClosedOnes() throws Exception {
+		RecordingEmitter open = (RecordingEmitter) noteEventService.subscribe(1L, null);
+		RecordingEmitter closed = (RecordingEmitter) noteEventService.subscribe(2L, null);
+		open.next();
+		closed.next();
+		assertEquals(2.0, meterRegistry.get("notes.events.subscribers").gauge().value());
+
+		closed.broken = true;
+		noteEventService.heartbeat();
+
+		assertTrue(open.next().contains(":heartbeat"));
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (meterRegistry.get("notes.events.subscribers").gauge().value() != 1.0 && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(1.0, meterRegistry.get("notes.events.subscribers").gauge().value());
+	}
+
+	private static NoteEvent event(Long id, Long userId, String type, String fileName) {
+		NoteEvent event = new NoteEvent(userId, type, fileName);
+		event.setId(id);
+		return event;
+	}
+}
\ No newline at end of file
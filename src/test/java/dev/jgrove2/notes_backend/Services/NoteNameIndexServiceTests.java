@@ -0,0 +1,125 @@
+package dev.jgrove2.notes_backend.Services;
+
+import dev.jgrove2.notes_backend.Utils.FileNameIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class NoteNameIndexServiceTests {
+
+	private static final Long USER_ID = 1L;
+
+	private NoteService noteService;
+	private List<String> fileNames;
+	private NoteNameIndexService noteNameIndexService;
+
+	@BeforeEach
+	void setUp() {
+		fileNames = new ArrayList<>();
+		for (int i = 0; i < 300; i++) {
+			fileNames.add("daily/journal-" + i + ".html");
+		}
+		fileNames.add("keep/journal-index.html");
+		noteService = mock(NoteService.class);
+		when(noteService.getFileNamesByUserId(USER_ID)).thenReturn(fileNames);
+
+		noteNameIndexService = new NoteNameIndexService();
+		ReflectionTestUtils.setField(noteNameIndexService, "noteService", noteService);
+		ReflectionTestUtils.setField(noteNameIndexService, "maxUsers", 10);
+		ReflectionTestUtils.setField(noteNameIndexService, "refreshMillis", 300000L);
+	}
+
+	@Test
+	void changesUpdateTheLoadedIndex() {
+		assertEquals(1, find("journal index").size());
+
+		noteNameIndexService.noteCreated(USER_ID, "work/standup.html");
+		noteNameIndexService.noteRenamed(USER_ID, "keep/journal-index.html", "keep/diary-index.html");
+		noteNameIndexService.noteDeleted(USER_ID, "daily/journal-7.html");
+
+		assertEquals(List.of("work/standup.html"), find("standup"));
+		assertEquals(List.of("keep/diary-index.html"), find("diary"));
+		assertEquals(List.of(), find("journal index"));
+		assertFalse(find("journal 7").contains("daily/journal-7.html"));
+		assertEquals(10, find("journal 7").size());
+		// Loaded once, then kept up to date
+		verify(noteService, times(1)).getFileNamesByUserId(USER_ID);
+	}
+
+	@Test
+	void indexIsReloadedAfterRefreshInterval() {
+		ReflectionTestUtils.setField(noteNameIndexService, "refreshMillis", 0L);
+		find("journal");
+		fileNames.add("work/standup.html");
+
+		assertEquals(List.of("work/standup.html"), find("standup"));
+		verify(noteService, times(2)).getFileNamesByUserId(USER_ID);
+	}
+
+	@Test
+	void readsDuringDeletesAndRebuildSeeConsistentIndex() throws Exception {
+		find("journal");
+		int readers = 4;
+		ExecutorService executor = Executors.newFixedThreadPool(readers + 1);
+		CountDownLatch started = new CountDownLatch(readers);
+		AtomicBoolean writing = new AtomicBoolean(true);
+		List<String> problems = new CopyOnWriteArrayList<>();
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int r = 0; r < readers; r++) {
+				futures.add(executor.submit(() -> {
+					started.countDown();
+					while (writing.get()) {
+						List<String> found = find("journal index");
+						if (!found.equals(List.of("keep/journal-index.html"))) {
+							problems.add(found.toString());
+						}
+						for (String fileName : find("journal")) {
+							if (!fileName.contains("journal")) {
+								problems.add(fileName);
+							}
+						}
+					}
+				}));
+			}
+			started.await(5, TimeUnit.SECONDS);
+			// Well past the point where removed names make up most of the index and it is rebuilt
+			for (int i = 0; i < 250; i++) {
+				noteNameIndexService.noteDeleted(USER_ID, "daily/journal-" + i + ".html");
+			}
+			writing.set(false);
+			for (Future<?> future : futures) {
+				future.get(10, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertEquals(List.of(), problems);
+		List<FileNameIndex.Match> remaining = noteNameIndexService.find(USER_ID, "journal", 1000);
+		assertEquals(51, remaining.size());
+		assertTrue(remaining.stream().noneMatch(match -> match.fileName().equals("daily/journal-0.html")));
+	}
+
+	private List<String> find(String query) {
+		return noteNameIndexService.find(USER_ID, query, 1000).stream().map(FileNameIndex.Match::fileName).toList();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,124 @@
+package dev.jgrove2.notes_backend.Services;
+
+import dev.jgrove2.notes_backend.Models.Note;
+import dev.jgrove2.notes_backend.Repositories.NoteRepository;
+import dev.jgrove2.notes_backend.Repositories.NoteSearchDocumentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class NoteSearchServiceTests {
+
+	private NoteSearchDocumentRepository noteSearchDocumentRepository;
+	private NoteRepository noteRepository;
+	private NoteStorage noteStorage;
+	private NoteSearchService noteSearchService;
+
+	@BeforeEach
+	void setUp() {
+		noteSearchDocumentRepository = mock(NoteSearchDocumentRepository.class);
+		noteRepository = mock(NoteRepository.class);
+		noteStorage = mock(NoteStorage.class);
+
+		noteSearchService = new NoteSearchService();
+		ReflectionTestUtils.setField(noteSearchService, "noteSearchDocumentRepository", noteSearchDocumentRepository);
+		ReflectionTestUtils.setField(noteSearchService, "noteRepository", noteRepository);
+		ReflectionTestUtils.setField(noteSearchService, "noteStorage", noteStorage);
+		ReflectionTestUtils.setField(noteSearchService, "enabled", true);
+		ReflectionTestUtils.setField(noteSearchService, "backfillRetryBaseMillis", 60000L);
+		ReflectionTestUtils.setField(noteSearchService, "backfillRetryMaxMillis", 86400000L);
+	}
+
+	@Test
+	void backfillIndexesReadableNotesAndRecordsFailures() throws Exception {
+		when(noteSearchDocumentRepository.findUnindexedNoteIds(eq(0L), any(LocalDateTime.class), anyInt()))
+				.thenReturn(List.of(1L, 2L, 3L));
+		note(1L, "users/1/notes/a.html");
+		note(2L, "users/1/notes/missing.html");
+		note(3L, "users/1/notes/c.html");
+		when(noteStorage.getFile("users/1/notes/a.html")).thenReturn(stream("<p>first</p>"));
+		when(noteStorage.getFile("users/1/notes/missing.html")).thenThrow(new RuntimeException("Not found"));
+		when(noteStorage.getFile("users/1/notes/c.html")).thenReturn(stream("<p>third</p>"));
+
+		noteSearchService.backfill();
+
+		verify(noteSearchDocumentRepository).insertIfAbsent(1L, "first");
+		verify(noteSearchDocumentRepository).insertIfAbsent(3L, "third");
+		verify(noteSearchDocumentRepository).recordFailure(eq(2L), eq("Not found"), any(LocalDateTime.class),
+				eq(60000L), eq(86400000L));
+		verify(noteSearchDocumentRepository, never()).recordFailure(eq(1L), anyString(), any(LocalDateTime.class),
+				anyLong(), anyLong());
+	}
+
+	@Test
+	void backfillResumesAfterLastNoteAndStartsOverWhenDone() {
+		when(noteSearchDocumentRepository.findUnindexedNoteIds(eq(0L), any(LocalDateTime.class), anyInt()))
+				.thenReturn(List.of(5L));
+		when(noteRepository.findById(5L)).thenReturn(Optional.empty());
+		when(noteSearchDocumentRepository.findUnindexedNoteIds(eq(5L), any(LocalDateTime.class), anyInt()))
+				.thenReturn(List.of());
+
+		noteSearchService.backfill();
+		noteSearchService.backfill();
+		noteSearchService.backfill();
+
+		verify(noteSearchDocumentRepository, times(2)).findUnindexedNoteIds(eq(0L),
+				any(LocalDateTime.class), anyInt());
+		verify(noteSearchDocumentRepository).findUnindexedNoteIds(eq(5L), any(LocalDateTime.class), anyInt());
+	}
+
+	@Test
+	void failureThatCannotBeRecordedDoesNotStopBackfill() throws Exception {
+		when(noteSearchDocumentRepository.findUnindexedNoteIds(eq(0L), any(LocalDateTime.class), anyInt()))
+				.thenReturn(List.of(1L, 2L));
+		note(1L, "users/1/notes/missing.html");
+		note(2L, "users/1/notes/b.html");
+		when(noteStorage.getFile("users/1/notes/missing.html")).thenThrow(new RuntimeException("Not found"));
+		when(noteStorage.getFile("users/1/notes/b.html")).thenReturn(stream("<p>second</p>"));
+		when(noteSearchDocumentRepository.recordFailure(anyLong(), anyString(), any(LocalDateTime.class), anyLong(),
+				anyLong())).thenThrow(new RuntimeException("database down"));
+
+		noteSearchService.backfill();
+
+		verify(noteSearchDocumentRepository).insertIfAbsent(2L, "second");
+	}
+
+	@Test
+	void extractedTextHasNoTagsOrNulCharacters() {
+		String text = NoteSearchService.extractText(
+				"<h1>Title</h1><p>a &lt;b&gt; c\u0000d</p>\u0000".getBytes(StandardCharsets.UTF_8));
+		String binary = NoteSearchService.extractText(new byte[] { 'x', 0, (byte) 0xFF, (byte) 0xC3, 'y', 0 });
+
+		assertEquals("Title a  b  c d", text);
+		assertFalse(binary.contains("\u0000"), binary);
+	}
+
+	private void note(Long id, String objectKey) {
+		Note note = new Note("note-" + id + ".html", 1L, 10L, objectKey);
+		note.setId(id);
+		when(noteRepository.findById(id)).thenReturn(Optional.of(note));
+	}
+
+	private static ByteArrayInputStream stream(String content) {
+		return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+	}
+}
\ No newline at end of file
@@ -0,0 +1,98 @@
+package dev.jgrove2.notes_backend.Services;
+
+import dev.jgrove2.notes_backend.Models.Note;
+import dev.jgrove2.notes_backend.Models.User;
+import dev.jgrove2.notes_backend.Repositories.NoteRepository;
+import dev.jgrove2.notes_backend.Repositories.PendingObjectRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class NoteServiceUploadTests {
+
+	private NoteRepository noteRepository;
+	private PendingObjectRepository pendingObjectRepository;
+	private NoteVersionService noteVersionService;
+	private NoteSearchService noteSearchService;
+	private NoteService noteService;
+	private User user;
+
+	@BeforeEach
+	void setUp() {
+		noteRepository = mock(NoteRepository.class);
+		pendingObjectRepository = mock(PendingObjectRepository.class);
+		noteVersionService = mock(NoteVersionService.class);
+		noteSearchService = mock(NoteSearchService.class);
+
+		noteService = new NoteService();
+		ReflectionTestUtils.setField(noteService, "noteRepository", noteRepository);
+		ReflectionTestUtils.setField(noteService, "pendingObjectRepository", pendingObjectRepository);
+		ReflectionTestUtils.setField(noteService, "noteVersionService", noteVersionService);
+		ReflectionTestUtils.setField(noteService, "noteSearchService", noteSearchService);
+
+		user = new User();
+		user.setUserId(7L);
+		user.setMaxStorage(1000L);
+		when(noteRepository.sumTotalSizeBytesByUserId(7L)).thenReturn(600L);
+	}
+
+	@Test
+	void unconfirmedUploadsCountAgainstQuota() {
+		when(pendingObjectRepository.sumReservedBytesByUserId(7L, "")).thenReturn(300L);
+
+		assertTrue(noteService.hasStorageCapacity(user, 0, 100));
+		assertFalse(noteService.hasStorageCapacity(user, 0, 101));
+	}
+
+	@Test
+	void confirmedUploadReplacesItsOwnReservation() {
+		// The repository leaves out the upload being confirmed
+		when(pendingObjectRepository.sumReservedBytesByUserId(7L, "uploads/a")).thenReturn(0L);
+
+		assertTrue(noteService.hasStorageCapacity(user, 0, 400, "uploads/a"));
+		assertFalse(noteService.hasStorageCapacity(user, 0, 401, "uploads/a"));
+	}
+
+	@Test
+	void uploadedContentIsRecordedOnlyWhileNotePointsAtIt() {
+		Note note = new Note();
+		note.setId(42L);
+		note.setObjectKey("uploads/b");
+		when(noteRepository.findLockedById(42L)).thenReturn(Optional.of(note));
+		ByteArrayResource content = new ByteArrayResource("<p>hi</p>".getBytes());
+
+		assertFalse(noteService.recordUploadedContent(42L, "uploads/a", content, true));
+		verify(noteVersionService, never()).recordVersion(anyLong(), any());
+		verify(noteSearchService, never()).index(anyLong(), any());
+
+		assertTrue(noteService.recordUploadedContent(42L, "uploads/b", content, true));
+		verify(noteVersionService).recordVersion(42L, content);
+		verify(noteSearchService).index(42L, content);
+	}
+
+	@Test
+	void savedContentIsOnlyIndexed() {
+		Note note = new Note();
+		note.setId(42L);
+		note.setObjectKey("blobs/ab/abc");
+		when(noteRepository.findLockedById(42L)).thenReturn(Optional.of(note));
+		ByteArrayResource content = new ByteArrayResource("<p>hi</p>".getBytes());
+
+		assertTrue(noteService.recordUploadedContent(42L, "blobs/ab/abc", content, false));
+
+		verify(noteVersionService, never()).recordVersion(anyLong(), any());
+		verify(noteSearchService).index(42L, content);
+	}
+}
\ No newline at end of file
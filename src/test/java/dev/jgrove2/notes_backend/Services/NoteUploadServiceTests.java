@@ -0,0 +1,200 @@
+package dev.jgrove2.notes_backend.Services;
+
+import dev.jgrove2.notes_backend.Models.NoteUpload;
+import dev.jgrove2.notes_backend.Models.NoteUploadPart;
+import dev.jgrove2.notes_backend.Repositories.NoteUploadPartRepository;
+import dev.jgrove2.notes_backend.Repositories.NoteUploadRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class NoteUploadServiceTests {
+
+	private static final long PART_SIZE = 5L * 1024 * 1024;
+
+	private NoteUploadRepository noteUploadRepository;
+	private NoteUploadPartRepository noteUploadPartRepository;
+	private NoteStorage noteStorage;
+	private PendingObjectService pendingObjectService;
+	private NoteUploadService noteUploadService;
+
+	@BeforeEach
+	void setUp() {
+		noteUploadRepository = mock(NoteUploadRepository.class);
+		noteUploadPartRepository = mock(NoteUploadPartRepository.class);
+		noteStorage = mock(NoteStorage.class);
+		pendingObjectService = mock(PendingObjectService.class);
+		when(noteUploadRepository.save(any(NoteUpload.class))).thenAnswer(invocation -> invocation.getArgument(0));
+		when(noteStorage.startMultipartUpload(anyString())).thenReturn("mpu-1");
+
+		noteUploadService = new NoteUploadService();
+		ReflectionTestUtils.setField(noteUploadService, "noteUploadRepository", noteUploadRepository);
+		ReflectionTestUtils.setField(noteUploadService, "noteUploadPartRepository", noteUploadPartRepository);
+		ReflectionTestUtils.setField(noteUploadService, "noteStorage", noteStorage);
+		ReflectionTestUtils.setField(noteUploadService, "pendingObjectService", pendingObjectService);
+		ReflectionTestUtils.setField(noteUploadService, "partSizeBytes", PART_SIZE);
+		ReflectionTestUtils.setField(noteUploadService, "expiryHours", 24);
+		ReflectionTestUtils.setField(noteUploadService, "expiryRetryBaseMillis", 60000L);
+		ReflectionTestUtils.setField(noteUploadService, "expiryRetryMaxMillis", 86400000L);
+		noteUploadService.checkPartSize();
+	}
+
+	@Test
+	void partSizeBelowMultipartMinimumIsRejected() {
+		ReflectionTestUtils.setField(noteUploadService, "partSizeBytes", PART_SIZE - 1);
+
+		assertThrows(IllegalStateException.class, noteUploadService::checkPartSize);
+	}
+
+	@Test
+	void startSplitsFileIntoParts() {
+		NoteUpload upload = noteUploadService.start(7L, "big.html", 2 * PART_SIZE + 10);
+
+		assertEquals(3, upload.getPartCount());
+		assertEquals(PART_SIZE, upload.getPartSize(1));
+		assertEquals(10, upload.getPartSize(3));
+		assertEquals("mpu-1", upload.getMultipartUploadId());
+		verify(noteStorage).startMultipartUpload(upload.getObjectKey());
+	}
+
+	@Test
+	void partsMustHaveExactSize() throws Exception {
+		NoteUpload upload = noteUploadService.start(7L, "big.html", PART_SIZE + 10);
+		when(noteStorage.uploadPart(anyString(), anyString(), anyInt(), any(byte[].class))).thenReturn("etag");
+
+		assertThrows(IllegalArgumentException.class,
+				() -> noteUploadService.uploadPart(upload, 2, new ByteArrayInputStream(new byte[11])));
+		assertThrows(IllegalArgumentException.class,
+				() -> noteUploadService.uploadPart(upload, 1, new ByteArrayInputStream(new byte[10])));
+		assertThrows(IllegalArgumentException.class,
+				() -> noteUploadService.uploadPart(upload, 3, new ByteArrayInputStream(new byte[10])));
+
+		assertEquals(10, noteUploadService.uploadPart(upload, 2, new ByteArrayInputStream(new byte[10])));
+		verify(noteUploadPartRepository).upsert(upload.getId(), 2, 10L, "etag");
+	}
+
+	@Test
+	void completeJoinsPartsInOrderAndKeepsUpload() {
+		NoteUpload upload = noteUploadService.start(7L, "big.html", PART_SIZE + 10);
+		when(noteUploadPartRepository.findByUploadIdOrderByPartNumber(upload.getId()))
+				.thenReturn(List.of(part(upload, 1, "etag-1"), part(upload, 2, "etag-2")));
+
+		assertEquals(List.of(), noteUploadService.getMissingParts(upload));
+		noteUploadService.complete(upload);
+
+		verify(noteStorage).completeMultipartUpload(upload.getObjectKey(), "mpu-1", List.of("etag-1", "etag-2"));
+		verify(noteUploadRepository).markCompleted(eq(upload.getId()), any(LocalDateTime.class));
+		assertNotNull(upload.getCompletedAt());
+		verify(noteUploadRepository, never()).deleteById(anyString());
+		assertThrows(IllegalArgumentException.class,
+				() -> noteUploadService.uploadPart(upload, 1, new ByteArrayInputStream(new byte[0])));
+	}
+
+	@Test
+	void missingPartsAreListed() {
+		NoteUpload upload = noteUploadService.start(7L, "big.html", 2 * PART_SIZE + 10);
+		when(noteUploadPartRepository.findByUploadIdOrderByPartNumber(upload.getId()))
+				.thenReturn(List.of(part(upload, 2, "etag-2")));
+
+		assertEquals(List.of(1, 3), noteUploadService.getMissingParts(upload));
+	}
+
+	@Test
+	void abortCancelsMultipartUpload() {
+		NoteUpload upload = noteUploadService.start(7L, "big.html", PART_SIZE + 10);
+
+		noteUploadService.abort(upload);
+
+		verify(noteStorage).abortMultipartUpload(upload.getObjectKey(), "mpu-1", 2);
+		verify(noteUploadPartRepository).deleteByUploadId(upload.getId());
+		verify(noteUploadRepository).deleteById(upload.getId());
+		verify(pendingObjectService, never()).queueDeletionIfUnreferenced(anyString(), eq(true));
+	}
+
+	@Test
+	void abortAfterCompleteQueuesJoinedObjectForDeletion() {
+		NoteUpload upload = noteUploadService.start(7L, "big.html", PART_SIZE + 10);
+		upload.setCompletedAt(LocalDateTime.now());
+
+		noteUploadService.abort(upload);
+
+		verify(noteStorage, never()).abortMultipartUpload(anyString(), anyString(), anyInt());
+		InOrder order = inOrder(pendingObjectService, noteUploadRepository);
+		order.verify(pendingObjectService).register(upload.getObjectKey());
+		order.verify(noteUploadRepository).deleteById(upload.getId());
+		order.verify(pendingObjectService).queueDeletionIfUnreferenced(upload.getObjectKey(), true);
+	}
+
+	@Test
+	void expirySweepContinuesPastFailuresAndBacksThemOff() {
+		List<NoteUpload> uploads = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			uploads.add(noteUploadService.start(7L, "big-" + i + ".html", 10));
+		}
+		when(noteUploadRepository.findExpired(any(LocalDateTime.class), any(LocalDateTime.class), any(Pageable.class)))
+				.thenReturn(uploads);
+		doThrow(new RuntimeException("storage down")).when(noteStorage)
+				.abortMultipartUpload(eq(uploads.get(1).getObjectKey()), anyString(), anyInt());
+
+		noteUploadService.expireAbandoned();
+
+		verify(noteUploadRepository).deleteById(uploads.get(0).getId());
+		verify(noteUploadRepository, never()).deleteById(uploads.get(1).getId());
+		verify(noteUploadRepository).deleteById(uploads.get(2).getId());
+		verify(noteUploadRepository).recordExpiryFailure(eq(uploads.get(1).getId()), eq("storage down"),
+				any(LocalDateTime.class), eq(60000L), eq(86400000L));
+	}
+
+	@Test
+	void expirySweepStopsWhenWholeBatchFails() {
+		List<NoteUpload> uploads = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			uploads.add(noteUploadService.start(7L, "big-" + i + ".html", 10));
+		}
+		// Failures not recorded would be found again and again
+		when(noteUploadRepository.findExpired(any(LocalDateTime.class), any(LocalDateTime.class), any(Pageable.class)))
+				.thenReturn(uploads);
+		doThrow(new RuntimeException("storage down")).when(noteStorage)
+				.abortMultipartUpload(anyString(), anyString(), anyInt());
+		when(noteUploadRepository.recordExpiryFailure(anyString(), anyString(), any(LocalDateTime.class), anyLong(),
+				anyLong())).thenThrow(new RuntimeException("database down"));
+
+		noteUploadService.expireAbandoned();
+
+		verify(noteUploadRepository, never()).deleteById(anyString());
+		verify(noteUploadRepository, times(1)).findExpired(any(LocalDateTime.class), any(LocalDateTime.class),
+				any(Pageable.class));
+	}
+
+	private static NoteUploadPart part(NoteUpload upload, int partNumber, String etag) {
+		NoteUploadPart part = new NoteUploadPart();
+		part.setUploadId(upload.getId());
+		part.setPartNumber(partNumber);
+		part.setSizeBytes(upload.getPartSize(partNumber));
+		part.setEtag(etag);
+		return part;
+	}
+}
\ No newline at end of file
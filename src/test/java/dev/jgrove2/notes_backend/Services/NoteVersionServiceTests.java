@@ -0,0 +1,265 @@
+package dev.jgrove2.notes_backend.Services;
+
+import dev.jgrove2.notes_backend.Models.Note;
+import dev.jgrove2.notes_backend.Models.NoteChunk;
+import dev.jgrove2.notes_backend.Models.NoteVersion;
+import dev.jgrove2.notes_backend.Repositories.NoteChunkRepository;
+import dev.jgrove2.notes_backend.Repositories.NoteRepository;
+import dev.jgrove2.notes_backend.Repositories.NoteVersionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class NoteVersionServiceTests {
+
+	private static final Long NOTE_ID = 1L;
+
+	/** Chunk hash to reference count, standing in for note_chunks */
+	private Map<String, Integer> refCounts;
+	private Map<String, NoteChunk> chunks;
+	private List<NoteVersion> versions;
+	/** Chunk hashes in the order they were inserted */
+	private List<String> inserted;
+	private NoteVersionService noteVersionService;
+
+	@BeforeEach
+	void setUp() {
+		refCounts = new HashMap<>();
+		chunks = new HashMap<>();
+		versions = new ArrayList<>();
+		inserted = new ArrayList<>();
+		NoteVersionRepository noteVersionRepository = mock(NoteVersionRepository.class);
+		NoteChunkRepository noteChunkRepository = mock(NoteChunkRepository.class);
+		NoteRepository noteRepository = mock(NoteRepository.class);
+		when(noteRepository.findLockedById(NOTE_ID)).thenReturn(Optional.of(new Note()));
+
+		AtomicLong ids = new AtomicLong();
+		when(noteVersionRepository.save(any(NoteVersion.class))).thenAnswer(invocation -> {
+			NoteVersion version = invocation.getArgument(0);
+			version.setId(ids.incrementAndGet());
+			version.setCreatedAt(LocalDateTime.now());
+			versions.add(version);
+			return version;
+		});
+		when(noteVersionRepository.findByNoteIdOrderByVersionDesc(anyLong())).thenAnswer(invocation -> versions.stream()
+				.sorted(Comparator.comparing(NoteVersion::getVersion).reversed()).toList());
+		when(noteVersionRepository.findFirstByNoteIdOrderByVersionDesc(anyLong())).thenAnswer(invocation -> versions
+				.stream().max(Comparator.comparing(NoteVersion::getVersion)));
+		doAnswer(invocation -> {
+			versions.removeAll(invocation.<Collection<NoteVersion>>getArgument(0));
+			return null;
+		}).when(noteVersionRepository).deleteAllInBatch(anyCollection());
+
+		when(noteChunkRepository.lockExisting(anyCollection())).thenAnswer(invocation -> invocation
+				.<Collection<String>>getArgument(0).stream().filter(refCounts::containsKey).sorted().toList());
+		when(noteChunkRepository.addReferences(anyCollection())).thenAnswer(invocation -> {
+			invocation.<Collection<String>>getArgument(0).forEach(hash -> refCounts.merge(hash, 1, Integer::sum));
+			return 0;
+		});
+		doAnswer(invocation -> {
+			NoteChunk chunk = new NoteChunk();
+			chunk.setHash(invocation.getArgument(0));
+			chunk.setSizeBytes(invocation.getArgument(1));
+			chunk.setData(invocation.getArgument(2));
+			chunks.putIfAbsent(chunk.getHash(), chunk);
+			inserted.add(chunk.getHash());
+			refCounts.merge(chunk.getHash(), 1, Integer::sum);
+			return null;
+		}).when(noteChunkRepository).insertOrAddReference(anyString(), anyInt(), any(byte[].class));
+		when(noteChunkRepository.findAllById(anyCollection())).thenAnswer(invocation -> invocation
+				.<Collection<String>>getArgument(0).stream().filter(refCounts::containsKey).map(chunks::get).toList());
+		when(noteVersionRepository.findByNoteIdAndVersion(anyLong(), anyInt())).thenAnswer(invocation -> versions
+				.stream().filter(version -> version.getVersion().equals(invocation.getArgument(1))).findFirst());
+		when(noteChunkRepository.removeReferences(anyCollection())).thenAnswer(invocation -> {
+			invocation.<Collection<String>>getArgument(0).forEach(hash -> refCounts.merge(hash, -1, Integer::sum));
+			return 0;
+		});
+		when(noteChunkRepository.deleteUnreferenced(anyCollection())).thenAnswer(invocation -> {
+			Collection<String> hashes = invocation.getArgument(0);
+			return (int) hashes.stream().filter(hash -> refCounts.remove(hash, 0)).count();
+		});
+
+		noteVersionService = new NoteVersionService();
+		ReflectionTestUtils.setField(noteVersionService, "noteVersionRepository", noteVersionRepository);
+		ReflectionTestUtils.setField(noteVersionService, "noteChunkRepository", noteChunkRepository);
+		ReflectionTestUtils.setField(noteVersionService, "noteRepository", noteRepository);
+		ReflectionTestUtils.setField(noteVersionService, "enabled", true);
+		ReflectionTestUtils.setField(noteVersionService, "maxPerNote", 3);
+		ReflectionTestUtils.setField(noteVersionService, "maxAgeDays", 90);
+	}
+
+	@Test
+	void chunksSharedBetweenVersionsAreStoredOnceAndCounted() {
+		byte[] original = text(100_000);
+		record(original);
+		int chunks = refCounts.size();
+		assertTrue(refCounts.values().stream().allMatch(count -> count == 1));
+
+		record(append(original, "<p>one more line</p>"));
+
+		// Only the last chunk changed; every other chunk now has a reference per version
+		assertTrue(refCounts.size() <= chunks + 2, refCounts.size() + " chunks");
+		assertTrue(refCounts.values().stream().filter(count -> count == 2).count() >= chunks - 2);
+	}
+
+	@Test
+	void unchangedContentIsNotANewVersion() {
+		byte[] content = text(10_000);
+		record(content);
+
+		assertEquals(1, record(content).orElseThrow().getVersion());
+		assertEquals(1, versions.size());
+		assertTrue(refCounts.values().stream().allMatch(count -> count == 1));
+	}
+
+	@Test
+	void repeatedChunkWithinVersionIsOneReference() {
+		byte[] block = text(600);
+		byte[] content = new byte[600 * 40];
+		for (int i = 0; i < 40; i++) {
+			System.arraycopy(block, 0, content, i * 600, 600);
+		}
+
+		record(content);
+		noteVersionService.deleteVersions(NOTE_ID);
+
+		assertEquals(Map.of(), refCounts);
+	}
+
+	@Test
+	void versionsOverCountArePrunedWithTheirChunks() {
+		byte[] content = text(20_000);
+		byte[] third = null;
+		for (int i = 1; i <= 5; i++) {
+			content = append(content, "<p>edit " + i + "</p>");
+			record(content);
+			if (i == 3) {
+				third = content;
+			}
+		}
+
+		assertEquals(List.of(5, 4, 3), versions.stream().map(NoteVersion::getVersion).sorted(Comparator.reverseOrder())
+				.toList());
+		assertReferencesMatchVersions();
+		assertArrayEquals(content, noteVersionService.getVersionContent(NOTE_ID, 5).orElseThrow());
+		assertArrayEquals(third, noteVersionService.getVersionContent(NOTE_ID, 3).orElseThrow());
+	}
+
+	@Test
+	void expiredVersionsArePruned() {
+		record(text(5_000));
+		record(append(text(5_000), "second"));
+		versions.forEach(version -> version.setCreatedAt(LocalDateTime.now().minusDays(100)));
+
+		record(append(text(5_000), "third"));
+
+		assertEquals(List.of(3), versions.stream().map(NoteVersion::getVersion).toList());
+		assertReferencesMatchVersions();
+	}
+
+	@Test
+	void newChunksOfLargeContentAreInsertedInHashOrderOverSeveralReads() {
+		// More new chunk data than one read collects
+		byte[] content = text(12 * 1024 * 1024);
+		AtomicInteger opened = new AtomicInteger();
+		InputStreamSource source = () -> {
+			opened.incrementAndGet();
+			return new ByteArrayInputStream(content);
+		};
+
+		noteVersionService.recordVersion(NOTE_ID, source);
+
+		// Once to hash the chunks, then once per run of new chunks
+		assertEquals(3, opened.get());
+		assertEquals(inserted.stream().sorted().toList(), inserted);
+		assertEquals(refCounts.size(), inserted.size());
+		assertEquals((long) content.length, versions.get(0).getSizeBytes());
+		assertArrayEquals(content, noteVersionService.getVersionContent(NOTE_ID, 1).orElseThrow());
+	}
+
+	@Test
+	void unchangedContentIsReadOnce() {
+		byte[] content = text(10_000);
+		record(content);
+		AtomicInteger opened = new AtomicInteger();
+
+		noteVersionService.recordVersion(NOTE_ID, () -> {
+			opened.incrementAndGet();
+			return new ByteArrayInputStream(content);
+		});
+
+		assertEquals(1, opened.get());
+		assertEquals(1, versions.size());
+	}
+
+	@Test
+	void deletingVersionsReleasesEveryChunk() {
+		record(text(30_000));
+		record(append(text(30_000), "more"));
+
+		noteVersionService.deleteVersions(NOTE_ID);
+
+		assertEquals(List.of(), versions);
+		assertEquals(Map.of(), refCounts);
+	}
+
+	private Optional<NoteVersion> record(byte[] content) {
+		return noteVersionService.recordVersion(NOTE_ID, new ByteArrayResource(content));
+	}
+
+	/**
+	 * Each stored chunk is referenced once by every remaining version containing it
+	 */
+	private void assertReferencesMatchVersions() {
+		Map<String, Integer> expected = new HashMap<>();
+		for (NoteVersion version : versions) {
+			version.getChunkHashList().stream().distinct().forEach(hash -> expected.merge(hash, 1, Integer::sum));
+		}
+		assertEquals(expected, refCounts);
+	}
+
+	private static byte[] text(int length) {
+		Random random = new Random(length);
+		StringBuilder text = new StringBuilder(length + 16);
+		while (text.length() < length) {
+			text.append("<p>line ").append(random.nextInt(100_000)).append("</p>\n");
+		}
+		return text.substring(0, length).getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] append(byte[] content, String added) {
+		byte[] addedBytes = added.getBytes(StandardCharsets.UTF_8);
+		byte[] result = new byte[content.length + addedBytes.length];
+		System.arraycopy(content, 0, result, 0, content.length);
+		System.arraycopy(addedBytes, 0, result, content.length, addedBytes.length);
+		return result;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,120 @@
+package dev.jgrove2.notes_backend.Services;
+
+import dev.jgrove2.notes_backend.Repositories.ObjectDeletionRepository;
+import dev.jgrove2.notes_backend.Services.PendingObjectService.ClaimedDeletions;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ObjectDeletionServiceTests {
+
+	private ObjectDeletionRepository objectDeletionRepository;
+	private PendingObjectService pendingObjectService;
+	private NoteStorage noteStorage;
+	private SimpleMeterRegistry meterRegistry;
+	private ObjectDeletionService objectDeletionService;
+
+	@BeforeEach
+	void setUp() {
+		objectDeletionRepository = mock(ObjectDeletionRepository.class);
+		pendingObjectService = mock(PendingObjectService.class);
+		noteStorage = mock(NoteStorage.class);
+		meterRegistry = new SimpleMeterRegistry();
+		when(objectDeletionRepository.findOldestEnqueuedAt()).thenReturn(Optional.empty());
+		when(noteStorage.deleteFiles(anyList())).thenReturn(Map.of());
+
+		objectDeletionService = new ObjectDeletionService();
+		ReflectionTestUtils.setField(objectDeletionService, "objectDeletionRepository", objectDeletionRepository);
+		ReflectionTestUtils.setField(objectDeletionService, "pendingObjectService", pendingObjectService);
+		ReflectionTestUtils.setField(objectDeletionService, "noteStorage", noteStorage);
+		ReflectionTestUtils.setField(objectDeletionService, "meterRegistry", meterRegistry);
+		ReflectionTestUtils.setField(objectDeletionService, "retryBaseMillis", 1000L);
+		ReflectionTestUtils.setField(objectDeletionService, "retryMaxMillis", 300000L);
+		ReflectionTestUtils.setField(objectDeletionService, "leaseMillis", 60000L);
+		objectDeletionService.init();
+	}
+
+	@Test
+	void partialDeleteFailureRetriesOnlyFailedKeys() {
+		when(pendingObjectService.claimDeletions(anyInt(), any(LocalDateTime.class), any(LocalDateTime.class)))
+				.thenReturn(new ClaimedDeletions(List.of("users/1/a", "users/1/b", "users/1/c"), false));
+		when(noteStorage.deleteFiles(List.of("users/1/a", "users/1/b", "users/1/c")))
+				.thenReturn(Map.of("users/1/b", "AccessDenied", "users/1/c", "AccessDenied"));
+
+		objectDeletionService.drain();
+
+		ArgumentCaptor<LocalDateTime> claimedUntil = ArgumentCaptor.forClass(LocalDateTime.class);
+		verify(pendingObjectService).claimDeletions(eq(1000), any(LocalDateTime.class), claimedUntil.capture());
+		verify(objectDeletionRepository).deleteDeleted(List.of("users/1/a"), claimedUntil.getValue());
+		// One update per distinct error, fenced on the same lease
+		ArgumentCaptor<List<String>> failed = ArgumentCaptor.captor();
+		verify(objectDeletionRepository).recordFailure(failed.capture(), eq("AccessDenied"),
+				any(LocalDateTime.class), eq(claimedUntil.getValue()), eq(1000L), eq(300000L));
+		assertEquals(List.of("users/1/b", "users/1/c"), failed.getValue().stream().sorted().toList());
+		assertEquals(1.0, meterRegistry.get("notes.deletions").tag("result", "success").counter().count());
+		assertEquals(2.0, meterRegistry.get("notes.deletions").tag("result", "failure").counter().count());
+	}
+
+	@Test
+	void drainContinuesWhileBatchesAreFull() {
+		when(pendingObjectService.claimDeletions(anyInt(), any(LocalDateTime.class), any(LocalDateTime.class)))
+				.thenReturn(new ClaimedDeletions(List.of("users/1/a"), true))
+				.thenReturn(new ClaimedDeletions(List.of("users/1/b"), false));
+
+		objectDeletionService.drain();
+
+		verify(noteStorage).deleteFiles(List.of("users/1/a"));
+		verify(noteStorage).deleteFiles(List.of("users/1/b"));
+		verify(objectDeletionRepository, never()).recordFailure(anyCollection(), anyString(),
+				any(LocalDateTime.class), any(LocalDateTime.class), anyLong(), anyLong());
+		assertEquals(2.0, meterRegistry.get("notes.deletions.pending").gauge().value());
+	}
+
+	@Test
+	void fullBatchOfLockedKeysEndsRun() {
+		// Every due key's lock was held: nothing claimed, try again next run
+		when(pendingObjectService.claimDeletions(anyInt(), any(LocalDateTime.class), any(LocalDateTime.class)))
+				.thenReturn(new ClaimedDeletions(List.of(), true));
+
+		objectDeletionService.drain();
+
+		verify(pendingObjectService, times(1)).claimDeletions(anyInt(), any(LocalDateTime.class),
+				any(LocalDateTime.class));
+		verify(noteStorage, never()).deleteFiles(anyList());
+	}
+
+	@Test
+	void lagIsAgeOfOldestQueuedKey() {
+		when(pendingObjectService.claimDeletions(anyInt(), any(LocalDateTime.class), any(LocalDateTime.class)))
+				.thenThrow(new RuntimeException("Connection refused"));
+		when(objectDeletionRepository.findOldestEnqueuedAt())
+				.thenReturn(Optional.of(LocalDateTime.now().minusMinutes(5)));
+
+		// A failed run still refreshes the lag
+		objectDeletionService.drain();
+
+		double lag = meterRegistry.get("notes.deletions.lag").gauge().value();
+		assertEquals(300.0, lag, 5.0);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,153 @@
+package dev.jgrove2.notes_backend.Services;
+
+import dev.jgrove2.notes_backend.Repositories.BlobRepository;
+import dev.jgrove2.notes_backend.Repositories.NoteRepository;
+import dev.jgrove2.notes_backend.Repositories.NoteUploadRepository;
+import dev.jgrove2.notes_backend.Repositories.ObjectDeletionRepository;
+import dev.jgrove2.notes_backend.Repositories.PendingObjectRepository;
+import dev.jgrove2.notes_backend.Services.PendingObjectService.ClaimedDeletions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PendingObjectServiceTests {
+
+	private static final LocalDateTime NOW = LocalDateTime.of(2026, 1, 1, 12, 0);
+	private static final LocalDateTime CLAIMED_UNTIL = NOW.plusMinutes(1);
+
+	private static final String BLOB_KEY = BlobService.objectKeyFor(
+			"ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad");
+
+	private PendingObjectRepository pendingObjectRepository;
+	private NoteRepository noteRepository;
+	private BlobRepository blobRepository;
+	private NoteUploadRepository noteUploadRepository;
+	private ObjectDeletionRepository objectDeletionRepository;
+	private PendingObjectService pendingObjectService;
+
+	@BeforeEach
+	void setUp() {
+		pendingObjectRepository = mock(PendingObjectRepository.class);
+		noteRepository = mock(NoteRepository.class);
+		blobRepository = mock(BlobRepository.class);
+		noteUploadRepository = mock(NoteUploadRepository.class);
+		objectDeletionRepository = mock(ObjectDeletionRepository.class);
+		when(pendingObjectRepository.tryLockObjectKey(anyString())).thenReturn(true);
+
+		pendingObjectService = new PendingObjectService();
+		ReflectionTestUtils.setField(pendingObjectService, "pendingObjectRepository", pendingObjectRepository);
+		ReflectionTestUtils.setField(pendingObjectService, "noteRepository", noteRepository);
+		ReflectionTestUtils.setField(pendingObjectService, "blobRepository", blobRepository);
+		ReflectionTestUtils.setField(pendingObjectService, "noteUploadRepository", noteUploadRepository);
+		ReflectionTestUtils.setField(pendingObjectService, "objectDeletionRepository", objectDeletionRepository);
+		ReflectionTestUtils.setField(pendingObjectService, "noteStorage", mock(NoteStorage.class));
+	}
+
+	@Test
+	void claimSkipsKeysWhoseLockIsHeld() {
+		when(objectDeletionRepository.lockDueObjectKeys(NOW, 3)).thenReturn(List.of("users/1/a", BLOB_KEY,
+				"users/1/c"));
+		// A blob is being registered under this key right now
+		when(pendingObjectRepository.tryLockObjectKey(BLOB_KEY)).thenReturn(false);
+
+		ClaimedDeletions claimed = pendingObjectService.claimDeletions(3, NOW, CLAIMED_UNTIL);
+
+		assertEquals(List.of("users/1/a", "users/1/c"), claimed.objectKeys());
+		assertTrue(claimed.full());
+		verify(objectDeletionRepository).claim(List.of("users/1/a", "users/1/c"), CLAIMED_UNTIL);
+		verify(objectDeletionRepository, never()).deleteByObjectKeyIn(anyCollection());
+		verify(noteRepository).findReferencedObjectKeys(List.of("users/1/a", "users/1/c"));
+	}
+
+	@Test
+	void claimOfOnlyLockedKeysClaimsNothing() {
+		when(objectDeletionRepository.lockDueObjectKeys(NOW, 10)).thenReturn(List.of(BLOB_KEY));
+		when(pendingObjectRepository.tryLockObjectKey(BLOB_KEY)).thenReturn(false);
+
+		ClaimedDeletions claimed = pendingObjectService.claimDeletions(10, NOW, CLAIMED_UNTIL);
+
+		assertEquals(List.of(), claimed.objectKeys());
+		assertFalse(claimed.full());
+		verify(objectDeletionRepository, never()).claim(anyCollection(), any(LocalDateTime.class));
+	}
+
+	@Test
+	void keysReferencedAgainAreDroppedFromQueue() {
+		String hash = BlobService.hashOf(BLOB_KEY);
+		when(objectDeletionRepository.lockDueObjectKeys(NOW, 10)).thenReturn(List.of("users/1/a", "users/1/b",
+				"users/1/c", "users/1/d", BLOB_KEY));
+		when(noteRepository.findReferencedObjectKeys(anyCollection())).thenReturn(List.of("users/1/a"));
+		when(noteUploadRepository.findObjectKeysIn(anyCollection())).thenReturn(List.of("users/1/b"));
+		when(pendingObjectRepository.findObjectKeysIn(anyCollection())).thenReturn(List.of("users/1/c"));
+		when(blobRepository.findHashesIn(List.of(hash))).thenReturn(List.of(hash));
+
+		ClaimedDeletions claimed = pendingObjectService.claimDeletions(10, NOW, CLAIMED_UNTIL);
+
+		assertEquals(List.of("users/1/d"), claimed.objectKeys());
+		assertFalse(claimed.full());
+		verify(objectDeletionRepository).deleteByObjectKeyIn(List.of("users/1/a", "users/1/b", "users/1/c",
+				BLOB_KEY));
+		verify(objectDeletionRepository).claim(List.of("users/1/d"), CLAIMED_UNTIL);
+	}
+
+	@Test
+	void blobIsNotRegisteredWhileItsDeletionIsClaimed() {
+		when(objectDeletionRepository.isClaimed(eq(BLOB_KEY), any(LocalDateTime.class))).thenReturn(true);
+
+		assertFalse(pendingObjectService.registerBlob(BLOB_KEY));
+
+		// Checked under the key's lock, which claiming only tries to take
+		InOrder order = inOrder(pendingObjectRepository, objectDeletionRepository);
+		order.verify(pendingObjectRepository).lockObjectKey(BLOB_KEY);
+		order.verify(objectDeletionRepository).isClaimed(eq(BLOB_KEY), any(LocalDateTime.class));
+		verify(pendingObjectRepository, never()).upsert(anyString(), any(LocalDateTime.class));
+	}
+
+	@Test
+	void blobIsRegisteredOnceNoDeletionIsClaimed() {
+		assertTrue(pendingObjectService.registerBlob(BLOB_KEY));
+
+		verify(pendingObjectRepository).upsert(eq(BLOB_KEY), any(LocalDateTime.class));
+	}
+
+	@Test
+	void onlyUnreferencedObjectsAreQueued() {
+		when(pendingObjectRepository.existsById(anyString())).thenReturn(true);
+		when(noteRepository.existsByObjectKey("users/1/a")).thenReturn(true);
+
+		// Committed after all: the stale registration is cleared, nothing queued
+		assertFalse(pendingObjectService.queueDeletionIfUnreferenced("users/1/a", true));
+		verify(pendingObjectRepository).deleteByObjectKey("users/1/a");
+
+		assertTrue(pendingObjectService.queueDeletionIfUnreferenced("users/1/b", true));
+		verify(objectDeletionRepository).enqueue(eq("users/1/b"), any(LocalDateTime.class));
+		verify(objectDeletionRepository, never()).enqueue(eq("users/1/a"), any(LocalDateTime.class));
+	}
+
+	@Test
+	void registrationClearedMeanwhileIsNotQueued() {
+		when(pendingObjectRepository.existsById("users/1/a")).thenReturn(false);
+
+		assertFalse(pendingObjectService.queueDeletionIfUnreferenced("users/1/a", true));
+
+		verify(pendingObjectRepository).lockObjectKey("users/1/a");
+		verify(objectDeletionRepository, never()).enqueue(anyString(), any(LocalDateTime.class));
+	}
+}
\ No newline at end of file
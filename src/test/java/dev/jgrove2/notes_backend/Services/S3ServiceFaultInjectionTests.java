@@ -0,0 +1,231 @@
+package dev.jgrove2.notes_backend.Services;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dev.jgrove2.notes_backend.Config.S3Config;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * S3Service against a local HTTP stand-in for R2 that fails or stalls on demand
+ */
+class S3ServiceFaultInjectionTests {
+
+	private static final byte[] CONTENT = "<p>note</p>".getBytes(StandardCharsets.UTF_8);
+
+	/**
+	 * How the stand-in answers the n-th request (counting from 1)
+	 */
+	private interface Behavior {
+		void handle(int request, HttpExchange exchange) throws Exception;
+	}
+
+	private HttpServer server;
+	private ExecutorService serverExecutor;
+	private S3Client s3Client;
+	private SimpleMeterRegistry meterRegistry;
+	private S3Service s3Service;
+	private final AtomicInteger requests = new AtomicInteger();
+	private volatile Behavior behavior = (request, exchange) -> ok(exchange);
+
+	@BeforeEach
+	void setUp() throws IOException {
+		serverExecutor = Executors.newCachedThreadPool();
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.setExecutor(serverExecutor);
+		server.createContext("/", exchange -> {
+			try (exchange) {
+				exchange.getRequestBody().readAllBytes();
+				behavior.handle(requests.incrementAndGet(), exchange);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (Exception e) {
+				// The client gave up on the request
+			}
+		});
+		server.start();
+
+		S3Config s3Config = new S3Config();
+		ReflectionTestUtils.setField(s3Config, "accessKeyId", "test");
+		ReflectionTestUtils.setField(s3Config, "secretAccessKey", "test");
+		ReflectionTestUtils.setField(s3Config, "endpoint", "http://127.0.0.1:" + server.getAddress().getPort());
+		ReflectionTestUtils.setField(s3Config, "connectTimeoutMillis", 1000L);
+		ReflectionTestUtils.setField(s3Config, "socketTimeoutMillis", 5000L);
+		s3Client = s3Config.s3Client();
+
+		meterRegistry = new SimpleMeterRegistry();
+		s3Service = new S3Service();
+		ReflectionTestUtils.setField(s3Service, "s3Client", s3Client);
+		ReflectionTestUtils.setField(s3Service, "bucketName", "notes");
+		ReflectionTestUtils.setField(s3Service, "observationRegistry", ObservationRegistry.NOOP);
+		ReflectionTestUtils.setField(s3Service, "meterRegistry", meterRegistry);
+		ReflectionTestUtils.setField(s3Service, "timeoutMillis", 1000L);
+		ReflectionTestUtils.setField(s3Service, "transferTimeoutMillis", 5000L);
+		ReflectionTestUtils.setField(s3Service, "hedgeDelayMillis", 0L);
+		ReflectionTestUtils.setField(s3Service, "maxAttempts", 3);
+		ReflectionTestUtils.setField(s3Service, "retryBudgetRatio", 0.1);
+		ReflectionTestUtils.setField(s3Service, "circuitFailureRate", 0.5);
+		ReflectionTestUtils.setField(s3Service, "circuitOpenMillis", 200L);
+		s3Service.init();
+	}
+
+	@AfterEach
+	void tearDown() {
+		s3Service.shutdown();
+		s3Client.close();
+		server.stop(0);
+		serverExecutor.shutdownNow();
+	}
+
+	@Test
+	void serverErrorsAreRetried() throws IOException {
+		behavior = (request, exchange) -> {
+			if (request == 1) {
+				error(exchange, 500, "InternalError");
+			} else {
+				ok(exchange);
+			}
+		};
+
+		try (InputStream content = s3Service.getFile("users/1/note.html")) {
+			assertEquals("<p>note</p>", new String(content.readAllBytes(), StandardCharsets.UTF_8));
+		}
+		assertEquals(2, requests.get());
+		assertEquals(1.0, meterRegistry.get("notes.r2.retries").counter().count());
+	}
+
+	@Test
+	void missingObjectsAreNotRetried() {
+		behavior = (request, exchange) -> error(exchange, 404, "NoSuchKey");
+
+		assertThrows(RuntimeException.class, () -> s3Service.getFile("users/1/missing.html"));
+		assertEquals(1, requests.get());
+	}
+
+	@Test
+	void circuitOpensOnFailuresAndClosesAfterRecovery() throws InterruptedException {
+		ReflectionTestUtils.setField(s3Service, "maxAttempts", 1);
+		behavior = (request, exchange) -> error(exchange, 503, "ServiceUnavailable");
+
+		for (int i = 0; i < 20; i++) {
+			assertThrows(RuntimeException.class, () -> s3Service.getFileSize("users/1/note.html"));
+		}
+		assertEquals(2.0, meterRegistry.get("notes.r2.circuit.state").gauge().value());
+
+		// Open: calls fail without reaching R2
+		assertThrows(RuntimeException.class, () -> s3Service.getFileSize("users/1/note.html"));
+		assertEquals(20, requests.get());
+		assertEquals(1.0, meterRegistry.get("notes.r2.circuit.rejected").counter().count());
+
+		behavior = (request, exchange) -> ok(exchange);
+		Thread.sleep(300);
+		for (int i = 0; i < 3; i++) {
+			assertEquals(CONTENT.length, s3Service.getFileSize("users/1/note.html"));
+		}
+		assertEquals(0.0, meterRegistry.get("notes.r2.circuit.state").gauge().value());
+	}
+
+	@Test
+	void stalledCallsTimeOut() {
+		ReflectionTestUtils.setField(s3Service, "maxAttempts", 1);
+		behavior = (request, exchange) -> {
+			Thread.sleep(10_000);
+			ok(exchange);
+		};
+
+		long start = System.nanoTime();
+		assertThrows(RuntimeException.class, () -> s3Service.fileExists("users/1/note.html"));
+		assertTrue(System.nanoTime() - start < 3_000_000_000L);
+	}
+
+	@Test
+	void slowGetsAreHedged() throws IOException {
+		ReflectionTestUtils.setField(s3Service, "hedgeDelayMillis", 100L);
+		ReflectionTestUtils.setField(s3Service, "timeoutMillis", 5000L);
+		behavior = (request, exchange) -> {
+			if (request == 1) {
+				Thread.sleep(3000);
+			}
+			ok(exchange);
+		};
+
+		long start = System.nanoTime();
+		try (InputStream content = s3Service.getFile("users/1/note.html")) {
+			assertEquals("<p>note</p>", new String(content.readAllBytes(), StandardCharsets.UTF_8));
+		}
+		assertTrue(System.nanoTime() - start < 2_000_000_000L);
+		assertEquals(2, requests.get());
+		assertEquals(1.0, meterRegistry.get("notes.r2.hedges").counter().count());
+	}
+
+	@Test
+	void deletesAreBatchedAndReportFailedKeys() {
+		behavior = (request, exchange) -> deleteResult(exchange, request == 2
+				? "<Error><Key>users/1/1499.html</Key><Code>AccessDenied</Code><Message>Access Denied</Message></Error>"
+				: "");
+		List<String> objectKeys = IntStream.range(0, 1500).mapToObj(i -> "users/1/" + i + ".html").toList();
+
+		Map<String, String> errors = s3Service.deleteFiles(objectKeys);
+		assertEquals(2, requests.get());
+		assertEquals(Map.of("users/1/1499.html", "AccessDenied: Access Denied"), errors);
+	}
+
+	private static void ok(HttpExchange exchange) throws IOException {
+		exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+		exchange.getResponseHeaders().add("ETag", "\"stand-in\"");
+		if (exchange.getRequestMethod().equals("HEAD")) {
+			exchange.getResponseHeaders().add("Content-Length", String.valueOf(CONTENT.length));
+			exchange.sendResponseHeaders(200, -1);
+			return;
+		}
+		exchange.sendResponseHeaders(200, CONTENT.length);
+		try (OutputStream body = exchange.getResponseBody()) {
+			body.write(CONTENT);
+		}
+	}
+
+	private static void deleteResult(HttpExchange exchange, String errors) throws IOException {
+		byte[] body = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?><DeleteResult>" + errors + "</DeleteResult>")
+				.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/xml");
+		exchange.sendResponseHeaders(200, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	private static void error(HttpExchange exchange, int status, String code) throws IOException {
+		if (exchange.getRequestMethod().equals("HEAD")) {
+			exchange.sendResponseHeaders(status, -1);
+			return;
+		}
+		byte[] body = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Error><Code>" + code
+				+ "</Code><Message>" + code + "</Message></Error>").getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/xml");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+}
\ No newline at end of file
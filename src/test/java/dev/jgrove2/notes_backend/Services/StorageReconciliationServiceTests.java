@@ -0,0 +1,201 @@
+package dev.jgrove2.notes_backend.Services;
+
+import dev.jgrove2.notes_backend.Models.Note;
+import dev.jgrove2.notes_backend.Models.NoteVersionSummary;
+import dev.jgrove2.notes_backend.Repositories.NoteRepository;
+import dev.jgrove2.notes_backend.Repositories.PendingObjectRepository;
+import dev.jgrove2.notes_backend.Services.ObjectStore.ObjectPage;
+import dev.jgrove2.notes_backend.Services.ObjectStore.StoredObject;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class StorageReconciliationServiceTests {
+
+	private static final Instant OLD = Instant.now().minus(Duration.ofHours(2));
+
+	private S3Service noteStorage;
+	private PendingObjectService pendingObjectService;
+	private PendingObjectRepository pendingObjectRepository;
+	private NoteRepository noteRepository;
+	private NoteVersionService noteVersionService;
+	private SimpleMeterRegistry meterRegistry;
+	private StorageReconciliationService storageReconciliationService;
+	/** Objects written back to storage, standing in for the bucket */
+	private Map<String, byte[]> written;
+
+	@BeforeEach
+	void setUp() {
+		noteStorage = mock(S3Service.class);
+		pendingObjectService = mock(PendingObjectService.class);
+		pendingObjectRepository = mock(PendingObjectRepository.class);
+		noteRepository = mock(NoteRepository.class);
+		noteVersionService = mock(NoteVersionService.class);
+		meterRegistry = new SimpleMeterRegistry();
+		written = new HashMap<>();
+		when(pendingObjectRepository.findExpiredObjectKeys(any(LocalDateTime.class), any(LocalDateTime.class),
+				any(Pageable.class))).thenReturn(List.of());
+		when(pendingObjectService.referencedObjectKeys(anyList())).thenReturn(Set.of());
+		when(pendingObjectService.queueDeletionIfUnreferenced(anyString(), anyBoolean())).thenReturn(true);
+		when(noteStorage.listObjects(anyString(), anyInt())).thenReturn(new ObjectPage(List.of(), false));
+		when(noteStorage.updateFile(any(InputStream.class), anyString())).thenAnswer(invocation -> {
+			written.put(invocation.getArgument(1), invocation.<InputStream>getArgument(0).readAllBytes());
+			return invocation.getArgument(1);
+		});
+
+		storageReconciliationService = new StorageReconciliationService();
+		ReflectionTestUtils.setField(storageReconciliationService, "noteStorage", noteStorage);
+		ReflectionTestUtils.setField(storageReconciliationService, "pendingObjectService", pendingObjectService);
+		ReflectionTestUtils.setField(storageReconciliationService, "pendingObjectRepository",
+				pendingObjectRepository);
+		ReflectionTestUtils.setField(storageReconciliationService, "noteRepository", noteRepository);
+		ReflectionTestUtils.setField(storageReconciliationService, "noteVersionService", noteVersionService);
+		ReflectionTestUtils.setField(storageReconciliationService, "meterRegistry", meterRegistry);
+		ReflectionTestUtils.setField(storageReconciliationService, "enabled", true);
+		ReflectionTestUtils.setField(storageReconciliationService, "graceMinutes", 60L);
+		ReflectionTestUtils.setField(storageReconciliationService, "passIntervalMinutes", 60L);
+		storageReconciliationService.init();
+	}
+
+	@Test
+	void expiredRegistrationsAreQueuedForDeletion() {
+		when(pendingObjectRepository.findExpiredObjectKeys(any(LocalDateTime.class), any(LocalDateTime.class),
+				any(Pageable.class))).thenReturn(List.of("users/1/notes/a.upload-1", "users/1/notes/a.upload-2"));
+		// Committed meanwhile: its note references it now
+		when(pendingObjectService.queueDeletionIfUnreferenced("users/1/notes/a.upload-2", true)).thenReturn(false);
+
+		storageReconciliationService.reconcile();
+
+		verify(pendingObjectService).queueDeletionIfUnreferenced("users/1/notes/a.upload-1", true);
+		assertEquals(1.0, repaired("pending"));
+	}
+
+	@Test
+	void sweepQueuesOrphanButLeavesObjectsInGracePeriod() {
+		when(noteStorage.listObjects("", 1000)).thenReturn(new ObjectPage(List.of(
+				object("backups/dump.sql", OLD),
+				object("blobs/ab/abc", OLD),
+				object("users/1/notes/orphan", OLD),
+				object("users/1/notes/writing", Instant.now().minus(Duration.ofMinutes(5)))), false));
+		when(pendingObjectService.referencedObjectKeys(List.of("blobs/ab/abc", "users/1/notes/orphan")))
+				.thenReturn(Set.of("blobs/ab/abc"));
+
+		storageReconciliationService.reconcile();
+
+		// Keys this backend never writes, and objects that may still be being written, are not candidates
+		verify(pendingObjectService).referencedObjectKeys(List.of("blobs/ab/abc", "users/1/notes/orphan"));
+		verify(pendingObjectService).queueDeletionIfUnreferenced("users/1/notes/orphan", false);
+		verify(pendingObjectService, never()).queueDeletionIfUnreferenced("blobs/ab/abc", false);
+		verify(pendingObjectService, never()).queueDeletionIfUnreferenced("users/1/notes/writing", false);
+		assertEquals(1.0, repaired("orphan"));
+	}
+
+	@Test
+	void missingObjectIsRestoredFromLatestVersion() {
+		when(noteStorage.listObjects("", 1000)).thenReturn(new ObjectPage(List.of(
+				object("users/1/notes/a", OLD)), false));
+		Note listed = note(1L, "users/1/notes/a");
+		Note missing = note(2L, "users/1/notes/b");
+		when(noteRepository.findByObjectKeyRange(eq(""), eq("users/1/notes/a"), eq(false), any(LocalDateTime.class),
+				eq(1000))).thenReturn(List.of(listed, missing));
+		when(noteVersionService.getVersionSummaries(2L)).thenReturn(List.of(
+				new NoteVersionSummary(3, 9L, LocalDateTime.now()), new NoteVersionSummary(2, 8L, LocalDateTime.now())));
+		when(noteVersionService.getVersionContent(2L, 3)).thenReturn(Optional.of("<p>v3</p>".getBytes()));
+
+		storageReconciliationService.reconcile();
+
+		assertEquals(Set.of("users/1/notes/b"), written.keySet());
+		assertEquals("<p>v3</p>", new String(written.get("users/1/notes/b")));
+		verify(noteVersionService, never()).getVersionContent(2L, 2);
+		assertEquals(1.0, repaired("restored"));
+	}
+
+	@Test
+	void missingObjectWithoutVersionIsOnlyCounted() {
+		when(noteRepository.findByObjectKeyRange(eq(""), eq(""), eq(false), any(LocalDateTime.class), eq(1000)))
+				.thenReturn(List.of(note(1L, "users/1/notes/a"), note(2L, "users/1/notes/b")));
+		// Written after the listing
+		when(noteStorage.fileExists("users/1/notes/a")).thenReturn(true);
+		when(noteVersionService.getVersionSummaries(2L)).thenReturn(List.of());
+
+		storageReconciliationService.reconcile();
+
+		assertTrue(written.isEmpty());
+		verify(noteVersionService, never()).getVersionSummaries(1L);
+		assertEquals(1.0, meterRegistry.get("notes.reconciler.missing").counter().count());
+	}
+
+	@Test
+	void sweepContinuesAfterEachPageAndWaitsForNextPass() {
+		when(noteStorage.listObjects("", 1000)).thenReturn(new ObjectPage(List.of(
+				object("users/1/notes/a", OLD), object("users/1/notes/m", OLD)), true));
+		when(noteStorage.listObjects("users/1/notes/m", 1000)).thenReturn(new ObjectPage(List.of(
+				object("users/1/notes/z", OLD)), false));
+
+		storageReconciliationService.reconcile();
+		storageReconciliationService.reconcile();
+		storageReconciliationService.reconcile();
+
+		// Notes up to the page's last key, then every key after it
+		verify(noteRepository).findByObjectKeyRange(eq(""), eq("users/1/notes/m"), eq(true),
+				any(LocalDateTime.class), eq(1000));
+		verify(noteRepository).findByObjectKeyRange(eq("users/1/notes/m"), eq("users/1/notes/z"), eq(false),
+				any(LocalDateTime.class), eq(1000));
+		// The pass is done; the next one starts an hour after this one did
+		verify(noteStorage, times(2)).listObjects(anyString(), anyInt());
+	}
+
+	@Test
+	void disabledReconcilerDoesNothing() {
+		ReflectionTestUtils.setField(storageReconciliationService, "enabled", false);
+
+		storageReconciliationService.reconcile();
+
+		verify(noteStorage, never()).listObjects(anyString(), anyInt());
+		verify(pendingObjectRepository, never()).findExpiredObjectKeys(any(LocalDateTime.class),
+				any(LocalDateTime.class), any(Pageable.class));
+		verify(noteVersionService, never()).getVersionContent(anyLong(), anyInt());
+	}
+
+	private double repaired(String kind) {
+		return meterRegistry.get("notes.reconciler.repaired").tag("kind", kind).counter().count();
+	}
+
+	private static StoredObject object(String objectKey, Instant lastModified) {
+		return new StoredObject(objectKey, 10L, lastModified);
+	}
+
+	private static Note note(Long id, String objectKey) {
+		Note note = new Note();
+		note.setId(id);
+		note.setObjectKey(objectKey);
+		return note;
+	}
+}
\ No newline at end of file
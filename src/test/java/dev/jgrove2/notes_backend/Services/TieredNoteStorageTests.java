@@ -0,0 +1,397 @@
+package dev.jgrove2.notes_backend.Services;
+
+import dev.jgrove2.notes_backend.Models.StorageOutboxEntry;
+import dev.jgrove2.notes_backend.Repositories.StorageOutboxRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TieredNoteStorageTests {
+
+	@TempDir
+	private Path root;
+
+	// Stand-ins for R2 and the storage_outbox table
+	private final Map<String, byte[]> remoteFiles = new ConcurrentHashMap<>();
+	private final Map<String, StorageOutboxEntry> outbox = new ConcurrentHashMap<>();
+	private final AtomicLong seq = new AtomicLong();
+	private final AtomicBoolean remoteDown = new AtomicBoolean();
+	private volatile Consumer<String> onEnqueue = objectKey -> {
+	};
+
+	private LocalNoteStorage disk;
+	private S3Service remote;
+	private StorageOutboxRepository outboxRepository;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		disk = new LocalNoteStorage();
+		ReflectionTestUtils.setField(disk, "observationRegistry", ObservationRegistry.NOOP);
+		ReflectionTestUtils.setField(disk, "root", root);
+		ReflectionTestUtils.setField(disk, "fsync", false);
+
+		remote = mock(S3Service.class);
+		doAnswer(invocation -> {
+			if (remoteDown.get()) {
+				throw new RuntimeException("R2 unavailable");
+			}
+			remoteFiles.put(invocation.getArgument(1), invocation.<InputStream>getArgument(0).readAllBytes());
+			return invocation.getArgument(1);
+		}).when(remote).updateFile(any(InputStream.class), anyString());
+		doAnswer(invocation -> remoteFiles.remove(invocation.<String>getArgument(0))).when(remote)
+				.deleteFile(anyString());
+		when(remote.getFile(anyString())).thenAnswer(invocation -> {
+			byte[] content = remoteFiles.get(invocation.<String>getArgument(0));
+			if (content == null) {
+				throw new RuntimeException("NoSuchKey");
+			}
+			return new ByteArrayInputStream(content);
+		});
+		when(remote.fileExists(anyString()))
+				.thenAnswer(invocation -> remoteFiles.containsKey(invocation.<String>getArgument(0)));
+
+		outboxRepository = mock(StorageOutboxRepository.class);
+		doAnswer(invocation -> {
+			// One row per key, replaced with a new seq
+			outbox.compute(invocation.getArgument(0), (objectKey, existing) -> {
+				StorageOutboxEntry entry = new StorageOutboxEntry();
+				entry.setId(existing == null ? seq.incrementAndGet() : existing.getId());
+				entry.setObjectKey(objectKey);
+				entry.setOperation(invocation.getArgument(1));
+				entry.setSeq(seq.incrementAndGet());
+				entry.setAttempts(0);
+				entry.setNextAttemptAt(LocalDateTime.now());
+				entry.setEnqueuedAt(existing == null ? LocalDateTime.now() : existing.getEnqueuedAt());
+				return entry;
+			});
+			onEnqueue.accept(invocation.getArgument(0));
+			return null;
+		}).when(outboxRepository).enqueue(anyString(), anyString());
+		when(outboxRepository.findTop100ByNextAttemptAtLessThanEqualOrderByNextAttemptAt(any(LocalDateTime.class)))
+				.thenAnswer(invocation -> outbox.values().stream()
+						.filter(entry -> !entry.getNextAttemptAt().isAfter(invocation.getArgument(0)))
+						.map(TieredNoteStorageTests::copy)
+						.toList());
+		when(outboxRepository.deleteByIdAndSeq(anyLong(), anyLong())).thenAnswer(invocation -> {
+			for (StorageOutboxEntry entry : outbox.values()) {
+				if (entry.getId().equals(invocation.getArgument(0)) && entry.getSeq().equals(invocation.getArgument(1))
+						&& outbox.remove(entry.getObjectKey(), entry)) {
+					return 1;
+				}
+			}
+			return 0;
+		});
+		when(outboxRepository.recordFailure(anyLong(), anyLong(), any(LocalDateTime.class), anyString()))
+				.thenAnswer(invocation -> {
+					for (StorageOutboxEntry entry : outbox.values()) {
+						if (entry.getId().equals(invocation.getArgument(0))
+								&& entry.getSeq().equals(invocation.getArgument(1))) {
+							entry.setAttempts(entry.getAttempts() + 1);
+							entry.setNextAttemptAt(invocation.getArgument(2));
+							entry.setLastError(invocation.getArgument(3));
+							return 1;
+						}
+					}
+					return 0;
+				});
+		when(outboxRepository.findPendingPutObjectKeys()).thenAnswer(invocation -> keysWith("PUT"));
+		when(outboxRepository.findPendingDeleteObjectKeys()).thenAnswer(invocation -> keysWith("DELETE"));
+		when(outboxRepository.count()).thenAnswer(invocation -> (long) outbox.size());
+	}
+
+	@Test
+	void filesNotYetInRemoteAreNeverEvicted() throws Exception {
+		TieredNoteStorage storage = tiered(disk, 10);
+
+		storage.updateFile(stream("12345678"), "a");
+		storage.updateFile(stream("87654321"), "b");
+
+		// Over the limit, but neither is in R2 yet
+		assertEquals(16, storage.getCachedBytes());
+		assertTrue(disk.fileExists("a") && disk.fileExists("b"));
+
+		storage.replicate();
+
+		assertEquals("12345678", new String(remoteFiles.get("a"), StandardCharsets.UTF_8));
+		assertTrue(outbox.isEmpty());
+		// The least recently used one goes once both can
+		assertFalse(disk.fileExists("a"));
+		assertTrue(disk.fileExists("b"));
+		assertEquals(8, storage.getCachedBytes());
+		assertEquals("12345678", read(storage, "a"));
+	}
+
+	@Test
+	void failedReplicationKeepsFilePinnedAndRetriesLater() throws Exception {
+		TieredNoteStorage storage = tiered(disk, 1);
+		remoteDown.set(true);
+
+		storage.updateFile(stream("12345678"), "a");
+		storage.replicate();
+
+		assertTrue(disk.fileExists("a"));
+		StorageOutboxEntry entry = outbox.get("a");
+		assertEquals(1, entry.getAttempts());
+		assertTrue(entry.getNextAttemptAt().isAfter(LocalDateTime.now()));
+
+		remoteDown.set(false);
+		entry.setNextAttemptAt(LocalDateTime.now());
+		storage.replicate();
+
+		assertTrue(outbox.isEmpty());
+		assertEquals("12345678", new String(remoteFiles.get("a"), StandardCharsets.UTF_8));
+		assertFalse(disk.fileExists("a"));
+	}
+
+	@Test
+	void writeDuringReplicationStaysPinned() throws Exception {
+		TieredNoteStorage storage = tiered(disk, 1);
+		storage.updateFile(stream("old"), "a");
+		// The newer write is queued after the worker read the entry
+		doAnswer(invocation -> {
+			remoteFiles.put("a", invocation.<InputStream>getArgument(0).readAllBytes());
+			storage.updateFile(stream("new"), "a");
+			return "a";
+		}).when(remote).updateFile(any(InputStream.class), anyString());
+
+		storage.replicate();
+
+		assertEquals("PUT", outbox.get("a").getOperation());
+		assertTrue(disk.fileExists("a"));
+		assertEquals("new", read(storage, "a"));
+	}
+
+	@Test
+	void fileWrittenAfterEvictionPickedItIsKept() throws Exception {
+		TieredNoteStorage storage = tiered(disk, 1024);
+		remoteFiles.put("a", bytes("old content"));
+		assertEquals("old content", read(storage, "a"));
+		Path path = disk.pathFor("a");
+
+		// Eviction stops right after picking the file, until a write has pinned it and queued its upload
+		CountDownLatch picked = new CountDownLatch(1);
+		CountDownLatch enqueued = new CountDownLatch(1);
+		Set<Path> pinnedFiles = ConcurrentHashMap.newKeySet();
+		ReflectionTestUtils.setField(storage, "pinnedFiles", new AbstractSet<Path>() {
+			@Override
+			public boolean contains(Object candidate) {
+				boolean pinned = pinnedFiles.contains(candidate);
+				if (candidate.equals(path) && Thread.currentThread().getName().equals("evictor")
+						&& picked.getCount() > 0) {
+					picked.countDown();
+					await(enqueued);
+				}
+				return pinned;
+			}
+
+			@Override
+			public boolean add(Path pinned) {
+				return pinnedFiles.add(pinned);
+			}
+
+			@Override
+			public boolean remove(Object pinned) {
+				return pinnedFiles.remove(pinned);
+			}
+
+			@Override
+			public Iterator<Path> iterator() {
+				return pinnedFiles.iterator();
+			}
+
+			@Override
+			public int size() {
+				return pinnedFiles.size();
+			}
+		});
+		onEnqueue = objectKey -> enqueued.countDown();
+		ReflectionTestUtils.setField(storage, "maxBytes", 4L);
+
+		Thread evictor = Thread.ofPlatform().name("evictor").start(storage::evict);
+		assertTrue(picked.await(5, TimeUnit.SECONDS));
+		storage.updateFile(stream("new content"), "a");
+		evictor.join(5000);
+
+		assertEquals("new content", read(storage, "a"));
+		storage.replicate();
+		assertTrue(outbox.isEmpty(), outbox::toString);
+		assertEquals("new content", new String(remoteFiles.get("a"), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void concurrentWritesAndEvictionNeverLoseAWrite() throws Exception {
+		TieredNoteStorage storage = tiered(disk, 64);
+		int writers = 4;
+		int writesPerWriter = 200;
+		ExecutorService executor = Executors.newFixedThreadPool(writers + 1);
+		AtomicBoolean done = new AtomicBoolean();
+		try {
+			Future<?> replication = executor.submit(() -> {
+				while (!done.get()) {
+					storage.replicate();
+				}
+			});
+			List<Future<?>> writes = new ArrayList<>();
+			for (int writer = 0; writer < writers; writer++) {
+				String objectKey = "key-" + writer;
+				writes.add(executor.submit(() -> {
+					for (int i = 0; i < writesPerWriter; i++) {
+						storage.updateFile(stream(objectKey + "-" + i + "-padding-padding"), objectKey);
+					}
+				}));
+			}
+			for (Future<?> write : writes) {
+				write.get(60, TimeUnit.SECONDS);
+			}
+			done.set(true);
+			replication.get(60, TimeUnit.SECONDS);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		storage.replicate();
+		assertTrue(outbox.isEmpty(), outbox::toString);
+		for (int writer = 0; writer < writers; writer++) {
+			String expected = "key-" + writer + "-" + (writesPerWriter - 1) + "-padding-padding";
+			assertEquals(expected, new String(remoteFiles.get("key-" + writer), StandardCharsets.UTF_8));
+		}
+	}
+
+	@Test
+	void pendingDeleteIsNotReadBackFromRemote() throws Exception {
+		TieredNoteStorage storage = tiered(disk, 1024);
+		remoteFiles.put("a", bytes("content"));
+		read(storage, "a");
+
+		storage.deleteFile("a");
+
+		// Still in R2 until the worker runs
+		assertTrue(remoteFiles.containsKey("a"));
+		assertFalse(storage.fileExists("a"));
+		assertThrows(UncheckedIOException.class, () -> storage.getFile("a"));
+		assertThrows(RuntimeException.class, () -> storage.getFileSize("a"));
+		assertFalse(disk.fileExists("a"));
+
+		storage.replicate();
+
+		assertFalse(remoteFiles.containsKey("a"));
+		assertTrue(outbox.isEmpty());
+	}
+
+	@Test
+	void restartReplaysOutbox() throws Exception {
+		TieredNoteStorage before = tiered(disk, 1);
+		remoteDown.set(true);
+		remoteFiles.put("gone", bytes("deleted content"));
+		before.updateFile(stream("unreplicated"), "a");
+		before.deleteFile("gone");
+
+		// A new instance over the same disk and outbox, with R2 back
+		remoteDown.set(false);
+		TieredNoteStorage after = tiered(disk, 1);
+
+		assertTrue(disk.fileExists("a"));
+		assertFalse(after.fileExists("gone"));
+		verify(remote, never()).getFile("gone");
+
+		after.replicate();
+
+		assertEquals("unreplicated", new String(remoteFiles.get("a"), StandardCharsets.UTF_8));
+		assertFalse(remoteFiles.containsKey("gone"));
+		assertFalse(disk.fileExists("a"));
+		assertEquals("unreplicated", read(after, "a"));
+	}
+
+	private TieredNoteStorage tiered(LocalNoteStorage localStorage, long maxBytes) {
+		TieredNoteStorage storage = new TieredNoteStorage();
+		ReflectionTestUtils.setField(storage, "disk", localStorage);
+		ReflectionTestUtils.setField(storage, "remote", remote);
+		ReflectionTestUtils.setField(storage, "outboxRepository", outboxRepository);
+		ReflectionTestUtils.setField(storage, "meterRegistry", new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(storage, "maxBytes", maxBytes);
+		ReflectionTestUtils.setField(storage, "retryBaseMillis", 60000L);
+		ReflectionTestUtils.setField(storage, "retryMaxMillis", 300000L);
+		storage.init();
+		return storage;
+	}
+
+	private List<String> keysWith(String operation) {
+		return outbox.values().stream()
+				.filter(entry -> entry.getOperation().equals(operation))
+				.map(StorageOutboxEntry::getObjectKey)
+				.toList();
+	}
+
+	private static StorageOutboxEntry copy(StorageOutboxEntry entry) {
+		StorageOutboxEntry copy = new StorageOutboxEntry();
+		copy.setId(entry.getId());
+		copy.setObjectKey(entry.getObjectKey());
+		copy.setOperation(entry.getOperation());
+		copy.setSeq(entry.getSeq());
+		copy.setAttempts(entry.getAttempts());
+		copy.setNextAttemptAt(entry.getNextAttemptAt());
+		copy.setEnqueuedAt(entry.getEnqueuedAt());
+		return copy;
+	}
+
+	private static String read(NoteStorage storage, String objectKey) throws Exception {
+		try (InputStream inputStream = storage.getFile(objectKey)) {
+			return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static InputStream stream(String content) {
+		return new ByteArrayInputStream(bytes(content));
+	}
+
+	private static byte[] bytes(String content) {
+		return content.getBytes(StandardCharsets.UTF_8);
+	}
+}
\ No newline at end of file
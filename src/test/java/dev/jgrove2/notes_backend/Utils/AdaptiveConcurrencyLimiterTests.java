@@ -0,0 +1,63 @@
+package dev.jgrove2.notes_backend.Utils;
+
+import dev.jgrove2.notes_backend.Utils.AdaptiveConcurrencyLimiter.Priority;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AdaptiveConcurrencyLimiterTests {
+
+	private DatabaseConnectionUtil databaseConnectionUtil;
+	private AdaptiveConcurrencyLimiter limiter;
+
+	@BeforeEach
+	void setUp() {
+		databaseConnectionUtil = mock(DatabaseConnectionUtil.class);
+		limiter = new AdaptiveConcurrencyLimiter();
+		ReflectionTestUtils.setField(limiter, "databaseConnectionUtil", databaseConnectionUtil);
+		ReflectionTestUtils.setField(limiter, "meterRegistry", new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(limiter, "initialLimit", 10);
+		ReflectionTestUtils.setField(limiter, "minLimit", 2);
+		ReflectionTestUtils.setField(limiter, "maxLimit", 100);
+		ReflectionTestUtils.setField(limiter, "bulkFraction", 0.5);
+		limiter.init();
+	}
+
+	@Test
+	void bulkRequestsAreShedBeforeCriticalOnes() {
+		for (int i = 0; i < 5; i++) {
+			assertTrue(limiter.tryAcquire(Priority.BULK));
+		}
+		assertFalse(limiter.tryAcquire(Priority.BULK));
+
+		for (int i = 0; i < 5; i++) {
+			assertTrue(limiter.tryAcquire(Priority.CRITICAL));
+		}
+		assertFalse(limiter.tryAcquire(Priority.CRITICAL));
+	}
+
+	@Test
+	void limitShrinksWhileThreadsWaitForConnections() {
+		when(databaseConnectionUtil.getThreadsAwaitingConnection()).thenReturn(3);
+		for (int i = 0; i < 10; i++) {
+			assertTrue(limiter.tryAcquire(Priority.CRITICAL));
+		}
+
+		// Nothing completes, so the next admission closes the window
+		AtomicLong windowStart = (AtomicLong) ReflectionTestUtils.getField(limiter, "windowStartNanos");
+		windowStart.addAndGet(-TimeUnit.SECONDS.toNanos(2));
+		assertFalse(limiter.tryAcquire(Priority.CRITICAL));
+
+		assertEquals(9.0, (double) ReflectionTestUtils.getField(limiter, "limit"), 1e-9);
+	}
+}
\ No newline at end of file
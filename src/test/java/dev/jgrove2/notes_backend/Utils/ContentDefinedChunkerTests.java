@@ -0,0 +1,123 @@
+package dev.jgrove2.notes_backend.Utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContentDefinedChunkerTests {
+
+	@Test
+	void chunksJoinBackToContentWithinSizeBounds() {
+		byte[] content = text(200_000, 1);
+
+		List<byte[]> chunks = ContentDefinedChunker.split(content);
+
+		assertArrayEquals(content, join(chunks));
+		for (int i = 0; i < chunks.size() - 1; i++) {
+			assertTrue(chunks.get(i).length > 512 && chunks.get(i).length <= 16 * 1024, "chunk " + i);
+		}
+		assertTrue(chunks.size() > 20, "about 2 KiB per chunk");
+		assertEquals(List.of(), ContentDefinedChunker.split(new byte[0]));
+	}
+
+	@Test
+	void insertOnlyChangesChunksAroundIt() {
+		byte[] original = text(200_000, 2);
+		byte[] inserted = splice(original, 100_000, 0, "<p>A new paragraph in the middle</p>");
+
+		assertChangedChunksAtMost(original, inserted, 2);
+	}
+
+	@Test
+	void editOnlyChangesChunksAroundIt() {
+		byte[] original = text(200_000, 3);
+		byte[] edited = splice(original, 50_000, 5, "edited");
+
+		assertChangedChunksAtMost(original, edited, 2);
+	}
+
+	@Test
+	void sameContentGivesSameChunks() {
+		List<byte[]> first = ContentDefinedChunker.split(text(50_000, 4));
+		List<byte[]> second = ContentDefinedChunker.split(text(50_000, 4));
+
+		assertEquals(first.size(), second.size());
+		for (int i = 0; i < first.size(); i++) {
+			assertArrayEquals(first.get(i), second.get(i));
+		}
+	}
+
+	@Test
+	void streamedContentGivesSameChunks() throws Exception {
+		byte[] content = text(300_000, 5);
+		// Short reads, as from a network stream
+		InputStream input = new ByteArrayInputStream(content) {
+			@Override
+			public synchronized int read(byte[] buffer, int offset, int length) {
+				return super.read(buffer, offset, Math.min(length, 1000));
+			}
+		};
+		List<byte[]> streamed = new ArrayList<>();
+
+		ContentDefinedChunker.split(input, streamed::add);
+
+		List<byte[]> split = ContentDefinedChunker.split(content);
+		assertEquals(split.size(), streamed.size());
+		for (int i = 0; i < split.size(); i++) {
+			assertArrayEquals(split.get(i), streamed.get(i));
+		}
+		List<byte[]> empty = new ArrayList<>();
+		ContentDefinedChunker.split(new ByteArrayInputStream(new byte[0]), empty::add);
+		assertEquals(List.of(), empty);
+	}
+
+	private static void assertChangedChunksAtMost(byte[] before, byte[] after, int maxChanged) {
+		Set<String> beforeChunks = new HashSet<>();
+		for (byte[] chunk : ContentDefinedChunker.split(before)) {
+			beforeChunks.add(new String(chunk, StandardCharsets.ISO_8859_1));
+		}
+		int changed = 0;
+		for (byte[] chunk : ContentDefinedChunker.split(after)) {
+			if (!beforeChunks.contains(new String(chunk, StandardCharsets.ISO_8859_1))) {
+				changed++;
+			}
+		}
+		assertTrue(changed >= 1 && changed <= maxChanged, changed + " chunks changed");
+	}
+
+	private static byte[] text(int length, long seed) {
+		String[] words = { "note", "the", "backend", "chunk", "<p>", "</p>", "edit", "version", "of", "a", "\n" };
+		Random random = new Random(seed);
+		StringBuilder text = new StringBuilder(length + 16);
+		while (text.length() < length) {
+			text.append(words[random.nextInt(words.length)]).append(' ').append(random.nextInt(1000)).append(' ');
+		}
+		return text.substring(0, length).getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] splice(byte[] content, int at, int removed, String added) {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		result.write(content, 0, at);
+		result.writeBytes(added.getBytes(StandardCharsets.UTF_8));
+		result.write(content, at + removed, content.length - at - removed);
+		return result.toByteArray();
+	}
+
+	private static byte[] join(List<byte[]> chunks) {
+		ByteArrayOutputStream joined = new ByteArrayOutputStream();
+		chunks.forEach(joined::writeBytes);
+		return joined.toByteArray();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,56 @@
+package dev.jgrove2.notes_backend.Utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class EventStreamTicketUtilTests {
+
+	private static final Instant NOW = Instant.parse("2026-01-01T00:00:00Z");
+
+	private EventStreamTicketUtil tickets;
+
+	@BeforeEach
+	void setUp() {
+		tickets = ticketUtil("secret");
+	}
+
+	@Test
+	void ticketIdentifiesUserUntilItExpires() {
+		String ticket = tickets.issue("kp_user.with.dots", NOW);
+
+		assertEquals("kp_user.with.dots", tickets.verify(ticket, NOW.plusSeconds(60)));
+		assertNull(tickets.verify(ticket, NOW.plusSeconds(61)));
+	}
+
+	@Test
+	void forgedTicketsAreRejected() {
+		String ticket = tickets.issue("kp_user", NOW);
+		String otherUser = tickets.issue("kp_other", NOW);
+		String forged = otherUser.substring(0, otherUser.indexOf('.')) + ticket.substring(ticket.indexOf('.'));
+
+		assertNull(tickets.verify(forged, NOW));
+		assertNull(tickets.verify(ticketUtil("other-secret").issue("kp_user", NOW), NOW));
+		assertNull(tickets.verify("not-a-ticket", NOW));
+		assertNull(tickets.verify("a.b.c", NOW));
+		assertNull(tickets.verify(null, NOW));
+	}
+
+	@Test
+	void instancesSharingSecretAcceptEachOthersTickets() {
+		assertEquals("kp_user", ticketUtil("secret").verify(tickets.issue("kp_user", NOW), NOW));
+	}
+
+	private static EventStreamTicketUtil ticketUtil(String secret) {
+		EventStreamTicketUtil ticketUtil = new EventStreamTicketUtil();
+		ReflectionTestUtils.setField(ticketUtil, "secret", secret);
+		ReflectionTestUtils.setField(ticketUtil, "ttlSeconds", 60L);
+		ticketUtil.init();
+		return ticketUtil;
+	}
+}
\ No newline at end of file
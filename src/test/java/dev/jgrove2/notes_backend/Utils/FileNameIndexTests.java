@@ -0,0 +1,104 @@
+package dev.jgrove2.notes_backend.Utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileNameIndexTests {
+
+	private final FileNameIndex index = new FileNameIndex(List.of(
+			"work/meeting-notes.html",
+			"work/meetup.html",
+			"personal/recipes.html",
+			"meetings.html",
+			"Project Plan.html"));
+
+	@Test
+	void prefixOfWholeNameScoresBest() {
+		List<FileNameIndex.Match> matches = index.find("meet", 10);
+
+		assertEquals(List.of(
+				new FileNameIndex.Match("meetings.html", 0),
+				new FileNameIndex.Match("work/meetup.html", 1),
+				new FileNameIndex.Match("work/meeting-notes.html", 1)), matches);
+	}
+
+	@Test
+	void everyQueryWordMustMatchAWordPrefix() {
+		assertEquals(List.of("work/meeting-notes.html"), fileNames(index.find("work/meeting", 10)));
+		assertEquals(List.of("Project Plan.html"), fileNames(index.find("plan proj", 10)));
+		assertEquals(List.of(), fileNames(index.find("work recipes", 10)));
+		assertEquals(List.of(), fileNames(index.find("notes zzz", 10)));
+	}
+
+	@Test
+	void typosAreToleratedByWordLength() {
+		// 1 typo from 4 characters, 2 from 8
+		assertEquals(new FileNameIndex.Match("personal/recipes.html", 3), index.find("recipse", 10).get(0));
+		assertEquals(List.of(new FileNameIndex.Match("work/meeting-notes.html", 5)), index.find("meetnig notse", 10));
+		assertEquals(List.of("personal/recipes.html"), fileNames(index.find("persnoal", 10)));
+		assertEquals(List.of("personal/recipes.html"), fileNames(index.find("prsonnal", 10)));
+		// Too many typos for the length
+		assertEquals(List.of(), fileNames(index.find("rxcipxs", 10)));
+		assertEquals(List.of(), fileNames(index.find("wrk", 10)));
+	}
+
+	@Test
+	void prefixDistanceAllowsTranspositionsAndStopsAtMax() {
+		assertEquals(0, FileNameIndex.prefixDistance("meet", "meeting", 1));
+		assertEquals(1, FileNameIndex.prefixDistance("meetnig", "meeting", 1));
+		assertEquals(1, FileNameIndex.prefixDistance("meetng", "meeting", 1));
+		assertEquals(1, FileNameIndex.prefixDistance("meetting", "meeting", 2));
+		assertEquals(2, FileNameIndex.prefixDistance("xeetinx", "meeting", 2));
+		assertEquals(2, FileNameIndex.prefixDistance("abcd", "wxyz", 1));
+		assertEquals(1, FileNameIndex.prefixDistance("abcd", "abce", 0));
+	}
+
+	@Test
+	void renameAndDeleteUpdateMatches() {
+		index.remove("work/meetup.html");
+		index.add("work/standup.html");
+		index.remove("not-indexed.html");
+		index.add("meetings.html");
+
+		assertEquals(List.of("meetings.html", "work/meeting-notes.html"), fileNames(index.find("meet", 10)));
+		assertEquals(List.of("work/standup.html"), fileNames(index.find("standup", 10)));
+		assertEquals(5, index.size());
+	}
+
+	@Test
+	void manyDeletesRebuildWithoutLosingNames() {
+		List<String> names = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			names.add("daily/journal-" + i + ".html");
+		}
+		FileNameIndex journal = new FileNameIndex(names);
+		for (int i = 0; i < 150; i++) {
+			journal.remove(names.get(i));
+		}
+
+		assertEquals(50, journal.size());
+		assertEquals(50, journal.find("journal", 100).size());
+		assertEquals(List.of("daily/journal-199.html"), fileNames(journal.find("jornal 199", 10)));
+		assertEquals(List.of(), journal.find("journal 10", 10).stream()
+				.filter(match -> match.fileName().equals("daily/journal-10.html")).toList());
+	}
+
+	@Test
+	void limitKeepsBestMatches() {
+		List<FileNameIndex.Match> matches = index.find("meet", 2);
+
+		assertEquals(2, matches.size());
+		assertEquals("meetings.html", matches.get(0).fileName());
+		assertTrue(index.find("meet", 0).isEmpty());
+		assertTrue(index.find("  /", 10).isEmpty());
+	}
+
+	private static List<String> fileNames(List<FileNameIndex.Match> matches) {
+		return matches.stream().map(FileNameIndex.Match::fileName).toList();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,68 @@
+package dev.jgrove2.notes_backend.Utils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserRateLimiterTests {
+
+	private SimpleMeterRegistry meterRegistry;
+	private UserRateLimiter limiter;
+
+	@BeforeEach
+	void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		limiter = new UserRateLimiter();
+		ReflectionTestUtils.setField(limiter, "meterRegistry", meterRegistry);
+		ReflectionTestUtils.setField(limiter, "enabled", true);
+		ReflectionTestUtils.setField(limiter, "writesPerSecond", 0.5);
+		ReflectionTestUtils.setField(limiter, "burst", 3);
+		ReflectionTestUtils.setField(limiter, "maxConcurrentWrites", 10);
+		limiter.init();
+	}
+
+	@Test
+	void writesBeyondBurstAreThrottledPerUser() {
+		for (int i = 0; i < 3; i++) {
+			UserRateLimiter.Admission admission = limiter.admitWrite("kp_flood");
+			assertTrue(admission.isAdmitted());
+			admission.release();
+		}
+
+		UserRateLimiter.Admission throttled = limiter.admitWrite("kp_flood");
+		assertFalse(throttled.isAdmitted());
+		// One write every 2 seconds
+		assertEquals(2, throttled.retryAfterSeconds());
+
+		assertTrue(limiter.admitWrite("kp_other").isAdmitted());
+		assertEquals(1.0, meterRegistry.counter("notes.rate-limit.throttled", "reason", "rate").count());
+	}
+
+	@Test
+	void concurrentWritesAreCapped() {
+		ReflectionTestUtils.setField(limiter, "writesPerSecond", 1000.0);
+		ReflectionTestUtils.setField(limiter, "burst", 100);
+		ReflectionTestUtils.setField(limiter, "maxConcurrentWrites", 2);
+
+		List<UserRateLimiter.Admission> inProgress = new ArrayList<>();
+		inProgress.add(limiter.admitWrite("kp_writer"));
+		inProgress.add(limiter.admitWrite("kp_writer"));
+		assertTrue(inProgress.stream().allMatch(UserRateLimiter.Admission::isAdmitted));
+
+		UserRateLimiter.Admission throttled = limiter.admitWrite("kp_writer");
+		assertFalse(throttled.isAdmitted());
+		assertEquals(1, throttled.retryAfterSeconds());
+
+		inProgress.get(0).release();
+		assertTrue(limiter.admitWrite("kp_writer").isAdmitted());
+		assertEquals(1.0, meterRegistry.counter("notes.rate-limit.throttled", "reason", "concurrency").count());
+	}
+}
\ No newline at end of file